@@ -135,6 +135,9 @@ import java.util.regex.PatternSyntaxException;
  * <tr><th><b>Property Name</b></th><th><b>Type</b></th><th><b>Default Value</b></th><th><b>Description</b></th><th><b>FeatName</b></th></tr>
  * <tr><td> loadClassifier </td><td>String</td><td>n/a</td><td>Path of serialized classifier file to load</td></tr>
  * <tr><td> serializeTo</td><td>String</td><td>n/a</td><td>Path to serialize classifier to</td></tr>
+ * <tr><td> mappedFeatureIndex</td><td>String</td><td>n/a</td><td>If set with serializeTo, the feature index of a linear classifier is written to this file, and memory-mapped from it when the classifier is loaded</td></tr>
+ * <tr><td> outOfCoreDataset</td><td>String</td><td>n/a</td><td>If set, the training data is featurized in one streaming pass into this file, which is memory-mapped for training rather than held in memory, and deleted afterwards.  Only the default linear classifier (with l1reg, useQN, QNsize, prior, sigma, epsilon, tolerance and useSum) is trained this way; shuffling, cross-validation, featureMinimumSupport and SVMLight format input are not supported.</td></tr>
+ * <tr><td> indexThreads</td><td>int</td><td>1</td><td>If more than 1, the features and labels of the data read from tab-separated files are indexed by this many threads, in batches of datums; the dataset is the same as when they are indexed one at a time.  Real-valued datasets are still indexed one at a time.</td></tr>
  * <tr><td> printTo</td><td>String</td><td>n/a</td><td>Path to print a text representation of the linear classifier to</td></tr>
  * <tr><td> trainFile</td><td>String</td><td>n/a</td><td>Path of file to use as training data</td></tr>
  * <tr><td> testFile</td><td>String</td><td>n/a</td><td>Path of file to use as test data</td></tr>
@@ -232,6 +235,8 @@ import java.util.regex.PatternSyntaxException;
  * <tr><td>shuffleSeed</td><td>long</td><td>0</td><td>If non-zero, and the training data is being shuffled, this is used as the seed for the Random. Otherwise, System.nanoTime() is used.</td></tr>
  * <tr><td>csvInput</td><td>boolean</td><td>false</td><td>If true, reads train and test file in csv format, with support for quoted fields.</td></tr>
  * <tr><td>inputFormat</td><td>String</td><td>null</td><td>If "header" then reads file with first line treated as header; if "comments" treats lines starting with # as comments; else treated as "plain" tsv/csv file</td></tr>
+ * <tr><td>featureHashingBuckets</td><td>int</td><td>0</td><td>If positive, each feature is replaced by one of this many buckets, chosen by hashing its name, so that the classifier has at most this many features (the "hashing trick").  The classifier is serialized with it, so test data is hashed in the same way.  (Not applied to SVMLight format input.)</td></tr>
+ * <tr><td>signedFeatureHashing</td><td>boolean</td><td>true</td><td>With featureHashingBuckets, each feature also has a sign, +1 or -1, by which its value is multiplied, so that features which share a bucket tend to cancel out rather than add up.  Real-valued features are then used.</td></tr>
  *  <tr><td>csvOutput</td><td>String</td><td>null</td><td>If non-null, used to format the output of the classifier. This is a printf-style format specification where %0 through %9 can print columns of the input, %c prints the assigned class and %n a newline character. This option can produce Kaggle-format output files!</td></tr>
  * </table>
  *
@@ -248,6 +253,7 @@ public class ColumnDataClassifier {
   private final Flags globalFlags; // simply points to flags[0]
   private Classifier<String,String> classifier; // really only assigned once too (either in train or load in setProperties)
   private TokenizerFactory<Word> ptbFactory;
+  private FeatureHasher featureHasher; // made when first needed, if globalFlags.featureHashingBuckets is positive
 
   enum InputFormat { PLAIN, COMMENTS, HEADER }
 
@@ -273,6 +279,13 @@ public class ColumnDataClassifier {
    * @return A Datum (may be an RVFDatum; never null)
    */
   public Datum<String,String> makeDatumFromStrings(String[] strings) {
+    if (globalFlags.featureHashingBuckets > 0) {
+      return hashFeatures(makeUnhashedDatumFromStrings(strings));
+    }
+    return makeUnhashedDatumFromStrings(strings);
+  }
+
+  private Datum<String,String> makeUnhashedDatumFromStrings(String[] strings) {
     if (globalFlags.usesRealValues) {
       return makeRVFDatumFromStrings(strings);
     }
@@ -295,6 +308,21 @@ public class ColumnDataClassifier {
   }
 
 
+  /**
+   * Replaces the features of the datum by the names of their buckets, as
+   * given by featureHashingBuckets.  With signedFeatureHashing, the datum is
+   * an RVFDatum, and the values of its features are multiplied by their signs.
+   */
+  private Datum<String,String> hashFeatures(Datum<String,String> datum) {
+    if (featureHasher == null) {
+      featureHasher = new FeatureHasher(globalFlags.featureHashingBuckets, globalFlags.signedFeatureHashing);
+    }
+    if (datum instanceof RVFDatum) {
+      return new RVFDatum<String,String>(featureHasher.hash(((RVFDatum<String,String>) datum).asFeaturesCounter()), datum.label());
+    }
+    return new BasicDatum<String,String>(featureHasher.hash(datum.asFeatures()), datum.label());
+  }
+
   private RVFDatum<String,String> makeRVFDatumFromStrings(String[] strings) {
     if (globalFlags.featureFormat) {
       ClassicCounter<String> theFeatures = new ClassicCounter<String>();
@@ -420,6 +448,8 @@ public class ColumnDataClassifier {
         } else {
           dataset = new Dataset<String,String>();
         }
+        // with several indexing threads, the datums are added in batches
+        List<Datum<String,String>> batch = (Flags.indexThreads > 1) ? new ArrayList<Datum<String,String>>() : null;
         int lineNo = 0;
         int minColumns = Integer.MAX_VALUE;
         int maxColumns = 0;
@@ -454,7 +484,18 @@ public class ColumnDataClassifier {
             throw new RuntimeException("Error: Line has too few tab-separated columns (" + maxColumns +
                     ") for " + flags.length + " columns required by specified properties: " + line);
           }
-          dataset.add(makeDatumFromStrings(strings));
+          if (batch != null) {
+            batch.add(makeDatumFromStrings(strings));
+            if (batch.size() == INDEX_BATCH_SIZE) {
+              dataset.addAll(batch, Flags.indexThreads);
+              batch.clear();
+            }
+          } else {
+            dataset.add(makeDatumFromStrings(strings));
+          }
+        }
+        if (batch != null) {
+          dataset.addAll(batch, Flags.indexThreads);
         }
         if (lineNo > 0 && minColumns != maxColumns) {
           System.err.println();
@@ -555,6 +596,9 @@ public class ColumnDataClassifier {
 
   private static String storedHeader;
 
+  /** The number of datums indexed at once when indexThreads is more than 1. */
+  private static final int INDEX_BATCH_SIZE = 100000;
+
   private static final NumberFormat nf = new DecimalFormat("0.000");
 
   /**
@@ -1448,21 +1492,74 @@ public class ColumnDataClassifier {
     } else if (globalFlags.useAdaptL1 && globalFlags.limitFeatures > 0) {
       lc = makeClassifierAdaptL1(train);
     } else {
-      LinearClassifierFactory<String,String> lcf;
-      if (globalFlags.l1reg > 0.0) {
-        Minimizer<DiffFunction> minim = ReflectionLoading.loadByReflection("edu.stanford.nlp.optimization.OWLQNMinimizer", globalFlags.l1reg);
-        lcf = new LinearClassifierFactory<String,String>(minim, globalFlags.tolerance, globalFlags.useSum, globalFlags.prior, globalFlags.sigma, globalFlags.epsilon);
-      } else {
-        lcf  = new LinearClassifierFactory<String,String>(globalFlags.tolerance, globalFlags.useSum, globalFlags.prior, globalFlags.sigma, globalFlags.epsilon, globalFlags.QNsize);
-      }
-      if (!globalFlags.useQN) {
-        lcf.useConjugateGradientAscent();
-      }
-      lc = lcf.trainClassifier(train);
+      lc = makeLinearClassifierFactory().trainClassifier(train);
     }
     return lc;
   }
 
+  /** The factory for the default linear classifier, as set up by the flags. */
+  private LinearClassifierFactory<String,String> makeLinearClassifierFactory() {
+    LinearClassifierFactory<String,String> lcf;
+    if (globalFlags.l1reg > 0.0) {
+      Minimizer<DiffFunction> minim = ReflectionLoading.loadByReflection("edu.stanford.nlp.optimization.OWLQNMinimizer", globalFlags.l1reg);
+      lcf = new LinearClassifierFactory<String,String>(minim, globalFlags.tolerance, globalFlags.useSum, globalFlags.prior, globalFlags.sigma, globalFlags.epsilon);
+    } else {
+      lcf  = new LinearClassifierFactory<String,String>(globalFlags.tolerance, globalFlags.useSum, globalFlags.prior, globalFlags.sigma, globalFlags.epsilon, globalFlags.QNsize);
+    }
+    if (!globalFlags.useQN) {
+      lcf.useConjugateGradientAscent();
+    }
+    return lcf;
+  }
+
+  /**
+   * Creates the default linear classifier from training data which is kept
+   * out of core.  The examples in the file are featurized one line at a time
+   * into a {@link MappedDataset} kept in the file given by outOfCoreDataset,
+   * which is deleted once the classifier is trained.
+   *
+   * @param filename File with supervised training examples
+   * @return trained classifier
+   */
+  public LinearClassifier<String,String> makeOutOfCoreClassifier(String filename) {
+    if (Flags.trainFromSVMLight || globalFlags.shuffleTrainingData || globalFlags.crossValidationFolds > 1 ||
+        globalFlags.featureMinimumSupport > 1 || globalFlags.useClassifierFactory != null || globalFlags.useNB ||
+        globalFlags.useBinary || globalFlags.biased || globalFlags.useAdaptL1) {
+      System.err.println("WARNING: with outOfCoreDataset, only the default linear classifier is trained, " +
+          "without SVMLight input, shuffling, cross-validation or featureMinimumSupport");
+    }
+    Timing tim = new Timing();
+    System.err.print("Reading dataset from " + filename + " into " + Flags.outOfCoreDataset + " ... ");
+    MappedDataset<String,String> dataset = new MappedDataset<String,String>(Flags.outOfCoreDataset, globalFlags.usesRealValues);
+    try {
+      int lineNo = 0;
+      for (String line : ObjectBank.getLineIterator(new File(filename), Flags.encoding)) {
+        lineNo++;
+        if (Flags.inputFormat == InputFormat.HEADER) {
+          if (lineNo == 1) {
+            continue;
+          }
+        } else if (Flags.inputFormat == InputFormat.COMMENTS) {
+          if (line.matches("\\s#.*")) {
+            continue;
+          }
+        }
+        String[] strings = splitLineToFields(line);
+        if (strings.length < 2 || strings.length < flags.length) {
+          throw new RuntimeException("Line format error at line " + lineNo + ": " + line);
+        }
+        dataset.add(makeDatumFromStrings(strings));
+      }
+      dataset.finish();
+      System.err.println("done [" + tim.toSecondsString() + "s, " + dataset.size() + " items, " +
+          dataset.numBytes() + " bytes].");
+      System.err.println(dataset);
+      return makeLinearClassifierFactory().trainClassifier(dataset);
+    } finally {
+      dataset.delete();
+    }
+  }
+
 
   private static String[] regexpTokenize(Pattern tokenizerRegexp, Pattern ignoreRegexp, String inWord) {
     List<String> al = new ArrayList<String>();
@@ -1808,6 +1905,12 @@ public class ColumnDataClassifier {
         myFlags[col].loadClassifier = val;
       } else if (key.equals("serializeTo")) {
         Flags.serializeTo = val;
+      } else if (key.equals("mappedFeatureIndex")) {
+        Flags.mappedFeatureIndex = val;
+      } else if (key.equals("outOfCoreDataset")) {
+        Flags.outOfCoreDataset = val;
+      } else if (key.equals("indexThreads")) {
+        Flags.indexThreads = Integer.parseInt(val);
       } else if (key.equals("printTo")) {
         Flags.printTo = val;
       } else if (key.equals("trainFile")) {
@@ -1877,6 +1980,10 @@ public class ColumnDataClassifier {
         myFlags[col].crossValidationFolds = Integer.parseInt(val);
       } else if (key.equals("printCrossValidationDecisions")) {
         myFlags[col].printCrossValidationDecisions = Boolean.parseBoolean(val);
+      } else if (key.equals("featureHashingBuckets")) {
+        myFlags[col].featureHashingBuckets = Integer.parseInt(val);
+      } else if (key.equals("signedFeatureHashing")) {
+        myFlags[col].signedFeatureHashing = Boolean.parseBoolean(val);
       } else if (key.equals("shuffleTrainingData")) {
         myFlags[col].shuffleTrainingData = Boolean.parseBoolean(val);
       } else if (key.equals("shuffleSeed")) {
@@ -1907,6 +2014,10 @@ public class ColumnDataClassifier {
         System.err.println("Unknown property: |" + key + '|');
       }
     }
+    if (myFlags[0].featureHashingBuckets > 0 && myFlags[0].signedFeatureHashing) {
+      // the signs of the hashed features are kept as their values
+      myUsesRealValues = true;
+    }
     myFlags[0].usesRealValues = myUsesRealValues;
     return myFlags;
   }
@@ -1972,6 +2083,13 @@ public class ColumnDataClassifier {
 
 
   private boolean trainClassifier() throws IOException {
+    if (Flags.outOfCoreDataset != null) {
+      classifier = makeOutOfCoreClassifier(Flags.trainFile);
+      printClassifier(classifier);
+      serializeClassifier();
+      return true;
+    }
+
     // build dataset of training data featurized
     Pair<GeneralDataset<String,String>, List<String[]>> dataInfo = readAndReturnTrainingExamples(Flags.trainFile);
     GeneralDataset<String,String> train = dataInfo.first();
@@ -2023,10 +2141,17 @@ public class ColumnDataClassifier {
     classifier = makeClassifier(train);
     printClassifier(classifier);
 
-    // serialize the classifier
+    serializeClassifier();
+    return true;
+  }
+
+  private void serializeClassifier() throws IOException {
     String serializeTo = Flags.serializeTo;
     if (serializeTo != null) {
       System.err.println("Serializing classifier to " + serializeTo + "...");
+      if (Flags.mappedFeatureIndex != null && classifier instanceof LinearClassifier) {
+        ((LinearClassifier<String,String>) classifier).mapFeatureIndex(Flags.mappedFeatureIndex);
+      }
       ObjectOutputStream oos = IOUtils.writeStreamFromString(serializeTo);
       oos.writeObject(classifier);
       // Fiddle: Don't write a testFile to the serialized classifier.  It makes no sense and confuses people
@@ -2037,7 +2162,6 @@ public class ColumnDataClassifier {
       oos.close();
       System.err.println("Done.");
     }
-    return true;
   }
 
   private void printClassifier(Classifier classifier) {
@@ -2274,7 +2398,12 @@ public class ColumnDataClassifier {
     Map<String, float[]> wordVectors;
 
     static String csvOutput = null;
+    static String mappedFeatureIndex = null;
+    static String outOfCoreDataset = null;
+    static int indexThreads = 1;
     boolean printCrossValidationDecisions = false;
+    int featureHashingBuckets = 0;
+    boolean signedFeatureHashing = true;
 
     @Override
     public String toString() {
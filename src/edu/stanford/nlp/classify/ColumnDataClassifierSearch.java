@@ -0,0 +1,326 @@
+package edu.stanford.nlp.classify;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+
+import edu.stanford.nlp.ling.Datum;
+import edu.stanford.nlp.ling.RVFDatum;
+import edu.stanford.nlp.util.ErasureUtils;
+import edu.stanford.nlp.util.Execution;
+import edu.stanford.nlp.util.Generics;
+import edu.stanford.nlp.util.Pair;
+import edu.stanford.nlp.util.StringUtils;
+import edu.stanford.nlp.util.Timing;
+import edu.stanford.nlp.util.concurrent.MulticoreWrapper;
+import edu.stanford.nlp.util.concurrent.ThreadsafeProcessor;
+
+/**
+ * Searches over settings of a ColumnDataClassifier by cross-validation, in
+ * one process.  Each setting is a set of properties which override those of
+ * the base properties file; the settings searched are all combinations of the
+ * values given for the properties to vary, as
+ * <code>-search.<i>property</i> value1;value2;...</code>.
+ * <br>
+ * The training data is featurized once for each distinct combination of the
+ * properties which change featurization (such as <code>1.useNGrams</code>),
+ * not once for each setting: settings which only change how the classifier
+ * is trained (such as <code>sigma</code>, <code>prior</code> or
+ * <code>l1reg</code>) share the featurized dataset, and the folds are split
+ * from it without copying its datums.  Every fold of every setting is then
+ * trained and tested as a job on a pool of <code>searchThreads</code>
+ * threads (by default, <code>Execution.threads</code>).  The thread budget is
+ * split between the two levels: while the jobs run, each trains with
+ * <code>Execution.threads / searchThreads</code> gradient threads (at least
+ * one), so that by default the jobs run in parallel and each trains on one
+ * thread, rather than every job starting a gradient pool of its own.  The
+ * accuracy and macro-averaged F1 of each setting, averaged
+ * over the folds, are printed with its total training time, then the best
+ * setting (by accuracy, then macro F1).
+ * <br>
+ * Usage: <code>java edu.stanford.nlp.classify.ColumnDataClassifierSearch
+ * -prop propFile -search.sigma "0.5;1;3" [-search.1.useNGrams "true;false"]
+ * [-crossValidationFolds 10] [-searchThreads n]</code>
+ * <br>
+ * The number of folds is given by crossValidationFolds (10 if it is not set),
+ * and the data is shuffled first if shuffleTrainingData is set, with the
+ * seed given by shuffleSeed, so that all featurizations have the same folds.
+ */
+public class ColumnDataClassifierSearch {
+
+  /** The properties which only change how the classifier is trained, not how the data is featurized. */
+  private static final Set<String> classifierProperties = Generics.newHashSet(Arrays.asList(
+      "sigma", "prior", "epsilon", "l1reg", "useQN", "QNsize", "tolerance", "useSum", "useNB", "useBinary",
+      "biased", "useClassifierFactory", "classifierFactoryArgs", "useAdaptL1", "limitFeatures",
+      "limitFeaturesLabels", "l1regmin", "l1regmax", "featureWeightThreshold"));
+
+  private static final String SEARCH_PREFIX = "search.";
+
+  private final Properties baseProps;
+  private final List<Setting> settings = new ArrayList<Setting>();
+  private final int numFolds;
+  private final int numThreads;
+  private int numFeaturizations;
+  private double featurizationSeconds;
+
+  /** One setting searched: its overriding properties, its classifier, data and results. */
+  private static class Setting {
+    final Map<String,String> overrides;
+    ColumnDataClassifier cdc;
+    GeneralDataset<String,String> train;
+    double accuracySum;
+    double macroF1Sum;
+    long trainMillis;
+
+    Setting(Map<String,String> overrides) {
+      this.overrides = overrides;
+    }
+
+    /** The overrides which change featurization, which settings with the same data share */
+    String featurizationKey() {
+      StringBuilder sb = new StringBuilder();
+      for (Map.Entry<String,String> entry : overrides.entrySet()) {
+        if ( ! classifierProperties.contains(entry.getKey())) {
+          sb.append(entry.getKey()).append('=').append(entry.getValue()).append('\n');
+        }
+      }
+      return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+      if (overrides.isEmpty()) {
+        return "(base)";
+      }
+      StringBuilder sb = new StringBuilder();
+      for (Map.Entry<String,String> entry : overrides.entrySet()) {
+        if (sb.length() > 0) {
+          sb.append(' ');
+        }
+        sb.append(entry.getKey()).append('=').append(entry.getValue());
+      }
+      return sb.toString();
+    }
+  }
+
+  /** The scores of a setting on one fold */
+  private static class FoldResult {
+    final Setting setting;
+    final double accuracy;
+    final double macroF1;
+    final long trainMillis;
+
+    FoldResult(Setting setting, double accuracy, double macroF1, long trainMillis) {
+      this.setting = setting;
+      this.accuracy = accuracy;
+      this.macroF1 = macroF1;
+      this.trainMillis = trainMillis;
+    }
+  }
+
+  /**
+   * Trains and tests one setting on one fold.  The folds are split from the
+   * setting's dataset, which is only read, so one instance serves every thread.
+   */
+  private class FoldProcessor implements ThreadsafeProcessor<Pair<Setting,Integer>, FoldResult> {
+    @Override
+    public FoldResult process(Pair<Setting,Integer> job) {
+      Setting setting = job.first();
+      Pair<GeneralDataset<String,String>,GeneralDataset<String,String>> split =
+          setting.train.splitOutFold(job.second(), numFolds);
+      Timing timing = new Timing();
+      Classifier<String,String> classifier = setting.cdc.makeClassifier(split.first());
+      long trainMillis = timing.report();
+      double[] scores = score(classifier, split.second());
+      return new FoldResult(setting, scores[0], scores[1], trainMillis);
+    }
+
+    @Override
+    public ThreadsafeProcessor<Pair<Setting,Integer>, FoldResult> newInstance() {
+      return this;
+    }
+  }
+
+  /**
+   * Makes a search over the settings given by the search properties.
+   *
+   * @param props The base properties of the ColumnDataClassifier, and the
+   *     properties to search over, each prefixed by "search." and with its
+   *     values separated by semicolons
+   */
+  public ColumnDataClassifierSearch(Properties props) {
+    baseProps = new Properties();
+    Map<String,String[]> searched = new TreeMap<String,String[]>();
+    for (String key : props.stringPropertyNames()) {
+      if (key.startsWith(SEARCH_PREFIX)) {
+        searched.put(key.substring(SEARCH_PREFIX.length()), props.getProperty(key).split(";"));
+      } else if ( ! key.equals("searchThreads")) {
+        baseProps.setProperty(key, props.getProperty(key));
+      }
+    }
+    int folds = Integer.parseInt(baseProps.getProperty("crossValidationFolds", "-1"));
+    numFolds = (folds > 1) ? folds : 10;
+    numThreads = Integer.parseInt(props.getProperty("searchThreads", Integer.toString(Execution.threads)));
+
+    List<Map<String,String>> combinations = new ArrayList<Map<String,String>>();
+    combinations.add(new TreeMap<String,String>());
+    for (Map.Entry<String,String[]> entry : searched.entrySet()) {
+      List<Map<String,String>> extended = new ArrayList<Map<String,String>>();
+      for (Map<String,String> combination : combinations) {
+        for (String value : entry.getValue()) {
+          Map<String,String> overrides = new TreeMap<String,String>(combination);
+          overrides.put(entry.getKey(), value.trim());
+          extended.add(overrides);
+        }
+      }
+      combinations = extended;
+    }
+    for (Map<String,String> overrides : combinations) {
+      settings.add(new Setting(overrides));
+    }
+  }
+
+  /**
+   * Featurizes the training data once for each distinct featurization among
+   * the settings, and makes the classifier of each setting.
+   */
+  private void featurize() {
+    Timing timing = new Timing();
+    Map<String,GeneralDataset<String,String>> datasets = Generics.newHashMap();
+    for (Setting setting : settings) {
+      Properties props = new Properties();
+      props.putAll(baseProps);
+      props.putAll(setting.overrides);
+      setting.cdc = new ColumnDataClassifier(props);
+      String key = setting.featurizationKey();
+      GeneralDataset<String,String> train = datasets.get(key);
+      if (train == null) {
+        train = setting.cdc.readTrainingExamples(props.getProperty("trainFile"));
+        if (Boolean.parseBoolean(props.getProperty("shuffleTrainingData", "false"))) {
+          train.randomize(Long.parseLong(props.getProperty("shuffleSeed", "0")));
+        }
+        datasets.put(key, train);
+      }
+      setting.train = train;
+    }
+    numFeaturizations = datasets.size();
+    featurizationSeconds = timing.report() / 1000.0;
+  }
+
+  /** The accuracy and macro-averaged F1 of the classifier on the test data, as ColumnDataClassifier scores them */
+  private static double[] score(Classifier<String,String> classifier, GeneralDataset<String,String> test) {
+    Collection<String> labels = classifier.labels();
+    Map<String,int[]> counts = Generics.newHashMap(); // tp, fp, fn of each label
+    for (String label : labels) {
+      counts.put(label, new int[3]);
+    }
+    int correct = 0;
+    for (int i = 0, size = test.size(); i < size; i++) {
+      String guess;
+      Datum<String,String> datum;
+      if (test instanceof RVFDataset) {
+        RVFDatum<String,String> rvfDatum = test.getRVFDatum(i);
+        guess = ErasureUtils.<RVFClassifier<String,String>>uncheckedCast(classifier).classOf(rvfDatum);
+        datum = rvfDatum;
+      } else {
+        datum = test.getDatum(i);
+        guess = classifier.classOf(datum);
+      }
+      String gold = datum.label();
+      if (guess.equals(gold)) {
+        correct++;
+        if (counts.containsKey(gold)) {
+          counts.get(gold)[0]++;
+        }
+      } else {
+        if (counts.containsKey(guess)) {
+          counts.get(guess)[1]++;
+        }
+        if (counts.containsKey(gold)) {
+          counts.get(gold)[2]++;
+        }
+      }
+    }
+    double macroF1 = 0.0;
+    for (int[] count : counts.values()) {
+      int tp = count[0], fp = count[1], fn = count[2];
+      double p = (tp + fp == 0) ? 1.0 : ((double) tp) / (tp + fp);
+      double r = (tp + fn == 0) ? 1.0 : ((double) tp) / (tp + fn);
+      macroF1 += (p == 0.0 && r == 0.0) ? 0.0 : 2 * p * r / (p + r);
+    }
+    return new double[] { ((double) correct) / test.size(), counts.isEmpty() ? 0.0 : macroF1 / counts.size() };
+  }
+
+  /**
+   * Cross-validates every setting, and returns the best, by accuracy and
+   * then macro F1.  A report of all the settings is printed to stdout.
+   */
+  public Map<String,String> search() {
+    Timing total = new Timing();
+    featurize();
+
+    Timing timing = new Timing();
+    // the objectives take their number of gradient threads from Execution.threads when they are made
+    int threads = Execution.threads;
+    Execution.threads = Math.max(1, threads / numThreads);
+    try {
+      MulticoreWrapper<Pair<Setting,Integer>, FoldResult> wrapper =
+          new MulticoreWrapper<Pair<Setting,Integer>, FoldResult>(numThreads, new FoldProcessor(), false);
+      for (Setting setting : settings) {
+        for (int fold = 0; fold < numFolds; fold++) {
+          wrapper.put(new Pair<Setting,Integer>(setting, fold));
+          collect(wrapper);
+        }
+      }
+      wrapper.join();
+      collect(wrapper);
+    } finally {
+      Execution.threads = threads;
+    }
+    double searchSeconds = timing.report() / 1000.0;
+
+    Setting best = null;
+    System.out.println(String.format("%9s %9s %9s  %s", "accuracy", "macro F1", "train s", "setting"));
+    for (Setting setting : settings) {
+      System.out.println(String.format("%9.5f %9.5f %9.1f  %s", setting.accuracySum / numFolds,
+          setting.macroF1Sum / numFolds, setting.trainMillis / 1000.0, setting));
+      if (best == null || setting.accuracySum > best.accuracySum ||
+          (setting.accuracySum == best.accuracySum && setting.macroF1Sum > best.macroF1Sum)) {
+        best = setting;
+      }
+    }
+    System.out.println();
+    System.out.println("Best setting: " + best + " (accuracy " + String.format("%.5f", best.accuracySum / numFolds) +
+        ", macro F1 " + String.format("%.5f", best.macroF1Sum / numFolds) + ')');
+    System.out.println(String.format("Featurized %d time(s) in %.1f s; %d setting(s) x %d folds on %d thread(s) in %.1f s; total %.1f s",
+        numFeaturizations, featurizationSeconds, settings.size(), numFolds, numThreads, searchSeconds,
+        total.report() / 1000.0));
+    return best.overrides;
+  }
+
+  private static void collect(MulticoreWrapper<Pair<Setting,Integer>, FoldResult> wrapper) {
+    while (wrapper.peek()) {
+      FoldResult result = wrapper.poll();
+      result.setting.accuracySum += result.accuracy;
+      result.setting.macroF1Sum += result.macroF1;
+      result.setting.trainMillis += result.trainMillis;
+    }
+  }
+
+  public static void main(String[] args) {
+    System.err.println(StringUtils.toInvocationString("ColumnDataClassifierSearch", args));
+    Properties props = StringUtils.argsToProperties(args);
+    if (props.getProperty("trainFile") == null) {
+      System.err.println("usage: java edu.stanford.nlp.classify.ColumnDataClassifierSearch -prop propFile " +
+          "-search.sigma \"0.5;1;3\" [-search.property \"value1;value2\"] [-searchThreads n]");
+      return;
+    }
+    new ColumnDataClassifierSearch(props).search();
+  }
+
+}
@@ -11,6 +11,11 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -25,6 +30,7 @@ import edu.stanford.nlp.util.Generics;
 import edu.stanford.nlp.util.Index;
 import edu.stanford.nlp.util.HashIndex;
 import edu.stanford.nlp.util.Pair;
+import edu.stanford.nlp.util.RuntimeInterruptedException;
 import edu.stanford.nlp.util.ScoredComparator;
 import edu.stanford.nlp.util.ScoredObject;
 
@@ -316,6 +322,134 @@ public class Dataset<L, F> extends GeneralDataset<L, F> {
     size++;
   }
 
+  /**
+   * {@inheritDoc}
+   * <br>
+   * Each thread indexes the features and labels of a contiguous part of the
+   * data on its own.  Then the parts' indices are merged into those of the
+   * dataset in the order of the parts, so that every feature and label gets
+   * the index it would get from adding the datums one at a time, and the
+   * threads rewrite their parts with the merged indices.  If either index is
+   * locked, the datums are added one at a time.
+   */
+  @Override
+  public void addAll(List<? extends Datum<L, F>> datums, int numThreads) {
+    if (numThreads <= 1 || datums.size() < 2 * numThreads || featureIndex.isLocked() || labelIndex.isLocked()) {
+      addAll(datums);
+      return;
+    }
+    int partSize = (datums.size() + numThreads - 1) / numThreads;
+    List<IndexedPart<L, F>> parts = new ArrayList<IndexedPart<L, F>>();
+    for (int start = 0; start < datums.size(); start += partSize) {
+      parts.add(new IndexedPart<L, F>(datums, start, Math.min(start + partSize, datums.size())));
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    try {
+      List<Callable<Object>> indexing = new ArrayList<Callable<Object>>();
+      for (final IndexedPart<L, F> part : parts) {
+        indexing.add(new Callable<Object>() {
+          @Override
+          public Object call() {
+            part.index();
+            return null;
+          }
+        });
+      }
+      runAll(executor, indexing);
+
+      if (labels.length < size + datums.size()) {
+        labels = Arrays.copyOf(labels, size + datums.size());
+        data = Arrays.copyOf(data, size + datums.size());
+      }
+      List<Callable<Object>> rewriting = new ArrayList<Callable<Object>>();
+      for (final IndexedPart<L, F> part : parts) {
+        final int[] featureIds = IndexedPart.merge(part.features, featureIndex);
+        final int[] labelIds = IndexedPart.merge(part.labels, labelIndex);
+        final int offset = size;
+        rewriting.add(new Callable<Object>() {
+          @Override
+          public Object call() {
+            part.rewrite(featureIds, labelIds, Dataset.this.labels, Dataset.this.data, offset);
+            return null;
+          }
+        });
+      }
+      runAll(executor, rewriting);
+      size += datums.size();
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private static void runAll(ExecutorService executor, List<Callable<Object>> tasks) {
+    try {
+      for (Future<Object> result : executor.invokeAll(tasks)) {
+        result.get();
+      }
+    } catch (InterruptedException e) {
+      throw new RuntimeInterruptedException(e);
+    } catch (ExecutionException e) {
+      throw new RuntimeException("Could not index the datums", e.getCause());
+    }
+  }
+
+  /**
+   * A contiguous part of a list of datums, with its features and labels
+   * indexed in indices of its own, for {@link #addAll(List, int)}.
+   */
+  private static class IndexedPart<L, F> {
+    private final List<? extends Datum<L, F>> datums;
+    private final int start;
+    private final int end;
+    private final Index<F> features = new HashIndex<F>();
+    private final Index<L> labels = new HashIndex<L>();
+    private int[][] data;
+    private int[] labelIds;
+
+    IndexedPart(List<? extends Datum<L, F>> datums, int start, int end) {
+      this.datums = datums;
+      this.start = start;
+      this.end = end;
+    }
+
+    void index() {
+      data = new int[end - start][];
+      labelIds = new int[end - start];
+      for (int i = start; i < end; i++) {
+        Datum<L, F> datum = datums.get(i);
+        labelIds[i - start] = labels.addToIndex(datum.label());
+        Collection<F> datumFeatures = datum.asFeatures();
+        int[] ids = new int[datumFeatures.size()];
+        int j = 0;
+        for (F feature : datumFeatures) {
+          ids[j++] = features.addToIndex(feature);
+        }
+        data[i - start] = ids;
+      }
+    }
+
+    /** Adds the items of the part's index to the dataset's, and returns the dataset's index of each. */
+    static <T> int[] merge(Index<T> partIndex, Index<T> index) {
+      int[] ids = new int[partIndex.size()];
+      for (int i = 0; i < ids.length; i++) {
+        ids[i] = index.addToIndex(partIndex.get(i));
+      }
+      return ids;
+    }
+
+    void rewrite(int[] featureIds, int[] labelIds, int[] datasetLabels, int[][] datasetData, int offset) {
+      for (int i = 0; i < data.length; i++) {
+        int[] ids = data[i];
+        for (int j = 0; j < ids.length; j++) {
+          ids[j] = featureIds[ids[j]];
+        }
+        datasetData[offset + start + i] = ids;
+        datasetLabels[offset + start + i] = labelIds[this.labelIds[i]];
+      }
+    }
+  }
+
   protected void ensureSize() {
     if (labels.length == size) {
       int[] newLabels = new int[size * 2];
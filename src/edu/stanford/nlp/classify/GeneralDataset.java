@@ -258,6 +258,20 @@ public abstract class GeneralDataset<L, F>  implements Serializable, Iterable<RV
     }
   }
 
+  /**
+   * Adds all Datums in the given list to this dataset, using up to the given
+   * number of threads.  The dataset ends up as {@link #addAll(Iterable)}
+   * would leave it, with the same feature and label indices.  This
+   * implementation adds them one at a time; subclasses which can index
+   * the features of several datums at once override it.
+   *
+   * @param data The datums to add
+   * @param numThreads The number of threads to use
+   */
+  public void addAll(List<? extends Datum<L,F>> data, int numThreads) {
+    addAll(data);
+  }
+
   /** Divide out a (devtest) split of the dataset versus the rest of it (as a training set).
    *
    *  @param start Begin devtest with this index (inclusive)
@@ -96,6 +96,27 @@ public class LinearClassifier<L, F> implements ProbabilisticClassifier<L, F>, RV
     return featureIndex;
   }
 
+  /**
+   * Writes the feature index to the given file, and keeps it there from now
+   * on, as a read-only {@link MappedStringIndex}.  When this classifier is
+   * then serialized, only the path of the file is written, so loading it
+   * takes no time or heap for the features.  The features have to be Strings.
+   *
+   * @param path The file to write the feature index to
+   */
+  public void mapFeatureIndex(String path) {
+    if (featureIndex instanceof MappedStringIndex) {
+      return;
+    }
+    for (F feature : featureIndex) {
+      if ( ! (feature instanceof String)) {
+        throw new IllegalArgumentException("Only an index of String features can be mapped, not of " + feature.getClass());
+      }
+    }
+    Index<String> features = ErasureUtils.uncheckedCast(featureIndex);
+    featureIndex = ErasureUtils.uncheckedCast(MappedStringIndex.write(features, path));
+  }
+
   private double weight(int iFeature, int iLabel) {
     if (iFeature < 0) {
       //System.err.println("feature not seen ");
@@ -133,36 +154,117 @@ public class LinearClassifier<L, F> implements ProbabilisticClassifier<L, F>, RV
   @Override
   public Counter<L> scoresOf(Datum<L, F> example) {
     if(example instanceof RVFDatum<?, ?>)return scoresOfRVFDatum((RVFDatum<L,F>)example);
-    Collection<F> feats = example.asFeatures();
-    int[] features = new int[feats.size()];
-    int i = 0;
-    for (F f : feats) {
-      int index = featureIndex.indexOf(f);
-      if (index >= 0) {
-        features[i++] = index;
-      } else {
-        //System.err.println("FEATURE LESS THAN ZERO: " + f);
+    return scoresCounter(scoresOf(example, new double[labelIndex.size()]));
+  }
+
+  /** Given a datum's features, construct a counter with keys
+   *  the labels and values the score (unnormalized log probability)
+   *  for each class.
+   */
+  public Counter<L> scoresOf(int[] features) {
+    return scoresCounter(scoresOf(features, new double[labelIndex.size()]));
+  }
+
+  /** Makes a counter of the scores of each label, indexed by labelIndex */
+  private Counter<L> scoresCounter(double[] scores) {
+    Counter<L> counter = new ClassicCounter<L>();
+    for (int iLabel = 0; iLabel < scores.length; iLabel++) {
+      counter.setCount(labelIndex.get(iLabel), scores[iLabel]);
+    }
+    return counter;
+  }
+
+  /**
+   * Puts the score (unnormalized log probability) of each class for the
+   * datum in an array indexed by {@link #labelIndex()}, the same scores as
+   * {@link #scoresOf(Datum)} gives.  This takes no locks and makes no
+   * Counter, so it is the way to score many datums from many threads.
+   * Features which the classifier does not know are ignored, and the values
+   * of an {@link RVFDatum} are used.
+   *
+   * @param example The datum to score
+   * @param scores An array of at least {@code labelIndex().size()} elements, whose
+   *               old values are overwritten
+   * @return scores
+   */
+  public double[] scoresOf(Datum<L, F> example, double[] scores) {
+    int numLabels = labelIndex.size();
+    Arrays.fill(scores, 0, numLabels, 0.0);
+    if (example instanceof RVFDatum<?, ?>) {
+      Counter<F> features = ((RVFDatum<L, F>) example).asFeaturesCounter();
+      for (F f : features.keySet()) {
+        int iFeature = featureIndex.indexOf(f);
+        if (iFeature >= 0) {
+          double value = features.getCount(f);
+          double[] featureWeights = weights[iFeature];
+          for (int iLabel = 0; iLabel < numLabels; iLabel++) {
+            scores[iLabel] += featureWeights[iLabel] * value;
+          }
+        }
+      }
+    } else {
+      for (F f : example.asFeatures()) {
+        int iFeature = featureIndex.indexOf(f);
+        if (iFeature >= 0) {
+          double[] featureWeights = weights[iFeature];
+          for (int iLabel = 0; iLabel < numLabels; iLabel++) {
+            scores[iLabel] += featureWeights[iLabel];
+          }
+        }
       }
     }
-    int[] activeFeatures = new int[i];
-    synchronized (System.class) {
-      System.arraycopy(features, 0, activeFeatures, 0, i);
+    for (int iLabel = 0; iLabel < numLabels; iLabel++) {
+      scores[iLabel] += thresholds[iLabel];
     }
-    Counter<L> scores = new ClassicCounter<L>();
-    for (L lab : labels()) {
-      scores.setCount(lab, scoreOf(activeFeatures, lab));
+    return scores;
+  }
+
+  /**
+   * Puts the score of each class for a datum given as feature indices in an
+   * array indexed by {@link #labelIndex()}, as {@link #scoresOf(Datum, double[])}
+   * does.  Negative feature indices (unknown features) are ignored.
+   *
+   * @return scores
+   */
+  public double[] scoresOf(int[] features, double[] scores) {
+    int numLabels = labelIndex.size();
+    Arrays.fill(scores, 0, numLabels, 0.0);
+    for (int iFeature : features) {
+      if (iFeature >= 0) {
+        double[] featureWeights = weights[iFeature];
+        for (int iLabel = 0; iLabel < numLabels; iLabel++) {
+          scores[iLabel] += featureWeights[iLabel];
+        }
+      }
+    }
+    for (int iLabel = 0; iLabel < numLabels; iLabel++) {
+      scores[iLabel] += thresholds[iLabel];
     }
     return scores;
   }
 
-  /** Given a datum's features, construct a counter with keys
-   *  the labels and values the score (unnormalized log probability)
-   *  for each class.
+  /**
+   * Scores many datums, as {@link #scoresOf(Datum, double[])} does.
+   * The rows of scores which are not null are reused; the others are made.
+   *
+   * @param examples The datums to score
+   * @param scores An array with a row for each datum, or null to make a new one
+   * @return The scores, where {@code scores[i][j]} is the score of datum i
+   *         for the label with index j
    */
-  public Counter<L> scoresOf(int[] features) {
-    Counter<L> scores = new ClassicCounter<L>();
-    for (L label : labels())
-      scores.setCount(label, scoreOf(features, label));
+  public double[][] scoresOf(List<? extends Datum<L, F>> examples, double[][] scores) {
+    int numLabels = labelIndex.size();
+    if (scores == null) {
+      scores = new double[examples.size()][];
+    }
+    int i = 0;
+    for (Datum<L, F> example : examples) {
+      if (scores[i] == null || scores[i].length < numLabels) {
+        scores[i] = new double[numLabels];
+      }
+      scoresOf(example, scores[i]);
+      i++;
+    }
     return scores;
   }
 
@@ -235,21 +337,6 @@ public class LinearClassifier<L, F> implements ProbabilisticClassifier<L, F>, RV
   }
 
 
-  /** Returns of the score of the Datum as internalized features for the
-   *  specified label. Ignores the true label of the Datum.
-   *  Doesn't consider a value for each feature.
-   */
-  private double scoreOf(int[] feats, L label) {
-    int iLabel = labelIndex.indexOf(label);
-    assert iLabel >= 0;
-    double score = 0.0;
-    for (int feat : feats) {
-      score += weight(feat, iLabel);
-    }
-    return score + thresholds[iLabel];
-  }
-
-
   /**
    * Returns a counter mapping from each class name to the probability of
    * that class for a certain example.
@@ -358,6 +358,28 @@ public class LinearClassifierFactory<L, F> extends AbstractLinearClassifierFacto
     };
   }
 
+  /**
+   * Use asynchronous parallel SGD, in which numThreads threads update the
+   * weights in place without locking.  If deterministic is true, the threads'
+   * updates are instead taken in turn on one thread, so that every run gives
+   * the same classifier.
+   */
+  public void useHogwildStochasticGradientDescent(final int SGDPasses, final int batchSize, final double sigma,
+                                                  final int numThreads, final boolean deterministic) {
+    this.minimizerCreator = new Factory<Minimizer<DiffFunction>>() {
+      private static final long serialVersionUID = 4180652958924309867L;
+      @Override
+      public Minimizer<DiffFunction> create() {
+          HogwildSGDMinimizer<DiffFunction> sgdMinimizer =
+              new HogwildSGDMinimizer<DiffFunction>(sigma, SGDPasses, batchSize, numThreads, deterministic);
+          if (!verbose) {
+              sgdMinimizer.shutUp();
+          }
+          return sgdMinimizer;
+      }
+    };
+  }
+
   public void useHybridMinimizerWithInPlaceSGD(final int SGDPasses, final int tuneSampleSize, final double sigma) {
     this.minimizerCreator = new Factory<Minimizer<DiffFunction>>() {
       private static final long serialVersionUID = -3042400543337763144L;
@@ -896,6 +918,22 @@ public class LinearClassifierFactory<L, F> extends AbstractLinearClassifierFacto
     return classifier;
   }
 
+  /**
+   * Trains a classifier on data kept out of core.  The MappedDataset must be
+   * finished.  Sigma is not tuned, and data weights are not supported.
+   */
+  public LinearClassifier<L, F> trainClassifier(MappedDataset<L, F> mappedData) {
+    Minimizer<DiffFunction> minimizer = getMinimizer();
+    System.err.println(String.format("Training linear classifier on %d mapped datums with %d features and %d labels",
+        mappedData.size(), mappedData.numFeatures(), mappedData.numClasses()));
+    LogConditionalObjectiveFunction<L, F> objective = new LogConditionalObjectiveFunction<L, F>(mappedData, logPrior);
+
+    double[] initial = objective.initial();
+    double[] weights = minimizer.minimize(objective, TOL, initial);
+
+    return new LinearClassifier<L, F>(objective.to2D(weights), mappedData.featureIndex(), mappedData.labelIndex());
+  }
+
   public Classifier<L, F> trainClassifier(GeneralDataset<L, F> dataset, float[] dataWeights, LogPrior prior) {
     Minimizer<DiffFunction> minimizer = getMinimizer();
     if (dataset instanceof RVFDataset) {
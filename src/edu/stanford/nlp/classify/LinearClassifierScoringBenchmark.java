@@ -0,0 +1,141 @@
+package edu.stanford.nlp.classify;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+import edu.stanford.nlp.ling.BasicDatum;
+import edu.stanford.nlp.ling.Datum;
+import edu.stanford.nlp.stats.Counter;
+import edu.stanford.nlp.util.HashIndex;
+import edu.stanford.nlp.util.Index;
+import edu.stanford.nlp.util.PropertiesUtils;
+import edu.stanford.nlp.util.StringUtils;
+
+/**
+ * Times the scoring of datums by a {@link LinearClassifier} from several
+ * threads, comparing {@link LinearClassifier#scoresOf(Datum)}, which makes
+ * a Counter for each datum, with {@link LinearClassifier#scoresOf(Datum, double[])},
+ * which writes the scores into an array.
+ * <br>
+ * A classifier with random weights is made, along with random datums (a
+ * tenth of whose features the classifier does not know).  First the two
+ * methods are checked to give the same scores for every datum, then each is
+ * timed with 1, 2, 4, ... threads, each thread scoring all the datums.
+ * Throughput should grow linearly with the threads, up to the number of cores.
+ * <br>
+ * Usage: <code>java edu.stanford.nlp.classify.LinearClassifierScoringBenchmark
+ * [-features 100000] [-labels 10] [-datums 100000] [-featuresPerDatum 30]
+ * [-threads numCores] [-iterations 3]</code>
+ */
+public class LinearClassifierScoringBenchmark {
+
+  private LinearClassifierScoringBenchmark() {} // static main method only
+
+  private static double time(final LinearClassifier<String, String> classifier, final List<Datum<String, String>> datums,
+                             int numThreads, final boolean useArrays) throws InterruptedException {
+    Thread[] threads = new Thread[numThreads];
+    for (int t = 0; t < numThreads; t++) {
+      threads[t] = new Thread() {
+        @Override
+        public void run() {
+          double[] scores = new double[classifier.labelIndex().size()];
+          double sum = 0.0;
+          for (Datum<String, String> datum : datums) {
+            if (useArrays) {
+              sum += classifier.scoresOf(datum, scores)[0];
+            } else {
+              sum += classifier.scoresOf(datum).getCount("L0");
+            }
+          }
+          if (sum == 42.0) {
+            System.err.println(); // so that the scoring cannot be optimized away
+          }
+        }
+      };
+    }
+    long start = System.nanoTime();
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    return (System.nanoTime() - start) / 1e9;
+  }
+
+  public static void main(String[] args) throws InterruptedException {
+    Properties props = StringUtils.argsToProperties(args);
+    int numFeatures = PropertiesUtils.getInt(props, "features", 100000);
+    int numLabels = PropertiesUtils.getInt(props, "labels", 10);
+    int numDatums = PropertiesUtils.getInt(props, "datums", 100000);
+    int featuresPerDatum = PropertiesUtils.getInt(props, "featuresPerDatum", 30);
+    int maxThreads = PropertiesUtils.getInt(props, "threads", Runtime.getRuntime().availableProcessors());
+    int iterations = PropertiesUtils.getInt(props, "iterations", 3);
+
+    Random random = new Random(1);
+    Index<String> featureIndex = new HashIndex<String>();
+    for (int f = 0; f < numFeatures; f++) {
+      featureIndex.add("f" + f);
+    }
+    Index<String> labelIndex = new HashIndex<String>();
+    for (int l = 0; l < numLabels; l++) {
+      labelIndex.add("L" + l);
+    }
+    double[][] weights = new double[numFeatures][numLabels];
+    for (double[] featureWeights : weights) {
+      for (int l = 0; l < numLabels; l++) {
+        featureWeights[l] = random.nextGaussian();
+      }
+    }
+    LinearClassifier<String, String> classifier = new LinearClassifier<String, String>(weights, featureIndex, labelIndex);
+
+    List<Datum<String, String>> datums = new ArrayList<Datum<String, String>>(numDatums);
+    for (int i = 0; i < numDatums; i++) {
+      List<String> features = new ArrayList<String>(featuresPerDatum);
+      for (int j = 0; j < featuresPerDatum; j++) {
+        // about a tenth of the features are unknown to the classifier
+        features.add("f" + random.nextInt(numFeatures + numFeatures / 9));
+      }
+      datums.add(new BasicDatum<String, String>(features));
+    }
+
+    int differences = 0;
+    double[] scores = new double[numLabels];
+    for (Datum<String, String> datum : datums) {
+      Counter<String> counter = classifier.scoresOf(datum);
+      classifier.scoresOf(datum, scores);
+      for (int l = 0; l < numLabels; l++) {
+        if (counter.getCount(labelIndex.get(l)) != scores[l]) {
+          differences++;
+          break;
+        }
+      }
+    }
+    System.out.println("Compared the scores of " + numDatums + " datums: " +
+        (differences == 0 ? "no differences" : differences + " differences"));
+
+    // warm up the JIT
+    time(classifier, datums, 1, false);
+    time(classifier, datums, 1, true);
+
+    double[] singleThreadRate = new double[2];
+    for (int numThreads = 1; numThreads <= maxThreads; numThreads *= 2) {
+      for (int useArrays = 0; useArrays < 2; useArrays++) {
+        double seconds = 0.0;
+        for (int iter = 0; iter < iterations; iter++) {
+          seconds += time(classifier, datums, numThreads, useArrays == 1);
+        }
+        double rate = ((double) numDatums) * numThreads * iterations / seconds;
+        if (numThreads == 1) {
+          singleThreadRate[useArrays] = rate;
+        }
+        System.out.printf("%2d threads, %s: %.0f datums/s (%.2fx one thread)%n", numThreads,
+            useArrays == 1 ? "scoresOf(Datum, double[])" : "scoresOf(Datum)          ",
+            rate, rate / singleThreadRate[useArrays]);
+      }
+    }
+  }
+
+}
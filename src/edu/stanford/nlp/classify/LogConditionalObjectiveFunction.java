@@ -5,16 +5,21 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import edu.stanford.nlp.ling.Datum;
 import edu.stanford.nlp.math.ADMath;
 import edu.stanford.nlp.math.ArrayMath;
 import edu.stanford.nlp.math.DoubleAD;
 import edu.stanford.nlp.optimization.AbstractStochasticCachingDiffUpdateFunction;
+import edu.stanford.nlp.optimization.ConcurrentStochasticUpdateFunction;
 import edu.stanford.nlp.optimization.StochasticCalculateMethods;
 import edu.stanford.nlp.stats.ClassicCounter;
 import edu.stanford.nlp.stats.Counter;
@@ -34,7 +39,7 @@ import edu.stanford.nlp.util.SystemUtils;
  * @author Christopher Manning (cleaned out the cruft and sped it up in 2014)
  */
 
-public class LogConditionalObjectiveFunction<L, F> extends AbstractStochasticCachingDiffUpdateFunction {
+public class LogConditionalObjectiveFunction<L, F> extends AbstractStochasticCachingDiffUpdateFunction implements ConcurrentStochasticUpdateFunction {
 
   protected final LogPrior prior;
 
@@ -52,6 +57,12 @@ public class LogConditionalObjectiveFunction<L, F> extends AbstractStochasticCac
   protected final Iterable<Datum<L, F>> dataIterable;
   protected final Index<L> labelIndex;
   protected final Index<F> featureIndex;
+  /** Or the data may be kept out of core, in a MappedDataset, which is read
+   *  through in each full calculation, and by index for stochastic updates.
+   */
+  protected final MappedDataset<L, F> mappedData;
+  /** The gradient of each thread's part of mappedData, kept between calculations. */
+  private double[][] mappedDerivatives;
 
   /** Same size as data if the features have values; null if the features are binary. */
   protected final double[][] values;
@@ -73,9 +84,19 @@ public class LogConditionalObjectiveFunction<L, F> extends AbstractStochasticCac
    * */
   public boolean parallelGradientCalculation = true;
 
-  /** Multithreading gradient calculations is a bit cheaper if you reuse the threads. */
+  /**
+   * Multithreading gradient calculations is a bit cheaper if you reuse the threads.
+   * The threads of the pool end once idle for a while, so that an objective which
+   * is no longer used (e.g., one of many trained in one process) does not keep them.
+   */
   protected int threads = Execution.threads;
-  protected ExecutorService executorService = Executors.newFixedThreadPool(threads);
+  protected ExecutorService executorService = newThreadPool(threads);
+
+  private static ExecutorService newThreadPool(int threads) {
+    ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 10L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+    pool.allowCoreThreadTimeOut(true);
+    return pool;
+  }
 
   @Override
   public int domainDimension() {
@@ -84,7 +105,7 @@ public class LogConditionalObjectiveFunction<L, F> extends AbstractStochasticCac
 
   @Override
   public int dataDimension(){
-    return data.length;
+    return (mappedData != null) ? mappedData.size() : data.length;
   }
 
   private int classOf(int index) {
@@ -211,7 +232,9 @@ public class LogConditionalObjectiveFunction<L, F> extends AbstractStochasticCac
    * conditional estimates. Full dataset batch estimation.
    */
   private void calculateCL(double[] x) {
-    if (values != null) {
+    if (mappedData != null) {
+      calculateCLmapped(x);
+    } else if (values != null) {
       rvfcalculate(x);
     } else if (dataIterable != null) {
       calculateCLiterable(x);
@@ -391,6 +414,86 @@ public class LogConditionalObjectiveFunction<L, F> extends AbstractStochasticCac
   }
 
 
+  /**
+   * Adds the gradient of datums start to end of mappedData to derivative,
+   * and returns their value.  The observed counts are added here too, rather
+   * than cached, so that mappedData is read once.
+   */
+  private double calculateCLmappedPart(double[] x, int start, int end, double[] derivative) {
+    double partValue = 0.0;
+    double[] sums = new double[numClasses];
+    double[] probs = new double[numClasses];
+    for (int d = start; d < end; d++) {
+      MappedDataset.Example example = mappedData.example(d);
+      int[] features = example.features;
+      double[] vals = example.values;
+
+      Arrays.fill(sums, 0.0);
+      for (int f = 0; f < features.length; f++) {
+        double v = (vals == null) ? 1.0 : vals[f];
+        for (int c = 0; c < numClasses; c++) {
+          sums[c] += x[indexOf(features[f], c)] * v;
+        }
+      }
+      double total = ArrayMath.logSum(sums);
+      for (int c = 0; c < numClasses; c++) {
+        probs[c] = Math.exp(sums[c] - total);
+      }
+      for (int f = 0; f < features.length; f++) {
+        double v = (vals == null) ? 1.0 : vals[f];
+        for (int c = 0; c < numClasses; c++) {
+          derivative[indexOf(features[f], c)] += probs[c] * v;
+        }
+        derivative[indexOf(features[f], example.label)] -= v;
+      }
+      partValue -= sums[example.label] - total;
+    }
+    return partValue;
+  }
+
+  /**
+   * Calculates the value and gradient in one pass over mappedData.  With
+   * several threads, each has a part of the data and a gradient of its own,
+   * so this takes threads times the memory of the gradient.
+   */
+  private void calculateCLmapped(final double[] x) {
+    Arrays.fill(derivative, 0.0);
+    final int size = mappedData.size();
+    if (parallelGradientCalculation && threads > 1) {
+      if (mappedDerivatives == null) {
+        mappedDerivatives = new double[threads][x.length];
+      }
+      @SuppressWarnings("unchecked")
+      Future<Double>[] parts = (Future<Double>[]) Array.newInstance(Future.class, threads);
+      for (int t = 0; t < threads; t++) {
+        final int start = (int) ((long) size * t / threads);
+        final int end = (int) ((long) size * (t + 1) / threads);
+        final double[] partDerivative = mappedDerivatives[t];
+        parts[t] = executorService.submit(new Callable<Double>() {
+          @Override
+          public Double call() {
+            Arrays.fill(partDerivative, 0.0);
+            return calculateCLmappedPart(x, start, end, partDerivative);
+          }
+        });
+      }
+      value = 0.0;
+      for (int t = 0; t < threads; t++) {
+        try {
+          value += parts[t].get();
+        } catch (InterruptedException e) {
+          throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+          throw new RuntimeException(e.getCause());
+        }
+        ArrayMath.pairwiseAddInPlace(derivative, mappedDerivatives[t]);
+      }
+    } else {
+      value = calculateCLmappedPart(x, 0, size, derivative);
+    }
+    value += prior.compute(x, derivative);
+  }
+
   private void calculateCLiterable(double[] x) {
     //System.out.println("Checking at: "+x[0]+" "+x[1]+" "+x[2]);
     value = 0.0;
@@ -476,6 +579,9 @@ public class LogConditionalObjectiveFunction<L, F> extends AbstractStochasticCac
     //     to only use finite difference.  Unless of course the function is somehow nearly singular,
     //     in which case finite difference could turn what is a convex problem into a singular proble... NOT GOOD.
 
+    if (mappedData != null) {
+      throw new UnsupportedOperationException("The finite difference stochastic method is not supported with a MappedDataset");
+    }
     if (values != null) {
       rvfcalculate(x);
       return;
@@ -559,6 +665,10 @@ public class LogConditionalObjectiveFunction<L, F> extends AbstractStochasticCac
       rvfcalculate(x);
       return;
     }
+    if (mappedData != null && mappedData.isRealValued()) {
+      calculateCLmapped(x);
+      return;
+    }
 
     value = 0.0;
 
@@ -568,7 +678,7 @@ public class LogConditionalObjectiveFunction<L, F> extends AbstractStochasticCac
       priorDerivative = new double[x.length];
     }
 
-    double priorFactor = batchSize/(data.length*prior.getSigma()*prior.getSigma());
+    double priorFactor = batchSize/(dataDimension()*prior.getSigma()*prior.getSigma());
 
     derivative = ArrayMath.multiply(x,priorFactor);
 
@@ -581,7 +691,16 @@ public class LogConditionalObjectiveFunction<L, F> extends AbstractStochasticCac
     for (int m : batch) {
 
       //Sets the index based on the current batch
-      int[] features = data[m];
+      int[] features;
+      int label;
+      if (mappedData != null) {
+        MappedDataset.Example example = mappedData.example(m);
+        features = example.features;
+        label = example.label;
+      } else {
+        features = data[m];
+        label = labels[m];
+      }
       // activation
 
       Arrays.fill(sums, 0.0);
@@ -609,21 +728,21 @@ public class LogConditionalObjectiveFunction<L, F> extends AbstractStochasticCac
           int i = indexOf(feature, c);
           //derivative[i] += (-1);
           derivative[i] += probs[c];
-          if (c == labels[m]) {
+          if (c == label) {
             derivative[i] -= 1;
           }
 
         }
       }
 
-      double dV = sums[labels[m]] - total;
+      double dV = sums[label] - total;
       if (dataWeights != null) {
         dV *= dataWeights[m];
       }
       value -= dV;
     }
 
-    value += ((double) batchSize)/((double) data.length)*prior.compute(x,priorDerivative);
+    value += ((double) batchSize)/((double) dataDimension())*prior.compute(x,priorDerivative);
   }
 
   @Override
@@ -633,14 +752,26 @@ public class LogConditionalObjectiveFunction<L, F> extends AbstractStochasticCac
 
     for (int m : batch) {
       //Sets the index based on the current batch
-      int[] features = data[m];
+      int[] features;
+      double[] featureValues;
+      int label;
+      if (mappedData != null) {
+        MappedDataset.Example example = mappedData.example(m);
+        features = example.features;
+        featureValues = example.values;
+        label = example.label;
+      } else {
+        features = data[m];
+        featureValues = (values != null) ? values[m] : null;
+        label = labels[m];
+      }
       Arrays.fill(sums, 0.0);
 
       for (int c = 0; c < numClasses; c++) {
         for (int f = 0; f < features.length; f++) {
           int i = indexOf(features[f], c);
-          if (values != null) {
-            sums[c] += x[i] * xscale * values[m][f];
+          if (featureValues != null) {
+            sums[c] += x[i] * xscale * featureValues[f];
           } else {
             sums[c] += x[i] * xscale;
           }
@@ -648,7 +779,7 @@ public class LogConditionalObjectiveFunction<L, F> extends AbstractStochasticCac
       }
 
       double total = ArrayMath.logSum(sums);
-      double dV = sums[labels[m]] - total;
+      double dV = sums[label] - total;
       if (dataWeights != null) {
         dV *= dataWeights[m];
       }
@@ -684,53 +815,7 @@ public class LogConditionalObjectiveFunction<L, F> extends AbstractStochasticCac
       double[] probs = new double[numClasses];
 
       for (int t = threadIdx; t < batch.length; t += numThreads) {
-        int m = batch[t];
-
-        // Sets the index based on the current batch
-        int[] features = data[m];
-        // activation
-
-        Arrays.fill(sums, 0.0);
-
-        for (int c = 0; c < numClasses; c++) {
-          for (int f = 0; f < features.length; f++) {
-            int i = indexOf(features[f], c);
-            if (values != null) {
-              sums[c] += x[i] * xscale * values[m][f];
-            } else {
-              sums[c] += x[i] * xscale;
-            }
-          }
-        }
-
-        for (int f = 0; f < features.length; f++) {
-          int i = indexOf(features[f], labels[m]);
-          double v = (values != null) ? values[m][f] : 1;
-          double delta = (dataWeights != null) ? dataWeights[m] * v : v;
-          x[i] += delta * gain;
-        }
-
-        double total = ArrayMath.logSum(sums);
-
-        for (int c = 0; c < numClasses; c++) {
-          probs[c] = Math.exp(sums[c] - total);
-
-          if (dataWeights != null) {
-            probs[c] *= dataWeights[m];
-          }
-          for (int f = 0; f < features.length; f++) {
-            int i = indexOf(features[f], c);
-            double v = (values != null) ? values[m][f] : 1;
-            double delta = probs[c] * v;
-            x[i] -= delta * gain;
-          }
-        }
-
-        double dV = sums[labels[m]] - total;
-        if (dataWeights != null) {
-          dV *= dataWeights[m];
-        }
-        value -= dV;
+        localValue += stochasticUpdateForDatum(x, xscale, batch[t], gain, sums, probs);
       }
 
       latch.countDown();
@@ -760,63 +845,100 @@ public class LogConditionalObjectiveFunction<L, F> extends AbstractStochasticCac
       }
     }
     else {
-      double[] sums = new double[numClasses];
-      double[] probs = new double[numClasses];
-
-      for (int m : batch) {
+      value = concurrentStochasticUpdate(x, xscale, batch, gain);
+    }
+    return value;
+  }
 
-        // Sets the index based on the current batch
-        int[] features = data[m];
-        // activation
+  /**
+   * {@inheritDoc}
+   * <br>
+   * This is the single threaded version of {@link #calculateStochasticUpdate},
+   * which keeps nothing in this object.
+   */
+  @Override
+  public double concurrentStochasticUpdate(double[] x, double xscale, int[] batch, double gain) {
+    double batchValue = 0.0;
+    double[] sums = new double[numClasses];
+    double[] probs = new double[numClasses];
+    for (int m : batch) {
+      batchValue += stochasticUpdateForDatum(x, xscale, m, gain, sums, probs);
+    }
+    return batchValue;
+  }
 
-        Arrays.fill(sums, 0.0);
+  /**
+   * Makes the stochastic update of x for datum m, and returns its
+   * (negative log likelihood) value.
+   *
+   * @param sums Scratch space of numClasses elements
+   * @param probs Scratch space of numClasses elements
+   */
+  private double stochasticUpdateForDatum(double[] x, double xscale, int m, double gain, double[] sums, double[] probs) {
+    // Sets the index based on the current batch
+    int[] features;
+    double[] featureValues;
+    int label;
+    if (mappedData != null) {
+      MappedDataset.Example example = mappedData.example(m);
+      features = example.features;
+      featureValues = example.values;
+      label = example.label;
+    } else {
+      features = data[m];
+      featureValues = (values != null) ? values[m] : null;
+      label = labels[m];
+    }
+    // activation
 
-        for (int c = 0; c < numClasses; c++) {
-          for (int f = 0; f < features.length; f++) {
-            int i = indexOf(features[f], c);
-            if (values != null) {
-              sums[c] += x[i] * xscale * values[m][f];
-            } else {
-              sums[c] += x[i] * xscale;
-            }
-          }
-        }
+    Arrays.fill(sums, 0.0);
 
-        for (int f = 0; f < features.length; f++) {
-          int i = indexOf(features[f], labels[m]);
-          double v = (values != null) ? values[m][f] : 1;
-          double delta = (dataWeights != null) ? dataWeights[m] * v : v;
-          x[i] += delta * gain;
+    for (int c = 0; c < numClasses; c++) {
+      for (int f = 0; f < features.length; f++) {
+        int i = indexOf(features[f], c);
+        if (featureValues != null) {
+          sums[c] += x[i] * xscale * featureValues[f];
+        } else {
+          sums[c] += x[i] * xscale;
         }
+      }
+    }
 
-        double total = ArrayMath.logSum(sums);
+    for (int f = 0; f < features.length; f++) {
+      int i = indexOf(features[f], label);
+      double v = (featureValues != null) ? featureValues[f] : 1;
+      double delta = (dataWeights != null) ? dataWeights[m] * v : v;
+      x[i] += delta * gain;
+    }
 
-        for (int c = 0; c < numClasses; c++) {
-          probs[c] = Math.exp(sums[c] - total);
+    double total = ArrayMath.logSum(sums);
 
-          if (dataWeights != null) {
-            probs[c] *= dataWeights[m];
-          }
-          for (int f = 0; f < features.length; f++) {
-            int i = indexOf(features[f], c);
-            double v = (values != null) ? values[m][f] : 1;
-            double delta = probs[c] * v;
-            x[i] -= delta * gain;
-          }
-        }
+    for (int c = 0; c < numClasses; c++) {
+      probs[c] = Math.exp(sums[c] - total);
 
-        double dV = sums[labels[m]] - total;
-        if (dataWeights != null) {
-          dV *= dataWeights[m];
-        }
-        value -= dV;
+      if (dataWeights != null) {
+        probs[c] *= dataWeights[m];
+      }
+      for (int f = 0; f < features.length; f++) {
+        int i = indexOf(features[f], c);
+        double v = (featureValues != null) ? featureValues[f] : 1;
+        double delta = probs[c] * v;
+        x[i] -= delta * gain;
       }
     }
-    return value;
+
+    double dV = sums[label] - total;
+    if (dataWeights != null) {
+      dV *= dataWeights[m];
+    }
+    return -dV;
   }
 
   @Override
   public void calculateStochasticGradient(double[] x, int[] batch) {
+    if (mappedData != null) {
+      throw new UnsupportedOperationException("calculateStochasticGradient is not supported with a MappedDataset; use calculateStochastic");
+    }
     if (derivative == null) {
       derivative = new double[domainDimension()];
     }
@@ -861,6 +983,9 @@ public class LogConditionalObjectiveFunction<L, F> extends AbstractStochasticCac
 
 
   protected void calculateStochasticAlgorithmicDifferentiation(double[] x, double[] v, int[] batch) {
+    if (mappedData != null) {
+      throw new UnsupportedOperationException("The algorithmic differentiation stochastic method is not supported with a MappedDataset");
+    }
 
     System.err.print("*");
 
@@ -1171,6 +1296,7 @@ public class LogConditionalObjectiveFunction<L, F> extends AbstractStochasticCac
     this.labelIndex = null;
     this.featureIndex = null;
     this.dataIterable = null;
+    this.mappedData = null;
   }
 
   //TODO: test this [none of our code actually even uses it].
@@ -1182,6 +1308,7 @@ public class LogConditionalObjectiveFunction<L, F> extends AbstractStochasticCac
     this.numClasses = labelIndex.size();
     this.data = null;
     this.dataIterable = dataIterable;
+    this.mappedData = null;
 
     this.labelIndex = labelIndex;
     this.featureIndex = featureIndex;
@@ -1190,6 +1317,26 @@ public class LogConditionalObjectiveFunction<L, F> extends AbstractStochasticCac
     this.dataWeights = null;
   }
 
+  /**
+   * Version where the data is kept out of core, in a MappedDataset (which must be finished).
+   * Supports the full calculation of the conditional likelihood and the in-place stochastic updates,
+   * but not dataWeights or the summed conditional likelihood.
+   */
+  public LogConditionalObjectiveFunction(MappedDataset<L, F> mappedData, LogPrior prior) {
+    this.prior = prior;
+    this.useSummedConditionalLikelihood = false;
+    this.numFeatures = mappedData.numFeatures();
+    this.numClasses = mappedData.numClasses();
+    this.data = null;
+    this.labels = null;
+    this.values = null;
+    this.dataWeights = null;
+    this.labelIndex = null;
+    this.featureIndex = null;
+    this.dataIterable = null;
+    this.mappedData = mappedData;
+  }
+
   public LogConditionalObjectiveFunction(int numFeatures, int numClasses, int[][] data, int[] labels, boolean useSumCondObjFun) {
     this(numFeatures, numClasses, data, labels, null, new LogPrior(LogPrior.LogPriorType.QUADRATIC), useSumCondObjFun);
   }
@@ -1223,6 +1370,7 @@ public class LogConditionalObjectiveFunction<L, F> extends AbstractStochasticCac
     this.labelIndex = null;
     this.featureIndex = null;
     this.dataIterable = null;
+    this.mappedData = null;
     this.useSummedConditionalLikelihood = useSummedConditionalLikelihood;
   }
 
@@ -1241,6 +1389,7 @@ public class LogConditionalObjectiveFunction<L, F> extends AbstractStochasticCac
     this.labelIndex = null;
     this.featureIndex = null;
     this.dataIterable = null;
+    this.mappedData = null;
     this.useSummedConditionalLikelihood = false;
     this.dataWeights = null;
   }
@@ -0,0 +1,383 @@
+package edu.stanford.nlp.classify;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import edu.stanford.nlp.io.IOUtils;
+import edu.stanford.nlp.io.RuntimeIOException;
+import edu.stanford.nlp.ling.BasicDatum;
+import edu.stanford.nlp.ling.Datum;
+import edu.stanford.nlp.ling.RVFDatum;
+import edu.stanford.nlp.stats.ClassicCounter;
+import edu.stanford.nlp.stats.Counter;
+import edu.stanford.nlp.util.HashIndex;
+import edu.stanford.nlp.util.Index;
+
+/**
+ * A dataset kept out of core, in a memory-mapped file, for training on more
+ * data than fits in memory.  Datums are featurized as they are
+ * {@link #add(Datum) added}, in one streaming pass, and written to the file
+ * compactly: the label and feature indices as variable-length integers (one
+ * byte each for indices below 128), and the feature values too if the
+ * dataset is real-valued.  Only the feature and label indices are kept in
+ * memory.  After {@link #finish()}, the file is mapped, and the operating
+ * system pages in the parts of it which are being read, so training reads
+ * it through in chunks rather than holding it all.
+ * <br>
+ * A {@link LogConditionalObjectiveFunction} made from a MappedDataset
+ * computes its value and gradient in a pass over the file, for the
+ * quasi-Newton and conjugate gradient minimizers, and reads the datums of
+ * each batch by index for the SGD minimizers; use
+ * {@link LinearClassifierFactory#trainClassifier(MappedDataset)}.
+ * <br>
+ * The datums are kept in the given file, and the offset of each in the file
+ * named by the path with ".offsets" added.  Both are deleted by
+ * {@link #delete()}.
+ *
+ * @param <L> The type of the labels
+ * @param <F> The type of the features
+ */
+public class MappedDataset<L, F> implements Iterable<Datum<L, F>> {
+
+  // each mapping of the file is at most 1GB, and no datum spans two of them
+  private static final int SEGMENT_BITS = 30;
+  private static final long SEGMENT_SIZE = 1L << SEGMENT_BITS;
+  private static final int SEGMENT_MASK = (int) SEGMENT_SIZE - 1;
+
+  private final String path;
+  private final boolean realValued;
+  private final Index<L> labelIndex;
+  private final Index<F> featureIndex;
+  private int size;
+  private long numBytes;
+
+  // while datums are being added
+  private DataOutputStream out;
+  private DataOutputStream offsetsOut;
+  private byte[] record = new byte[256];
+  private int[] featureBuffer = new int[16];
+  private double[] valueBuffer = new double[16];
+
+  // once finished
+  private ByteBuffer[] segments;
+  private ByteBuffer[] offsetSegments;
+
+  /**
+   * Makes an empty dataset, with new feature and label indices, which keeps
+   * its datums in the given file.
+   *
+   * @param realValued Whether the datums added are RVFDatums whose
+   *     feature values are kept; otherwise each feature has value 1
+   */
+  public MappedDataset(String path, boolean realValued) {
+    this(path, realValued, new HashIndex<F>(), new HashIndex<L>());
+  }
+
+  /**
+   * Makes an empty dataset, with the given feature and label indices, which
+   * keeps its datums in the given file.  If the feature index is locked,
+   * features which are not in it are left out of the datums added.
+   */
+  public MappedDataset(String path, boolean realValued, Index<F> featureIndex, Index<L> labelIndex) {
+    this.path = path;
+    this.realValued = realValued;
+    this.featureIndex = featureIndex;
+    this.labelIndex = labelIndex;
+    try {
+      out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path), 1 << 16));
+      offsetsOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(offsetsPath()), 1 << 16));
+    } catch (IOException e) {
+      IOUtils.closeIgnoringExceptions(out);
+      throw new RuntimeIOException("Could not create the dataset file " + path, e);
+    }
+  }
+
+  private String offsetsPath() {
+    return path + ".offsets";
+  }
+
+  public Index<L> labelIndex() { return labelIndex; }
+
+  public Index<F> featureIndex() { return featureIndex; }
+
+  public int numFeatures() { return featureIndex.size(); }
+
+  public int numClasses() { return labelIndex.size(); }
+
+  /** The number of datums added */
+  public int size() { return size; }
+
+  /** True if the values of the features are kept; otherwise each feature has value 1 */
+  public boolean isRealValued() { return realValued; }
+
+  /** The number of bytes which the datums take in the file */
+  public long numBytes() { return numBytes; }
+
+  private void ensureRecordCapacity(int length) {
+    if (record.length < length) {
+      byte[] newRecord = new byte[Math.max(length, 2 * record.length)];
+      System.arraycopy(record, 0, newRecord, 0, record.length);
+      record = newRecord;
+    }
+  }
+
+  private int writeVarint(int value, int pos) {
+    while ((value & ~0x7F) != 0) {
+      record[pos++] = (byte) ((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    record[pos++] = (byte) value;
+    return pos;
+  }
+
+  private void addFeature(F feature, double value, int n) {
+    if (n == featureBuffer.length) {
+      int[] newFeatures = new int[2 * n];
+      System.arraycopy(featureBuffer, 0, newFeatures, 0, n);
+      featureBuffer = newFeatures;
+      double[] newValues = new double[2 * n];
+      System.arraycopy(valueBuffer, 0, newValues, 0, n);
+      valueBuffer = newValues;
+    }
+    featureBuffer[n] = featureIndex.addToIndex(feature);
+    valueBuffer[n] = value;
+  }
+
+  /**
+   * Featurizes the datum and writes it to the end of the file.  If the
+   * dataset is real-valued, the datum must be an {@link RVFDatum}.
+   */
+  public void add(Datum<L, F> d) {
+    if (out == null) {
+      throw new IllegalStateException("A MappedDataset cannot be added to after finish()");
+    }
+    int label = labelIndex.addToIndex(d.label());
+    int n = 0;
+    if (realValued) {
+      Counter<F> features = ((RVFDatum<L, F>) d).asFeaturesCounter();
+      for (F feature : features.keySet()) {
+        addFeature(feature, features.getCount(feature), n);
+        if (featureBuffer[n] >= 0) {
+          n++;
+        }
+      }
+    } else {
+      for (F feature : d.asFeatures()) {
+        addFeature(feature, 1.0, n);
+        if (featureBuffer[n] >= 0) {
+          n++;
+        }
+      }
+    }
+
+    ensureRecordCapacity(10 + 13 * n);
+    int length = writeVarint(label, 0);
+    length = writeVarint(n, length);
+    if (realValued) {
+      for (int i = 0; i < n; i++) {
+        long bits = Double.doubleToLongBits(valueBuffer[i]);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+          record[length++] = (byte) (bits >>> shift);
+        }
+      }
+    }
+    for (int i = 0; i < n; i++) {
+      length = writeVarint(featureBuffer[i], length);
+    }
+    if (length > SEGMENT_SIZE) {
+      throw new IllegalArgumentException("A datum with " + n + " features is too big for a MappedDataset");
+    }
+
+    try {
+      long room = SEGMENT_SIZE - (numBytes & SEGMENT_MASK);
+      if (length > room) {
+        // start the datum at the next mapping, so that it can be read from one
+        for (long i = 0; i < room; i++) {
+          out.write(0);
+        }
+        numBytes += room;
+      }
+      offsetsOut.writeLong(numBytes);
+      out.write(record, 0, length);
+    } catch (IOException e) {
+      throw new RuntimeIOException("Could not write to the dataset file " + path, e);
+    }
+    numBytes += length;
+    size++;
+  }
+
+  /** Adds each of the datums. */
+  public void addAll(Iterable<? extends Datum<L, F>> data) {
+    for (Datum<L, F> d : data) {
+      add(d);
+    }
+  }
+
+  private static ByteBuffer[] map(FileChannel channel, long length) throws IOException {
+    int numSegments = (int) ((length + SEGMENT_SIZE - 1) >>> SEGMENT_BITS);
+    ByteBuffer[] mapped = new ByteBuffer[numSegments];
+    for (int s = 0; s < numSegments; s++) {
+      long start = s * SEGMENT_SIZE;
+      mapped[s] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, length - start));
+    }
+    return mapped;
+  }
+
+  /**
+   * Finishes writing the file and maps it, so that the datums can be read.
+   * No datums can be added afterwards.
+   */
+  public void finish() {
+    if (out == null) {
+      return;
+    }
+    RandomAccessFile file = null;
+    RandomAccessFile offsetsFile = null;
+    try {
+      out.close();
+      offsetsOut.close();
+      out = null;
+      offsetsOut = null;
+      record = null;
+      featureBuffer = null;
+      valueBuffer = null;
+      file = new RandomAccessFile(path, "r");
+      segments = map(file.getChannel(), numBytes);
+      offsetsFile = new RandomAccessFile(offsetsPath(), "r");
+      offsetSegments = map(offsetsFile.getChannel(), 8L * size);
+    } catch (IOException e) {
+      throw new RuntimeIOException("Could not map the dataset file " + path, e);
+    } finally {
+      // the mappings stay valid after the files are closed
+      IOUtils.closeIgnoringExceptions(file);
+      IOUtils.closeIgnoringExceptions(offsetsFile);
+    }
+  }
+
+  /** Deletes the files of this dataset, after which it cannot be read. */
+  public void delete() {
+    IOUtils.closeIgnoringExceptions(out);
+    IOUtils.closeIgnoringExceptions(offsetsOut);
+    out = null;
+    segments = null;
+    offsetSegments = null;
+    new File(path).delete();
+    new File(offsetsPath()).delete();
+  }
+
+  /** The label, feature indices and (if the dataset is real-valued) feature values of one datum */
+  public static class Example {
+    public final int label;
+    public final int[] features;
+    /** null if the dataset is not real-valued */
+    public final double[] values;
+
+    Example(int label, int[] features, double[] values) {
+      this.label = label;
+      this.features = features;
+      this.values = values;
+    }
+  }
+
+  /**
+   * Reads datum d from the file.  This may be called from many threads at
+   * once.
+   */
+  public Example example(int d) {
+    if (segments == null) {
+      throw new IllegalStateException("A MappedDataset can only be read after finish()");
+    }
+    if (d < 0 || d >= size) {
+      throw new ArrayIndexOutOfBoundsException("Datum " + d + " outside the bounds [0," + size + ")");
+    }
+    long offsetPos = 8L * d;
+    long offset = offsetSegments[(int) (offsetPos >>> SEGMENT_BITS)].getLong((int) offsetPos & SEGMENT_MASK);
+    ByteBuffer segment = segments[(int) (offset >>> SEGMENT_BITS)];
+    int[] pos = { (int) offset & SEGMENT_MASK };
+    int label = readVarint(segment, pos);
+    int n = readVarint(segment, pos);
+    double[] values = null;
+    if (realValued) {
+      values = new double[n];
+      for (int i = 0; i < n; i++) {
+        values[i] = segment.getDouble(pos[0]);
+        pos[0] += 8;
+      }
+    }
+    int[] features = new int[n];
+    for (int i = 0; i < n; i++) {
+      features[i] = readVarint(segment, pos);
+    }
+    return new Example(label, features, values);
+  }
+
+  /** Reads a variable-length integer at pos[0] of the buffer, and moves pos[0] past it. */
+  private static int readVarint(ByteBuffer buffer, int[] pos) {
+    int p = pos[0];
+    int value = 0;
+    int shift = 0;
+    byte b;
+    do {
+      b = buffer.get(p++);
+      value |= (b & 0x7F) << shift;
+      shift += 7;
+    } while (b < 0);
+    pos[0] = p;
+    return value;
+  }
+
+  /** Reads datum d from the file, as an RVFDatum if the dataset is real-valued. */
+  public Datum<L, F> getDatum(int d) {
+    Example example = example(d);
+    L label = labelIndex.get(example.label);
+    if (realValued) {
+      Counter<F> features = new ClassicCounter<F>();
+      for (int i = 0; i < example.features.length; i++) {
+        features.incrementCount(featureIndex.get(example.features[i]), example.values[i]);
+      }
+      return new RVFDatum<L, F>(features, label);
+    }
+    Collection<F> features = new ArrayList<F>(example.features.length);
+    for (int feature : example.features) {
+      features.add(featureIndex.get(feature));
+    }
+    return new BasicDatum<L, F>(features, label);
+  }
+
+  /** Reads the datums from the file in order. */
+  @Override
+  public Iterator<Datum<L, F>> iterator() {
+    return new Iterator<Datum<L, F>>() {
+      private int index = 0;
+
+      @Override
+      public boolean hasNext() {
+        return index < size;
+      }
+
+      @Override
+      public Datum<L, F> next() {
+        if (index >= size) {
+          throw new NoSuchElementException();
+        }
+        return getDatum(index++);
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+
+  @Override
+  public String toString() {
+    return "MappedDataset[" + path + ", " + size + " datums, " + numBytes + " bytes]";
+  }
+
+}
@@ -65,6 +65,12 @@ public class WeightedDataset<L, F> extends Dataset<L, F> {
     add(features, label, 1.0f);
   }
 
+  /** Adds the datums one at a time, each with weight 1, since each needs its weight stored. */
+  @Override
+  public void addAll(List<? extends Datum<L, F>> data, int numThreads) {
+    addAll(data);
+  }
+
   public void add(Datum<L, F> d, float weight) {
     add(d.asFeatures(), d.label(), weight);
   }
@@ -0,0 +1,121 @@
+package edu.stanford.nlp.dcoref;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import edu.stanford.nlp.util.Generics;
+
+/**
+ * A per-document index of mentions by the keys which the string and head
+ * match sieves require an antecedent to share with a mention: the head
+ * string, the lowercased span, the span up to its head (as
+ * {@link Mention#removePhraseAfterHead()} gives it), and the NE type.
+ * A sieve which can only link clusters that share a key gives the clusters
+ * of the mentions with that key as the candidates for a mention's cluster
+ * (see {@link edu.stanford.nlp.dcoref.sievepasses.DeterministicCorefSieve#candidateAntecedentClusters}),
+ * and antecedents in earlier sentences which are in none of them are not compared.
+ * <br>
+ * The keys of a mention do not change as clusters are merged, so one index
+ * serves every sieve pass over the document; the clusters are looked up as
+ * they are when the candidates are asked for.
+ */
+public class AntecedentBlockingIndex {
+
+  private final Map<String, List<Mention>> byHead = Generics.newHashMap();
+  private final Map<String, List<Mention>> byExactString = Generics.newHashMap();
+  private final Map<String, List<Mention>> byRelaxedString = Generics.newHashMap();
+  private final Map<String, List<Mention>> byNamedEntityType = Generics.newHashMap();
+  /** The sentence of each mention, by its mentionID */
+  private final Map<Integer, Integer> sentences = Generics.newHashMap();
+
+  public AntecedentBlockingIndex(List<List<Mention>> orderedMentionsBySentence) {
+    for (int sentNum = 0; sentNum < orderedMentionsBySentence.size(); sentNum++) {
+      for (Mention m : orderedMentionsBySentence.get(sentNum)) {
+        sentences.put(m.mentionID, sentNum);
+        add(byHead, m.headString, m);
+        add(byExactString, exactStringKey(m.lowercaseNormalizedSpanString()), m);
+        add(byRelaxedString, exactStringKey(m.removePhraseAfterHead()), m);
+        if (m.nerString != null && ! m.nerString.equals("O")) {
+          add(byNamedEntityType, m.nerString, m);
+        }
+      }
+    }
+  }
+
+  private static void add(Map<String, List<Mention>> index, String key, Mention m) {
+    List<Mention> mentions = index.get(key);
+    if (mentions == null) {
+      mentions = new ArrayList<Mention>();
+      index.put(key, mentions);
+    }
+    mentions.add(m);
+  }
+
+  /**
+   * The span without any trailing possessive " 's", so that spans which the
+   * string match rules equate, with or without one, have the same key.
+   */
+  private static String exactStringKey(String span) {
+    while (span.endsWith(" 's")) {
+      span = span.substring(0, span.length() - 3);
+    }
+    return span;
+  }
+
+  private static void addClusters(Map<String, List<Mention>> index, String key, Set<Integer> clusters) {
+    List<Mention> mentions = index.get(key);
+    if (mentions != null) {
+      for (Mention m : mentions) {
+        clusters.add(m.corefClusterID);
+      }
+    }
+  }
+
+  /** Adds the clusters with a mention whose head string is the given one */
+  public void addClustersWithHead(String headString, Set<Integer> clusters) {
+    addClusters(byHead, headString, clusters);
+  }
+
+  /** Adds the clusters with a mention whose lowercased span matches that of one of the mentions */
+  public void addClustersWithExactString(Collection<Mention> mentions, Set<Integer> clusters) {
+    for (Mention m : mentions) {
+      addClusters(byExactString, exactStringKey(m.lowercaseNormalizedSpanString()), clusters);
+    }
+  }
+
+  /** Adds the clusters with a mention whose span up to its head matches that of the mention */
+  public void addClustersWithRelaxedString(Mention m, Set<Integer> clusters) {
+    addClusters(byRelaxedString, exactStringKey(m.removePhraseAfterHead()), clusters);
+  }
+
+  /** Adds the clusters with a mention of the given NE type */
+  public void addClustersWithNamedEntityType(String nerString, Set<Integer> clusters) {
+    addClusters(byNamedEntityType, nerString, clusters);
+  }
+
+  /**
+   * The sentences which hold a mention of one of the clusters, or null if
+   * some mention of them is not in the index.
+   */
+  public Set<Integer> sentencesOf(Set<Integer> clusterIDs, Map<Integer, CorefCluster> corefClusters) {
+    Set<Integer> sentNums = Generics.newHashSet();
+    for (Integer clusterID : clusterIDs) {
+      CorefCluster cluster = corefClusters.get(clusterID);
+      if (cluster == null) {
+        continue;
+      }
+      for (Mention m : cluster.getCorefMentions()) {
+        Integer sentNum = sentences.get(m.mentionID);
+        if (sentNum == null) {
+          return null;
+        }
+        sentNums.add(sentNum);
+      }
+    }
+    return sentNums;
+  }
+
+}
@@ -92,6 +92,7 @@ public class Constants {
   public static final String PARSER_MAXLEN_PROP = "parse.maxlen";
   public static final String POSTPROCESSING_PROP = "dcoref.postprocessing";
   public static final String MAXDIST_PROP = "dcoref.maxdist";
+  public static final String BLOCKING_PROP = "dcoref.blocking";
   public static final String REPLICATECONLL_PROP = "dcoref.replicate.conll";
   public static final String GENDER_NUMBER_PROP = "dcoref.big.gender.number";
   public static final String COUNTRIES_PROP = "dcoref.countries";
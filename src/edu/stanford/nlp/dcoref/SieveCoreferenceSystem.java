@@ -111,6 +111,20 @@ public class SieveCoreferenceSystem {
    */
   private final int maxSentDist;
 
+  /**
+   * If true, sieves which can only link clusters that share a key (such as a
+   * head or a span) compare a mention only with the antecedents which share
+   * one, as found in an {@link AntecedentBlockingIndex}, in the sentences
+   * holding no mention of its own cluster.  This does not change the output.
+   */
+  private final boolean useBlocking;
+
+  /** The mention pairs compared by the sieves, and those skipped by blocking, over all documents */
+  private long mentionPairComparisons;
+  private long mentionPairComparisonsSkipped;
+  /** The time spent in the sieves, over all documents */
+  private long corefMillis;
+
   /**
    * automatically set by looking at sieves
    */
@@ -213,6 +227,11 @@ public class SieveCoreferenceSystem {
     //
     maxSentDist = Integer.parseInt(props.getProperty(Constants.MAXDIST_PROP, "-1"));
 
+    //
+    // setting whether sieves compare only candidate antecedents from a blocking index
+    //
+    useBlocking = Boolean.parseBoolean(props.getProperty(Constants.BLOCKING_PROP, "false"));
+
     //
     // set useWordNet
     //
@@ -527,6 +546,7 @@ public class SieveCoreferenceSystem {
         printConllOutput(document, writerPredictedCoref, false, true);
       }
     }
+    corefSystem.printComparisonStatistics();
 
     double finalScore = 0;
     if(Constants.PRINT_CONLL_OUTPUT || corefSystem.replicateCoNLL) {
@@ -836,14 +856,17 @@ public class SieveCoreferenceSystem {
    * @throws Exception
    */
   public Map<Integer, CorefChain> coref(Document document) throws Exception {
+    long start = System.currentTimeMillis();
+    AntecedentBlockingIndex blockingIndex = useBlocking ? new AntecedentBlockingIndex(document.getOrderedMentions()) : null;
 
     // Multi-pass sieve coreference resolution
     for (int i = 0; i < sieves.length ; i++){
       currentSieve = i;
       DeterministicCorefSieve sieve = sieves[i];
       // Do coreference resolution using this pass
-      coreference(document, sieve);
+      coreference(document, sieve, blockingIndex);
     }
+    corefMillis += System.currentTimeMillis() - start;
 
     // post processing (e.g., removing singletons, appositions for conll)
     if((!Constants.USE_GOLD_MENTIONS && doPostProcessing) || replicateCoNLL) postProcessing(document);
@@ -857,15 +880,25 @@ public class SieveCoreferenceSystem {
     return result;
   }
 
+  /** Logs how many mention pairs the sieves compared, how many blocking skipped, and the time spent in the sieves */
+  public void printComparisonStatistics() {
+    long total = mentionPairComparisons + mentionPairComparisonsSkipped;
+    logger.info("Mention pairs compared: " + mentionPairComparisons + " of " + total +
+        (useBlocking ? " (" + mentionPairComparisonsSkipped + " skipped by blocking)" : "") +
+        "; time in sieves: " + (corefMillis / 1000.0) + " s");
+  }
+
   /**
    * Do coreference resolution using one sieve pass.
    *
    * @param document An extracted document
+   * @param blockingIndex The index of the document's mentions, if blocking is used, else null
    * @throws Exception
    */
   private void coreference(
       Document document,
-      DeterministicCorefSieve sieve) throws Exception {
+      DeterministicCorefSieve sieve,
+      AntecedentBlockingIndex blockingIndex) throws Exception {
 
     //Redwood.forceTrack("Coreference: sieve " + sieve.getClass().getSimpleName());
     logger.finer("Coreference: sieve " + sieve.getClass().getSimpleName());
@@ -894,10 +927,32 @@ public class SieveCoreferenceSystem {
           continue;
         }
 
+        // With blocking, antecedents in sentences which hold no mention of m1's cluster
+        // are only compared if they are in one of the candidate clusters of the sieve
+        Set<Integer> candidateClusters = null;
+        Set<Integer> candidateSentences = null;
+        Set<Integer> clusterSentences = null;
+        if (blockingIndex != null) {
+          CorefCluster c1 = corefClusters.get(m1.corefClusterID);
+          candidateClusters = sieve.candidateAntecedentClusters(blockingIndex, c1);
+          if (candidateClusters != null) {
+            candidateSentences = blockingIndex.sentencesOf(candidateClusters, corefClusters);
+            clusterSentences = blockingIndex.sentencesOf(Collections.singleton(c1.clusterID), corefClusters);
+            if (candidateSentences == null || clusterSentences == null) {
+              candidateClusters = null;
+            }
+          }
+        }
+
+        int lastSentJ = (maxSentDist == -1) ? 0 : Math.max(0, sentI - maxSentDist);
         LOOP:
-          for (int sentJ = sentI; sentJ >= 0; sentJ--) {
+          for (int sentJ = sentI; sentJ >= lastSentJ; sentJ--) {
+            boolean blocked = candidateClusters != null && ! clusterSentences.contains(sentJ);
+            if (blocked && ! candidateSentences.contains(sentJ)) {
+              mentionPairComparisonsSkipped += orderedMentionsBySentence.get(sentJ).size();
+              continue;
+            }
             List<Mention> l = sieve.getOrderedAntecedents(sentJ, sentI, orderedMentions, orderedMentionsBySentence, m1, mentionI, corefClusters, dictionaries);
-            if(maxSentDist != -1 && sentI - sentJ > maxSentDist) continue;
 
             // Sort mentions by length whenever we have two mentions beginning at the same position and having the same head
             for(int i = 0; i < l.size(); i++) {
@@ -914,6 +969,11 @@ public class SieveCoreferenceSystem {
 
             for (Mention m2 : l) {
               // m2 - antecedent of m1                   l
+              if (blocked && ! candidateClusters.contains(m2.corefClusterID)) {
+                mentionPairComparisonsSkipped++;
+                continue;
+              }
+              mentionPairComparisons++;
 
               // Skip singletons according to the singleton predictor
               // (only for non-NE mentions)
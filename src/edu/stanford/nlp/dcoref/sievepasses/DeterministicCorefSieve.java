@@ -36,6 +36,7 @@ import java.util.Properties;
 import java.util.Set;
 import java.util.logging.Level;
 
+import edu.stanford.nlp.dcoref.AntecedentBlockingIndex;
 import edu.stanford.nlp.dcoref.Constants;
 import edu.stanford.nlp.dcoref.CorefCluster;
 import edu.stanford.nlp.dcoref.Dictionaries;
@@ -113,6 +114,18 @@ public abstract class DeterministicCorefSieve  {
     return skip;
   }
 
+  /**
+   * The IDs of the clusters which could hold an antecedent, in an earlier
+   * sentence, that this sieve would link to the mention's cluster, as found in
+   * the blocking index; or null if this sieve does not block, and every
+   * earlier mention must be compared.  A sieve may only block if its
+   * comparisons of mentions in different sentences have no side effects (such
+   * as marking clusters incompatible), since the blocked ones are not made.
+   */
+  public Set<Integer> candidateAntecedentClusters(AntecedentBlockingIndex index, CorefCluster mentionCluster) {
+    return null;
+  }
+
   public boolean checkEntityMatch(
           Document document,
           CorefCluster mentionCluster,
@@ -1,8 +1,22 @@
 package edu.stanford.nlp.dcoref.sievepasses;
 
+import java.util.Set;
+
+import edu.stanford.nlp.dcoref.AntecedentBlockingIndex;
+import edu.stanford.nlp.dcoref.CorefCluster;
+import edu.stanford.nlp.util.Generics;
+
 public class ExactStringMatch extends DeterministicCorefSieve {
   public ExactStringMatch() {
     super();
     flags.USE_EXACTSTRINGMATCH = true;
   }
+
+  @Override
+  public Set<Integer> candidateAntecedentClusters(AntecedentBlockingIndex index, CorefCluster mentionCluster) {
+    // a mention of the antecedent's cluster must have the span of one of the mention cluster's mentions
+    Set<Integer> clusters = Generics.newHashSet();
+    index.addClustersWithExactString(mentionCluster.getCorefMentions(), clusters);
+    return clusters;
+  }
 }
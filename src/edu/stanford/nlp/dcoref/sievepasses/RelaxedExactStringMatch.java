@@ -1,8 +1,22 @@
 package edu.stanford.nlp.dcoref.sievepasses;
 
+import java.util.Set;
+
+import edu.stanford.nlp.dcoref.AntecedentBlockingIndex;
+import edu.stanford.nlp.dcoref.CorefCluster;
+import edu.stanford.nlp.util.Generics;
+
 public class RelaxedExactStringMatch extends DeterministicCorefSieve {
   public RelaxedExactStringMatch() {
     super();
     flags.USE_RELAXED_EXACTSTRINGMATCH = true;
   }
+
+  @Override
+  public Set<Integer> candidateAntecedentClusters(AntecedentBlockingIndex index, CorefCluster mentionCluster) {
+    // the antecedent must have the span up to the head of the representative mention
+    Set<Integer> clusters = Generics.newHashSet();
+    index.addClustersWithRelaxedString(mentionCluster.getRepresentativeMention(), clusters);
+    return clusters;
+  }
 }
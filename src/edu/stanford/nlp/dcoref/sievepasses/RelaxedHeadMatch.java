@@ -1,5 +1,12 @@
 package edu.stanford.nlp.dcoref.sievepasses;
 
+import java.util.Set;
+
+import edu.stanford.nlp.dcoref.AntecedentBlockingIndex;
+import edu.stanford.nlp.dcoref.CorefCluster;
+import edu.stanford.nlp.dcoref.Mention;
+import edu.stanford.nlp.util.Generics;
+
 public class RelaxedHeadMatch extends DeterministicCorefSieve {
   public RelaxedHeadMatch() {
     super();
@@ -8,4 +15,16 @@ public class RelaxedHeadMatch extends DeterministicCorefSieve {
     flags.USE_WORDS_INCLUSION = true;
     flags.USE_ATTRIBUTES_AGREE = true;
   }
+
+  @Override
+  public Set<Integer> candidateAntecedentClusters(AntecedentBlockingIndex index, CorefCluster mentionCluster) {
+    // the antecedent must have the head, or the NE type, of the representative mention
+    Mention mention = mentionCluster.getRepresentativeMention();
+    Set<Integer> clusters = Generics.newHashSet();
+    index.addClustersWithHead(mention.headString, clusters);
+    if ( ! mention.nerString.equals("O")) {
+      index.addClustersWithNamedEntityType(mention.nerString, clusters);
+    }
+    return clusters;
+  }
 }
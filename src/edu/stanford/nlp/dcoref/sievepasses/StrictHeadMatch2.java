@@ -1,5 +1,11 @@
 package edu.stanford.nlp.dcoref.sievepasses;
 
+import java.util.Set;
+
+import edu.stanford.nlp.dcoref.AntecedentBlockingIndex;
+import edu.stanford.nlp.dcoref.CorefCluster;
+import edu.stanford.nlp.util.Generics;
+
 public class StrictHeadMatch2 extends DeterministicCorefSieve {
   public StrictHeadMatch2() {
     super();
@@ -7,4 +13,12 @@ public class StrictHeadMatch2 extends DeterministicCorefSieve {
     flags.USE_INCLUSION_HEADMATCH = true;
     flags.USE_WORDS_INCLUSION = true;
   }
+
+  @Override
+  public Set<Integer> candidateAntecedentClusters(AntecedentBlockingIndex index, CorefCluster mentionCluster) {
+    // a mention of the antecedent's cluster must have the head of the representative mention
+    Set<Integer> clusters = Generics.newHashSet();
+    index.addClustersWithHead(mentionCluster.getRepresentativeMention().headString, clusters);
+    return clusters;
+  }
 }
@@ -520,10 +520,11 @@ public class NERFeatureFactory<IN extends CoreLabel> extends FeatureFactory<IN>
   }
 
 
-  private Map<String,Collection<String>> wordToSubstrings = Generics.newHashMap();
+  // concurrent, as the features of several documents may be made at once
+  private Map<String,Collection<String>> wordToSubstrings = Generics.newConcurrentHashMap();
 
   public void clearMemory() {
-    wordToSubstrings = Generics.newHashMap();
+    wordToSubstrings = Generics.newConcurrentHashMap();
     lexicon = null;
   }
 
@@ -722,22 +723,34 @@ public class NERFeatureFactory<IN extends CoreLabel> extends FeatureFactory<IN>
     }
   }
 
-  private Set<Class<? extends GenericAnnotation<?>>> genericAnnotationKeys; // = null; //cache which keys are generic annotations so we don't have to do too many instanceof checks
+  private volatile Set<Class<? extends GenericAnnotation<?>>> genericAnnotationKeys; // = null; //cache which keys are generic annotations so we don't have to do too many instanceof checks
 
   @SuppressWarnings({"unchecked", "SuspiciousMethodCalls"})
   private void makeGenericKeyCache(CoreLabel c) {
-    genericAnnotationKeys = Generics.newHashSet();
+    // only set the field once the set is complete, for other threads
+    Set<Class<? extends GenericAnnotation<?>>> keys = Generics.newHashSet();
     for (Class<?> key : c.keySet()) {
       if (CoreLabel.genericValues.containsKey(key)) {
         Class<? extends GenericAnnotation<?>> genKey = (Class<? extends GenericAnnotation<?>>) key;
-        genericAnnotationKeys.add(genKey);
+        keys.add(genKey);
       }
     }
+    genericAnnotationKeys = keys;
   }
 
-  private Set<String> lastNames; // = null;
-  private Set<String> maleNames; // = null;
-  private Set<String> femaleNames; // = null;
+  // volatile, and only set once loaded, as the features of several documents may be made at once
+  private volatile Set<String> lastNames; // = null;
+  private volatile Set<String> maleNames; // = null;
+  private volatile Set<String> femaleNames; // = null;
+
+  private static Set<String> readNameList(String filename) {
+    Set<String> names = Generics.newHashSet();
+    for (String line : ObjectBank.getLineIterator(filename)) {
+      String[] cols = line.split("\\s+");
+      names.add(cols[0]);
+    }
+    return names;
+  }
 
   private final Pattern titlePattern = Pattern.compile("(?:Mr|Ms|Mrs|Dr|Miss|Sen|Judge|Sir)\\.?"); // todo: should make static final and add more titles
   private static final Pattern titlePattern2 = Pattern.compile("(?i:Mr|Mrs|Ms|Miss|Drs?|Profs?|Sens?|Reps?|Attys?|Lt|Col|Gen|Messrs|Govs?|Adm|Rev|Maj|Sgt|Cpl|Pvt|Capt|Ste?|Ave|Pres|Lieut|Hon|Brig|Co?mdr|Pfc|Spc|Supts?|Det|Mt|Ft|Adj|Adv|Asst|Assoc|Ens|Insp|Mlle|Mme|Msgr|Sfc)\\.?");
@@ -858,27 +871,17 @@ public class NERFeatureFactory<IN extends CoreLabel> extends FeatureFactory<IN>
 
       if (flags.checkNameList) {
         try {
+          Set<String> lastNames = this.lastNames;
           if (lastNames == null) {
-            lastNames = Generics.newHashSet();
-
-            for (String line : ObjectBank.getLineIterator(flags.lastNameList)) {
-              String[] cols = line.split("\\s+");
-              lastNames.add(cols[0]);
-            }
+            this.lastNames = lastNames = readNameList(flags.lastNameList);
           }
+          Set<String> maleNames = this.maleNames;
           if (maleNames == null) {
-            maleNames = Generics.newHashSet();
-            for (String line : ObjectBank.getLineIterator(flags.maleNameList)) {
-              String[] cols = line.split("\\s+");
-              maleNames.add(cols[0]);
-            }
+            this.maleNames = maleNames = readNameList(flags.maleNameList);
           }
+          Set<String> femaleNames = this.femaleNames;
           if (femaleNames == null) {
-            femaleNames = Generics.newHashSet();
-            for (String line : ObjectBank.getLineIterator(flags.femaleNameList)) {
-              String[] cols = line.split("\\s+");
-              femaleNames.add(cols[0]);
-            }
+            this.femaleNames = femaleNames = readNameList(flags.femaleNameList);
           }
 
           String name = cWord.toUpperCase();
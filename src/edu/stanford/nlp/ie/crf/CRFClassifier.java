@@ -29,6 +29,7 @@ package edu.stanford.nlp.ie.crf;
 import edu.stanford.nlp.ie.*;
 import java.io.ObjectOutputStream;
 import edu.stanford.nlp.io.IOUtils;
+import edu.stanford.nlp.io.RegExFileFilter;
 import edu.stanford.nlp.io.RuntimeIOException;
 import edu.stanford.nlp.ling.CoreAnnotations;
 import edu.stanford.nlp.ling.CoreLabel;
@@ -41,13 +42,26 @@ import edu.stanford.nlp.stats.ClassicCounter;
 import edu.stanford.nlp.stats.Counter;
 import edu.stanford.nlp.stats.TwoDimensionalCounter;
 import edu.stanford.nlp.util.*;
+import edu.stanford.nlp.util.concurrent.ThreadsafeProcessor;
 
 import java.io.*;
+import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.util.*;
 import java.util.regex.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
@@ -157,6 +171,8 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
    */
   public static final String DEFAULT_CLASSIFIER = "/edu/stanford/nlp/models/ner/english.all.3class.distsim.crf.ser.gz";
   private static final boolean VERBOSE = false;
+  // how long to wait for the shardWorkers processes to start listening, in seconds
+  private static final int SHARD_WORKER_CONNECT_TIMEOUT = 600;
 
   /**
    * Fields for grouping features
@@ -168,6 +184,9 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
   // Label dictionary for fast decoding
   LabelDictionary labelDictionary;
 
+  // made from flags.featureHashingBuckets when first needed
+  private transient FeatureHasher featureHasher;
+
   // List selftraindatums = new ArrayList();
 
   protected CRFClassifier() {
@@ -459,14 +478,20 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
           featureVals[j][k] = featureValList.get(k);
         }
         int m = 0;
+        int n = 0;
         for (String feature : cliqueFeatures) {
           int index = featureIndex.indexOf(feature);
           if (index >= 0) {
             data[j][k][m] = index;
+            if (featureVals[j][k] != null) {
+              // keep the values in line with the features which are kept
+              featureVals[j][k][m] = featureVals[j][k][n];
+            }
             m++;
           } else {
             // this is where we end up when we do feature threshold cutoffs
           }
+          n++;
         }
 
         if (m < data[j][k].length) {
@@ -620,13 +645,13 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
 
     int numDatums = 0;
 
-    for (List<IN> doc : documents) {
-      Triple<int[][][], int[], double[][][]> docTriple = documentToDataAndLabels(doc);
+    for (Iterator<Triple<int[][][], int[], double[][][]>> docTriples = processDocuments(documents, dataAndLabelsMaker); docTriples.hasNext(); ) {
+      Triple<int[][][], int[], double[][][]> docTriple = docTriples.next();
       data.add(docTriple.first());
       labels.add(docTriple.second());
-      if (flags.useEmbedding)
+      if (flags.useEmbedding || usesSignedFeatureHashing())
         featureVal.add(docTriple.third());
-      numDatums += doc.size();
+      numDatums += docTriple.second().length;
     }
 
     System.err.println("numClasses: " + classIndex.size() + ' ' + classIndex);
@@ -636,7 +661,7 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
     printFeatures();
 
     double[][][][] featureValArr = null;
-    if (flags.useEmbedding)
+    if (flags.useEmbedding || usesSignedFeatureHashing())
       featureValArr = featureVal.toArray(new double[data.size()][][][]);
 
 
@@ -658,10 +683,10 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
     int numDatums = 0;
 
     List<Triple<int[][][], int[], double[][][]>> docList = new ArrayList<Triple<int[][][], int[], double[][][]>>();
-    for (List<IN> doc : documents) {
-      Triple<int[][][], int[], double[][][]> docTriple = documentToDataAndLabels(doc);
+    for (Iterator<Triple<int[][][], int[], double[][][]>> docTriples = processDocuments(documents, dataAndLabelsMaker); docTriples.hasNext(); ) {
+      Triple<int[][][], int[], double[][][]> docTriple = docTriples.next();
       docList.add(docTriple);
-      numDatums += doc.size();
+      numDatums += docTriple.second().length;
     }
 
     System.err.println("numClasses: " + classIndex.size() + ' ' + classIndex);
@@ -671,6 +696,106 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
     return docList;
   }
 
+  private final ThreadsafeProcessor<List<IN>, Triple<int[][][], int[], double[][][]>> dataAndLabelsMaker =
+      new ThreadsafeProcessor<List<IN>, Triple<int[][][], int[], double[][][]>>() {
+        @Override
+        public Triple<int[][][], int[], double[][][]> process(List<IN> doc) {
+          return documentToDataAndLabels(doc);
+        }
+
+        @Override
+        public ThreadsafeProcessor<List<IN>, Triple<int[][][], int[], double[][][]>> newInstance() {
+          return this;
+        }
+      };
+
+  /**
+   * Makes the datum of each position of a document, in order.  If
+   * {@code useReverse} is set, the datums are those of the reversed document,
+   * but the document is left as it was.
+   */
+  private List<CRFDatum<List<String>, CRFLabel>> makeDatums(List<IN> document) {
+    if (flags.useReverse) {
+      Collections.reverse(document);
+    }
+    List<CRFDatum<List<String>, CRFLabel>> datums = new ArrayList<CRFDatum<List<String>, CRFLabel>>(document.size());
+    for (int j = 0, docSize = document.size(); j < docSize; j++) {
+      datums.add(makeDatum(document, j, featureFactories));
+    }
+    if (flags.useReverse) {
+      Collections.reverse(document);
+    }
+    return datums;
+  }
+
+  /**
+   * Returns the results of the processor on each document, in the order of
+   * the documents.  If {@code multiThreadFeatures} is more than 1, the
+   * documents are processed by that many threads, a few documents ahead of
+   * the caller, so the feature factories must be threadsafe; otherwise each
+   * document is processed in the calling thread when its result is asked for.
+   * The results must be read to the end, which shuts down the threads.
+   */
+  private <T> Iterator<T> processDocuments(Collection<List<IN>> documents, final ThreadsafeProcessor<List<IN>, T> processor) {
+    final Iterator<List<IN>> docs = documents.iterator();
+    if (flags.multiThreadFeatures <= 1) {
+      return new AbstractIterator<T>() {
+        @Override
+        public boolean hasNext() {
+          return docs.hasNext();
+        }
+
+        @Override
+        public T next() {
+          return processor.process(docs.next());
+        }
+      };
+    }
+
+    final int numThreads = flags.multiThreadFeatures;
+    final ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    final Deque<Future<T>> pending = new ArrayDeque<Future<T>>();
+    return new AbstractIterator<T>() {
+      @Override
+      public boolean hasNext() {
+        while (pending.size() < 2 * numThreads && docs.hasNext()) {
+          final List<IN> doc = docs.next();
+          pending.add(executor.submit(new Callable<T>() {
+            @Override
+            public T call() {
+              return processor.process(doc);
+            }
+          }));
+        }
+        if (pending.isEmpty()) {
+          executor.shutdown();
+          return false;
+        }
+        return true;
+      }
+
+      @Override
+      public T next() {
+        if ( ! hasNext()) {
+          throw new NoSuchElementException();
+        }
+        try {
+          return pending.removeFirst().get();
+        } catch (InterruptedException e) {
+          executor.shutdownNow();
+          throw new RuntimeInterruptedException(e);
+        } catch (ExecutionException e) {
+          executor.shutdownNow();
+          Throwable cause = e.getCause();
+          if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+          }
+          throw new RuntimeException(cause);
+        }
+      }
+    };
+  }
+
   protected void printFeatures() {
     if (flags.printFeatures == null) {
       return;
@@ -693,6 +818,30 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
     }
   }
 
+  /**
+   * Adds the answers of a document to the classIndex, and to the
+   * labelDictionary if there is one.
+   *
+   * @param wordCount The number of words read before this document
+   * @return The number of words read, including this document
+   */
+  private int addAnswers(List<IN> doc, int wordCount) {
+    // note: update to use addAll later
+    for (IN token : doc) {
+      wordCount++;
+      String ans = token.get(CoreAnnotations.AnswerAnnotation.class);
+      if (ans == null || ans.equals("")) {
+        throw new IllegalArgumentException("Word " + wordCount + " (\"" + token.get(CoreAnnotations.TextAnnotation.class) + "\") has a blank answer");
+      }
+      classIndex.add(ans);
+      if (labelDictionary != null) {
+        String observation = token.get(CoreAnnotations.TextAnnotation.class);
+        labelDictionary.increment(observation, ans);
+      }
+    }
+    return wordCount;
+  }
+
   /**
    * This routine builds the {@code labelIndices} which give the
    * empirically legal label sequences (of length (order) at most
@@ -739,28 +888,54 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
       this.labelDictionary = new LabelDictionary();
     }
 
-    for (List<IN> doc : ob) {
+    // with several threads, the datums of each document are made ahead of
+    // time, and they need the full classIndex, so the answers are all read
+    // first; otherwise they are read, and the datums made, one document at
+    // a time below
+    if (flags.multiThreadFeatures > 1) {
+      for (List<IN> doc : ob) {
+        if (flags.useReverse) {
+          Collections.reverse(doc);
+        }
+        wordCount = addAnswers(doc, wordCount);
+        if (flags.useReverse) {
+          Collections.reverse(doc);
+        }
+      }
+    }
+    ThreadsafeProcessor<List<IN>, Pair<List<IN>, List<CRFDatum<List<String>, CRFLabel>>>> datumMaker =
+        new ThreadsafeProcessor<List<IN>, Pair<List<IN>, List<CRFDatum<List<String>, CRFLabel>>>>() {
+          @Override
+          public Pair<List<IN>, List<CRFDatum<List<String>, CRFLabel>>> process(List<IN> doc) {
+            List<CRFDatum<List<String>, CRFLabel>> datums = (flags.multiThreadFeatures > 1) ? makeDatums(doc) : null;
+            return new Pair<List<IN>, List<CRFDatum<List<String>, CRFLabel>>>(doc, datums);
+          }
+
+          @Override
+          public ThreadsafeProcessor<List<IN>, Pair<List<IN>, List<CRFDatum<List<String>, CRFLabel>>>> newInstance() {
+            return this;
+          }
+        };
+
+    for (Iterator<Pair<List<IN>, List<CRFDatum<List<String>, CRFLabel>>>> docs = processDocuments(ob, datumMaker); docs.hasNext(); ) {
+      Pair<List<IN>, List<CRFDatum<List<String>, CRFLabel>>> docAndDatums = docs.next();
+      List<IN> doc = docAndDatums.first();
+      List<CRFDatum<List<String>, CRFLabel>> datums = docAndDatums.second();
       if (flags.useReverse) {
         Collections.reverse(doc);
       }
 
-      // create the full set of labels in classIndex
-      // note: update to use addAll later
-      for (IN token : doc) {
-        wordCount++;
-        String ans = token.get(CoreAnnotations.AnswerAnnotation.class);
-        if (ans == null || ans.equals("")) {
-          throw new IllegalArgumentException("Word " + wordCount + " (\"" + token.get(CoreAnnotations.TextAnnotation.class) + "\") has a blank answer");
-        }
-        classIndex.add(ans);
-        if (labelDictionary != null) {
-          String observation = token.get(CoreAnnotations.TextAnnotation.class);
-          labelDictionary.increment(observation, ans);
-        }
+      if (datums == null) {
+        wordCount = addAnswers(doc, wordCount);
       }
 
       for (int j = 0, docSize = doc.size(); j < docSize; j++) {
-        CRFDatum<List<String>, CRFLabel> d = makeDatum(doc, j, featureFactories);
+        CRFDatum<List<String>, CRFLabel> d = (datums != null) ? datums.get(j) : makeDatum(doc, j, featureFactories);
+        for (int label : d.label().getLabel()) {
+          if (label < 0) {
+            throw new IllegalStateException("Datum " + j + " of a document has an answer missing from the classIndex");
+          }
+        }
         labelIndex.add(d.label());
 
         List<List<String>> features = d.asFeatures();
@@ -993,6 +1168,9 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
           }
         }
       }
+      if (flags.featureHashingBuckets > 0) {
+        featureValArr = hashCliqueFeatures(featuresC, featureValArr, i);
+      }
       features.add(featuresC);
       featureVals.add(featureValArr);
     }
@@ -1011,6 +1189,43 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
     return d;
   }
 
+  private FeatureHasher featureHasher() {
+    if (featureHasher == null) {
+      featureHasher = new FeatureHasher(flags.featureHashingBuckets, flags.signedFeatureHashing);
+    }
+    return featureHasher;
+  }
+
+  /** True if the node features are hashed with signs, which are kept as their values */
+  private boolean usesSignedFeatureHashing() {
+    return flags.featureHashingBuckets > 0 && flags.signedFeatureHashing;
+  }
+
+  /**
+   * Replaces the features of a clique by the names of their buckets, which
+   * end with the clique's number, so that features of different cliques
+   * never share a bucket.  With signed hashing, the values of the node
+   * features (those of clique 0, the only ones whose values are used) are
+   * multiplied by their signs, and returned; otherwise the values are
+   * returned as they were.
+   */
+  private double[] hashCliqueFeatures(List<String> features, double[] values, int clique) {
+    FeatureHasher hasher = featureHasher();
+    boolean signed = hasher.isSigned() && clique == 0;
+    if (signed && values == null) {
+      values = new double[features.size()];
+      Arrays.fill(values, 1.0);
+    }
+    for (int m = 0, size = features.size(); m < size; m++) {
+      String feature = features.get(m);
+      if (signed) {
+        values[m] *= hasher.sign(feature);
+      }
+      features.set(m, hasher.bucketName(feature) + '|' + clique);
+    }
+    return values;
+  }
+
   private double[] makeDatumUsingEmbedding(List<IN> info, int loc, List<FeatureFactory<IN>> featureFactories, PaddedList<IN> pInfo, List<String> featuresC, List<Clique> windowCliques) {
     double[] featureValArr;
     List<double[]> embeddingList = new ArrayList<double[]>();
@@ -1581,9 +1796,26 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
     Timing timer = new Timing();
     timer.start();
 
+    checkShardedTraining();
+
+    Triple<int[][][][], int[][], double[][][][]> cachedData = null;
+    if (flags.trainDataCacheFile != null && new File(flags.trainDataCacheFile).exists()) {
+      cachedData = loadTrainingData(flags.trainDataCacheFile);
+    }
+    // with a cache, the documents are only needed to evaluate on them,
+    // export their features or make their data again after pruning
+    boolean needDocs = cachedData == null || flags.evaluateTrain || flags.exportFeatures != null ||
+        flags.numTimesPruneFeatures > 0;
+
     Collection<List<IN>> docs = new ArrayList<List<IN>>();
-    for (List<IN> doc : objectBankWrapper) {
-      docs.add(doc);
+    if (flags.shardWorkers != null) {
+      // the documents are only read, one at a time, to make the indices;
+      // their data is made and kept by the shard workers
+      docs = objectBankWrapper;
+    } else if (needDocs) {
+      for (List<IN> doc : objectBankWrapper) {
+        docs.add(doc);
+      }
     }
 
     if (flags.numOfSlices > 0) {
@@ -1597,12 +1829,18 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
       docs = docsToShuffle.subList(0, cutOff);
     }
 
-    Collection<List<IN>> totalDocs = loadAuxiliaryData(docs, readerAndWriter);
+    long elapsedMs;
+    if (cachedData == null) {
+      Collection<List<IN>> totalDocs = loadAuxiliaryData(docs, readerAndWriter);
 
-    makeAnswerArraysAndTagIndex(totalDocs);
+      makeAnswerArraysAndTagIndex(totalDocs);
 
-    long elapsedMs = timer.stop();
-    System.err.println("Time to convert docs to feature indices: " + Timing.toSecondsString(elapsedMs) + " seconds");
+      elapsedMs = timer.stop();
+      System.err.println("Time to convert docs to feature indices: " + Timing.toSecondsString(elapsedMs) + " seconds");
+    } else {
+      elapsedMs = timer.stop();
+      System.err.println("Time to read training data from " + flags.trainDataCacheFile + ": " + Timing.toSecondsString(elapsedMs) + " seconds");
+    }
 
     if (flags.serializeClassIndexTo != null) {
       timer.start();
@@ -1616,10 +1854,22 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
     }
 
     for (int i = 0; i <= flags.numTimesPruneFeatures; i++) {
-      timer.start();
-      Triple<int[][][][], int[][], double[][][][]> dataAndLabelsAndFeatureVals = documentsToDataAndLabels(docs);
-      elapsedMs = timer.stop();
-      System.err.println("Time to convert docs to data/labels: " + Timing.toSecondsString(elapsedMs) + " seconds");
+      Triple<int[][][][], int[][], double[][][][]> dataAndLabelsAndFeatureVals;
+      if (i == 0 && cachedData != null) {
+        dataAndLabelsAndFeatureVals = cachedData;
+        cachedData = null;
+      } else if (flags.shardWorkers != null) {
+        // the data is made and kept by the shard workers, from their own training files
+        dataAndLabelsAndFeatureVals = new Triple<int[][][][], int[][], double[][][][]>(new int[0][][][], new int[0][], new double[0][][][]);
+      } else {
+        timer.start();
+        dataAndLabelsAndFeatureVals = documentsToDataAndLabels(docs);
+        elapsedMs = timer.stop();
+        System.err.println("Time to convert docs to data/labels: " + Timing.toSecondsString(elapsedMs) + " seconds");
+        if (i == 0 && flags.trainDataCacheFile != null) {
+          saveTrainingData(flags.trainDataCacheFile, dataAndLabelsAndFeatureVals);
+        }
+      }
 
       Evaluator[] evaluators = null;
       if (flags.evaluateIters > 0 || flags.terminateOnEvalImprovement) {
@@ -1754,6 +2004,168 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
     }
   }
 
+  /**
+   * The flags which only change how the weights are optimized, so that a
+   * cache of the training data can be used again when they change.  Every
+   * other serialized flag may change the features.
+   */
+  private static final Set<String> OPTIMIZATION_FLAGS = new HashSet<String>(Arrays.asList(
+      "tolerance", "useQN", "QNsize", "QNsize2", "maxIterations", "priorType", "sigma", "epsilon",
+      "useSGD", "useSGDtoQN", "SGDPasses", "QNPasses", "initialGain", "stochasticBatchSize",
+      "useStochasticQN", "useScaledSGD", "useInPlaceSGD", "useOWLQN", "useAdaGradFOBOS", "l1reg",
+      "verboseMode"));
+
+  /**
+   * Describes the training data, so that a cache of it is not used for other
+   * data: the training files with their lengths and modification times, and
+   * a digest of the serialized flags other than the optimization ones.
+   */
+  private String trainingDataDescription() {
+    List<File> files = new ArrayList<File>();
+    if (flags.trainFiles != null) {
+      File[] matching = new File(flags.baseTrainDir).listFiles(new RegExFileFilter(Pattern.compile(flags.trainFiles)));
+      if (matching != null) {
+        files.addAll(Arrays.asList(matching));
+      }
+    } else if (flags.trainFileList != null) {
+      for (String file : flags.trainFileList.split(",")) {
+        files.add(new File(file));
+      }
+    } else if (flags.trainFile != null) {
+      files.add(new File(flags.trainFile));
+    }
+    Collections.sort(files);
+    StringBuilder description = new StringBuilder();
+    for (File file : files) {
+      description.append(file.getPath()).append(" (").append(file.length()).append(" bytes, modified ")
+          .append(file.lastModified()).append(") ");
+    }
+    description.append("numOfSlices=").append(flags.numOfSlices).append(" flags=").append(featureFlagsDigest());
+    return description.toString();
+  }
+
+  /** A digest of the values of the serialized flags other than the {@link #OPTIMIZATION_FLAGS}. */
+  private String featureFlagsDigest() {
+    List<Field> fields = new ArrayList<Field>(Arrays.asList(SeqClassifierFlags.class.getFields()));
+    Collections.sort(fields, new Comparator<Field>() {
+      @Override
+      public int compare(Field f1, Field f2) {
+        return f1.getName().compareTo(f2.getName());
+      }
+    });
+    StringBuilder values = new StringBuilder();
+    try {
+      for (Field field : fields) {
+        int modifiers = field.getModifiers();
+        if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) ||
+            OPTIMIZATION_FLAGS.contains(field.getName())) {
+          continue;
+        }
+        values.append(field.getName()).append('=').append(Arrays.deepToString(new Object[] { field.get(flags) })).append('\n');
+      }
+      byte[] digest = MessageDigest.getInstance("SHA-256").digest(values.toString().getBytes("UTF-8"));
+      StringBuilder hex = new StringBuilder();
+      for (byte b : digest) {
+        hex.append(String.format("%02x", b));
+      }
+      return hex.toString();
+    } catch (IllegalAccessException e) {
+      throw new RuntimeException(e);
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    } catch (UnsupportedEncodingException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Saves everything which {@link #makeAnswerArraysAndTagIndex} makes from
+   * the training documents, together with the data and labels made from
+   * them, so that training can be run again (for instance with different
+   * regularization) without reading the documents and extracting their
+   * features again.  The cache is made again, rather than used, when the
+   * training files or any flag other than the optimization ones change.
+   */
+  protected void saveTrainingData(String filename, Triple<int[][][][], int[][], double[][][][]> dataAndLabelsAndFeatureVals) {
+    System.err.print("Saving training data to " + filename + " ...");
+    ObjectOutputStream oos = null;
+    try {
+      oos = IOUtils.writeStreamFromString(filename);
+      oos.writeObject(trainingDataDescription());
+      writeTrainingIndices(oos);
+      oos.writeObject(dataAndLabelsAndFeatureVals.first());
+      oos.writeObject(dataAndLabelsAndFeatureVals.second());
+      oos.writeObject(dataAndLabelsAndFeatureVals.third());
+      System.err.println(" done.");
+    } catch (IOException e) {
+      throw new RuntimeIOException("Could not save training data to " + filename, e);
+    } finally {
+      IOUtils.closeIgnoringExceptions(oos);
+    }
+  }
+
+  /**
+   * Reads training data saved by {@link #saveTrainingData}, setting the
+   * indices it holds, and returns the data and labels.  Returns null if the
+   * cache was made from other training files.
+   */
+  protected Triple<int[][][][], int[][], double[][][][]> loadTrainingData(String filename) {
+    System.err.print("Reading training data from " + filename + " ...");
+    ObjectInputStream ois = null;
+    try {
+      ois = IOUtils.readStreamFromString(filename);
+      String description = (String) ois.readObject();
+      if ( ! description.equals(trainingDataDescription())) {
+        System.err.println(" it was made from other data (" + description + "), so it will be made again.");
+        return null;
+      }
+      readTrainingIndices(ois);
+      int[][][][] data = (int[][][][]) ois.readObject();
+      int[][] labels = (int[][]) ois.readObject();
+      double[][][][] featureVals = (double[][][][]) ois.readObject();
+      System.err.println(" done [" + data.length + " documents, " + featureIndex.size() + " features].");
+      return new Triple<int[][][][], int[][], double[][][][]>(data, labels, featureVals);
+    } catch (IOException e) {
+      throw new RuntimeIOException("Could not read training data from " + filename, e);
+    } catch (ClassNotFoundException e) {
+      throw new RuntimeException("Could not read training data from " + filename, e);
+    } finally {
+      IOUtils.closeIgnoringExceptions(ois);
+    }
+  }
+
+  /** Writes everything which {@link #makeAnswerArraysAndTagIndex} makes from the training documents. */
+  private void writeTrainingIndices(ObjectOutputStream oos) throws IOException {
+    oos.writeObject(labelIndices);
+    oos.writeObject(classIndex);
+    oos.writeObject(featureIndex);
+    oos.writeObject(map);
+    oos.writeObject(nodeFeatureIndicesMap);
+    oos.writeObject(edgeFeatureIndicesMap);
+    oos.writeObject(templateGroupIndex);
+    oos.writeObject(featureIndexToTemplateIndex);
+    oos.writeObject(labelDictionary);
+    oos.writeObject(knownLCWords);
+  }
+
+  /** Reads and sets the indices written by {@link #writeTrainingIndices}. */
+  @SuppressWarnings("unchecked")
+  private void readTrainingIndices(ObjectInputStream ois) throws IOException, ClassNotFoundException {
+    labelIndices = (List<Index<CRFLabel>>) ois.readObject();
+    classIndex = (Index<String>) ois.readObject();
+    featureIndex = (Index<String>) ois.readObject();
+    map = (int[]) ois.readObject();
+    nodeFeatureIndicesMap = (Index<Integer>) ois.readObject();
+    edgeFeatureIndicesMap = (Index<Integer>) ois.readObject();
+    templateGroupIndex = (Index<String>) ois.readObject();
+    featureIndexToTemplateIndex = (Map<Integer, Integer>) ois.readObject();
+    labelDictionary = (LabelDictionary) ois.readObject();
+    Set<String> lcWords = (Set<String>) ois.readObject();
+    if (flags.useKnownLCWords) {
+      knownLCWords.addAll(lcWords);
+    }
+  }
+
   public double[][] to2D(double[] weights, List<Index<CRFLabel>> labelIndices, int[] map) {
     double[][] newWeights = new double[map.length][];
     int index = 0;
@@ -1803,13 +2215,175 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
   }
 
   protected CRFLogConditionalObjectiveFunction getObjectiveFunction(int[][][][] data, int[][] labels) {
-    return new CRFLogConditionalObjectiveFunction(data, labels, windowSize, classIndex,
-      labelIndices, map, flags.priorType, flags.backgroundSymbol, flags.sigma, null, flags.multiThreadGrad);
+    return getObjectiveFunction(data, labels, null);
+  }
+
+  /**
+   * Makes the objective function, with the values of the node features if
+   * featureVals is not null (as with signedFeatureHashing, where they are the
+   * signs of the hashed features).
+   */
+  protected CRFLogConditionalObjectiveFunction getObjectiveFunction(int[][][][] data, int[][] labels, double[][][][] featureVals) {
+    CRFLogConditionalObjectiveFunction func = new CRFLogConditionalObjectiveFunction(data, labels, windowSize, classIndex,
+      labelIndices, map, flags.priorType, flags.backgroundSymbol, flags.sigma, featureVals, flags.multiThreadGrad);
+    func.setFloatPrecision(flags.useFloatObjective);
+    return func;
+  }
+
+  /**
+   * Checks that the flags for training on shards of the data, trainShards
+   * or shardWorkers, are not given with flags they cannot be used with.
+   * The sharded function is a batch function, so it can only be minimized
+   * with useQN or l1reg (OWL-QN), not the stochastic minimizers, and the
+   * feature grouping, which only the stochastic minimizers use, is not made
+   * for it.  With shardWorkers, this process does not hold the data, so it
+   * cannot prune features, evaluate on the training data, take slices of it
+   * or cache it.
+   */
+  private void checkShardedTraining() {
+    if (flags.trainShards <= 1 && flags.shardWorkers == null) {
+      return;
+    }
+    if ( ! flags.useQN && (flags.useInPlaceSGD || flags.useHogwildSGD || flags.useAdaGradFOBOS || flags.useSGDtoQN ||
+        flags.useSMD || flags.useSGD || flags.useScaledSGD)) {
+      throw new IllegalArgumentException("trainShards and shardWorkers can only be used with useQN or l1reg, not with a stochastic minimizer");
+    }
+    if (flags.groupByOutputClass || flags.groupByFeatureTemplate) {
+      throw new IllegalArgumentException("trainShards and shardWorkers cannot be used with groupByOutputClass or groupByFeatureTemplate");
+    }
+    if (flags.shardWorkers != null) {
+      if (flags.numTimesPruneFeatures > 0) {
+        throw new IllegalArgumentException("shardWorkers cannot be used with numTimesPruneFeatures, as each worker serves one training run");
+      }
+      if (flags.evaluateTrain || flags.numOfSlices > 0 || flags.trainDataCacheFile != null) {
+        throw new IllegalArgumentException("shardWorkers cannot be used with evaluateTrain, numOfSlices or trainDataCacheFile, as the workers hold the training data");
+      }
+      if (flags.shardSecretFile == null) {
+        throw new IllegalArgumentException("shardWorkers needs a shardSecretFile, holding the secret shared with the workers");
+      }
+    }
+  }
+
+  /** The secret shared by a CRFClassifier run with shardWorkers and its workers, read from shardSecretFile. */
+  private byte[] shardSecret() {
+    if (flags.shardSecretFile == null) {
+      throw new IllegalArgumentException("shardWorkers and shardWorkerPort need a shardSecretFile, holding the secret which the workers and the process they serve share");
+    }
+    try {
+      return Files.readAllBytes(Paths.get(flags.shardSecretFile));
+    } catch (IOException e) {
+      throw new RuntimeIOException("Could not read the shard secret from " + flags.shardSecretFile, e);
+    }
+  }
+
+  /**
+   * Makes the objective function as the sum of shards: the first has the
+   * prior (given, with no data), and the others have either the data split
+   * into trainShards parts, or the data of the shardWorkers processes.
+   */
+  protected ShardedDiffFunction getShardedObjectiveFunction(CRFLogConditionalObjectiveFunction priorFunc, int[][][][] data, int[][] labels,
+                                                            double[][][][] featureVals) {
+    List<DiffFunction> shards = new ArrayList<DiffFunction>();
+    shards.add(priorFunc);
+    if (flags.shardWorkers != null) {
+      byte[] indices = trainingIndicesBytes();
+      byte[] secret = shardSecret();
+      for (String worker : flags.shardWorkers.split(",")) {
+        System.err.println("Connecting to shard worker " + worker);
+        shards.add(new RemoteDiffFunction(worker, indices, secret, SHARD_WORKER_CONNECT_TIMEOUT));
+      }
+    } else {
+      for (int shard = 0; shard < flags.trainShards; shard++) {
+        int start = (int) ((long) data.length * shard / flags.trainShards);
+        int end = (int) ((long) data.length * (shard + 1) / flags.trainShards);
+        double[][][][] shardFeatureVals = usesSignedFeatureHashing() ? Arrays.copyOfRange(featureVals, start, end) : null;
+        CRFLogConditionalObjectiveFunction shardFunc = new CRFLogConditionalObjectiveFunction(Arrays.copyOfRange(data, start, end),
+            Arrays.copyOfRange(labels, start, end), windowSize, classIndex, labelIndices, map, "NONE", flags.backgroundSymbol,
+            flags.sigma, shardFeatureVals, flags.multiThreadGrad);
+        shardFunc.setFloatPrecision(flags.useFloatObjective);
+        shards.add(shardFunc);
+      }
+    }
+    System.err.println("Training on " + (shards.size() - 1) + " shards");
+    return new ShardedDiffFunction(shards);
+  }
+
+  /** The indices made from the training documents, for the shard workers to make their data with. */
+  private byte[] trainingIndicesBytes() {
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      ObjectOutputStream oos = new ObjectOutputStream(bytes);
+      writeTrainingIndices(oos);
+      oos.close();
+      return bytes.toByteArray();
+    } catch (IOException e) {
+      throw new RuntimeIOException(e);
+    }
+  }
+
+  /**
+   * Runs this process as a shard worker for a CRFClassifier trained with
+   * shardWorkers: waits for it to connect on the port (on the address given by
+   * shardWorkerAddress, or else the loopback address) and, once it has shown
+   * that it knows the secret in shardSecretFile, to send the indices
+   * made from all the training documents, then makes the data of this
+   * process's training files with them, and computes the value and gradient
+   * of the objective function on that data for each step of the training.
+   * Since the indices include all the knownLCWords, the word shapes of
+   * this process's documents are made knowing all of them, as at test time,
+   * rather than only those of the documents read before, as in training in
+   * one process.
+   */
+  public void serveTrainingShard(int port) throws IOException {
+    InetAddress address = (flags.shardWorkerAddress == null) ? InetAddress.getLoopbackAddress() :
+        InetAddress.getByName(flags.shardWorkerAddress);
+    DiffFunctionServer server = new DiffFunctionServer(address, port, shardSecret()) {
+      @Override
+      protected DiffFunction makeFunction(byte[] setup) {
+        try {
+          readTrainingIndices(new ObjectInputStream(new ByteArrayInputStream(setup)));
+        } catch (IOException e) {
+          throw new RuntimeIOException("Could not read the indices of the training data", e);
+        } catch (ClassNotFoundException e) {
+          throw new RuntimeException("Could not read the indices of the training data", e);
+        }
+        Collection<List<IN>> docs;
+        if (flags.trainFiles != null) {
+          docs = makeObjectBankFromFiles(flags.baseTrainDir, flags.trainFiles, defaultReaderAndWriter());
+        } else if (flags.trainFileList != null) {
+          docs = makeObjectBankFromFiles(flags.trainFileList.split(","), defaultReaderAndWriter());
+        } else {
+          docs = makeObjectBankFromFile(flags.trainFile, defaultReaderAndWriter());
+        }
+        Triple<int[][][][], int[][], double[][][][]> dataAndLabels = documentsToDataAndLabels(docs);
+        System.err.println("Made the data of " + dataAndLabels.first().length + " documents");
+        CRFLogConditionalObjectiveFunction func = new CRFLogConditionalObjectiveFunction(dataAndLabels.first(), dataAndLabels.second(),
+            windowSize, classIndex, labelIndices, map, "NONE", flags.backgroundSymbol, flags.sigma,
+            usesSignedFeatureHashing() ? dataAndLabels.third() : null, flags.multiThreadGrad);
+        func.setFloatPrecision(flags.useFloatObjective);
+        return func;
+      }
+    };
+    server.serve();
   }
 
   protected double[] trainWeights(int[][][][] data, int[][] labels, Evaluator[] evaluators, int pruneFeatureItr, double[][][][] featureVals) {
 
-    CRFLogConditionalObjectiveFunction func = getObjectiveFunction(data, labels);
+    CRFLogConditionalObjectiveFunction func;
+    ShardedDiffFunction shardedFunc = null;
+    if (flags.trainShards > 1 || flags.shardWorkers != null) {
+      checkShardedTraining();
+      // func has no data, only the prior, which is one shard of the sharded function
+      func = new CRFLogConditionalObjectiveFunction(new int[0][][][], new int[0][], windowSize, classIndex,
+          labelIndices, map, flags.priorType, flags.backgroundSymbol, flags.sigma, null, 1);
+      shardedFunc = getShardedObjectiveFunction(func, data, labels, featureVals);
+    } else {
+      if (usesSignedFeatureHashing()) {
+        func = getObjectiveFunction(data, labels, featureVals);
+      } else {
+        func = getObjectiveFunction(data, labels);
+      }
+    }
     cliquePotentialFunctionHelper = func;
 
     // create feature grouping
@@ -1917,6 +2491,13 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
         throw new RuntimeException("gradient check failed");
       }
     }
+    if (shardedFunc != null) {
+      try {
+        return minimizer.minimize(shardedFunc, flags.tolerance, initialWeights);
+      } finally {
+        shardedFunc.close();
+      }
+    }
     return minimizer.minimize(func, flags.tolerance, initialWeights);
   }
 
@@ -1963,6 +2544,9 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
       } else {
         minimizer = sgdMinimizer;
       }
+    } else if (flags.useHogwildSGD) {
+      minimizer = new HogwildSGDMinimizer<DiffFunction>(flags.sigma, flags.SGDPasses, flags.stochasticBatchSize,
+          flags.hogwildThreads, flags.hogwildDeterministic);
     } else if (flags.useAdaGradFOBOS) {
       double lambda = 0.5 / (flags.sigma * flags.sigma);
       minimizer = new SGDWithAdaGradAndFOBOS<DiffFunction>(
@@ -2565,7 +3149,13 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
     try {
       oos.writeObject(labelIndices);
       oos.writeObject(classIndex);
-      oos.writeObject(featureIndex);
+      if (flags.mappedFeatureIndex != null && ! (featureIndex instanceof MappedStringIndex)) {
+        // only the path of the file is written, and the index is mapped from it on loading
+        System.err.print("writing the feature index to " + flags.mappedFeatureIndex + "...");
+        oos.writeObject(MappedStringIndex.write(featureIndex, flags.mappedFeatureIndex));
+      } else {
+        oos.writeObject(featureIndex);
+      }
       oos.writeObject(flags);
       if (flags.useEmbedding) {
         oos.writeObject(embeddings);
@@ -2983,6 +3573,11 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
       crf.classIndex = loadClassIndexFromFile(crf.flags.loadClassIndexFrom);
     }
 
+    if (crf.flags.shardWorkerPort > 0) {
+      crf.serveTrainingShard(crf.flags.shardWorkerPort);
+      return;
+    }
+
     if (loadPath != null) {
       crf.loadClassifierNoExceptions(loadPath, props);
     } else if (loadTextPath != null) {
@@ -610,6 +610,90 @@ public class CRFCliqueTree<E> implements ListeningSequenceModel {
     return new CRFCliqueTree<E>(factorTables, classIndex, backgroundSymbol);
   }
 
+  /**
+   * Like {@link #getCalibratedCliqueTree(int[][][], List, int, Index, Object, CliquePotentialFunction, double[][][])}
+   * with a LinearCliquePotentialFunction, but for weights flattened into one
+   * array of floats, in which the weights of feature f for each labeling of
+   * its clique start at weightOffsets[f].
+   * @return a new CRFCliqueTree for the weights on the data
+   */
+  public static <E> CRFCliqueTree<E> getCalibratedCliqueTree(float[] weights, int[] weightOffsets, int[][][] data,
+      List<Index<CRFLabel>> labelIndices, int numClasses, Index<E> classIndex, E backgroundSymbol, double[][][] featureVals) {
+
+    FactorTable[] factorTables = new FactorTable[data.length];
+    FactorTable[] messages = new FactorTable[data.length - 1];
+    int maxLabelIndexSize = 0;
+    for (Index<CRFLabel> labelIndex : labelIndices) {
+      maxLabelIndexSize = Math.max(maxLabelIndexSize, labelIndex.size());
+    }
+    float[] potentials = new float[maxLabelIndexSize];
+
+    for (int i = 0; i < data.length; i++) {
+      double[][] featureValByCliqueSize = null;
+      if (featureVals != null)
+        featureValByCliqueSize = featureVals[i];
+      factorTables[i] = getFactorTable(weights, weightOffsets, data[i], labelIndices, numClasses, featureValByCliqueSize, potentials);
+
+      if (i > 0) {
+        messages[i - 1] = factorTables[i - 1].sumOutFront();
+        factorTables[i].multiplyInFront(messages[i - 1]);
+      }
+    }
+
+    for (int i = factorTables.length - 2; i >= 0; i--) {
+      FactorTable summedOut = factorTables[i + 1].sumOutEnd();
+      summedOut.divideBy(messages[i]);
+      factorTables[i].multiplyInEnd(summedOut);
+    }
+
+    return new CRFCliqueTree<E>(factorTables, classIndex, backgroundSymbol);
+  }
+
+  /**
+   * The potentials of each clique are summed one feature at a time, over
+   * all the labelings, reading the feature's weights in order, which the
+   * JIT can vectorize.
+   *
+   * @param potentials Scratch space, as long as the largest label index
+   */
+  private static FactorTable getFactorTable(float[] weights, int[] weightOffsets, int[][] data,
+      List<Index<CRFLabel>> labelIndices, int numClasses, double[][] featureValByCliqueSize, float[] potentials) {
+    FactorTable factorTable = null;
+
+    for (int j = 0, sz = labelIndices.size(); j < sz; j++) {
+      Index<CRFLabel> labelIndex = labelIndices.get(j);
+      int liSize = labelIndex.size();
+      FactorTable ft = new FactorTable(numClasses, j + 1);
+      double[] featureVal = null;
+      if (featureValByCliqueSize != null)
+        featureVal = featureValByCliqueSize[j];
+
+      Arrays.fill(potentials, 0, liSize, 0.0f);
+      for (int m = 0; m < data[j].length; m++) {
+        int offset = weightOffsets[data[j][m]];
+        if (featureVal != null) {
+          float fVal = (float) featureVal[m];
+          for (int k = 0; k < liSize; k++) {
+            potentials[k] += weights[offset + k] * fVal;
+          }
+        } else {
+          for (int k = 0; k < liSize; k++) {
+            potentials[k] += weights[offset + k];
+          }
+        }
+      }
+      for (int k = 0; k < liSize; k++) {
+        ft.setValue(labelIndex.get(k).getLabel(), potentials[k]);
+      }
+      if (j > 0) {
+        ft.multiplyInEnd(factorTable);
+      }
+      factorTable = ft;
+    }
+
+    return factorTable;
+  }
+
   private static FactorTable getFactorTable(double[] weights, double wScale, int[][] weightIndices, int[][] data,
       List<Index<CRFLabel>> labelIndices, int numClasses) {
 
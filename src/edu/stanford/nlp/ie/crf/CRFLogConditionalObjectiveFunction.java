@@ -2,6 +2,7 @@ package edu.stanford.nlp.ie.crf;
 
 import edu.stanford.nlp.math.ArrayMath;
 import edu.stanford.nlp.optimization.AbstractStochasticCachingDiffUpdateFunction;
+import edu.stanford.nlp.optimization.ConcurrentStochasticUpdateFunction;
 import edu.stanford.nlp.optimization.HasFeatureGrouping;
 import edu.stanford.nlp.util.concurrent.*;
 import edu.stanford.nlp.util.Index;
@@ -14,7 +15,7 @@ import java.util.*;
  *         Mengqiu Wang
  */
 
-public class CRFLogConditionalObjectiveFunction extends AbstractStochasticCachingDiffUpdateFunction implements HasCliquePotentialFunction, HasFeatureGrouping {
+public class CRFLogConditionalObjectiveFunction extends AbstractStochasticCachingDiffUpdateFunction implements HasCliquePotentialFunction, HasFeatureGrouping, ConcurrentStochasticUpdateFunction {
 
   public static final int NO_PRIOR = 0;
   public static final int QUADRATIC_PRIOR = 1;
@@ -51,6 +52,14 @@ public class CRFLogConditionalObjectiveFunction extends AbstractStochasticCachin
   protected double[][][][] featureVal;  // featureVal[docIndex][tokenIndex][][]
   protected int[][] labels;    // labels[docIndex][tokenIndex]
   protected final int domainDimension;
+  private final int[] weightOffsets; // weightOffsets[feature] is where its weights start in the 1D weights
+  // for setFloatPrecision: the weights, and each thread's expected counts, flattened like the 1D weights;
+  // the counts of each document are summed in floatDocE, then added to the thread's sum in floatE,
+  // which is in double so that the counts of frequent features do not lose precision
+  private boolean floatPrecision = false;
+  private float[] floatWeights;
+  private float[][] floatDocE;
+  private double[][] floatE;
   // protected double[][] eHat4Update, e4Update;
 
   protected int[][] weightIndices;
@@ -136,9 +145,11 @@ public class CRFLogConditionalObjectiveFunction extends AbstractStochasticCachin
     weights = empty2D();
     if (calcEmpirical)
       empiricalCounts(Ehat);
+    weightOffsets = new int[map.length];
     int myDomainDimension = 0;
-    for (int dim : map) {
-      myDomainDimension += labelIndices.get(dim).size();
+    for (int i = 0; i < map.length; i++) {
+      weightOffsets[i] = myDomainDimension;
+      myDomainDimension += labelIndices.get(map[i]).size();
     }
     domainDimension = myDomainDimension;
   }
@@ -231,25 +242,89 @@ public class CRFLogConditionalObjectiveFunction extends AbstractStochasticCachin
 
   /** Compute the expected counts for this document, which we will need to compute the derivative. */
   protected void documentExpectedCounts(double[][] E, int[][][] docData, double[][][] featureVal3DArr, CRFCliqueTree cliqueTree) {
+    double[] probs = new double[maxLabelIndexSize()];
     // iterate over the positions in this document
     for (int i = 0; i < docData.length; i++) {
       // for each possible clique at this position
       for (int j = 0; j < docData[i].length; j++) {
         Index<CRFLabel> labelIndex = labelIndices.get(j);
+        int liSize = labelIndex.size();
         // for each possible labeling for that clique
-        for (int k = 0, liSize = labelIndex.size(); k < liSize; k++) {
+        for (int k = 0; k < liSize; k++) {
           int[] label = labelIndex.get(k).getLabel();
-          double p = cliqueTree.prob(i, label); // probability of these labels occurring in this clique with these features
-          for (int n = 0; n < docData[i][j].length; n++) {
-            double fVal = 1.0;
-            if (j == 0 && featureVal3DArr != null) { // j == 0 because only node features gets feature values
-              fVal = featureVal3DArr[i][j][n];
-            }
-            E[docData[i][j][n]][k] += p * fVal;
+          probs[k] = cliqueTree.prob(i, label); // probability of these labels occurring in this clique with these features
+        }
+        // add them to each feature's counts in turn, in order of labeling
+        for (int n = 0; n < docData[i][j].length; n++) {
+          double fVal = 1.0;
+          if (j == 0 && featureVal3DArr != null) { // j == 0 because only node features gets feature values
+            fVal = featureVal3DArr[i][j][n];
+          }
+          double[] featureE = E[docData[i][j][n]];
+          for (int k = 0; k < liSize; k++) {
+            featureE[k] += probs[k] * fVal;
+          }
+        }
+      }
+    }
+  }
+
+  private int maxLabelIndexSize() {
+    int max = 0;
+    for (Index<CRFLabel> labelIndex : labelIndices) {
+      max = Math.max(max, labelIndex.size());
+    }
+    return max;
+  }
+
+  /**
+   * As expectedCountsAndValueForADoc, but with the float weights: the
+   * expected counts of the document are summed in docE, which must be all
+   * zero, then added to the flattened array partE, and docE is zeroed again.
+   */
+  private double floatExpectedCountsAndValueForADoc(double[] partE, float[] docE, int docIndex) {
+    int[][][] docData = data[docIndex];
+    double[][][] featureVal3DArr = null;
+    if (featureVal != null) {
+      featureVal3DArr = featureVal[docIndex];
+    }
+    CRFCliqueTree cliqueTree = CRFCliqueTree.getCalibratedCliqueTree(floatWeights, weightOffsets, docData, labelIndices, numClasses, classIndex, backgroundSymbol, featureVal3DArr);
+    double prob = documentLogProbability(docData, docIndex, cliqueTree);
+
+    float[] probs = new float[maxLabelIndexSize()];
+    for (int i = 0; i < docData.length; i++) {
+      for (int j = 0; j < docData[i].length; j++) {
+        Index<CRFLabel> labelIndex = labelIndices.get(j);
+        int liSize = labelIndex.size();
+        for (int k = 0; k < liSize; k++) {
+          probs[k] = (float) cliqueTree.prob(i, labelIndex.get(k).getLabel());
+        }
+        for (int n = 0; n < docData[i][j].length; n++) {
+          float fVal = 1.0f;
+          if (j == 0 && featureVal3DArr != null) { // j == 0 because only node features gets feature values
+            fVal = (float) featureVal3DArr[i][j][n];
+          }
+          int offset = weightOffsets[docData[i][j][n]];
+          for (int k = 0; k < liSize; k++) {
+            docE[offset + k] += probs[k] * fVal;
+          }
+        }
+      }
+    }
+    // a feature which occurs more than once in the document is added the first time, then is zero
+    for (int i = 0; i < docData.length; i++) {
+      for (int j = 0; j < docData[i].length; j++) {
+        int liSize = labelIndices.get(j).size();
+        for (int n = 0; n < docData[i][j].length; n++) {
+          int offset = weightOffsets[docData[i][j][n]];
+          for (int k = 0; k < liSize; k++) {
+            partE[offset + k] += docE[offset + k];
+            docE[offset + k] = 0.0f;
           }
         }
       }
     }
+    return prob;
   }
 
   /** Compute the log probability of the document given the model with the parameters x. */
@@ -334,6 +409,27 @@ public class CRFLogConditionalObjectiveFunction extends AbstractStochasticCachin
     }
   }
 
+  private final ThreadsafeProcessor<Pair<Integer, List<Integer>>, Pair<Integer, Double>> floatExpectedThreadProcessor = new FloatExpectationThreadsafeProcessor();
+
+  class FloatExpectationThreadsafeProcessor implements ThreadsafeProcessor<Pair<Integer, List<Integer>>, Pair<Integer, Double>> {
+    @Override
+    public Pair<Integer, Double> process(Pair<Integer, List<Integer>> threadIDAndDocIndices) {
+      int tID = threadIDAndDocIndices.first();
+      double[] partE = floatE[tID];
+      Arrays.fill(partE, 0.0);
+      double probSum = 0;
+      for (int docIndex : threadIDAndDocIndices.second()) {
+        probSum += floatExpectedCountsAndValueForADoc(partE, floatDocE[tID], docIndex);
+      }
+      return new Pair<Integer, Double>(tID, probSum);
+    }
+
+    @Override
+    public ThreadsafeProcessor<Pair<Integer, List<Integer>>, Pair<Integer, Double>> newInstance() {
+      return this;
+    }
+  }
+
   public void setWeights(double[][] weights) {
     this.weights = weights;
     cliquePotentialFunc = new LinearCliquePotentialFunction(weights);
@@ -410,11 +506,88 @@ public class CRFLogConditionalObjectiveFunction extends AbstractStochasticCachin
     return objective;
   }
 
+  /**
+   * Whether {@link #calculate} computes the value and derivative with the
+   * weights and each document's expected counts in floats, flattened like
+   * x, rather than in doubles.  This halves the memory bandwidth of going
+   * through them for each document, and their loops over the labelings can
+   * be vectorized.  The expected counts of the documents are summed in
+   * doubles, as are the empirical counts, value and derivative, so that the
+   * counts of frequent features do not lose precision on large corpora.
+   * The stochastic methods are not affected.
+   */
+  public void setFloatPrecision(boolean floatPrecision) {
+    this.floatPrecision = floatPrecision;
+    if ( ! floatPrecision) {
+      floatWeights = null;
+      floatDocE = null;
+      floatE = null;
+    }
+  }
+
+  /** As {@link #calculate}, but in float precision. */
+  private void floatCalculate(double[] x) {
+    if (floatWeights == null) {
+      floatWeights = new float[domainDimension];
+      floatDocE = new float[multiThreadGrad][domainDimension];
+      floatE = new double[multiThreadGrad][domainDimension];
+    }
+    for (int i = 0; i < x.length; i++) {
+      floatWeights[i] = (float) x[i];
+    }
+
+    MulticoreWrapper<Pair<Integer, List<Integer>>, Pair<Integer, Double>> wrapper =
+      new MulticoreWrapper<Pair<Integer, List<Integer>>, Pair<Integer, Double>>(multiThreadGrad, floatExpectedThreadProcessor);
+    int totalLen = data.length;
+    List<Integer> docIDs = new ArrayList<Integer>(totalLen);
+    for (int m = 0; m < totalLen; m++) docIDs.add(m);
+    int partLen = totalLen / multiThreadGrad;
+    int currIndex = 0;
+    for (int part = 0; part < multiThreadGrad; part++) {
+      int endIndex = currIndex + partLen;
+      if (part == multiThreadGrad - 1)
+        endIndex = totalLen;
+      wrapper.put(new Pair<Integer, List<Integer>>(part, docIDs.subList(currIndex, endIndex)));
+      currIndex = endIndex;
+    }
+    wrapper.join();
+    double prob = 0.0;
+    while (wrapper.peek()) {
+      prob += wrapper.poll().second();
+    }
+
+    if (Double.isNaN(prob)) { // shouldn't be the case
+      throw new RuntimeException("Got NaN for prob in CRFLogConditionalObjectiveFunction.calculate()" +
+              " - this may well indicate numeric underflow due to overly long documents.");
+    }
+    // because we minimize -L(\theta)
+    value = -prob;
+
+    // the derivative is expected counts - empirical counts, because we minimize -L(\theta)
+    int index = 0;
+    for (double[] featureEhat : Ehat) {
+      for (double ehat : featureEhat) {
+        double e = 0.0;
+        for (double[] partE : floatE) {
+          e += partE[index];
+        }
+        derivative[index] = e - ehat;
+        index++;
+      }
+    }
+
+    applyPrior(x, 1.0);
+  }
+
   /**
    * Calculates both value and partial derivatives at the point x, and save them internally.
    */
   @Override
   public void calculate(double[] x) {
+    if (floatPrecision) {
+      floatCalculate(x);
+      return;
+    }
 
     double prob = 0.0; // the log prob of the sequence given the model, which is the negation of value at this point
     // final double[][] weights = to2D(x);
@@ -561,6 +734,108 @@ public class CRFLogConditionalObjectiveFunction extends AbstractStochasticCachin
     return value;
   }
 
+  /**
+   * {@inheritDoc}
+   * <br>
+   * Unlike {@link #calculateStochasticUpdate}, this reads the weights of
+   * each document's features straight from x, rather than copying all of x
+   * into the 2D weights, and makes the update for each document in turn,
+   * only to the weights of that document's features.
+   */
+  @Override
+  public double concurrentStochasticUpdate(final double[] x, final double xScale, int[] batch, double gain) {
+    CliquePotentialFunction cliquePotentialFunc = new CliquePotentialFunction() {
+      @Override
+      public double computeCliquePotential(int cliqueSize, int labelIndex,
+          int[] cliqueFeatures, double[] featureVal, int posInSent) {
+        double output = 0.0;
+        for (int m = 0; m < cliqueFeatures.length; m++) {
+          double dotProd = x[weightOffsets[cliqueFeatures[m]] + labelIndex] * xScale;
+          if (featureVal != null) {
+            dotProd *= featureVal[m];
+          }
+          output += dotProd;
+        }
+        return output;
+      }
+    };
+
+    double prob = 0.0;
+    for (int docIndex : batch) {
+      int[][][] docData = data[docIndex];
+      double[][][] featureVal3DArr = null;
+      if (featureVal != null) {
+        featureVal3DArr = featureVal[docIndex];
+      }
+      CRFCliqueTree cliqueTree = CRFCliqueTree.getCalibratedCliqueTree(docData, labelIndices, numClasses, classIndex, backgroundSymbol, cliquePotentialFunc, featureVal3DArr);
+      prob += documentLogProbability(docData, docIndex, cliqueTree);
+
+      // Adjust weight by + gain * (empirical count - expected count)
+      documentEmpiricalUpdate(x, docIndex, gain);
+      documentExpectedUpdate(x, docData, featureVal3DArr, cliqueTree, gain);
+    }
+
+    if (Double.isNaN(prob)) { // shouldn't be the case
+      throw new RuntimeException("Got NaN for prob in CRFLogConditionalObjectiveFunction.concurrentStochasticUpdate()");
+    }
+    return -prob;
+  }
+
+  /** Adds gain times the empirical counts of this document to the 1D weights x, as empiricalCountsForADoc does to eHat. */
+  private void documentEmpiricalUpdate(double[] x, int docIndex, double gain) {
+    int[][][] docData = data[docIndex];
+    int[] docLabels = labels[docIndex];
+    int[] windowLabels = new int[window];
+    Arrays.fill(windowLabels, classIndex.indexOf(backgroundSymbol));
+    double[][][] featureValArr = null;
+    if (featureVal != null)
+      featureValArr = featureVal[docIndex];
+
+    if (docLabels.length>docData.length) { // only true for self-training
+      // fill the windowLabel array with the extra docLabels
+      System.arraycopy(docLabels, 0, windowLabels, 0, windowLabels.length);
+      // shift the docLabels array left
+      int[] newDocLabels = new int[docData.length];
+      System.arraycopy(docLabels, docLabels.length-newDocLabels.length, newDocLabels, 0, newDocLabels.length);
+      docLabels = newDocLabels;
+    }
+    for (int i = 0; i < docData.length; i++) {
+      System.arraycopy(windowLabels, 1, windowLabels, 0, window - 1);
+      windowLabels[window - 1] = docLabels[i];
+      for (int j = 0; j < docData[i].length; j++) {
+        int[] cliqueLabel = new int[j + 1];
+        System.arraycopy(windowLabels, window - 1 - j, cliqueLabel, 0, j + 1);
+        int labelIndex = labelIndices.get(j).indexOf(new CRFLabel(cliqueLabel));
+        for (int n = 0; n < docData[i][j].length; n++) {
+          double fVal = 1.0;
+          if (featureValArr != null && j == 0) // j == 0 because only node features gets feature values
+            fVal = featureValArr[i][j][n];
+          x[weightOffsets[docData[i][j][n]] + labelIndex] += gain * fVal;
+        }
+      }
+    }
+  }
+
+  /** Subtracts gain times the expected counts of this document from the 1D weights x, as documentExpectedCounts adds them to E. */
+  private void documentExpectedUpdate(double[] x, int[][][] docData, double[][][] featureVal3DArr, CRFCliqueTree cliqueTree, double gain) {
+    for (int i = 0; i < docData.length; i++) {
+      for (int j = 0; j < docData[i].length; j++) {
+        Index<CRFLabel> labelIndex = labelIndices.get(j);
+        for (int k = 0, liSize = labelIndex.size(); k < liSize; k++) {
+          int[] label = labelIndex.get(k).getLabel();
+          double p = cliqueTree.prob(i, label);
+          for (int n = 0; n < docData[i][j].length; n++) {
+            double fVal = 1.0;
+            if (j == 0 && featureVal3DArr != null) { // j == 0 because only node features gets feature values
+              fVal = featureVal3DArr[i][j][n];
+            }
+            x[weightOffsets[docData[i][j][n]] + k] -= gain * p * fVal;
+          }
+        }
+      }
+    }
+  }
+
   /**
    * Performs stochastic gradient update based
    * on samples indexed by batch, but does not apply regularization.
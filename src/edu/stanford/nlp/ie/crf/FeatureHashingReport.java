@@ -0,0 +1,140 @@
+package edu.stanford.nlp.ie.crf;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import edu.stanford.nlp.classify.Classifier;
+import edu.stanford.nlp.classify.ColumnDataClassifier;
+import edu.stanford.nlp.classify.GeneralDataset;
+import edu.stanford.nlp.classify.LinearClassifier;
+import edu.stanford.nlp.classify.RVFClassifier;
+import edu.stanford.nlp.classify.RVFDataset;
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.ling.Datum;
+import edu.stanford.nlp.ling.RVFDatum;
+import edu.stanford.nlp.util.ErasureUtils;
+import edu.stanford.nlp.util.Pair;
+import edu.stanford.nlp.util.StringUtils;
+import edu.stanford.nlp.util.Timing;
+
+/**
+ * Reports how the accuracy and size of a classifier change with the number
+ * of buckets its features are hashed into (featureHashingBuckets).  The
+ * classifier given by the properties is trained on its trainFile and tested
+ * on its testFile once without hashing, then once for each number of
+ * buckets, with signed and with unsigned hashing.  For each, the number of
+ * features, the size of the serialized classifier, the training time
+ * (of training alone, without reading the training data for a
+ * ColumnDataClassifier) and the accuracy on the test file (of tokens, for a CRFClassifier) are printed.
+ * <br>
+ * Usage: <code>java edu.stanford.nlp.ie.crf.FeatureHashingReport -prop propFile
+ * [-buckets 1000,10000,100000] [-columnData]</code>
+ * <br>
+ * The properties are those of a CRFClassifier, or, with -columnData, of a
+ * ColumnDataClassifier.
+ */
+public class FeatureHashingReport {
+
+  private FeatureHashingReport() {} // static main method only
+
+  /**
+   * The number of features, the size of the serialized classifier in bytes,
+   * the accuracy, and the time taken by training alone, in seconds
+   */
+  private static double[] testCRF(Properties props) throws IOException {
+    CRFClassifier<CoreLabel> crf = new CRFClassifier<CoreLabel>(props);
+    Timing timing = new Timing();
+    crf.train();
+    double seconds = timing.report() / 1000.0;
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ObjectOutputStream oos = new ObjectOutputStream(bytes);
+    crf.serializeClassifier(oos);
+    oos.close();
+
+    int correct = 0;
+    int total = 0;
+    for (List<CoreLabel> doc : crf.makeObjectBankFromFile(props.getProperty("testFile"), crf.defaultReaderAndWriter())) {
+      for (CoreLabel token : crf.classify(doc)) {
+        if (token.get(CoreAnnotations.AnswerAnnotation.class).equals(token.get(CoreAnnotations.GoldAnswerAnnotation.class))) {
+          correct++;
+        }
+        total++;
+      }
+    }
+    return new double[] { crf.featureIndex.size(), bytes.size(), (double) correct / total, seconds };
+  }
+
+  /**
+   * The number of features, the size of the serialized classifier in bytes,
+   * the accuracy, and the time taken by training alone, in seconds
+   */
+  private static double[] testColumnDataClassifier(Properties props) throws IOException {
+    ColumnDataClassifier cdc = new ColumnDataClassifier(props);
+    GeneralDataset<String, String> train = cdc.readTrainingExamples(props.getProperty("trainFile"));
+    Timing timing = new Timing();
+    Classifier<String, String> classifier = cdc.makeClassifier(train);
+    double seconds = timing.report() / 1000.0;
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ObjectOutputStream oos = new ObjectOutputStream(bytes);
+    oos.writeObject(classifier);
+    oos.close();
+
+    Pair<GeneralDataset<String, String>, List<String[]>> test = cdc.readTestExamples(props.getProperty("testFile"));
+    GeneralDataset<String, String> testData = test.first();
+    int correct = 0;
+    for (int i = 0; i < testData.size(); i++) {
+      String guess;
+      Datum<String, String> datum;
+      if (testData instanceof RVFDataset) {
+        RVFDatum<String, String> rvfDatum = testData.getRVFDatum(i);
+        guess = ErasureUtils.<RVFClassifier<String, String>>uncheckedCast(classifier).classOf(rvfDatum);
+        datum = rvfDatum;
+      } else {
+        datum = testData.getDatum(i);
+        guess = classifier.classOf(datum);
+      }
+      if (guess.equals(datum.label())) {
+        correct++;
+      }
+    }
+    int numFeatures = (classifier instanceof LinearClassifier) ?
+        ((LinearClassifier<String, String>) classifier).features().size() : train.numFeatures();
+    return new double[] { numFeatures, bytes.size(), (double) correct / testData.size(), seconds };
+  }
+
+  public static void main(String[] args) throws IOException {
+    Properties props = StringUtils.argsToProperties(args);
+    boolean columnData = Boolean.parseBoolean(props.getProperty("columnData", "false"));
+    String[] bucketList = props.getProperty("buckets", "1000,10000,100000").split(",");
+    props.remove("buckets");
+    props.remove("columnData");
+    props.remove("serializeTo");
+
+    List<String> rows = new ArrayList<String>();
+    rows.add(String.format("%10s %8s %10s %12s %9s %9s", "buckets", "signed", "features", "model bytes", "train s", "accuracy"));
+    for (int b = -1; b < bucketList.length; b++) {
+      for (boolean signed : new boolean[] { true, false }) {
+        if (b < 0 && ! signed) {
+          continue;
+        }
+        Properties runProps = new Properties();
+        runProps.putAll(props);
+        runProps.setProperty("featureHashingBuckets", b < 0 ? "0" : bucketList[b].trim());
+        runProps.setProperty("signedFeatureHashing", Boolean.toString(signed));
+        double[] result = columnData ? testColumnDataClassifier(runProps) : testCRF(runProps);
+        rows.add(String.format("%10s %8s %10d %12d %9.1f %9.4f", b < 0 ? "none" : bucketList[b].trim(),
+            b < 0 ? "-" : Boolean.toString(signed), (long) result[0], (long) result[1], result[3], result[2]));
+        System.err.println(rows.get(rows.size() - 1));
+      }
+    }
+    for (String row : rows) {
+      System.out.println(row);
+    }
+  }
+
+}
@@ -10,6 +10,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.Properties;
 
@@ -22,6 +23,9 @@ import edu.stanford.nlp.io.IOUtils;
 import edu.stanford.nlp.io.RuntimeIOException;
 import edu.stanford.nlp.ling.CoreLabel;
 import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.tokensregex.matcher.Match;
+import edu.stanford.nlp.ling.tokensregex.matcher.TrieMap;
+import edu.stanford.nlp.ling.tokensregex.matcher.TrieMapMatcher;
 import edu.stanford.nlp.sequences.DocumentReaderAndWriter;
 import edu.stanford.nlp.util.CoreMap;
 import edu.stanford.nlp.util.Generics;
@@ -54,8 +58,12 @@ import edu.stanford.nlp.util.Generics;
  * already been tokenized.  So, for example, with our usual English tokenization, things like genitives
  * and commas at the end of words will be separated in the input and matched as a separate token.
  *
- * This class isn't implemented very efficiently, since every regex is evaluated at every token position.
- * So it can and does get quite slow if you have a lot of patterns in your NER rules.
+ * Entries are not evaluated at every token position.  Entries which are plain word sequences (no regex
+ * special characters) are looked up in a {@link TrieMap} of the words of the document, and entries
+ * containing real regexes are grouped by their first regex and dispatched on the literal prefix that
+ * regex requires (e.g. {@code Bank.*} is only tried on words starting with {@code B}); only regexes
+ * without such a prefix are tried at every position.  The positions found are then checked in the
+ * same entry order as before, so the priority and overwriting behavior is unchanged.
  * {@code TokensRegex} is a more general framework to provide the functionality of this class.
  * But at present we still use this class.
  *
@@ -66,6 +74,8 @@ public class RegexNERSequenceClassifier extends AbstractSequenceClassifier<CoreL
 
   private final List<Entry> entries;
 
+  private final EntryIndex entryIndex;
+
   private final Set<String> myLabels;
 
   private final boolean ignoreCase;
@@ -116,6 +126,7 @@ public class RegexNERSequenceClassifier extends AbstractSequenceClassifier<CoreL
     }
 
     this.ignoreCase = ignoreCase;
+    entryIndex = new EntryIndex(entries, ignoreCase);
     myLabels = Generics.newHashSet();
     // Can always override background or none.
     myLabels.add(flags.backgroundSymbol);
@@ -158,6 +169,7 @@ public class RegexNERSequenceClassifier extends AbstractSequenceClassifier<CoreL
     }
 
     this.ignoreCase = ignoreCase;
+    entryIndex = new EntryIndex(entries, ignoreCase);
     myLabels = Generics.newHashSet();
     // Can always override background or none.
     myLabels.add(flags.backgroundSymbol);
@@ -225,25 +237,18 @@ public class RegexNERSequenceClassifier extends AbstractSequenceClassifier<CoreL
 
   @Override
   public List<CoreLabel> classify(List<CoreLabel> document) {
-    // This is pretty deathly slow. It loops over each entry, and then loops over each document token for it.
-    // We could gain by compiling into disjunctions patterns for the same class with the same priorities and restrictions?
-    for (Entry entry : entries) {
-      int start = 0; // the index of the token from which we begin our search each iteration
-      while (true) {
-        // only search the part of the document that we haven't yet considered
-        // System.err.println("REGEX FIND MATCH FOR " + entry.regex.toString());
-        start = findStartIndex(entry, document, start, myLabels, this.ignoreCase);
-        if (start < 0) break; // no match found
-
-        // make sure we annotate only valid POS tags
-        if (containsValidPos(document, start, start + entry.regex.size())) {
-          // annotate each matching token
-          for (int i = start; i < start + entry.regex.size(); i++) {
-            CoreLabel token = document.get(i);
-            token.set(CoreAnnotations.AnswerAnnotation.class, entry.type);
-          }
+    // Go through the entries in order, as the labels assigned by one entry stop later ones from
+    // matching, but only try each entry at the positions where its regexes can match the words.
+    for (long candidate : entryIndex.findCandidates(document)) {
+      Entry entry = entries.get((int) (candidate >>> 32));
+      int start = (int) candidate;
+      if (matchesAt(entry, document, start, myLabels, this.ignoreCase) &&
+          containsValidPos(document, start, start + entry.regex.size())) {
+        // annotate each matching token
+        for (int i = start; i < start + entry.regex.size(); i++) {
+          CoreLabel token = document.get(i);
+          token.set(CoreAnnotations.AnswerAnnotation.class, entry.type);
         }
-        start++;
       }
     }
     return document;
@@ -303,48 +308,233 @@ public class RegexNERSequenceClassifier extends AbstractSequenceClassifier<CoreL
   }
 
   /**
-   * Checks if the entry's regex sequence is contained in the tokenized document, starting the search
-   * from index searchStart. Also requires that each token's current NER-type be overwritable,
+   * Checks if the entry's regex sequence matches the tokenized document at index start.
+   * Also requires that each token's current NER-type be overwritable,
    * and that each token has not yet been Answer-annotated.
    *
    * @param entry
    * @param document
-   * @return on success, the index of the first token in the matching sequence, otherwise -1
+   * @return whether the entry matches the tokens starting at start
    */
-  private static int findStartIndex(Entry entry, List<CoreLabel> document, int searchStart, Set<String> myLabels, boolean ignoreCase) {
+  private static boolean matchesAt(Entry entry, List<CoreLabel> document, int start, Set<String> myLabels, boolean ignoreCase) {
     List<Pattern> regex = entry.regex;
     int rSize = regex.size();
-    // System.err.println("REGEX FIND MATCH FOR " + regex.toString() + " length: " + rSize);
-
-    for (int start = searchStart, end = document.size() - regex.size(); start <= end; start++) {
-      boolean failed = false;
-      for (int i = 0; i < rSize; i++) {
-        Pattern pattern = regex.get(i);
-        String exact = entry.exact.get(i);
-        CoreLabel token = document.get(start + i);
-        String NERType = token.get(CoreAnnotations.NamedEntityTagAnnotation.class);
-        String currentType = token.get(CoreAnnotations.AnswerAnnotation.class);
-
-        if (
-            currentType != null ||
-            (exact != null && ! (ignoreCase ? exact.equalsIgnoreCase(token.word()) : exact.equals(token.word()))) ||
-            ! (entry.overwritableTypes.contains(NERType) || myLabels.contains(NERType))  ||
-            ! pattern.matcher(token.word()).matches()  // last, as this is likely the expensive operation
-            ) {
-          failed = true;
-          break;
+    if (start + rSize > document.size()) {
+      return false;
+    }
+    for (int i = 0; i < rSize; i++) {
+      Pattern pattern = regex.get(i);
+      String exact = entry.exact.get(i);
+      CoreLabel token = document.get(start + i);
+      String NERType = token.get(CoreAnnotations.NamedEntityTagAnnotation.class);
+      String currentType = token.get(CoreAnnotations.AnswerAnnotation.class);
+
+      if (
+          currentType != null ||
+          (exact != null && ! (ignoreCase ? exact.equalsIgnoreCase(token.word()) : exact.equals(token.word()))) ||
+          ! (entry.overwritableTypes.contains(NERType) || myLabels.contains(NERType))  ||
+          ! pattern.matcher(token.word()).matches()  // last, as this is likely the expensive operation
+          ) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Characters which make a token of an entry a regex rather than a literal word */
+  private static final String REGEX_SPECIAL_CHARS = "\\[](){}.*+?^$|";
+
+  /** A case folding matching Pattern.CASE_INSENSITIVE, which only folds US-ASCII letters */
+  private static char foldCase(char c) {
+    return (c >= 'A' && c <= 'Z') ? (char) (c + ('a' - 'A')) : c;
+  }
+
+  private static String foldCase(String str) {
+    char[] chars = null;
+    for (int i = 0; i < str.length(); i++) {
+      char c = foldCase(str.charAt(i));
+      if (c != str.charAt(i)) {
+        if (chars == null) chars = str.toCharArray();
+        chars[i] = c;
+      }
+    }
+    return (chars == null) ? str : new String(chars);
+  }
+
+  private static boolean isLiteral(Pattern pattern) {
+    String regex = pattern.pattern();
+    for (int i = 0; i < regex.length(); i++) {
+      if (REGEX_SPECIAL_CHARS.indexOf(regex.charAt(i)) >= 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns a prefix which every word matching this regex starts with
+   * (possibly differing in case, if the regex ignores case), or "" if there is none.
+   */
+  private static String requiredPrefix(Pattern pattern) {
+    String regex = pattern.pattern();
+    if (regex.indexOf('|') >= 0) {
+      return "";
+    }
+    int i = 0;
+    while (i < regex.length() && REGEX_SPECIAL_CHARS.indexOf(regex.charAt(i)) < 0) {
+      i++;
+    }
+    // these quantifiers make the last literal character optional
+    if (i > 0 && i < regex.length() && "?*{".indexOf(regex.charAt(i)) >= 0) {
+      i--;
+    }
+    return regex.substring(0, i);
+  }
+
+  /** Entries with the same first regex, which is tried once per word for all of them */
+  private static class RegexGroup {
+    final Pattern first;
+    final String prefix;
+    // indices of the entries, in order
+    final List<Integer> entries = new ArrayList<Integer>();
+
+    RegexGroup(Pattern first) {
+      this.first = first;
+      this.prefix = requiredPrefix(first);
+    }
+  }
+
+  /**
+   * Finds the positions where each entry may match a document, without
+   * trying every entry at every position.
+   */
+  private static class EntryIndex {
+    // word in place of a null word, which no literal entry can be
+    private static final String NULL_WORD = "\\";
+
+    private final List<Entry> entries;
+    private final boolean ignoreCase;
+    // indices of the entries which are literal word sequences, by their (case folded) words
+    private final TrieMapMatcher<String, List<Integer>> literalMatcher;
+    // the other entries, by the (case folded) first character of the prefix of their first regex
+    private final Map<Character, List<RegexGroup>> regexGroupsByFirstChar = Generics.newHashMap();
+    // the other entries whose first regex does not require a prefix
+    private final List<RegexGroup> unprefixedRegexGroups = new ArrayList<RegexGroup>();
+
+    EntryIndex(List<Entry> entries, boolean ignoreCase) {
+      this.entries = entries;
+      this.ignoreCase = ignoreCase;
+      TrieMap<String, List<Integer>> literals = new TrieMap<String, List<Integer>>();
+      Map<String, RegexGroup> regexGroups = Generics.newHashMap();
+      for (int i = 0; i < entries.size(); i++) {
+        List<Pattern> regex = entries.get(i).regex;
+        boolean literal = true;
+        for (Pattern p : regex) {
+          literal = literal && isLiteral(p);
+        }
+        if (literal) {
+          List<String> words = new ArrayList<String>(regex.size());
+          for (Pattern p : regex) {
+            words.add(ignoreCase ? foldCase(p.pattern()) : p.pattern());
+          }
+          List<Integer> indices = literals.get(words);
+          if (indices == null) {
+            indices = new ArrayList<Integer>(1);
+            literals.put(words, indices);
+          }
+          indices.add(i);
+        } else {
+          Pattern first = regex.get(0);
+          RegexGroup group = regexGroups.get(first.pattern());
+          if (group == null) {
+            group = new RegexGroup(first);
+            regexGroups.put(first.pattern(), group);
+            if (group.prefix.isEmpty()) {
+              unprefixedRegexGroups.add(group);
+            } else {
+              char c = ignoreCase ? foldCase(group.prefix.charAt(0)) : group.prefix.charAt(0);
+              List<RegexGroup> groups = regexGroupsByFirstChar.get(c);
+              if (groups == null) {
+                groups = new ArrayList<RegexGroup>();
+                regexGroupsByFirstChar.put(c, groups);
+              }
+              groups.add(group);
+            }
+          }
+          group.entries.add(i);
+        }
+      }
+      literalMatcher = new TrieMapMatcher<String, List<Integer>>(literals);
+    }
+
+    /**
+     * Returns the positions in the document at which each entry may match, encoded as
+     * the index of the entry in the high 32 bits and the start position in the low ones,
+     * and sorted, so that they are in the order the entries are applied in.
+     */
+    long[] findCandidates(List<CoreLabel> document) {
+      CandidateList candidates = new CandidateList();
+      List<String> words = new ArrayList<String>(document.size());
+      for (CoreLabel token : document) {
+        String word = token.word();
+        words.add(word == null ? NULL_WORD : (ignoreCase ? foldCase(word) : word));
+      }
+      for (Match<String, List<Integer>> match : literalMatcher.findAllMatches(words)) {
+        for (int entry : match.getValue()) {
+          candidates.add(entry, match.getBegin());
+        }
+      }
+      for (int start = 0; start < document.size(); start++) {
+        String word = document.get(start).word();
+        if (word == null) {
+          continue;
+        }
+        if ( ! word.isEmpty()) {
+          char c = ignoreCase ? foldCase(word.charAt(0)) : word.charAt(0);
+          List<RegexGroup> groups = regexGroupsByFirstChar.get(c);
+          if (groups != null) {
+            for (RegexGroup group : groups) {
+              if (word.regionMatches(ignoreCase, 0, group.prefix, 0, group.prefix.length())) {
+                addCandidates(group, word, start, document.size(), candidates);
+              }
+            }
+          }
+        }
+        for (RegexGroup group : unprefixedRegexGroups) {
+          addCandidates(group, word, start, document.size(), candidates);
         }
       }
-      if (! failed) {
-        // System.err.print("MATCHED REGEX:");
-        // for(int i = start; i < start + regex.size(); i ++) System.err.print(" " + document.get(i).word());
-        // System.err.println();
-        return start;
+      return candidates.sorted();
+    }
+
+    private void addCandidates(RegexGroup group, String word, int start, int documentSize, CandidateList candidates) {
+      if (group.first.matcher(word).matches()) {
+        for (int entry : group.entries) {
+          if (start + entries.get(entry).regex.size() <= documentSize) {
+            candidates.add(entry, start);
+          }
+        }
       }
     }
-    return -1;
   }
 
+  private static class CandidateList {
+    private long[] candidates = new long[16];
+    private int size = 0;
+
+    void add(int entry, int start) {
+      if (size == candidates.length) {
+        candidates = Arrays.copyOf(candidates, size * 2);
+      }
+      candidates[size++] = ((long) entry << 32) | start;
+    }
+
+    long[] sorted() {
+      long[] result = Arrays.copyOf(candidates, size);
+      Arrays.sort(result);
+      return result;
+    }
+  }
 
   @Override
   public List<CoreLabel> classifyWithGlobalInformation(List<CoreLabel> tokenSeq, final CoreMap doc, final CoreMap sent) {
@@ -0,0 +1,187 @@
+package edu.stanford.nlp.ling.tokensregex;
+
+import edu.stanford.nlp.util.*;
+
+import java.util.*;
+
+/**
+ * Compiles many TokensRegex patterns into a single trie over tokens, so that
+ *   all their candidate matches are found in one left-to-right scan instead of
+ *   running a separate backtracking search for each pattern.
+ *
+ * <p>
+ * Only patterns which are a fixed sequence of node patterns, each of which tests
+ *   at least one annotation against an exact string
+ *   (e.g. <code>/New/ /York/</code> or <code>[{lemma:go}] [{word:home}]</code>),
+ *   are compiled; these are the bulk of the patterns in a TokensRegexNER mapping file.
+ * Patterns sharing a prefix share the path for that prefix in the trie.
+ * Each trie edge checks one exact string test of the node pattern; the remaining
+ *   tests (POS restrictions, regexes on other annotations, ...) are left to the
+ *   {@link SequenceMatcher} of the pattern, which {@link MultiPatternMatcher}
+ *   runs on the candidate span only.
+ * </p>
+ */
+public class CoreMapSequenceAutomaton implements MultiPatternMatcher.SequencePatternAutomaton<CoreMap> {
+  private final TrieNode root = new TrieNode();
+  private final Set<SequencePattern<CoreMap>> compiled = Collections.newSetFromMap(new IdentityHashMap<SequencePattern<CoreMap>, Boolean>());
+
+  public CoreMapSequenceAutomaton(Collection<? extends SequencePattern<CoreMap>> patterns) {
+    for (SequencePattern<CoreMap> pattern:patterns) {
+      add(pattern);
+    }
+  }
+
+  private static class TrieNode {
+    // Transitions on an exact value of an annotation
+    Map<Class<?>, Map<String, TrieNode>> exact;
+    // Transitions on a case folded value of an annotation
+    Map<Class<?>, Map<String, TrieNode>> caseless;
+    // Patterns whose last node leads here
+    List<SequencePattern<CoreMap>> patterns;
+
+    TrieNode child(Class<?> key, String value, boolean ignoreCase) {
+      Map<Class<?>, Map<String, TrieNode>> transitions;
+      if (ignoreCase) {
+        if (caseless == null) caseless = new HashMap<Class<?>, Map<String, TrieNode>>(4);
+        transitions = caseless;
+      } else {
+        if (exact == null) exact = new HashMap<Class<?>, Map<String, TrieNode>>(4);
+        transitions = exact;
+      }
+      Map<String, TrieNode> children = transitions.get(key);
+      if (children == null) {
+        children = new HashMap<String, TrieNode>();
+        transitions.put(key, children);
+      }
+      TrieNode child = children.get(value);
+      if (child == null) {
+        child = new TrieNode();
+        children.put(value, child);
+      }
+      return child;
+    }
+  }
+
+  /**
+   * Folds case so that two strings have the same folded form
+   *   iff they are equal according to String.equalsIgnoreCase
+   */
+  private static String foldCase(String str) {
+    char[] chars = null;
+    for (int i = 0; i < str.length(); i++) {
+      char c = str.charAt(i);
+      char folded = Character.toLowerCase(Character.toUpperCase(c));
+      if (folded != c) {
+        if (chars == null) chars = str.toCharArray();
+        chars[i] = folded;
+      }
+    }
+    return (chars == null)? str: new String(chars);
+  }
+
+  /** Picks the exact string test used to index the node pattern, or null if there is none */
+  private static Pair<Class<?>, CoreMapNodePattern.StringAnnotationPattern> getStringTest(NodePattern<?> nodePattern) {
+    if (!(nodePattern instanceof CoreMapNodePattern)) return null;
+    for (Pair<?, ?> p:((CoreMapNodePattern) nodePattern).getAnnotationPatterns()) {
+      if (p.second instanceof CoreMapNodePattern.StringAnnotationPattern) {
+        CoreMapNodePattern.StringAnnotationPattern sp = (CoreMapNodePattern.StringAnnotationPattern) p.second;
+        if (!sp.normalize() && sp.target != null) {
+          return new Pair<Class<?>, CoreMapNodePattern.StringAnnotationPattern>((Class<?>) p.first, sp);
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Adds the pattern to the automaton if it can be compiled.
+   * @return whether the pattern was added
+   */
+  public boolean add(SequencePattern<CoreMap> pattern) {
+    if (compiled.contains(pattern)) return true;
+    List<NodePattern<?>> nodes = pattern.getPatternExpr().getNodeSequence();
+    if (nodes == null || nodes.isEmpty()) return false;
+    List<Pair<Class<?>, CoreMapNodePattern.StringAnnotationPattern>> tests = new ArrayList<Pair<Class<?>, CoreMapNodePattern.StringAnnotationPattern>>(nodes.size());
+    for (NodePattern<?> node:nodes) {
+      Pair<Class<?>, CoreMapNodePattern.StringAnnotationPattern> test = getStringTest(node);
+      if (test == null) return false;
+      tests.add(test);
+    }
+    TrieNode node = root;
+    for (Pair<Class<?>, CoreMapNodePattern.StringAnnotationPattern> test:tests) {
+      boolean ignoreCase = test.second.ignoreCase();
+      String value = (ignoreCase)? foldCase(test.second.target): test.second.target;
+      node = node.child(test.first, value, ignoreCase);
+    }
+    if (node.patterns == null) node.patterns = new ArrayList<SequencePattern<CoreMap>>(1);
+    node.patterns.add(pattern);
+    compiled.add(pattern);
+    return true;
+  }
+
+  /** Number of patterns compiled into the automaton */
+  public int size() {
+    return compiled.size();
+  }
+
+  @Override
+  public boolean accepts(SequencePattern<CoreMap> pattern) {
+    return compiled.contains(pattern);
+  }
+
+  @Override
+  public Map<SequencePattern<CoreMap>, List<Interval<Integer>>> findCandidates(List<? extends CoreMap> elements) {
+    Map<SequencePattern<CoreMap>, List<Interval<Integer>>> candidates = new IdentityHashMap<SequencePattern<CoreMap>, List<Interval<Integer>>>();
+    // Nodes reached at the current position, and the nodes they lead to
+    List<TrieNode> current = new ArrayList<TrieNode>();
+    List<TrieNode> next = new ArrayList<TrieNode>();
+    for (int start = 0; start < elements.size(); start++) {
+      current.clear();
+      current.add(root);
+      for (int i = start; i < elements.size() && !current.isEmpty(); i++) {
+        CoreMap token = elements.get(i);
+        next.clear();
+        for (TrieNode node:current) {
+          advance(node.exact, token, false, next);
+          advance(node.caseless, token, true, next);
+        }
+        for (TrieNode node:next) {
+          if (node.patterns != null) {
+            for (SequencePattern<CoreMap> pattern:node.patterns) {
+              List<Interval<Integer>> spans = candidates.get(pattern);
+              if (spans == null) {
+                spans = new ArrayList<Interval<Integer>>(1);
+                candidates.put(pattern, spans);
+              }
+              spans.add(Interval.toInterval(start, i+1));
+            }
+          }
+        }
+        List<TrieNode> tmp = current;
+        current = next;
+        next = tmp;
+      }
+    }
+    return candidates;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Object getValue(CoreMap token, Class<?> key) {
+    return token.get((Class<? extends TypesafeMap.Key<Object>>) key);
+  }
+
+  private static void advance(Map<Class<?>, Map<String, TrieNode>> transitions, CoreMap token, boolean ignoreCase, List<TrieNode> next) {
+    if (transitions == null) return;
+    for (Map.Entry<Class<?>, Map<String, TrieNode>> entry:transitions.entrySet()) {
+      Object value = getValue(token, entry.getKey());
+      if (value instanceof String) {
+        String str = (ignoreCase)? foldCase((String) value): (String) value;
+        TrieNode child = entry.getValue().get(str);
+        if (child != null) {
+          next.add(child);
+        }
+      }
+    }
+  }
+
+}
@@ -13,6 +13,7 @@ import java.util.function.Function;
 public class MultiPatternMatcher<T> {
   Collection<SequencePattern<T>> patterns;
   SequencePatternTrigger<T> patternTrigger;
+  SequencePatternAutomaton<T> automaton;
   boolean matchWithResult = false;
 
   public MultiPatternMatcher(SequencePatternTrigger<T> patternTrigger,
@@ -70,18 +71,7 @@ public class MultiPatternMatcher<T> {
   public List<SequenceMatchResult<T>> findNonOverlapping(List<? extends T> elements,
                                                          Comparator<? super SequenceMatchResult> cmp)
   {
-    Collection<SequencePattern<T>> triggered = getTriggeredPatterns(elements);
-    List<SequenceMatchResult<T>> all = new ArrayList<SequenceMatchResult<T>>();
-    int i = 0;
-    for (SequencePattern<T> p:triggered) {
-      SequenceMatcher<T> m = p.getMatcher(elements);
-      m.setMatchWithResult(matchWithResult);
-      m.setOrder(i);
-      while (m.find()) {
-        all.add(m.toBasicSequenceMatchResult());
-      }
-      i++;
-    }
+    List<SequenceMatchResult<T>> all = findAll(elements, SequenceMatcher.FindType.FIND_NONOVERLAPPING);
     List<SequenceMatchResult<T>> res = IntervalTree.getNonOverlapping( all, SequenceMatchResult.TO_INTERVAL, cmp);
     Collections.sort(res, SequenceMatchResult.OFFSET_COMPARATOR);
 
@@ -98,19 +88,7 @@ public class MultiPatternMatcher<T> {
    */
   public List<SequenceMatchResult<T>> find(List<? extends T> elements, SequenceMatcher.FindType findType)
   {
-    Collection<SequencePattern<T>> triggered = getTriggeredPatterns(elements);
-    List<SequenceMatchResult<T>> all = new ArrayList<SequenceMatchResult<T>>();
-    int i = 0;
-    for (SequencePattern<T> p:triggered) {
-      SequenceMatcher<T> m = p.getMatcher(elements);
-      m.setMatchWithResult(matchWithResult);
-      m.setFindType(findType);
-      m.setOrder(i);
-      while (m.find()) {
-        all.add(m.toBasicSequenceMatchResult());
-      }
-      i++;
-    }
+    List<SequenceMatchResult<T>> all = findAll(elements, findType);
     List<SequenceMatchResult<T>> res = IntervalTree.getNonOverlapping( all, SequenceMatchResult.TO_INTERVAL, SequenceMatchResult.DEFAULT_COMPARATOR);
     Collections.sort(res, SequenceMatchResult.OFFSET_COMPARATOR);
 
@@ -119,6 +97,74 @@ public class MultiPatternMatcher<T> {
 
 
 
+  /**
+   * Returns the matches of each triggered pattern, grouped by pattern in the
+   *   order the patterns were triggered (each pattern's matches are what its
+   *   own SequenceMatcher would find with the given findType).
+   * Patterns accepted by the automaton are not searched one by one:
+   *   the automaton proposes candidate spans in a single scan, and the
+   *   pattern is only run over those spans.
+   */
+  private List<SequenceMatchResult<T>> findAll(List<? extends T> elements, SequenceMatcher.FindType findType)
+  {
+    Collection<SequencePattern<T>> triggered = getTriggeredPatterns(elements);
+    List<List<SequenceMatchResult<T>>> matchesByOrder = new ArrayList<List<SequenceMatchResult<T>>>(triggered.size());
+    Map<SequencePattern<T>, Integer> automatonOrders = null;
+    int i = 0;
+    for (SequencePattern<T> p:triggered) {
+      List<SequenceMatchResult<T>> matches = new ArrayList<SequenceMatchResult<T>>();
+      if (automaton != null && automaton.accepts(p)) {
+        if (automatonOrders == null) {
+          automatonOrders = new IdentityHashMap<SequencePattern<T>, Integer>();
+        }
+        if (!automatonOrders.containsKey(p)) {
+          automatonOrders.put(p, i);
+        }
+      } else {
+        SequenceMatcher<T> m = p.getMatcher(elements);
+        m.setMatchWithResult(matchWithResult);
+        m.setFindType(findType);
+        m.setOrder(i);
+        while (m.find()) {
+          matches.add(m.toBasicSequenceMatchResult());
+        }
+      }
+      matchesByOrder.add(matches);
+      i++;
+    }
+    if (automatonOrders != null) {
+      Map<SequencePattern<T>, List<Interval<Integer>>> candidates = automaton.findCandidates(elements);
+      for (Map.Entry<SequencePattern<T>, List<Interval<Integer>>> entry:candidates.entrySet()) {
+        Integer order = automatonOrders.get(entry.getKey());
+        if (order == null) {
+          // Not triggered, so could not have matched
+          continue;
+        }
+        SequenceMatcher<T> m = entry.getKey().getMatcher(elements);
+        m.setMatchWithResult(matchWithResult);
+        m.setFindType(findType);
+        m.setOrder(order);
+        List<SequenceMatchResult<T>> matches = matchesByOrder.get(order);
+        int lastEnd = 0;
+        for (Interval<Integer> span:entry.getValue()) {
+          if (findType == SequenceMatcher.FindType.FIND_NONOVERLAPPING && span.getBegin() < lastEnd) {
+            continue;
+          }
+          m.region(span.getBegin(), span.getEnd());
+          while (m.find()) {
+            matches.add(m.toBasicSequenceMatchResult());
+            lastEnd = m.end();
+          }
+        }
+      }
+    }
+    List<SequenceMatchResult<T>> all = new ArrayList<SequenceMatchResult<T>>();
+    for (List<SequenceMatchResult<T>> matches:matchesByOrder) {
+      all.addAll(matches);
+    }
+    return all;
+  }
+
   /**
    * Given a sequence, applies our patterns over the sequence and returns
    *   all non overlapping matches.  When multiple patterns overlaps,
@@ -142,18 +188,7 @@ public class MultiPatternMatcher<T> {
   public List<SequenceMatchResult<T>> findNonOverlappingMaxScore(List<? extends T> elements,
                                                                  Function<? super SequenceMatchResult, Double> scorer)
   {
-    Collection<SequencePattern<T>> triggered = getTriggeredPatterns(elements);
-    List<SequenceMatchResult<T>> all = new ArrayList<SequenceMatchResult<T>>();
-    int i = 0;
-    for (SequencePattern<T> p:triggered) {
-      SequenceMatcher<T> m = p.getMatcher(elements);
-      m.setMatchWithResult(matchWithResult);
-      m.setOrder(i);
-      while (m.find()) {
-        all.add(m.toBasicSequenceMatchResult());
-      }
-      i++;
-    }
+    List<SequenceMatchResult<T>> all = findAll(elements, SequenceMatcher.FindType.FIND_NONOVERLAPPING);
     List<SequenceMatchResult<T>> res = IntervalTree.getNonOverlappingMaxScore( all, SequenceMatchResult.TO_INTERVAL, scorer);
     Collections.sort(res, SequenceMatchResult.OFFSET_COMPARATOR);
 
@@ -202,6 +237,19 @@ public class MultiPatternMatcher<T> {
     this.matchWithResult = matchWithResult;
   }
 
+  public SequencePatternAutomaton<T> getAutomaton() {
+    return automaton;
+  }
+
+  /**
+   * Sets an automaton used to find the matches of the patterns it accepts
+   *   in a single scan, rather than searching for each of them separately
+   *   (null to search for every pattern separately)
+   */
+  public void setAutomaton(SequencePatternAutomaton<T> automaton) {
+    this.automaton = automaton;
+  }
+
 /** Interfaces for optimizing application of many SequencePatterns over a particular sequence */
 
   /**
@@ -219,6 +267,21 @@ public class MultiPatternMatcher<T> {
    */
   public static interface SequencePatternTrigger<T> extends Function<List<? extends T>, Collection<SequencePattern<T>>> {}
 
+  /**
+   * Finds where a subset of the patterns (the ones it accepts) may match
+   *   a sequence in one pass.  The candidates need to be conservative:
+   *   every span matched by an accepted pattern must be returned
+   *   (spans which turn out not to match are fine).
+   * @param <T>
+   */
+  public static interface SequencePatternAutomaton<T> {
+    /** Whether the automaton finds the candidate matches of this pattern */
+    public boolean accepts(SequencePattern<T> pattern);
+
+    /** Returns the candidate spans for each accepted pattern, ordered by start */
+    public Map<SequencePattern<T>, List<Interval<Integer>>> findCandidates(List<? extends T> elements);
+  }
+
   /**
    * Simple SequencePatternTrigger that looks at each node, and identifies which
    *   patterns may potentially match each node, and then aggregates (union)
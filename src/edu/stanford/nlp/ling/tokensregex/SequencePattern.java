@@ -320,6 +320,13 @@ public class SequencePattern<T> implements Serializable {
     /** Returns an optimized version of this pattern - default is a noop */
     protected PatternExpr optimize() { return this; }
 
+    /**
+     * If this expression always matches a fixed number of nodes, one node
+     * pattern per node, returns those node patterns in order (used to compile
+     * many patterns into one automaton); otherwise returns null
+     */
+    protected List<NodePattern<?>> getNodeSequence() { return null; }
+
     protected abstract PatternExpr transform(NodePatternTransformer transformer);
   }
 
@@ -355,6 +362,11 @@ public class SequencePattern<T> implements Serializable {
       return new NodePatternExpr(transformer.transform(nodePattern));
     }
 
+    @Override
+    protected List<NodePattern<?>> getNodeSequence() {
+      return Collections.singletonList(nodePattern);
+    }
+
     public String toString() {
       return nodePattern.toString();
     }
@@ -534,6 +546,19 @@ public class SequencePattern<T> implements Serializable {
       return new SequencePatternExpr(newPatterns);
     }
 
+    @Override
+    protected List<NodePattern<?>> getNodeSequence() {
+      List<NodePattern<?>> nodes = new ArrayList<NodePattern<?>>(patterns.size());
+      for (PatternExpr p:patterns) {
+        List<NodePattern<?>> pNodes = p.getNodeSequence();
+        if (pNodes == null) {
+          return null;
+        }
+        nodes.addAll(pNodes);
+      }
+      return nodes;
+    }
+
     public String toString() {
       return StringUtils.join(patterns, " ");
     }
@@ -705,6 +730,11 @@ public class SequencePattern<T> implements Serializable {
       return new GroupPatternExpr(pattern.transform(transformer), capture, captureGroupId, varname);
     }
 
+    @Override
+    protected List<NodePattern<?>> getNodeSequence() {
+      return pattern.getNodeSequence();
+    }
+
     public String toString() {
       StringBuilder sb = new StringBuilder();
       sb.append('(');
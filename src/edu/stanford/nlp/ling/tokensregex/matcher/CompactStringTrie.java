@@ -0,0 +1,327 @@
+package edu.stanford.nlp.ling.tokensregex.matcher;
+
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * An immutable trie over strings, laid out in a few flat arrays instead of a
+ *   {@link TrieMap} of character keys, for looking up strings in very large
+ *   dictionaries (e.g. gazetteers with millions of entries), either exactly or
+ *   within a bounded edit distance.
+ *
+ * <p>
+ * The nodes are numbered breadth first, so the children of a node are
+ *   consecutive, and are sorted by their character.  A node costs a char
+ *   and two ints, so the trie is much smaller than a <code>TrieMap</code>
+ *   (which has a hash map per node), and it can be serialized once and
+ *   loaded with no rebuilding.
+ * </p>
+ *
+ * <p>
+ * Approximate lookups find the <i>n</i> keys with the smallest Levenshtein
+ *   distance (character insertions, deletions and substitutions) to the target
+ *   by a depth first search of the trie which keeps one row of the edit distance
+ *   table per depth, and abandons a subtree as soon as every entry of its row
+ *   exceeds the distance still of interest.  With a small maximum distance only
+ *   a tiny fraction of the trie is visited.
+ * </p>
+ */
+public class CompactStringTrie<V> implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  // Character on the edge leading to each node (unused for the root, node 0)
+  private final char[] labels;
+  // The children of node i are the nodes childStart[i] to childStart[i+1]-1
+  private final int[] childStart;
+  // Index into values of the value of each node, or -1 if no key ends there
+  private final int[] valueIndex;
+  private final Object[] values;
+
+  private static final int INFINITY = Integer.MAX_VALUE / 2;
+
+  public CompactStringTrie(Map<String, ? extends V> map) {
+    String[] keys = map.keySet().toArray(new String[map.size()]);
+    Arrays.sort(keys);
+    // Each key adds a node for each character after its common prefix with the previous key
+    int numNodes = 1;
+    for (int i = 0; i < keys.length; i++) {
+      numNodes += keys[i].length() - ((i > 0)? commonPrefixLength(keys[i-1], keys[i]): 0);
+    }
+    labels = new char[numNodes];
+    childStart = new int[numNodes + 1];
+    valueIndex = new int[numNodes];
+    values = new Object[keys.length];
+
+    // Each node covers a range of the sorted keys, all of which have the same prefix of length depth
+    int[] rangeBegin = new int[numNodes];
+    int[] rangeEnd = new int[numNodes];
+    int[] depth = new int[numNodes];
+    rangeEnd[0] = keys.length;
+    int next = 1;
+    for (int node = 0; node < numNodes; node++) {
+      int begin = rangeBegin[node];
+      int end = rangeEnd[node];
+      int d = depth[node];
+      valueIndex[node] = -1;
+      if (begin < end && keys[begin].length() == d) {
+        valueIndex[node] = begin;
+        values[begin] = map.get(keys[begin]);
+        begin++;
+      }
+      childStart[node] = next;
+      while (begin < end) {
+        char c = keys[begin].charAt(d);
+        int childEnd = begin + 1;
+        while (childEnd < end && keys[childEnd].charAt(d) == c) {
+          childEnd++;
+        }
+        labels[next] = c;
+        rangeBegin[next] = begin;
+        rangeEnd[next] = childEnd;
+        depth[next] = d + 1;
+        next++;
+        begin = childEnd;
+      }
+    }
+    childStart[numNodes] = next;
+  }
+
+  private static int commonPrefixLength(String s1, String s2) {
+    int n = Math.min(s1.length(), s2.length());
+    int i = 0;
+    while (i < n && s1.charAt(i) == s2.charAt(i)) {
+      i++;
+    }
+    return i;
+  }
+
+  /** Number of keys */
+  public int size() {
+    return values.length;
+  }
+
+  /** Number of nodes of the trie */
+  public int numNodes() {
+    return labels.length;
+  }
+
+  private int child(int node, char c) {
+    int lo = childStart[node];
+    int hi = childStart[node + 1] - 1;
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      char label = labels[mid];
+      if (label < c) {
+        lo = mid + 1;
+      } else if (label > c) {
+        hi = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -1;
+  }
+
+  @SuppressWarnings("unchecked")
+  private V value(int node) {
+    return (valueIndex[node] >= 0)? (V) values[valueIndex[node]]: null;
+  }
+
+  /** Returns the value of this key, or null if it is not in the trie */
+  public V get(String key) {
+    int node = 0;
+    for (int i = 0; i < key.length() && node >= 0; i++) {
+      node = child(node, key.charAt(i));
+    }
+    return (node >= 0)? value(node): null;
+  }
+
+  /**
+   * Returns the (at most) n keys closest to the target, with an edit distance of
+   *   at most maxDistance, ordered by distance and then by key.  The key of each
+   *   match is its only matched element, and its cost is the edit distance.
+   */
+  public List<ApproxMatch<String,V>> findClosestMatches(String target, int maxDistance, int n) {
+    return findClosestPrefixMatches(target, new int[] { target.length() }, new int[] { maxDistance }, n).get(0);
+  }
+
+  /**
+   * Does approximate lookups of several prefixes of the target in one search,
+   *   e.g. of each of the phrases starting at a token of a sentence.
+   * For each i, returns the (at most) n keys closest to the prefix of the target
+   *   ending at ends[i], with an edit distance of at most maxDistances[i],
+   *   ordered by distance and then by key.
+   *
+   * @param target String whose prefixes are looked up
+   * @param ends Increasing end offsets of the prefixes
+   * @param maxDistances Maximum edit distance allowed for each prefix
+   * @param n Maximum number of matches to return for each prefix
+   * @return The matches for each prefix; the begin and end of each match are 0 and the prefix end
+   */
+  public List<List<ApproxMatch<String,V>>> findClosestPrefixMatches(String target, int[] ends, int[] maxDistances, int n) {
+    Search search = new Search(target, ends, maxDistances, n);
+    search.visit(0, 0);
+    return Arrays.asList(search.matches);
+  }
+
+  /** State of one depth first search for prefixes of a target */
+  private class Search {
+    final String target;
+    final int[] ends;
+    final int[] maxDistances;
+    final int n;
+    // Best matches found so far for each prefix, sorted
+    final List<ApproxMatch<String,V>>[] matches;
+    // Largest maxDistance, and length of the longest prefix
+    final int maxDistance;
+    final int length;
+    // rows.get(d)[j] is the edit distance between the key of the node at depth d
+    //   and the first j characters of the target.  Only the band of the row with
+    //   |d - j| <= maxDistance is computed; the rest is left at INFINITY, as those
+    //   distances are larger than maxDistance anyway.
+    final List<int[]> rows = new ArrayList<int[]>();
+    char[] path = new char[16];
+
+    @SuppressWarnings("unchecked")
+    Search(String target, int[] ends, int[] maxDistances, int n) {
+      this.target = target;
+      this.ends = ends;
+      this.maxDistances = maxDistances;
+      this.n = n;
+      this.matches = new List[ends.length];
+      for (int i = 0; i < ends.length; i++) {
+        matches[i] = new ArrayList<ApproxMatch<String,V>>(n);
+      }
+      int max = 0;
+      for (int d:maxDistances) {
+        max = Math.max(max, d);
+      }
+      this.maxDistance = max;
+      this.length = ends[ends.length - 1];
+      int[] row = new int[length + 1];
+      for (int j = 0; j < row.length; j++) {
+        row[j] = j;
+      }
+      rows.add(row);
+    }
+
+    /** Largest distance that can still produce a match for the i-th prefix */
+    int bound(int i) {
+      List<ApproxMatch<String,V>> m = matches[i];
+      if (m.size() < n) {
+        return maxDistances[i];
+      }
+      // Ties are not replaced, the earlier key (in order) is kept
+      return Math.min(maxDistances[i], (int) m.get(m.size() - 1).getCost() - 1);
+    }
+
+    void add(int i, int depth, int node, int distance) {
+      List<ApproxMatch<String,V>> m = matches[i];
+      int pos = m.size();
+      while (pos > 0 && m.get(pos - 1).getCost() > distance) {
+        pos--;
+      }
+      String key = new String(path, 0, depth);
+      m.add(pos, new ApproxMatch<String,V>(Collections.singletonList(key), value(node), 0, ends[i], distance));
+      if (m.size() > n) {
+        m.remove(m.size() - 1);
+      }
+    }
+
+    void visit(int node, int depth) {
+      int[] row = rows.get(depth);
+      if (valueIndex[node] >= 0) {
+        for (int i = 0; i < ends.length; i++) {
+          if (row[ends[i]] <= bound(i)) {
+            add(i, depth, node, row[ends[i]]);
+          }
+        }
+      }
+      int first = childStart[node];
+      int last = childStart[node + 1];
+      if (first == last) {
+        return;
+      }
+      if (rows.size() == depth + 1) {
+        int[] newRow = new int[row.length];
+        Arrays.fill(newRow, INFINITY);
+        rows.add(newRow);
+      }
+      if (path.length == depth) {
+        path = Arrays.copyOf(path, depth * 2);
+      }
+      int childDepth = depth + 1;
+      int[] childRow = rows.get(childDepth);
+      int bandStart = Math.max(1, childDepth - maxDistance);
+      int bandEnd = Math.min(length, childDepth + maxDistance);
+
+      // When no edits are left, only the children which continue an exact match
+      //   from one of the best cells of the row can match, so look them up directly
+      int rowMin = row[0];
+      for (int j = Math.max(1, depth - maxDistance); j <= Math.min(length, depth + maxDistance); j++) {
+        rowMin = Math.min(rowMin, row[j]);
+      }
+      int maxBound = -1;
+      for (int i = 0; i < ends.length; i++) {
+        maxBound = Math.max(maxBound, bound(i));
+      }
+      if (rowMin > maxBound) {
+        return;
+      }
+      if (rowMin == maxBound && last - first > 2 * maxDistance + 1) {
+        int[] children = new int[2 * maxDistance + 2];
+        int numChildren = 0;
+        for (int j = 0; j < length; j++) {
+          if (row[j] == rowMin) {
+            int child = child(node, target.charAt(j));
+            if (child >= 0) {
+              children[numChildren++] = child;
+            }
+          }
+        }
+        // in order, as matches with the same distance are kept in key order
+        Arrays.sort(children, 0, numChildren);
+        for (int k = 0; k < numChildren; k++) {
+          if (k == 0 || children[k] != children[k - 1]) {
+            visitChild(children[k], childDepth, row, childRow, bandStart, bandEnd);
+          }
+        }
+      } else {
+        for (int child = first; child < last; child++) {
+          visitChild(child, childDepth, row, childRow, bandStart, bandEnd);
+        }
+      }
+    }
+
+    private void visitChild(int child, int childDepth, int[] row, int[] childRow, int bandStart, int bandEnd) {
+      char c = labels[child];
+      path[childDepth - 1] = c;
+      childRow[0] = childDepth;
+      // Descend only if some prefix can still be matched: the smallest entry of the
+      //   row up to the end of a prefix never decreases further down the trie
+      int rowMin = childDepth;
+      boolean descend = false;
+      int i = 0;
+      for (; i < ends.length && ends[i] < bandStart; i++) {
+        descend |= rowMin <= bound(i);
+      }
+      for (int j = bandStart; j <= bandEnd; j++) {
+        int d = row[j - 1] + ((target.charAt(j - 1) == c)? 0: 1);
+        d = Math.min(d, Math.min(row[j], childRow[j - 1]) + 1);
+        childRow[j] = d;
+        if (d < rowMin) rowMin = d;
+        for (; i < ends.length && ends[i] == j; i++) {
+          descend |= rowMin <= bound(i);
+        }
+      }
+      for (; i < ends.length; i++) {
+        descend |= rowMin <= bound(i);
+      }
+      if (descend) {
+        visit(child, childDepth);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,37 @@
+package edu.stanford.nlp.optimization;
+
+/**
+ * A function which is a sum over data items, and whose stochastic updates
+ * can be made by several threads at once on the same weights without any
+ * locking, as in Hogwild! (Niu, Recht, R&eacute; and Wright 2011).  This is
+ * what {@link HogwildSGDMinimizer} needs.
+ * <br>
+ * The weights are represented, as by {@link AbstractStochasticCachingDiffUpdateFunction},
+ * by an array of doubles and a scalar to scale them all by.
+ *
+ * @see HogwildSGDMinimizer
+ */
+public interface ConcurrentStochasticUpdateFunction extends Function {
+
+  /** The number of data items. */
+  int dataDimension();
+
+  /**
+   * Performs the stochastic update of weights x (scaled by xScale) for the
+   * data items of the batch, as
+   * {@link AbstractStochasticCachingDiffUpdateFunction#calculateStochasticUpdate(double[], double, int[], double)}
+   * does, without regularization.  Unlike that method, this one may be
+   * called by several threads at once with the same x: it keeps no state
+   * between calls, and reads and writes only the weights of the features
+   * of the batch's data items, so that threads working on data items with
+   * few features in common rarely touch the same weights.
+   *
+   * @param x Unscaled weights, which are updated in place
+   * @param xScale How much to scale x by when performing calculations
+   * @param batch Indices of the data items to compute the update for
+   * @param gain How much to scale adjustments to x
+   * @return Value of the function at x (scaled by xScale) for the batch
+   */
+  double concurrentStochasticUpdate(double[] x, double xScale, int[] batch, double gain);
+
+}
@@ -0,0 +1,166 @@
+package edu.stanford.nlp.optimization;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Computes the value and derivative of a DiffFunction for a
+ * {@link RemoteDiffFunction} in another process, which connects to the
+ * port this listens on.  Subclasses make the function from the setup
+ * bytes the client sends first, typically by building their shard of the
+ * training data with the indices they hold.
+ * <br>
+ * A server answers one client, until that client closes the connection,
+ * since a worker holding a shard of the data belongs to one training run.
+ * <br>
+ * The server listens on the loopback address unless given another one.
+ * A client has to prove that it knows the secret shared with the server,
+ * by answering a random challenge with its HMAC-SHA256 under the secret,
+ * before anything else it sends is read; connections which do not are
+ * closed, and the server goes on waiting.  After that, the protocol is
+ * plain {@link DataInputStream} data: the setup bytes, then for each
+ * evaluation the point as doubles, answered by the value and derivative.
+ */
+public abstract class DiffFunctionServer {
+
+  static final int CLOSE = 0;
+  static final int CALCULATE = 1;
+
+  static final int CHALLENGE_LENGTH = 32;
+  private static final String MAC_ALGORITHM = "HmacSHA256";
+  // how long a client has to answer the challenge, in milliseconds
+  private static final int HANDSHAKE_TIMEOUT = 30000;
+
+  private final InetAddress address;
+  private final int port;
+  private final byte[] secret;
+
+  /** Listens on the loopback address, so only clients on this machine can connect. */
+  protected DiffFunctionServer(int port, byte[] secret) {
+    this(InetAddress.getLoopbackAddress(), port, secret);
+  }
+
+  protected DiffFunctionServer(InetAddress address, int port, byte[] secret) {
+    if (secret == null || secret.length == 0) {
+      throw new IllegalArgumentException("DiffFunctionServer needs a shared secret");
+    }
+    this.address = address;
+    this.port = port;
+    this.secret = secret.clone();
+  }
+
+  /** Makes the function to compute from the bytes which the client sent on connecting. */
+  protected abstract DiffFunction makeFunction(byte[] setup);
+
+  /** The answer to the challenge expected from a client knowing the secret. */
+  static byte[] response(byte[] secret, byte[] challenge) {
+    try {
+      Mac mac = Mac.getInstance(MAC_ALGORITHM);
+      mac.init(new SecretKeySpec(secret, MAC_ALGORITHM));
+      return mac.doFinal(challenge);
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException("Could not compute " + MAC_ALGORITHM, e);
+    }
+  }
+
+  /** Sends a random challenge to the client, and checks its answer. */
+  private boolean authenticate(Socket client, DataInputStream in, DataOutputStream out) throws IOException {
+    byte[] challenge = new byte[CHALLENGE_LENGTH];
+    new SecureRandom().nextBytes(challenge);
+    out.write(challenge);
+    out.flush();
+    byte[] expected = response(secret, challenge);
+    byte[] answer = new byte[expected.length];
+    client.setSoTimeout(HANDSHAKE_TIMEOUT);
+    in.readFully(answer);
+    client.setSoTimeout(0);
+    return MessageDigest.isEqual(expected, answer);
+  }
+
+  /** Waits for a client, then answers its requests until it closes the connection. */
+  public void serve() throws IOException {
+    ServerSocket listener = new ServerSocket(port, 1, address);
+    System.err.println("DiffFunctionServer: waiting for a client on " + address.getHostAddress() + ':' + port);
+    Socket client = null;
+    DataInputStream in = null;
+    DataOutputStream out = null;
+    try {
+      while (client == null) {
+        Socket candidate = listener.accept();
+        in = new DataInputStream(new BufferedInputStream(candidate.getInputStream()));
+        out = new DataOutputStream(new BufferedOutputStream(candidate.getOutputStream()));
+        boolean authenticated;
+        try {
+          authenticated = authenticate(candidate, in, out);
+        } catch (IOException e) {
+          // the client hung up or was too slow to answer
+          authenticated = false;
+        }
+        if (authenticated) {
+          client = candidate;
+        } else {
+          System.err.println("DiffFunctionServer: rejected " + candidate.getRemoteSocketAddress() +
+              ", which did not know the shared secret");
+          candidate.close();
+        }
+      }
+    } finally {
+      listener.close();
+    }
+    try {
+      int setupLength = in.readInt();
+      if (setupLength < 0) {
+        throw new IOException("DiffFunctionServer: bad setup length " + setupLength);
+      }
+      byte[] setup = new byte[setupLength];
+      in.readFully(setup);
+      DiffFunction function = makeFunction(setup);
+      int domainDimension = function.domainDimension();
+      out.writeInt(domainDimension);
+      out.flush();
+      System.err.println("DiffFunctionServer: serving a function of " + domainDimension + " dimensions to " +
+          client.getRemoteSocketAddress());
+
+      double[] x = new double[domainDimension];
+      int requests = 0;
+      while (true) {
+        int command;
+        try {
+          command = in.readInt();
+        } catch (EOFException e) {
+          break;
+        }
+        if (command == CLOSE) {
+          break;
+        } else if (command != CALCULATE) {
+          throw new IOException("DiffFunctionServer: unknown command " + command);
+        }
+        for (int i = 0; i < domainDimension; i++) {
+          x[i] = in.readDouble();
+        }
+        out.writeDouble(function.valueAt(x));
+        for (double d : function.derivativeAt(x)) {
+          out.writeDouble(d);
+        }
+        out.flush();
+        requests++;
+      }
+      System.err.println("DiffFunctionServer: client closed the connection after " + requests + " evaluations");
+    } finally {
+      client.close();
+    }
+  }
+
+}
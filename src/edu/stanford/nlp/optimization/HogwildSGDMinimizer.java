@@ -0,0 +1,291 @@
+package edu.stanford.nlp.optimization;
+
+import edu.stanford.nlp.math.ArrayMath;
+import edu.stanford.nlp.util.RuntimeInterruptedException;
+import edu.stanford.nlp.util.Timing;
+import edu.stanford.nlp.util.concurrent.AtomicDouble;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Asynchronous parallel Stochastic Gradient Descent, in the manner of
+ * Hogwild! (Niu, Recht, R&eacute; and Wright 2011): each pass through the
+ * data is split between several threads, which make their stochastic
+ * updates directly to a shared weight array without any locking.  With
+ * sparse features, two threads rarely update the same weight at once, and
+ * the occasional lost update does little harm, so this scales with the
+ * number of threads.
+ * <ul>
+ * <li> The learning rate and L2 weight decay follow {@link SGDMinimizer}:
+ *   eta = 1/(lambda*(t0+t)), where t counts the data items seen by all
+ *   threads, and the weights are decayed through a shared scale factor.
+ * <li> Only supports L2 regularization (QUADRATIC), which is done by the
+ *   minimizer, not the objective function.
+ * <li> Requires the objective function to be a {@link ConcurrentStochasticUpdateFunction}.
+ * <li> In deterministic mode, the batches of each thread's share of the
+ *   data are instead taken in turn on the calling thread, so that the
+ *   result is the same on every run, for debugging and comparison.
+ * </ul>
+ * The value of the objective and the throughput are reported after each pass.
+ */
+public class HogwildSGDMinimizer<T extends Function> implements Minimizer<T>, HasEvaluators {
+
+  private static final int DEFAULT_NUM_PASSES = 50;
+
+  private final double sigma;
+  private final int numPasses;
+  private final int batchSize;
+  private final int numThreads;
+  private final boolean deterministic;
+  private boolean quiet = false;
+
+  private final Random gen = new Random(1);
+
+  private int evaluateIters = 0;    // Evaluate every x passes (0 = no evaluation)
+  private Evaluator[] evaluators;  // separate set of evaluators to check how optimization is going
+
+  // the state of the current minimization, shared by the threads
+  private ConcurrentStochasticUpdateFunction function;
+  private double[] x;
+  private final AtomicDouble xscale = new AtomicDouble(1.0);
+  private final AtomicLong t = new AtomicLong();
+  private double lambda;
+
+  public HogwildSGDMinimizer(double sigma, int numPasses, int batchSize, int numThreads) {
+    this(sigma, numPasses, batchSize, numThreads, false);
+  }
+
+  /**
+   * @param sigma The standard deviation of the Gaussian (L2) prior
+   * @param numPasses The number of passes through the data, or -1 for the default of 50
+   * @param batchSize The number of data items in each stochastic update
+   * @param numThreads The number of threads, or 0 or less for one per core
+   * @param deterministic Whether to take the threads' batches in turn on one thread
+   */
+  public HogwildSGDMinimizer(double sigma, int numPasses, int batchSize, int numThreads, boolean deterministic) {
+    this.sigma = sigma;
+    if (numPasses >= 0) {
+      this.numPasses = numPasses;
+    } else {
+      this.numPasses = DEFAULT_NUM_PASSES;
+      sayln("  HogwildSGDMinimizer: numPasses=" + numPasses + ", defaulting to " + this.numPasses);
+    }
+    this.batchSize = Math.max(batchSize, 1);
+    this.numThreads = (numThreads > 0) ? numThreads : Runtime.getRuntime().availableProcessors();
+    this.deterministic = deterministic;
+  }
+
+  public void shutUp() {
+    this.quiet = true;
+  }
+
+  @Override
+  public void setEvaluators(int iters, Evaluator[] evaluators) {
+    this.evaluateIters = iters;
+    this.evaluators = evaluators;
+  }
+
+  /** Makes one stochastic update, and decays the weights after it. */
+  private double update(int[] batch) {
+    double eta = 1 / (lambda * t.getAndAdd(batch.length));
+    double scale = xscale.get();
+    double value = function.concurrentStochasticUpdate(x, scale, batch, eta / scale);
+    // weight decay (for L2 regularization)
+    double decay = 1 - eta * lambda * batch.length;
+    while (true) {
+      double oldScale = xscale.get();
+      if (xscale.compareAndSet(oldScale, oldScale * decay)) {
+        break;
+      }
+    }
+    return value;
+  }
+
+  /** Returns the data items order[start..end) in batches of batchSize (the last may be smaller). */
+  private List<int[]> batches(int[] order, int start, int end) {
+    List<int[]> batches = new ArrayList<int[]>();
+    for (int i = start; i < end; i += batchSize) {
+      int[] batch = new int[Math.min(batchSize, end - i)];
+      System.arraycopy(order, i, batch, 0, batch.length);
+      batches.add(batch);
+    }
+    return batches;
+  }
+
+  /** Makes one pass through the data, split between the threads, and returns the summed value. */
+  private double pass(int[] order, ExecutorService executor) {
+    int numItems = order.length;
+    List<List<int[]>> shares = new ArrayList<List<int[]>>(numThreads);
+    for (int thread = 0; thread < numThreads; thread++) {
+      shares.add(batches(order, (int) ((long) numItems * thread / numThreads),
+          (int) ((long) numItems * (thread + 1) / numThreads)));
+    }
+
+    double value = 0.0;
+    if (executor == null) {
+      // deterministic: take each thread's batches in turn
+      for (int i = 0; ; i++) {
+        boolean done = true;
+        for (List<int[]> share : shares) {
+          if (i < share.size()) {
+            value += update(share.get(i));
+            done = false;
+          }
+        }
+        if (done) {
+          break;
+        }
+      }
+      return value;
+    }
+
+    List<Future<Double>> results = new ArrayList<Future<Double>>(numThreads);
+    for (final List<int[]> share : shares) {
+      results.add(executor.submit(new Callable<Double>() {
+        @Override
+        public Double call() {
+          double shareValue = 0.0;
+          for (int[] batch : share) {
+            shareValue += update(batch);
+          }
+          return shareValue;
+        }
+      }));
+    }
+    try {
+      for (Future<Double> result : results) {
+        value += result.get();
+      }
+    } catch (InterruptedException e) {
+      throw new RuntimeInterruptedException(e);
+    } catch (ExecutionException e) {
+      throw new RuntimeException(e.getCause());
+    }
+    return value;
+  }
+
+  private void rescale() {
+    double scale = xscale.get();
+    if (scale == 1) return;
+    for (int i = 0; i < x.length; i++) {
+      x[i] *= scale;
+    }
+    xscale.set(1.0);
+  }
+
+  // really this is the square of the L2 norm....
+  private static double getNorm(double[] w) {
+    double norm = 0;
+    for (double wi : w) {
+      norm += wi * wi;
+    }
+    return norm;
+  }
+
+  private void doEvaluation(double[] x) {
+    // Evaluate solution
+    if (evaluators == null) return;
+    for (Evaluator eval : evaluators) {
+      sayln("  Evaluating: " + eval.toString());
+      eval.evaluate(x);
+    }
+  }
+
+  @Override
+  public double[] minimize(T function, double functionTolerance, double[] initial) {
+    return minimize(function, functionTolerance, initial, -1);
+  }
+
+  /**
+   * Minimizes the function, making {@code numPasses} passes through the
+   * data, or {@code maxIterations} passes if that is positive and smaller.
+   * The function tolerance is not used.
+   */
+  @Override
+  public double[] minimize(T f, double functionTolerance, double[] initial, int maxIterations) {
+    if ( ! (f instanceof ConcurrentStochasticUpdateFunction)) {
+      throw new UnsupportedOperationException("HogwildSGDMinimizer requires a ConcurrentStochasticUpdateFunction");
+    }
+    function = (ConcurrentStochasticUpdateFunction) f;
+    int totalSamples = function.dataDimension();
+    int passes = (maxIterations > 0) ? Math.min(maxIterations, numPasses) : numPasses;
+    lambda = 1.0 / (sigma * totalSamples);
+    t.set((long) (1 / (0.1 * lambda)));
+
+    x = new double[initial.length];
+    System.arraycopy(initial, 0, x, 0, x.length);
+    xscale.set(1.0);
+
+    sayln("Using sigma=" + sigma + " lambda=" + lambda);
+    sayln("       Batch size of: " + batchSize);
+    sayln("       Data dimension of: " + totalSamples);
+    sayln("       Number of threads: " + numThreads + (deterministic ? " (deterministic)" : ""));
+    sayln("       Number of passes is = " + passes);
+
+    int[] order = new int[totalSamples];
+    for (int i = 0; i < totalSamples; i++) {
+      order[i] = i;
+    }
+
+    ExecutorService executor = deterministic ? null : Executors.newFixedThreadPool(numThreads);
+    Timing total = new Timing();
+    Timing current = new Timing();
+    total.start();
+    current.start();
+    try {
+      for (int pass = 0; pass < passes; pass++) {
+        if (pass > 0 && evaluateIters > 0 && pass % evaluateIters == 0) {
+          doEvaluation(x);
+        }
+
+        ArrayMath.shuffle(order, gen);
+        double totalValue = pass(order, executor);
+        rescale();
+        try {
+          ArrayMath.assertFinite(x, "x");
+        } catch (ArrayMath.InvalidElementException e) {
+          System.err.println(e.toString());
+          for (int i = 0; i < x.length; i++) { x[i] = Double.NaN; }
+          break;
+        }
+        // Calculate loss based on L2 regularization
+        double loss = totalValue + 0.5 * getNorm(x) * lambda * totalSamples;
+        long passMillis = current.restart();
+        sayln("Pass " + pass + ": value " + totalValue + " loss " + loss +
+            " [" + total.report() / 1000.0 + " s {" + passMillis / 1000.0 + " s}, " +
+            Math.round(totalSamples * 1000.0 / Math.max(passMillis, 1)) + " items/s]");
+      }
+    } finally {
+      if (executor != null) {
+        executor.shutdown();
+      }
+    }
+
+    if (evaluateIters > 0) {
+      // do final evaluation
+      doEvaluation(x);
+    }
+
+    sayln("Completed in: " + Timing.toSecondsString(total.report()) + " s");
+
+    double[] result = x;
+    x = null;
+    function = null;
+    return result;
+  }
+
+  protected void sayln(String s) {
+    if (!quiet) {
+      System.err.println(s);
+    }
+  }
+
+}
@@ -0,0 +1,123 @@
+package edu.stanford.nlp.optimization;
+
+import edu.stanford.nlp.io.RuntimeIOException;
+import edu.stanford.nlp.util.RuntimeInterruptedException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.Socket;
+
+/**
+ * A DiffFunction whose value and derivative are computed by a
+ * {@link DiffFunctionServer} in another process (on this machine or
+ * another), which holds the data.  Used as a shard of a
+ * {@link ShardedDiffFunction}.
+ * <br>
+ * On connecting, this answers the server's challenge with the secret
+ * shared with it, then sends the setup bytes given to the constructor,
+ * from which the server makes its function (for instance, the feature
+ * indices which its data has to be made with), and the server answers
+ * with the function's domain dimension.  Then each evaluation at a new point sends
+ * the point and reads back the value and derivative.
+ */
+public class RemoteDiffFunction extends AbstractCachingDiffFunction implements Closeable {
+
+  private final String host;
+  private final int port;
+  private final Socket socket;
+  private final DataOutputStream out;
+  private final DataInputStream in;
+  private final int domainDimension;
+
+  /**
+   * Connects to the server, waiting up to connectTimeout seconds for it to
+   * start listening, proves that this knows the secret shared with the
+   * server, and sends it the setup bytes.
+   */
+  public RemoteDiffFunction(String host, int port, byte[] setup, byte[] secret, int connectTimeout) {
+    this.host = host;
+    this.port = port;
+    try {
+      socket = connect(host, port, connectTimeout);
+      in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      byte[] challenge = new byte[DiffFunctionServer.CHALLENGE_LENGTH];
+      in.readFully(challenge);
+      out.write(DiffFunctionServer.response(secret, challenge));
+      out.writeInt(setup.length);
+      out.write(setup);
+      out.flush();
+      domainDimension = in.readInt();
+    } catch (IOException e) {
+      throw new RuntimeIOException("Could not set up the remote function at " + this, e);
+    }
+  }
+
+  /** "host:port" */
+  public RemoteDiffFunction(String hostAndPort, byte[] setup, byte[] secret, int connectTimeout) {
+    this(hostAndPort.substring(0, hostAndPort.lastIndexOf(':')),
+        Integer.parseInt(hostAndPort.substring(hostAndPort.lastIndexOf(':') + 1)), setup, secret, connectTimeout);
+  }
+
+  private static Socket connect(String host, int port, int connectTimeout) throws IOException {
+    long giveUp = System.currentTimeMillis() + connectTimeout * 1000L;
+    while (true) {
+      try {
+        return new Socket(host, port);
+      } catch (ConnectException e) {
+        if (System.currentTimeMillis() > giveUp) {
+          throw e;
+        }
+        try {
+          Thread.sleep(500);
+        } catch (InterruptedException ie) {
+          throw new RuntimeInterruptedException(ie);
+        }
+      }
+    }
+  }
+
+  @Override
+  public int domainDimension() {
+    return domainDimension;
+  }
+
+  @Override
+  protected void calculate(double[] x) {
+    try {
+      out.writeInt(DiffFunctionServer.CALCULATE);
+      for (double xi : x) {
+        out.writeDouble(xi);
+      }
+      out.flush();
+      value = in.readDouble();
+      for (int i = 0; i < domainDimension; i++) {
+        derivative[i] = in.readDouble();
+      }
+    } catch (IOException e) {
+      throw new RuntimeIOException("Lost the remote function at " + this, e);
+    }
+  }
+
+  /** Tells the server that there will be no more requests, and closes the connection. */
+  @Override
+  public void close() throws IOException {
+    try {
+      out.writeInt(DiffFunctionServer.CLOSE);
+      out.flush();
+    } finally {
+      socket.close();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return host + ':' + port;
+  }
+
+}
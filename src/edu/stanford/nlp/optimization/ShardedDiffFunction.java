@@ -0,0 +1,106 @@
+package edu.stanford.nlp.optimization;
+
+import edu.stanford.nlp.util.RuntimeInterruptedException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A function which is the sum of several functions of the same weights,
+ * typically the objective function of a model on disjoint shards of the
+ * training data.  The value and derivative of every shard are computed at
+ * the same time, one thread per shard, and summed (in the order of the
+ * shards, so that the result does not depend on timing) before the
+ * minimizer takes its next step.
+ * <br>
+ * A shard can be any DiffFunction: one whose data is held in this JVM, or
+ * a {@link RemoteDiffFunction}, whose data is held by another process, so
+ * that a model can be trained on more data than fits in one heap.
+ * Regularization should be part of exactly one of the shards (or of a
+ * shard with no data), so that it is not counted more than once.
+ */
+public class ShardedDiffFunction extends AbstractCachingDiffFunction implements Closeable {
+
+  private final List<? extends DiffFunction> shards;
+  private final int domainDimension;
+  private final ExecutorService executor;
+
+  public ShardedDiffFunction(List<? extends DiffFunction> shards) {
+    if (shards.isEmpty()) {
+      throw new IllegalArgumentException("ShardedDiffFunction needs at least one shard");
+    }
+    this.shards = shards;
+    this.domainDimension = shards.get(0).domainDimension();
+    for (DiffFunction shard : shards) {
+      if (shard.domainDimension() != domainDimension) {
+        throw new IllegalArgumentException("Shards have different domain dimensions: " +
+            domainDimension + " and " + shard.domainDimension());
+      }
+    }
+    this.executor = Executors.newFixedThreadPool(shards.size());
+  }
+
+  @Override
+  public int domainDimension() {
+    return domainDimension;
+  }
+
+  public int numShards() {
+    return shards.size();
+  }
+
+  @Override
+  protected void calculate(final double[] x) {
+    List<Future<Double>> results = new ArrayList<Future<Double>>(shards.size());
+    for (final DiffFunction shard : shards) {
+      results.add(executor.submit(new Callable<Double>() {
+        @Override
+        public Double call() {
+          double shardValue = shard.valueAt(x);
+          shard.derivativeAt(x); // cached by the shard until we read it below
+          return shardValue;
+        }
+      }));
+    }
+
+    value = 0.0;
+    Arrays.fill(derivative, 0.0);
+    try {
+      for (int s = 0; s < shards.size(); s++) {
+        value += results.get(s).get();
+        double[] shardDerivative = shards.get(s).derivativeAt(x);
+        for (int i = 0; i < domainDimension; i++) {
+          derivative[i] += shardDerivative[i];
+        }
+      }
+    } catch (InterruptedException e) {
+      throw new RuntimeInterruptedException(e);
+    } catch (ExecutionException e) {
+      throw new RuntimeException("Could not compute the value of a shard", e.getCause());
+    }
+  }
+
+  /** Stops the threads, and closes those shards which can be closed (such as remote ones). */
+  @Override
+  public void close() {
+    executor.shutdown();
+    for (DiffFunction shard : shards) {
+      if (shard instanceof Closeable) {
+        try {
+          ((Closeable) shard).close();
+        } catch (IOException e) {
+          System.err.println("ShardedDiffFunction: could not close shard: " + e);
+        }
+      }
+    }
+  }
+
+}
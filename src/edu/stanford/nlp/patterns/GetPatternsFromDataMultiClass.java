@@ -39,6 +39,7 @@ import edu.stanford.nlp.trees.GrammaticalRelation;
 import edu.stanford.nlp.trees.Tree;
 import edu.stanford.nlp.trees.TreeCoreAnnotations.TreeAnnotation;
 import edu.stanford.nlp.util.*;
+import edu.stanford.nlp.util.concurrent.StripedCounter;
 import edu.stanford.nlp.util.PriorityQueue;
 import edu.stanford.nlp.util.TypesafeMap.Key;
 import edu.stanford.nlp.util.logging.Redwood;
@@ -1628,59 +1629,64 @@ public class  GetPatternsFromDataMultiClass<E extends Pattern> implements Serial
 
     ExecutorService executor = Executors.newFixedThreadPool(constVars.numThreads);
 
-    List<Future<Triple<List<Pair<E, CandidatePhrase>>, List<Pair<E, CandidatePhrase>>, List<Pair<E, CandidatePhrase>>>>> list = new ArrayList<Future<Triple<List<Pair<E, CandidatePhrase>>, List<Pair<E, CandidatePhrase>>, List<Pair<E, CandidatePhrase>>>>>();
+    // the threads count the pairs of pattern and phrase they find straight
+    // into shared counters, rather than listing every occurrence
+    StripedCounter<Pair<E, CandidatePhrase>> posStats = new StripedCounter<Pair<E, CandidatePhrase>>();
+    StripedCounter<Pair<E, CandidatePhrase>> negStats = new StripedCounter<Pair<E, CandidatePhrase>>();
+    StripedCounter<Pair<E, CandidatePhrase>> unlabStats = new StripedCounter<Pair<E, CandidatePhrase>>();
+    List<Future<Void>> list = new ArrayList<Future<Void>>();
     for (List<String> sampledSents : sampledSentIds) {
-
-      Callable<Triple<List<Pair<E, CandidatePhrase>>, List<Pair<E, CandidatePhrase>>, List<Pair<E, CandidatePhrase>>>> task = new CalculateSufficientStatsThreads(patternsForEachToken, sampledSents, sents, label, answerClass4Label);
-      Future<Triple<List<Pair<E, CandidatePhrase>>, List<Pair<E, CandidatePhrase>>, List<Pair<E, CandidatePhrase>>>> submit = executor.submit(task);
-      list.add(submit);
+      Callable<Void> task = new CalculateSufficientStatsThreads(patternsForEachToken, sampledSents, sents, label, answerClass4Label, posStats, negStats, unlabStats);
+      list.add(executor.submit(task));
     }
 
-    // Now retrieve the result
-    for (Future<Triple<List<Pair<E, CandidatePhrase>>, List<Pair<E, CandidatePhrase>>, List<Pair<E, CandidatePhrase>>>> future : list) {
+    // Now wait for the results
+    for (Future<Void> future : list) {
       try {
-        Triple<List<Pair<E, CandidatePhrase>>, List<Pair<E, CandidatePhrase>>, List<Pair<E, CandidatePhrase>>> stats = future.get();
-        addStats(patternsandWords4Label, stats.first());
-        addStats(negPatternsandWords4Label, stats.second());
-        addStats(unLabeledPatternsandWords4Label, stats.third());
+        future.get();
       } catch (Exception e) {
         executor.shutdownNow();
         throw new RuntimeException(e);
       }
     }
     executor.shutdown();
-
-
+    addStats(patternsandWords4Label, posStats);
+    addStats(negPatternsandWords4Label, negStats);
+    addStats(unLabeledPatternsandWords4Label, unlabStats);
   }
 
-  private void addStats(TwoDimensionalCounter<E, CandidatePhrase> pw, List<Pair<E, CandidatePhrase>> v) {
-    for(Pair<E, CandidatePhrase> w: v){
-      pw.incrementCount(w.first(), w.second());
+  private void addStats(TwoDimensionalCounter<E, CandidatePhrase> pw, StripedCounter<Pair<E, CandidatePhrase>> stats) {
+    for (Entry<Pair<E, CandidatePhrase>, Double> w : stats.toCounter().entrySet()) {
+      pw.incrementCount(w.getKey().first(), w.getKey().second(), w.getValue());
     }
   }
 
-  private class CalculateSufficientStatsThreads implements Callable{
+  private class CalculateSufficientStatsThreads implements Callable<Void> {
 
     private final Map<String, DataInstance> sents;
     private final PatternsForEachToken patternsForEachToken;
     private final Collection<String> sentIds;
     private final String label;
     private final Class answerClass4Label;
+    private final StripedCounter<Pair<E, CandidatePhrase>> posWords;
+    private final StripedCounter<Pair<E, CandidatePhrase>> negWords;
+    private final StripedCounter<Pair<E, CandidatePhrase>> unlabWords;
 
-    public CalculateSufficientStatsThreads(PatternsForEachToken patternsForEachToken, Collection<String> sentIds, Map<String, DataInstance> sents,String label, Class answerClass4Label){
+    public CalculateSufficientStatsThreads(PatternsForEachToken patternsForEachToken, Collection<String> sentIds, Map<String, DataInstance> sents,String label, Class answerClass4Label,
+                                           StripedCounter<Pair<E, CandidatePhrase>> posWords, StripedCounter<Pair<E, CandidatePhrase>> negWords, StripedCounter<Pair<E, CandidatePhrase>> unlabWords){
       this.patternsForEachToken = patternsForEachToken;
       this.sentIds = sentIds;
       this.sents = sents;
       this.label = label;
       this.answerClass4Label = answerClass4Label;
+      this.posWords = posWords;
+      this.negWords = negWords;
+      this.unlabWords = unlabWords;
     }
 
     @Override
-    public Triple<List<Pair<E, CandidatePhrase>>, List<Pair<E, CandidatePhrase>>, List<Pair<E, CandidatePhrase>>> call() throws Exception {
+    public Void call() throws Exception {
 
-      List<Pair<E, CandidatePhrase>> posWords = new ArrayList<Pair<E, CandidatePhrase>>();
-      List<Pair<E, CandidatePhrase>> negWords = new ArrayList<Pair<E, CandidatePhrase>>();
-      List<Pair<E, CandidatePhrase>> unlabWords = new ArrayList<Pair<E, CandidatePhrase>>();
       for(String sentId: sentIds){
         Map<Integer, Set<E>> pat4Sent = patternsForEachToken.getPatternsForAllTokens(sentId);
         if (pat4Sent == null) {
@@ -1772,7 +1778,7 @@ public class  GetPatternsFromDataMultiClass<E extends Pattern> implements Serial
           if (token.get(answerClass4Label).equals(label)) {
             // Positive
             for (E s : pats) {
-              posWords.add(new Pair<E, CandidatePhrase>(s, longestMatchingPhrase));
+              posWords.incrementCount(new Pair<E, CandidatePhrase>(s, longestMatchingPhrase));
             }
 
           } else {
@@ -1802,16 +1808,19 @@ public class  GetPatternsFromDataMultiClass<E extends Pattern> implements Serial
 
             for (E sindex : pats) {
               if (negToken) {
-                negWords.add(new Pair<E, CandidatePhrase>(sindex, longestMatchingPhrase));
+                negWords.incrementCount(new Pair<E, CandidatePhrase>(sindex, longestMatchingPhrase));
               } else {
-                unlabWords.add(new Pair<E, CandidatePhrase>(sindex, longestMatchingPhrase));
+                unlabWords.incrementCount(new Pair<E, CandidatePhrase>(sindex, longestMatchingPhrase));
               }
 
             }
           }
         }
       }
-      return new Triple(posWords, negWords, unlabWords);
+      posWords.flush();
+      negWords.flush();
+      unlabWords.flush();
+      return null;
     }
   }
 
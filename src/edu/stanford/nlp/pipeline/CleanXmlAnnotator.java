@@ -1,6 +1,9 @@
 package edu.stanford.nlp.pipeline;
 
+import java.io.IOException;
+import java.io.StringReader;
 import java.util.*;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -8,6 +11,9 @@ import edu.stanford.nlp.ling.CoreAnnotations;
 import edu.stanford.nlp.ling.CoreLabel;
 import edu.stanford.nlp.ling.MultiTokenTag;
 import edu.stanford.nlp.ling.tokensregex.EnvLookup;
+import edu.stanford.nlp.io.IOUtils;
+import edu.stanford.nlp.process.CoreLabelTokenFactory;
+import edu.stanford.nlp.process.PTBTokenizer;
 import edu.stanford.nlp.util.*;
 
 
@@ -15,6 +21,12 @@ import edu.stanford.nlp.util.*;
  * An annotator which removes all xml tags (as identified by the
  * tokenizer) and possibly selectively keeps the text between them.
  * Can also add sentence ending markers depending on the xml tag.
+ * <br>
+ * Each tag name is matched against the tag patterns only the first time
+ * it is seen; the result is kept as a set of bits in a table by tag
+ * name, and the bits of the tags enclosing the current token are kept
+ * on a stack of ints, so the usual token costs no regular expression
+ * matching at all.
  *
  * @author John Bauer
  * @author Angel Chang
@@ -126,6 +138,25 @@ public class CleanXmlAnnotator implements Annotator{
 
   public static final boolean DEFAULT_ALLOW_FLAWS = true;
 
+  /** Whether the text outside of any tag matching xmlTagMatcher is kept */
+  private final boolean keepTextOutsideTags;
+
+  // The classes of a tag name, as bits, according to the patterns above
+  private static final int XML_TAG = 1;
+  private static final int SENTENCE_ENDING_TAG = 1 << 1;
+  private static final int SINGLE_SENTENCE_TAG = 1 << 2;
+  private static final int DATE_TAG = 1 << 3;
+  private static final int DOCID_TAG = 1 << 4;
+  private static final int DOCTYPE_TAG = 1 << 5;
+  private static final int UTTERANCE_TURN_TAG = 1 << 6;
+  private static final int SPEAKER_TAG = 1 << 7;
+  private static final int SECTION_TAG = 1 << 8;
+
+  /** The classes of the tag names seen so far.  Cleared whenever a pattern is changed. */
+  private final ConcurrentMap<String, Integer> tagClasses = Generics.newConcurrentHashMap();
+  // Limit on the size of tagClasses, since there is no limit on the number of tag names of bad input
+  private static final int MAX_TAG_CLASSES = 10000;
+
   public CleanXmlAnnotator() {
     this(DEFAULT_XML_TAGS, DEFAULT_SENTENCE_ENDERS, DEFAULT_DATE_TAGS, DEFAULT_ALLOW_FLAWS);
   }
@@ -149,6 +180,7 @@ public class CleanXmlAnnotator implements Annotator{
     }
 
     dateTagMatcher = toCaseInsensitivePattern(dateTags);
+    keepTextOutsideTags = xmlTagMatcher == null || xmlTagMatcher.matcher("").matches();
   }
 
   private static Pattern toCaseInsensitivePattern(String tags) {
@@ -165,23 +197,28 @@ public class CleanXmlAnnotator implements Annotator{
 
   public void setSingleSentenceTagMatcher(String tags) {
     singleSentenceTagMatcher = toCaseInsensitivePattern(tags);
+    tagClasses.clear();
   }
 
   public void setDocIdTagMatcher(String docIdTags) {
     docIdTagMatcher = toCaseInsensitivePattern(docIdTags);
+    tagClasses.clear();
   }
 
   public void setDocTypeTagMatcher(String docTypeTags) {
     docTypeTagMatcher = toCaseInsensitivePattern(docTypeTags);
+    tagClasses.clear();
   }
 
   public void setSectionTagMatcher(String sectionTags) {
     sectionTagMatcher = toCaseInsensitivePattern(sectionTags);
+    tagClasses.clear();
   }
 
   public void setDiscourseTags(String utteranceTurnTags, String speakerTags) {
     utteranceTurnTagMatcher = toCaseInsensitivePattern(utteranceTurnTags);
     speakerTagMatcher = toCaseInsensitivePattern(speakerTags);
+    tagClasses.clear();
   }
 
   public void setDocAnnotationPatterns(String conf) {
@@ -201,6 +238,32 @@ public class CleanXmlAnnotator implements Annotator{
     addAnnotationPatterns(sectionAnnotationPatterns, conf, false);
   }
 
+  private static boolean matches(Pattern pattern, String name) {
+    return pattern != null && pattern.matcher(name).matches();
+  }
+
+  /** Returns the classes of the tag name, as bits, matching it against the tag patterns the first time it is seen */
+  private int tagClass(String name) {
+    Integer cached = tagClasses.get(name);
+    if (cached != null) {
+      return cached;
+    }
+    int tagClass = 0;
+    if (matches(xmlTagMatcher, name)) tagClass |= XML_TAG;
+    if (matches(sentenceEndingTagMatcher, name)) tagClass |= SENTENCE_ENDING_TAG;
+    if (matches(singleSentenceTagMatcher, name)) tagClass |= SINGLE_SENTENCE_TAG;
+    if (matches(dateTagMatcher, name)) tagClass |= DATE_TAG;
+    if (matches(docIdTagMatcher, name)) tagClass |= DOCID_TAG;
+    if (matches(docTypeTagMatcher, name)) tagClass |= DOCTYPE_TAG;
+    if (matches(utteranceTurnTagMatcher, name)) tagClass |= UTTERANCE_TURN_TAG;
+    if (matches(speakerTagMatcher, name)) tagClass |= SPEAKER_TAG;
+    if (matches(sectionTagMatcher, name)) tagClass |= SECTION_TAG;
+    if (tagClasses.size() < MAX_TAG_CLASSES) {
+      tagClasses.put(name, tagClass);
+    }
+    return tagClass;
+  }
+
   private static final Pattern TAG_ATTR_PATTERN = Pattern.compile("(.*)\\[(.*)\\]");
   private static void addAnnotationPatterns(CollectionValuedMap<Class, Pair<Pattern,Pattern>> annotationPatterns, String conf, boolean attrOnly) {
     String[] annoPatternStrings = conf == null ? new String[0] : conf.trim().split("\\s*,\\s*");
@@ -351,8 +414,9 @@ public class CleanXmlAnnotator implements Annotator{
 
   public List<CoreLabel> process(Annotation annotation, List<CoreLabel> tokens) {
     // As we are processing, this stack keeps track of which tags we
-    // are currently inside
-    Stack<String> enclosingTags = new Stack<String>();
+    // are currently inside, and enclosingTagClasses of their classes
+    List<String> enclosingTags = new ArrayList<String>();
+    int[] enclosingTagClasses = new int[16];
     // here we keep track of the current enclosingTags
     // this lets multiple tokens reuse the same tag stack
     List<String> currentTagSet = null;
@@ -399,11 +463,11 @@ public class CleanXmlAnnotator implements Annotator{
       // If it's not a tag, we do manipulations such as unescaping
       if (tag == null) {
         // TODO: put this into the lexer instead of here
-        token.setWord(XMLUtils.unescapeStringForXML(token.word()));
+        if (token.word().indexOf('&') >= 0) {
+          token.setWord(XMLUtils.unescapeStringForXML(token.word()));
+        }
         // TODO: was there another annotation that also represents the word?
-        if (matchDepth > 0 ||
-            xmlTagMatcher == null ||
-            xmlTagMatcher.matcher("").matches()) {
+        if (matchDepth > 0 || keepTextOutsideTags) {
           newTokens.add(token);
           if (inUtterance) {
             token.set(CoreAnnotations.UtteranceAnnotation.class, utteranceIndex);
@@ -447,21 +511,16 @@ public class CleanXmlAnnotator implements Annotator{
         token.set(CoreAnnotations.XmlContextAnnotation.class, currentTagSet);
 
         // is this token part of the doc date sequence?
-        if (dateTagMatcher != null &&
-            currentTagSet.size() > 0 &&
-            dateTagMatcher.matcher(currentTagSet.get(currentTagSet.size() - 1)).matches()) {
+        int innermostTagClass = enclosingTags.isEmpty() ? 0 : enclosingTagClasses[enclosingTags.size() - 1];
+        if ((innermostTagClass & DATE_TAG) != 0) {
           docDateTokens.add(token);
         }
 
-        if (docIdTagMatcher != null &&
-                currentTagSet.size() > 0 &&
-                docIdTagMatcher.matcher(currentTagSet.get(currentTagSet.size() - 1)).matches()) {
+        if ((innermostTagClass & DOCID_TAG) != 0) {
           docIdTokens.add(token);
         }
 
-        if (docTypeTagMatcher != null &&
-                currentTagSet.size() > 0 &&
-                docTypeTagMatcher.matcher(currentTagSet.get(currentTagSet.size() - 1)).matches()) {
+        if ((innermostTagClass & DOCTYPE_TAG) != 0) {
           docTypeTokens.add(token);
         }
 
@@ -489,6 +548,7 @@ public class CleanXmlAnnotator implements Annotator{
       }
 
       // At this point, we know we have a tag
+      int tagClass = tagClass(tag.name);
 
       // we are removing a token and its associated text...
       // keep track of that
@@ -513,7 +573,7 @@ public class CleanXmlAnnotator implements Annotator{
       }
 
       // Check if the tag matches a section
-      if (sectionTagMatcher != null && sectionTagMatcher.matcher(tag.name).matches()) {
+      if ((tagClass & SECTION_TAG) != 0) {
         if (tag.isEndTag) {
           annotateWithTag(annotation, sectionAnnotations, tag, sectionAnnotationPatterns, savedTokensForSection, null, null);
           if (sectionStartToken != null) {
@@ -547,14 +607,12 @@ public class CleanXmlAnnotator implements Annotator{
       // If the tag matches the sentence ending tags, and we have some
       // existing words, mark that word as being somewhere we want
       // to end the sentence.
-      if (sentenceEndingTagMatcher != null &&
-          sentenceEndingTagMatcher.matcher(tag.name).matches() &&
-          newTokens.size() > 0) {
+      if ((tagClass & SENTENCE_ENDING_TAG) != 0 && newTokens.size() > 0) {
         CoreLabel previous = newTokens.get(newTokens.size() - 1);
         previous.set(CoreAnnotations.ForcedSentenceEndAnnotation.class, true);
       }
 
-      if (utteranceTurnTagMatcher != null && utteranceTurnTagMatcher.matcher(tag.name).matches()) {
+      if ((tagClass & UTTERANCE_TURN_TAG) != 0) {
         if (newTokens.size() > 0) {
           // Utterance turn is also sentence ending
           CoreLabel previous = newTokens.get(newTokens.size() - 1);
@@ -569,7 +627,7 @@ public class CleanXmlAnnotator implements Annotator{
         }
       }
 
-      if (speakerTagMatcher != null && speakerTagMatcher.matcher(tag.name).matches()) {
+      if ((tagClass & SPEAKER_TAG) != 0) {
         if (newTokens.size() > 0) {
           // Speaker is not really part of sentence
           CoreLabel previous = newTokens.get(newTokens.size() - 1);
@@ -591,7 +649,7 @@ public class CleanXmlAnnotator implements Annotator{
         speakerTokens.clear();
       }
 
-      if (singleSentenceTagMatcher != null && singleSentenceTagMatcher.matcher(tag.name).matches()) {
+      if ((tagClass & SINGLE_SENTENCE_TAG) != 0) {
         if (tag.isEndTag) {
           // Mark previous token as forcing sentence end
           if (newTokens.size() > 0) {
@@ -621,8 +679,8 @@ public class CleanXmlAnnotator implements Annotator{
                                                " which does not match" +
                                                " any open tag");
           }
-          String lastTag = enclosingTags.pop();
-          if (xmlTagMatcher.matcher(lastTag).matches()){
+          String lastTag = enclosingTags.remove(enclosingTags.size() - 1);
+          if ((enclosingTagClasses[enclosingTags.size()] & XML_TAG) != 0) {
             --matchDepth;
           }
           if (lastTag.equals(tag.name))
@@ -640,15 +698,19 @@ public class CleanXmlAnnotator implements Annotator{
         }
       } else {
         // open tag, since all other cases are exhausted
-        enclosingTags.push(tag.name);
-        if (xmlTagMatcher.matcher(tag.name).matches())
+        if (enclosingTags.size() == enclosingTagClasses.length) {
+          enclosingTagClasses = Arrays.copyOf(enclosingTagClasses, enclosingTagClasses.length * 2);
+        }
+        enclosingTagClasses[enclosingTags.size()] = tagClass;
+        enclosingTags.add(tag.name);
+        if ((tagClass & XML_TAG) != 0)
           matchDepth++;
       }
     }
 
     if (enclosingTags.size() > 0 && !allowFlawedXml) {
       throw new IllegalArgumentException("Unclosed tags, starting with " +
-                                         enclosingTags.pop());
+                                         enclosingTags.get(enclosingTags.size() - 1));
     }
 
     // If we ended with a string of xml tokens, that text needs to be
@@ -687,6 +749,54 @@ public class CleanXmlAnnotator implements Annotator{
     return newTokens;
   }
 
+  /**
+   * Times the annotator, configured as in the default pipeline, on some
+   * (e.g., HTML) files, tokenized with the invertible PTBTokenizer.
+   * <br>
+   * Usage: <code>java edu.stanford.nlp.pipeline.CleanXmlAnnotator [-iterations n] [-sentenceEndingTags regex] file ...</code>
+   */
+  public static void main(String[] args) throws IOException {
+    Map<String, Integer> flagMap = Generics.newHashMap();
+    flagMap.put("-iterations", 1);
+    flagMap.put("-sentenceEndingTags", 1);
+    Map<String, String[]> argsMap = StringUtils.argsToMap(args, flagMap);
+    String[] filenames = argsMap.get(null);
+    if (filenames == null || filenames.length == 0) {
+      System.err.println("Usage: java edu.stanford.nlp.pipeline.CleanXmlAnnotator [-iterations n] [-sentenceEndingTags regex] file ...");
+      System.exit(1);
+    }
+    int iterations = argsMap.containsKey("-iterations") ? Integer.parseInt(argsMap.get("-iterations")[0]) : 5;
+    String sentenceEndingTags = argsMap.containsKey("-sentenceEndingTags") ? argsMap.get("-sentenceEndingTags")[0] : DEFAULT_SENTENCE_ENDERS;
+
+    CleanXmlAnnotator annotator = new CleanXmlAnnotator(DEFAULT_XML_TAGS, sentenceEndingTags, DEFAULT_DATE_TAGS, DEFAULT_ALLOW_FLAWS);
+    annotator.setDocIdTagMatcher(DEFAULT_DOCID_TAGS);
+    annotator.setDocTypeTagMatcher(DEFAULT_DOCTYPE_TAGS);
+    annotator.setDiscourseTags(DEFAULT_UTTERANCE_TURN_TAGS, DEFAULT_SPEAKER_TAGS);
+    annotator.setDocAnnotationPatterns(DEFAULT_DOC_ANNOTATIONS_PATTERNS);
+
+    List<String> texts = new ArrayList<String>();
+    for (String filename : filenames) {
+      texts.add(IOUtils.slurpFile(filename));
+    }
+    long tokens = 0;
+    long keptTokens = 0;
+    long nanos = 0;
+    for (int iter = 0; iter < iterations; iter++) {
+      for (String text : texts) {
+        Annotation annotation = new Annotation(text);
+        List<CoreLabel> textTokens = new PTBTokenizer<CoreLabel>(new StringReader(text), new CoreLabelTokenFactory(), "invertible").tokenize();
+        annotation.set(CoreAnnotations.TokensAnnotation.class, textTokens);
+        long start = System.nanoTime();
+        annotator.annotate(annotation);
+        nanos += System.nanoTime() - start;
+        tokens += textTokens.size();
+        keptTokens += annotation.get(CoreAnnotations.TokensAnnotation.class).size();
+      }
+    }
+    double seconds = nanos / 1e9;
+    System.out.printf("Cleaned %d tokens (kept %d) in %.2f s, %.0f tokens/s%n", tokens, keptTokens, seconds, tokens / seconds);
+  }
+
   @Override
   public Set<Requirement> requires() {
     return Collections.singleton(TOKENIZE_REQUIREMENT);
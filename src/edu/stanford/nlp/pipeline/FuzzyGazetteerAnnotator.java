@@ -0,0 +1,391 @@
+package edu.stanford.nlp.pipeline;
+
+import edu.stanford.nlp.io.IOUtils;
+import edu.stanford.nlp.io.RuntimeIOException;
+import edu.stanford.nlp.ling.CoreAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.ling.tokensregex.matcher.ApproxMatch;
+import edu.stanford.nlp.ling.tokensregex.matcher.CompactStringTrie;
+import edu.stanford.nlp.util.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * <p>
+ * Labels phrases which are equal to, or within a small number of character edits of,
+ *   an entry of a gazetteer, and links them to that entry.  This handles misspellings
+ *   and variant spellings of names, which TokensRegexNER cannot match.
+ * </p>
+ *
+ * <p>
+ * The gazetteer is a tab delimited file with the phrase, its NER type and optionally
+ *   an id for the entry (the phrase is used as the id if there is none):
+ * <pre>
+ *   Stanford University    ORGANIZATION    Q41506
+ *   Palo Alto    LOCATION    Q47265
+ * </pre>
+ * The phrases are compiled into a {@link CompactStringTrie}, which can also be saved
+ *   and given as the mapping instead (any mapping ending in <code>.ser.gz</code> is
+ *   read as a serialized trie), so that very large gazetteers are not rebuilt each time.
+ * </p>
+ *
+ * <p>
+ * For each token of a sentence, the phrases of up to <code>maxTokens</code> tokens
+ *   starting there are all looked up in one search of the trie.  The (at most)
+ *   <code>topK</code> closest entries of each phrase are stored as
+ *   {@link CandidatesAnnotation} on the sentence, with their token offsets and edit
+ *   distance.  Then the best non overlapping candidates (smallest distance, then
+ *   longest) are chosen, and their tokens are given the NER type of the entry, and its
+ *   id as {@link CoreAnnotations.LinkAnnotation}, provided the tokens do not already
+ *   have an NER type other than the background symbols.
+ * </p>
+ *
+ * <p>
+ * Configuration:
+ * <table>
+ *   <tr><th>Field</th><th>Description</th><th>Default</th></tr>
+ *   <tr><td><code>mapping</code></td><td>The gazetteer file, or a serialized trie</td><td></td></tr>
+ *   <tr><td><code>ignorecase</code></td><td>If true, case is ignored</td><td><code>true</code></td></tr>
+ *   <tr><td><code>maxEditDistance</code></td><td>Maximum number of character edits between a phrase and an entry</td><td><code>1</code></td></tr>
+ *   <tr><td><code>minLengthForEdit</code></td><td>Phrases with fewer characters than this must match an entry exactly</td><td><code>5</code></td></tr>
+ *   <tr><td><code>maxTokens</code></td><td>Maximum number of tokens in a phrase</td><td><code>5</code></td></tr>
+ *   <tr><td><code>topK</code></td><td>Number of candidate entries kept for each phrase</td><td><code>5</code></td></tr>
+ *   <tr><td><code>backgroundSymbol</code></td><td>Comma separated list of NER labels which can be replaced</td><td><code>O,MISC</code></td></tr>
+ * </table>
+ * </p>
+ *
+ * <p>
+ * This annotator is not in the default list; it can be added with
+ *   <code>customAnnotatorClass.fuzzygazetteer = edu.stanford.nlp.pipeline.FuzzyGazetteerAnnotator</code>.
+ * </p>
+ */
+public class FuzzyGazetteerAnnotator implements Annotator {
+
+  /** A gazetteer entry */
+  public static class Entry implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public final String phrase;
+    public final String type;
+    public final String id;
+
+    public Entry(String phrase, String type, String id) {
+      this.phrase = phrase;
+      this.type = type;
+      this.id = id;
+    }
+
+    public String toString() {
+      return "Entry{" + phrase + ' ' + type + ' ' + id + '}';
+    }
+  }
+
+  /**
+   * The candidate entries of the phrases of a sentence.  The begin and end of each
+   *   match are token offsets in the sentence, and its cost is the edit distance.
+   */
+  public static class CandidatesAnnotation implements CoreAnnotation<List<ApproxMatch<String,Entry>>> {
+    public Class<List<ApproxMatch<String,Entry>>> getType() {
+      return ErasureUtils.uncheckedCast(List.class);
+    }
+  }
+
+  public static PropertiesUtils.Property[] SUPPORTED_PROPERTIES = new PropertiesUtils.Property[]{
+          new PropertiesUtils.Property("mapping", "", "Gazetteer file (phrase, type and optional id, tab delimited) or serialized CompactStringTrie."),
+          new PropertiesUtils.Property("ignorecase", "true", "Whether to ignore case or not when matching phrases."),
+          new PropertiesUtils.Property("maxEditDistance", "1", "Maximum number of character edits between a phrase and an entry."),
+          new PropertiesUtils.Property("minLengthForEdit", "5", "Phrases with fewer characters than this must match an entry exactly."),
+          new PropertiesUtils.Property("maxTokens", "5", "Maximum number of tokens in a phrase."),
+          new PropertiesUtils.Property("topK", "5", "Number of candidate entries kept for each phrase."),
+          new PropertiesUtils.Property("backgroundSymbol", "O,MISC", "Comma separated list of NER labels which can be replaced."),
+          new PropertiesUtils.Property("verbose", "false", ""),
+  };
+
+  private final CompactStringTrie<Entry> trie;
+  private final boolean ignoreCase;
+  private final int maxEditDistance;
+  private final int minLengthForEdit;
+  private final int maxTokens;
+  private final int topK;
+  private final Set<String> backgroundSymbols;
+  private final boolean verbose;
+
+  /** Orders candidates by edit distance, then length (longest first), then start */
+  private static final Comparator<ApproxMatch<String,Entry>> CANDIDATE_COMPARATOR = (m1, m2) -> {
+    int cmp = Double.compare(m1.getCost(), m2.getCost());
+    if (cmp != 0) return cmp;
+    cmp = (m2.getEnd() - m2.getBegin()) - (m1.getEnd() - m1.getBegin());
+    if (cmp != 0) return cmp;
+    return m1.getBegin() - m2.getBegin();
+  };
+
+  public FuzzyGazetteerAnnotator(String name, Properties properties) {
+    this(name, properties, loadTrie(name, properties));
+  }
+
+  /** Creates an annotator using an already built trie; the mapping property is not used */
+  public FuzzyGazetteerAnnotator(String name, Properties properties, CompactStringTrie<Entry> trie) {
+    String prefix = (name != null && !name.isEmpty())? name + ".":"";
+    this.trie = trie;
+    this.ignoreCase = PropertiesUtils.getBool(properties, prefix + "ignorecase", true);
+    this.maxEditDistance = PropertiesUtils.getInt(properties, prefix + "maxEditDistance", 1);
+    this.minLengthForEdit = PropertiesUtils.getInt(properties, prefix + "minLengthForEdit", 5);
+    this.maxTokens = PropertiesUtils.getInt(properties, prefix + "maxTokens", 5);
+    this.topK = PropertiesUtils.getInt(properties, prefix + "topK", 5);
+    this.verbose = PropertiesUtils.getBool(properties, prefix + "verbose", false);
+    String backgroundSymbol = properties.getProperty(prefix + "backgroundSymbol", "O,MISC");
+    this.backgroundSymbols = Collections.unmodifiableSet(CollectionUtils.asSet(backgroundSymbol.split("\\s*,\\s*")));
+  }
+
+  private static CompactStringTrie<Entry> loadTrie(String name, Properties properties) {
+    String prefix = (name != null && !name.isEmpty())? name + ".":"";
+    String mapping = properties.getProperty(prefix + "mapping");
+    if (mapping == null || mapping.isEmpty()) {
+      throw new IllegalArgumentException("No mapping given for " + name);
+    }
+    Timing timing = new Timing();
+    CompactStringTrie<Entry> trie;
+    if (mapping.endsWith(".ser.gz")) {
+      try {
+        trie = IOUtils.readObjectFromURLOrClasspathOrFileSystem(mapping);
+      } catch (IOException | ClassNotFoundException e) {
+        throw new RuntimeIOException("Couldn't read gazetteer trie from " + mapping, e);
+      }
+    } else {
+      trie = new CompactStringTrie<Entry>(readEntries(mapping, PropertiesUtils.getBool(properties, prefix + "ignorecase", true)));
+    }
+    if (PropertiesUtils.getBool(properties, prefix + "verbose", false)) {
+      timing.done("FuzzyGazetteerAnnotator: loaded " + trie.size() + " entries (" + trie.numNodes() + " trie nodes) from " + mapping);
+    }
+    return trie;
+  }
+
+  /** Reads the gazetteer into a map from (case folded if ignoreCase) phrase to entry, keeping the first entry of a phrase */
+  public static Map<String,Entry> readEntries(String mapping, boolean ignoreCase) {
+    Map<String,Entry> entries = Generics.newHashMap();
+    BufferedReader rd = null;
+    try {
+      rd = IOUtils.readerFromString(mapping);
+      int lineCount = 0;
+      for (String line; (line = rd.readLine()) != null; ) {
+        lineCount++;
+        if (line.trim().isEmpty()) continue;
+        String[] split = line.split("\t");
+        if (split.length < 2 || split.length > 3) {
+          throw new IllegalArgumentException("Invalid line " + lineCount + " in gazetteer " + mapping + ": \"" + line + "\"");
+        }
+        String phrase = StringUtils.join(split[0].trim().split("\\s+"), " ");
+        String id = (split.length == 3)? split[2].trim(): phrase;
+        String key = ignoreCase? phrase.toLowerCase(Locale.ROOT): phrase;
+        if ( ! entries.containsKey(key)) {
+          entries.put(key, new Entry(phrase, split[1].trim().intern(), id));
+        }
+      }
+    } catch (IOException e) {
+      throw new RuntimeIOException("Couldn't read gazetteer from " + mapping, e);
+    } finally {
+      IOUtils.closeIgnoringExceptions(rd);
+    }
+    return entries;
+  }
+
+  public CompactStringTrie<Entry> getTrie() {
+    return trie;
+  }
+
+  @Override
+  public void annotate(Annotation annotation) {
+    if (verbose) {
+      System.err.print("Adding fuzzy gazetteer annotations ... ");
+    }
+    List<CoreMap> sentences = annotation.get(CoreAnnotations.SentencesAnnotation.class);
+    if (sentences == null) {
+      throw new RuntimeException("Unable to find sentences in " + annotation);
+    }
+    for (CoreMap sentence : sentences) {
+      annotateSentence(sentence);
+    }
+    if (verbose) {
+      System.err.println("done.");
+    }
+  }
+
+  /** Looks up the phrases of the sentence, stores the candidates and labels the best ones */
+  public void annotateSentence(CoreMap sentence) {
+    List<CoreLabel> tokens = sentence.get(CoreAnnotations.TokensAnnotation.class);
+    List<ApproxMatch<String,Entry>> candidates = findCandidates(tokens);
+    sentence.set(CandidatesAnnotation.class, candidates);
+    for (ApproxMatch<String,Entry> match : IntervalTree.getNonOverlapping(candidates, CANDIDATE_COMPARATOR)) {
+      if (isReplaceable(tokens, match.getBegin(), match.getEnd())) {
+        Entry entry = match.getValue();
+        for (int i = match.getBegin(); i < match.getEnd(); i++) {
+          CoreLabel token = tokens.get(i);
+          token.setNER(entry.type);
+          token.set(CoreAnnotations.LinkAnnotation.class, entry.id);
+        }
+      }
+    }
+  }
+
+  private boolean isReplaceable(List<CoreLabel> tokens, int begin, int end) {
+    for (int i = begin; i < end; i++) {
+      String ner = tokens.get(i).ner();
+      if (ner != null && ! backgroundSymbols.contains(ner)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the (at most) topK closest entries of every phrase of up to maxTokens tokens.
+   * All the phrases starting at a token are looked up in a single search of the trie.
+   */
+  public List<ApproxMatch<String,Entry>> findCandidates(List<CoreLabel> tokens) {
+    List<ApproxMatch<String,Entry>> candidates = new ArrayList<ApproxMatch<String,Entry>>();
+    StringBuilder phrase = new StringBuilder();
+    int[] ends = new int[maxTokens];
+    int[] maxDistances = new int[maxTokens];
+    for (int begin = 0; begin < tokens.size(); begin++) {
+      phrase.setLength(0);
+      int numPhrases = Math.min(maxTokens, tokens.size() - begin);
+      for (int i = 0; i < numPhrases; i++) {
+        if (i > 0) phrase.append(' ');
+        String word = tokens.get(begin + i).word();
+        // each word is lowercased before it is added, as lowercasing can change its length,
+        // so that the ends of the phrases are those of the string searched
+        if (word != null) phrase.append(ignoreCase? word.toLowerCase(Locale.ROOT): word);
+        ends[i] = phrase.length();
+        maxDistances[i] = (phrase.length() >= minLengthForEdit)? maxEditDistance: 0;
+      }
+      String target = phrase.toString();
+      List<List<ApproxMatch<String,Entry>>> matches = trie.findClosestPrefixMatches(target,
+              Arrays.copyOf(ends, numPhrases), Arrays.copyOf(maxDistances, numPhrases), topK);
+      for (int i = 0; i < numPhrases; i++) {
+        for (ApproxMatch<String,Entry> m : matches.get(i)) {
+          candidates.add(new ApproxMatch<String,Entry>(m.getMatched(), m.getValue(), begin, begin + i + 1, m.getCost()));
+        }
+      }
+    }
+    return candidates;
+  }
+
+  @Override
+  public Set<Requirement> requires() {
+    return TOKENIZE_AND_SSPLIT;
+  }
+
+  @Override
+  public Set<Requirement> requirementsSatisfied() {
+    return Collections.emptySet();
+  }
+
+  private static String randomWord(Random random) {
+    String consonants = "bcdfghjklmnprstvz";
+    String vowels = "aeiou";
+    StringBuilder sb = new StringBuilder();
+    int syllables = 1 + random.nextInt(3);
+    for (int i = 0; i < syllables; i++) {
+      sb.append(consonants.charAt(random.nextInt(consonants.length())));
+      sb.append(vowels.charAt(random.nextInt(vowels.length())));
+      if (random.nextBoolean()) sb.append(consonants.charAt(random.nextInt(consonants.length())));
+    }
+    sb.setCharAt(0, Character.toUpperCase(sb.charAt(0)));
+    return sb.toString();
+  }
+
+  /**
+   * Builds a synthetic gazetteer and times annotating sentences containing misspelled
+   * entries, or builds and saves the trie of a gazetteer.
+   * <br>
+   * Usage: <code>java edu.stanford.nlp.pipeline.FuzzyGazetteerAnnotator [-size n] [-sentences n] [-maxEditDistance k] [-topK k]</code>
+   * <br>
+   * or: <code>java edu.stanford.nlp.pipeline.FuzzyGazetteerAnnotator -mapping gazetteer.tsv -serialize trie.ser.gz [-ignorecase true]</code>
+   */
+  public static void main(String[] args) throws IOException {
+    Properties props = StringUtils.argsToProperties(args);
+    if (props.containsKey("serialize")) {
+      FuzzyGazetteerAnnotator annotator = new FuzzyGazetteerAnnotator("", props);
+      IOUtils.writeObjectToFile(annotator.getTrie(), props.getProperty("serialize"));
+      return;
+    }
+    int size = PropertiesUtils.getInt(props, "size", 1000000);
+    int numSentences = PropertiesUtils.getInt(props, "sentences", 1000);
+    Random random = new Random(1);
+
+    Timing timing = new Timing();
+    Map<String,Entry> entries = Generics.newHashMap();
+    List<String> phrases = new ArrayList<String>(size);
+    while (entries.size() < size) {
+      int length = 1 + random.nextInt(3);
+      StringBuilder sb = new StringBuilder(randomWord(random));
+      for (int i = 1; i < length; i++) {
+        sb.append(' ').append(randomWord(random));
+      }
+      String phrase = sb.toString();
+      String key = phrase.toLowerCase(Locale.ROOT);
+      if ( ! entries.containsKey(key)) {
+        entries.put(key, new Entry(phrase, "ENTITY", "E" + entries.size()));
+        phrases.add(phrase);
+      }
+    }
+    timing.done("Generated " + size + " entries");
+    CompactStringTrie<Entry> trie = new CompactStringTrie<Entry>(entries);
+    timing.done("Built trie with " + trie.numNodes() + " nodes");
+    entries = null;
+
+    FuzzyGazetteerAnnotator annotator = new FuzzyGazetteerAnnotator("", props, trie);
+    List<CoreMap> sentences = new ArrayList<CoreMap>(numSentences);
+    int numTokens = 0;
+    for (int s = 0; s < numSentences; s++) {
+      List<CoreLabel> tokens = new ArrayList<CoreLabel>();
+      while (tokens.size() < 20) {
+        if (random.nextInt(5) == 0) {
+          // an entry, with a character substituted
+          char[] phrase = phrases.get(random.nextInt(phrases.size())).toCharArray();
+          int i = random.nextInt(phrase.length);
+          if (phrase[i] != ' ') phrase[i] = 'x';
+          for (String word : new String(phrase).split(" ")) {
+            tokens.add(makeToken(word));
+          }
+        } else {
+          tokens.add(makeToken("the"));
+        }
+      }
+      numTokens += tokens.size();
+      CoreMap sentence = new ArrayCoreMap();
+      sentence.set(CoreAnnotations.TokensAnnotation.class, tokens);
+      sentences.add(sentence);
+    }
+    int iterations = PropertiesUtils.getInt(props, "iterations", 3);
+    for (int iter = 0; iter < iterations; iter++) {
+      int linked = 0;
+      long start = System.nanoTime();
+      for (CoreMap sentence : sentences) {
+        for (CoreLabel token : sentence.get(CoreAnnotations.TokensAnnotation.class)) {
+          token.setNER("O");
+          token.remove(CoreAnnotations.LinkAnnotation.class);
+        }
+        annotator.annotateSentence(sentence);
+        for (CoreLabel token : sentence.get(CoreAnnotations.TokensAnnotation.class)) {
+          if (token.get(CoreAnnotations.LinkAnnotation.class) != null) linked++;
+        }
+      }
+      long elapsed = System.nanoTime() - start;
+      System.err.printf("Annotated %d sentences (%d tokens, %d linked) in %.1f ms: %.3f ms per sentence%n",
+              numSentences, numTokens, linked, elapsed / 1e6, elapsed / 1e6 / numSentences);
+    }
+  }
+
+  private static CoreLabel makeToken(String word) {
+    CoreLabel token = new CoreLabel();
+    token.setWord(word);
+    token.setValue(word);
+    return token;
+  }
+
+}
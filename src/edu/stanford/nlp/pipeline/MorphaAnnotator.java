@@ -3,6 +3,7 @@ package edu.stanford.nlp.pipeline;
 import edu.stanford.nlp.ling.CoreAnnotation;
 import edu.stanford.nlp.ling.CoreAnnotations;
 import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.process.LemmaCache;
 import edu.stanford.nlp.process.Morphology;
 import edu.stanford.nlp.util.CoreMap;
 
@@ -19,6 +20,10 @@ import java.util.Set;
  * {@code SentencesAnnotation.class} key.
  * The Annotator adds lemma information to each CoreLabel,
  * in the LemmaAnnotation.class.
+ * <br>
+ * Lemmas are looked up in a cache shared by all MorphaAnnotators before
+ * running the lexer; its size can be set with the system property
+ * {@code morpha.cacheSize} (0 turns the cache off).
  *
  * @author Jenny Finkel
  */
@@ -30,6 +35,18 @@ public class MorphaAnnotator implements Annotator{
   private static final String[] prep = {"abroad", "across", "after", "ahead", "along", "aside", "away", "around", "back", "down", "forward", "in", "off", "on", "over", "out", "round", "together", "through", "up"};
   private static final List<String> particles = Arrays.asList(prep);
 
+  private static final int CACHE_SIZE = Integer.parseInt(System.getProperty("morpha.cacheSize", "500000"));
+
+  private static final LemmaCache lemmaCache = (CACHE_SIZE > 0) ? new LemmaCache(CACHE_SIZE) : null;
+
+  // The lexer of a Morphology is not thread-safe, so each thread gets its own
+  private final ThreadLocal<Morphology> morphology = new ThreadLocal<Morphology>() {
+    @Override
+    protected Morphology initialValue() {
+      return new Morphology(lemmaCache);
+    }
+  };
+
   public MorphaAnnotator() {
     this(true);
   }
@@ -42,7 +59,7 @@ public class MorphaAnnotator implements Annotator{
     if (VERBOSE) {
       System.err.print("Finding lemmas ...");
     }
-    Morphology morphology = new Morphology();
+    Morphology morphology = this.morphology.get();
     if (annotation.has(CoreAnnotations.SentencesAnnotation.class)) {
       for (CoreMap sentence : annotation.get(CoreAnnotations.SentencesAnnotation.class)) {
         List<CoreLabel> tokens = sentence.get(CoreAnnotations.TokensAnnotation.class);
@@ -57,6 +74,14 @@ public class MorphaAnnotator implements Annotator{
       throw new RuntimeException("Unable to find words/tokens in: " +
                                  annotation);
     }
+    if (VERBOSE) {
+      System.err.println(" done." + ((lemmaCache == null) ? "" : " " + lemmaCache));
+    }
+  }
+
+  /** The cache of lemmas shared by all MorphaAnnotators, or null if caching is turned off */
+  public static LemmaCache lemmaCache() {
+    return lemmaCache;
   }
 
 
@@ -569,6 +569,7 @@ public class StanfordCoreNLP extends AnnotationPipeline {
     os.println("\tIf annotator \"tokenize\" is defined:");
     os.println("\t\"tokenize.options\" - PTBTokenizer options (see edu.stanford.nlp.process.PTBTokenizer for details)");
     os.println("\t\"tokenize.whitespace\" - If true, just use whitespace tokenization");
+    os.println("\t\"tokenize.compactTokens\" - If true, tokens share the Strings of frequent words, using less memory");
 
     os.println();
     os.println("\tIf annotator \"cleanxml\" is defined:");
@@ -2,6 +2,8 @@ package edu.stanford.nlp.pipeline;
 
 import java.io.Reader;
 import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -199,29 +201,33 @@ public class TokenizerAnnotator implements Annotator {
       }
     }
 
+    // tokenize.compactTokens makes tokens which share their Strings (see CoreLabelTokenFactory)
+    boolean compact = Boolean.valueOf(props.getProperty("tokenize.compactTokens", "false"));
+    CoreLabelTokenFactory tokenFactory = new CoreLabelTokenFactory(true, compact);
+
     switch(type) {
     case Spanish:
-      factory = SpanishTokenizer.factory(new CoreLabelTokenFactory(), options);
+      factory = SpanishTokenizer.factory(tokenFactory, options);
       break;
 
     case French:
-      factory = FrenchTokenizer.factory(new CoreLabelTokenFactory(), options);
+      factory = FrenchTokenizer.factory(tokenFactory, options);
       break;
 
     case Whitespace:
       boolean eolIsSignificant = Boolean.valueOf(props.getProperty(EOL_PROPERTY, "false"));
       eolIsSignificant = eolIsSignificant || Boolean.valueOf(props.getProperty(StanfordCoreNLP.NEWLINE_SPLITTER_PROPERTY, "false"));
-      factory = new WhitespaceTokenizer.WhitespaceTokenizerFactory<>(new CoreLabelTokenFactory(), eolIsSignificant);
+      factory = new WhitespaceTokenizer.WhitespaceTokenizerFactory<>(tokenFactory, eolIsSignificant);
       break;
 
     case English:
     case German:
-      factory = PTBTokenizer.factory(new CoreLabelTokenFactory(), options);
+      factory = PTBTokenizer.factory(tokenFactory, options);
       break;
 
     case Unspecified:
       System.err.println("TokenizerAnnotator: No tokenizer type provided. Defaulting to PTBTokenizer.");
-      factory = PTBTokenizer.factory(new CoreLabelTokenFactory(), options);
+      factory = PTBTokenizer.factory(tokenFactory, options);
       break;
 
     default:
@@ -240,6 +246,19 @@ public class TokenizerAnnotator implements Annotator {
     return factory.getTokenizer(r);
   }
 
+  /**
+   * Returns a tokenizer which reads the input incrementally from this channel,
+   * so that, with {@link WordsToSentencesAnnotator#sentenceIterator}, input of
+   * any size can be tokenized and split into sentences in bounded memory.
+   * Character offsets are counted from the start of the channel.
+   *
+   * @param channel The input; it is not closed by the tokenizer
+   * @param encoding The character encoding of the input
+   */
+  public Tokenizer<CoreLabel> getTokenizer(ReadableByteChannel channel, String encoding) {
+    return getTokenizer(Channels.newReader(channel, encoding));
+  }
+
   /**
    * Does the actual work of splitting TextAnnotation into CoreLabels,
    * which are then attached to the TokensAnnotation.
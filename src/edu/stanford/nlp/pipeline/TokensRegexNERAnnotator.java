@@ -104,6 +104,10 @@ import java.util.regex.Pattern;
  *      <td><code></code></td></tr>
  *   <tr><td><code>ignoreCase</code></td><td>If true, case is ignored</td></td>
  *      <td><code>false</code></td></tr>
+ *   <tr><td><code>useAutomaton</code></td><td>If true, entries which are plain sequences of words
+ *      are compiled into one token trie ({@link CoreMapSequenceAutomaton}) and found in a single
+ *      scan of each sentence, instead of matching each entry separately.  The matches are the same.</td>
+ *      <td><code>false</code></td></tr>
  *   <tr><td><code>verbose</code></td><td>If true, turns on extra debugging messages.</td>
  *      <td><code>false</code></td></tr>
  * </table>
@@ -115,6 +119,7 @@ public class TokensRegexNERAnnotator implements Annotator {
   protected static final Redwood.RedwoodChannels logger = Redwood.channels("TokenRegexNER");
 
   private final boolean ignoreCase;
+  private final boolean useAutomaton;
   private final List<Entry> entries;
   private final Map<SequencePattern<CoreMap>,Entry> patternToEntry;
   private final MultiPatternMatcher<CoreMap>  multiPatternMatcher;
@@ -146,6 +151,7 @@ public class TokensRegexNERAnnotator implements Annotator {
                   " For these types, only if the matched expression has NER type matching the\n" +
                   " specified overwriteableType for the regex will the NER type be overwritten."),
           new PropertiesUtils.Property("backgroundSymbol", DEFAULT_BACKGROUND_SYMBOL, "Comma separated list of NER labels to always replace."),
+          new PropertiesUtils.Property("useAutomaton", "false", "Whether to find matches of plain word sequence entries in a single scan using a token trie."),
           new PropertiesUtils.Property("verbose", "false", ""),
   };
 
@@ -192,6 +198,7 @@ public class TokensRegexNERAnnotator implements Annotator {
             : Collections.unmodifiableSet(new HashSet<String>());
     this.ignoreCase = PropertiesUtils.getBool(properties, prefix + "ignorecase", false);
     this.verbose = PropertiesUtils.getBool(properties, prefix + "verbose", false);
+    this.useAutomaton = PropertiesUtils.getBool(properties, prefix + "useAutomaton", false);
 
     if (validPosRegex != null && !validPosRegex.equals("")) {
       validPosPattern = Pattern.compile(validPosRegex);
@@ -270,7 +277,15 @@ public class TokensRegexNERAnnotator implements Annotator {
       patterns.add(pattern);
       patternToEntry.put(pattern, entry);
     }
-    return TokenSequencePattern.getMultiPatternMatcher(patterns);
+    MultiPatternMatcher<CoreMap> matcher = TokenSequencePattern.getMultiPatternMatcher(patterns);
+    if (useAutomaton) {
+      CoreMapSequenceAutomaton automaton = new CoreMapSequenceAutomaton(patterns);
+      if (verbose) {
+        System.err.println("TokensRegexNERAnnotator: compiled " + automaton.size() + " of " + patterns.size() + " patterns into a token trie");
+      }
+      matcher.setAutomaton(automaton);
+    }
+    return matcher;
   }
 
   private void annotateMatched(List<CoreLabel> tokens) {
@@ -576,6 +591,60 @@ public class TokensRegexNERAnnotator implements Annotator {
     return StanfordCoreNLP.TOKENIZE_AND_SSPLIT;
   }
 
+  /**
+   * Annotates a file of whitespace tokenized sentences, one per line, with
+   * and without <code>useAutomaton</code>, checks that the labels are the
+   * same and reports the time each took.
+   * <br>
+   * Usage: <code>java edu.stanford.nlp.pipeline.TokensRegexNERAnnotator -mapping file -textFile file [-ignorecase true] [-iterations n]</code>
+   */
+  public static void main(String[] args) {
+    Properties props = StringUtils.argsToProperties(args);
+    String textFile = props.getProperty("textFile");
+    if (textFile == null || props.getProperty("mapping") == null) {
+      System.err.println("Usage: java edu.stanford.nlp.pipeline.TokensRegexNERAnnotator -mapping file -textFile file [-ignorecase true] [-iterations n]");
+      System.exit(1);
+    }
+    int iterations = PropertiesUtils.getInt(props, "iterations", 3);
+    List<String[]> sentences = new ArrayList<String[]>();
+    for (String line : IOUtils.readLines(textFile)) {
+      line = line.trim();
+      if ( ! line.isEmpty()) {
+        sentences.add(line.split("\\s+"));
+      }
+    }
+
+    List<List<String>> labels = new ArrayList<List<String>>();
+    for (boolean useAutomaton : new boolean[] { false, true }) {
+      Properties annotatorProps = new Properties();
+      annotatorProps.putAll(props);
+      annotatorProps.setProperty("useAutomaton", String.valueOf(useAutomaton));
+      Timing timing = new Timing();
+      TokensRegexNERAnnotator annotator = new TokensRegexNERAnnotator("", annotatorProps);
+      timing.done("Built annotator with useAutomaton=" + useAutomaton);
+      List<String> annotatorLabels = new ArrayList<String>();
+      for (int i = 0; i < iterations; ++i) {
+        annotatorLabels.clear();
+        for (String[] words : sentences) {
+          List<CoreLabel> tokens = new ArrayList<CoreLabel>(words.length);
+          for (String word : words) {
+            CoreLabel token = new CoreLabel();
+            token.setWord(word);
+            token.setValue(word);
+            tokens.add(token);
+          }
+          annotator.annotateMatched(tokens);
+          for (CoreLabel token : tokens) {
+            annotatorLabels.add(token.ner());
+          }
+        }
+      }
+      timing.done("Annotated " + sentences.size() + " sentences " + iterations + " times with useAutomaton=" + useAutomaton);
+      labels.add(annotatorLabels);
+    }
+    System.err.println("Labels are " + (labels.get(0).equals(labels.get(1)) ? "the same" : "DIFFERENT"));
+  }
+
   @Override
   public Set<Requirement> requirementsSatisfied() {
     // TODO: we might want to allow for different RegexNER annotators
@@ -2,13 +2,16 @@ package edu.stanford.nlp.pipeline;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 import edu.stanford.nlp.ling.CoreAnnotations;
 import edu.stanford.nlp.ling.CoreLabel;
 import edu.stanford.nlp.ling.tokensregex.TokenSequencePattern;
 import edu.stanford.nlp.process.WordToSentenceProcessor;
+import edu.stanford.nlp.util.AbstractIterator;
 import edu.stanford.nlp.util.ArrayUtils;
 import edu.stanford.nlp.util.CoreMap;
 
@@ -121,12 +124,108 @@ public class WordsToSentencesAnnotator implements Annotator {
     // System.err.println("Tokens are: " + tokens);
 
     // assemble the sentence annotations
-    int tokenOffset = 0;
-    int lineNumber = 0;
-    // section annotations to mark sentences with
-    CoreMap sectionAnnotations = null;
+    SentenceBuilder builder = new SentenceBuilder(docID);
     List<CoreMap> sentences = new ArrayList<CoreMap>();
     for (List<CoreLabel> sentenceTokens: this.wts.process(tokens)) {
+      CoreMap sentence = builder.build(sentenceTokens, text);
+      if (sentence != null) {
+        // add the sentence to the list
+        sentences.add(sentence);
+      }
+    }
+
+    // the condition below is possible if sentenceBoundaryToDiscard is initialized!
+      /*
+      if (tokenOffset != tokens.size()) {
+        throw new RuntimeException(String.format(
+            "expected %d tokens, found %d", tokens.size(), tokenOffset));
+      }
+      */
+
+    // add the sentences annotations to the document
+    annotation.set(CoreAnnotations.SentencesAnnotation.class, sentences);
+  }
+
+
+  /**
+   * Splits a stream of tokens, such as those of the tokenizer of a
+   * {@link TokenizerAnnotator} reading from a large file, into sentence
+   * annotations, reading only as many tokens as are needed to close the
+   * next sentence.  The sentences are the same as those this annotator
+   * would make for the whole document, with the same character offsets,
+   * so that the rest of a pipeline can run on each sentence (as its own
+   * Annotation) while the input is still being read, in bounded memory.
+   * <br>
+   * As the text of the whole document is not kept, the text of each
+   * sentence is rebuilt from its tokens; this is exact if the tokenizer
+   * was run with the {@code invertible} option, and otherwise joins the
+   * original text of the tokens with single spaces.
+   *
+   * @param tokens The tokens, which are read lazily
+   * @param docID The document id to set on the sentences and tokens, or null
+   * @return The sentences
+   */
+  public Iterator<CoreMap> sentenceIterator(Iterator<CoreLabel> tokens, String docID) {
+    final Iterator<List<CoreLabel>> sentenceTokens = wts.sentenceIterator(tokens);
+    final SentenceBuilder builder = new SentenceBuilder(docID);
+    return new AbstractIterator<CoreMap>() {
+      private CoreMap nextSentence = null;
+
+      @Override
+      public boolean hasNext() {
+        while (nextSentence == null && sentenceTokens.hasNext()) {
+          nextSentence = builder.build(sentenceTokens.next(), null);
+        }
+        return nextSentence != null;
+      }
+
+      @Override
+      public CoreMap next() {
+        if ( ! hasNext()) {
+          throw new NoSuchElementException();
+        }
+        CoreMap sentence = nextSentence;
+        nextSentence = null;
+        return sentence;
+      }
+    };
+  }
+
+  /** Rebuilds the text covered by these tokens, as described in {@link #sentenceIterator} */
+  private static String tokensText(List<CoreLabel> tokens) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < tokens.size(); i++) {
+      CoreLabel token = tokens.get(i);
+      String original = token.originalText();
+      sb.append((original != null) ? original : token.word());
+      if (i < tokens.size() - 1) {
+        String after = token.after();
+        sb.append((after != null && token.containsKey(CoreAnnotations.AfterAnnotation.class)) ? after : " ");
+      }
+    }
+    return sb.toString();
+  }
+
+  /** Makes the sentence annotations of a document, one after another */
+  private class SentenceBuilder {
+    private final String docID;
+    private int tokenOffset = 0;
+    private int lineNumber = 0;
+    private int sentenceIndex = 0;
+    // section annotations to mark sentences with
+    private CoreMap sectionAnnotations = null;
+
+    SentenceBuilder(String docID) {
+      this.docID = docID;
+    }
+
+    /**
+     * Makes the annotation of the next sentence, or returns null for an empty
+     * sentence (which is only used to count lines).
+     *
+     * @param text The text of the document, or null to rebuild the sentence text from its tokens
+     */
+    CoreMap build(List<CoreLabel> sentenceTokens, String text) {
       if (countLineNumbers) {
         ++lineNumber;
       }
@@ -134,7 +233,7 @@ public class WordsToSentencesAnnotator implements Annotator {
         if (!countLineNumbers) {
           throw new IllegalStateException("unexpected empty sentence: " + sentenceTokens);
         } else {
-          continue;
+          return null;
         }
       }
 
@@ -142,7 +241,7 @@ public class WordsToSentencesAnnotator implements Annotator {
       int begin = sentenceTokens.get(0).get(CoreAnnotations.CharacterOffsetBeginAnnotation.class);
       int last = sentenceTokens.size() - 1;
       int end = sentenceTokens.get(last).get(CoreAnnotations.CharacterOffsetEndAnnotation.class);
-      String sentenceText = text.substring(begin, end);
+      String sentenceText = (text != null) ? text.substring(begin, end) : tokensText(sentenceTokens);
 
       // create a sentence annotation with text and token offsets
       Annotation sentence = new Annotation(sentenceText);
@@ -152,7 +251,7 @@ public class WordsToSentencesAnnotator implements Annotator {
       sentence.set(CoreAnnotations.TokenBeginAnnotation.class, tokenOffset);
       tokenOffset += sentenceTokens.size();
       sentence.set(CoreAnnotations.TokenEndAnnotation.class, tokenOffset);
-      sentence.set(CoreAnnotations.SentenceIndexAnnotation.class, sentences.size());
+      sentence.set(CoreAnnotations.SentenceIndexAnnotation.class, sentenceIndex);
 
       if (countLineNumbers) {
         sentence.set(CoreAnnotations.LineNumberAnnotation.class, lineNumber);
@@ -184,28 +283,17 @@ public class WordsToSentencesAnnotator implements Annotator {
       int index = 1;
       for (CoreLabel token : sentenceTokens) {
         token.setIndex(index++);
-        token.setSentIndex(sentences.size());
+        token.setSentIndex(sentenceIndex);
         if (docID != null) {
           token.setDocID(docID);
         }
       }
 
-      // add the sentence to the list
-      sentences.add(sentence);
+      sentenceIndex++;
+      return sentence;
     }
-    // the condition below is possible if sentenceBoundaryToDiscard is initialized!
-      /*
-      if (tokenOffset != tokens.size()) {
-        throw new RuntimeException(String.format(
-            "expected %d tokens, found %d", tokens.size(), tokenOffset));
-      }
-      */
-
-    // add the sentences annotations to the document
-    annotation.set(CoreAnnotations.SentencesAnnotation.class, sentences);
   }
 
-
   @Override
   public Set<Requirement> requires() {
     return Collections.singleton(TOKENIZE_REQUIREMENT);
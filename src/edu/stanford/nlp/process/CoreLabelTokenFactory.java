@@ -1,9 +1,15 @@
 package edu.stanford.nlp.process;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.io.StringReader;
+import java.util.List;
 
+import edu.stanford.nlp.io.IOUtils;
 import edu.stanford.nlp.ling.CoreAnnotations;
 import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.util.BoundedInterner;
+import edu.stanford.nlp.util.Generics;
 
 /**
  * Constructs {@link CoreLabel}s from Strings optionally with
@@ -15,6 +21,14 @@ import edu.stanford.nlp.ling.CoreLabel;
  * EndPositionAnnotation.  If the tokens are built in PTBTokenizer with
  * an "invertible" tokenizer, you will also get a BeforeAnnotation and for
  * the last token an AfterAnnotation.You can also get an empty CoreLabel token
+ * <br>
+ * A compact factory interns the token and original text Strings through a
+ * dictionary of word forms shared by all compact factories, so that the
+ * tokens of a large corpus share one String per frequent word form instead
+ * of each holding its own copy, and the word, value, and original text of a
+ * token are the same String whenever they are equal.  The size of the
+ * dictionary is set by the tokenize.internSize system property
+ * (default 200000).
  *
  * @author Anna Rafferty
  * @author Sonal Gupta (now implements CoreTokenFactory, you can make tokens using many options)
@@ -22,6 +36,10 @@ import edu.stanford.nlp.ling.CoreLabel;
 public class CoreLabelTokenFactory implements CoreTokenFactory<CoreLabel>, LexedTokenFactory<CoreLabel>, Serializable {
 
   final boolean addIndices;
+  final boolean compact;
+
+  private static final BoundedInterner<String> wordForms =
+      new BoundedInterner<String>(Integer.getInteger("tokenize.internSize", 200000));
 
   /**
    * Constructor for a new token factory which will add in the word, the
@@ -38,8 +56,21 @@ public class CoreLabelTokenFactory implements CoreTokenFactory<CoreLabel>, Lexed
    * @param addIndices if true, begin and end position annotations will be included (this is the default)
    */
   public CoreLabelTokenFactory(boolean addIndices) {
+    this(addIndices, false);
+  }
+
+  /**
+   * Constructor that allows one to choose if index annotation
+   * indicating begin/end position will be included in the label,
+   * and whether the token Strings are interned (see the class documentation).
+   *
+   * @param addIndices if true, begin and end position annotations will be included (this is the default)
+   * @param compact if true, the token and original text are interned in a shared dictionary
+   */
+  public CoreLabelTokenFactory(boolean addIndices, boolean compact) {
     super();
     this.addIndices = addIndices;
+    this.compact = compact;
   }
 
   /**
@@ -56,7 +87,13 @@ public class CoreLabelTokenFactory implements CoreTokenFactory<CoreLabel>, Lexed
    * (Does not take substring).
    */
   public CoreLabel makeToken(String tokenText, String originalText, int begin, int length) {
-    CoreLabel cl = addIndices ? new CoreLabel(5) : new CoreLabel();
+    if (compact) {
+      tokenText = wordForms.intern(tokenText);
+      originalText = originalText.equals(tokenText) ? tokenText : wordForms.intern(originalText);
+    }
+    // a compact token leaves room for the Before and After annotations of an invertible tokenizer,
+    // so that its arrays are not regrown (and the first ones thrown away) when they are added
+    CoreLabel cl = addIndices ? new CoreLabel(compact ? 7 : 5) : new CoreLabel();
     cl.setValue(tokenText);
     cl.setWord(tokenText);
     cl.setOriginalText(originalText);
@@ -82,5 +119,61 @@ public class CoreLabelTokenFactory implements CoreTokenFactory<CoreLabel>, Lexed
     return l;
   }
 
+  /** The shared dictionary of word forms used by compact factories */
+  public static BoundedInterner<String> wordForms() {
+    return wordForms;
+  }
+
+  private static long usedMemory() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  /**
+   * Measures the heap used by the tokens of some files, made by PTBTokenizer
+   * with a regular and with a compact CoreLabelTokenFactory.
+   * <br>
+   * Usage: <code>java edu.stanford.nlp.process.CoreLabelTokenFactory [-options tokenizerOptions] file ...</code>
+   * (the options default to "invertible")
+   */
+  public static void main(String[] args) throws IOException {
+    String options = "invertible";
+    int first = 0;
+    if (args.length >= 2 && args[0].equals("-options")) {
+      options = args[1];
+      first = 2;
+    }
+    if (args.length <= first) {
+      System.err.println("Usage: java edu.stanford.nlp.process.CoreLabelTokenFactory [-options tokenizerOptions] file ...");
+      System.exit(1);
+    }
+    List<String> texts = Generics.newArrayList();
+    for (int i = first; i < args.length; i++) {
+      texts.add(IOUtils.slurpFile(args[i]));
+    }
+    for (boolean compact : new boolean[] { false, true }) {
+      CoreLabelTokenFactory factory = new CoreLabelTokenFactory(true, compact);
+      long before = usedMemory();
+      List<List<CoreLabel>> documents = Generics.newArrayList();
+      long tokens = 0;
+      for (String text : texts) {
+        List<CoreLabel> document = new PTBTokenizer<CoreLabel>(new StringReader(text), factory, options).tokenize();
+        tokens += document.size();
+        documents.add(document);
+      }
+      long used = usedMemory() - before;
+      System.out.printf("%s: %d tokens, %.1f MB per million tokens%n",
+          compact ? "Compact" : "Regular", tokens, used * 1e6 / tokens / (1 << 20));
+      // keep the tokens until they have been measured
+      if (documents.size() != texts.size()) {
+        throw new AssertionError();
+      }
+    }
+    System.out.println("Dictionary: " + wordForms.size() + " word forms");
+  }
+
   private static final long serialVersionUID = 4L;
 }
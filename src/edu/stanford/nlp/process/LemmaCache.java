@@ -0,0 +1,111 @@
+package edu.stanford.nlp.process;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * A bounded cache of the lemmas computed by {@link Morphology}, by word and
+ * tag, which can be shared by any number of threads and Morphology objects.
+ * <p>
+ * The lemmas are stored by tag and then by word, so that a lookup does
+ * not need to build a key.  Once the cache holds {@code maxSize} lemmas,
+ * no more are added; since word frequencies are very skewed, the common
+ * words have almost all been seen by then.
+ * The cache keeps count of its hits and misses.
+ * <p>
+ * Lemmas are cached separately for the two settings of Morphology's
+ * lowercasing option; Morphology objects with other options (such as
+ * printing affixes) should not share a cache with the default ones.
+ */
+public class LemmaCache {
+
+  private final int maxSize;
+  private final AtomicInteger size = new AtomicInteger();
+
+  private final ConcurrentMap<String, ConcurrentMap<String, String>> lemmas = new ConcurrentHashMap<String, ConcurrentMap<String, String>>();
+  private final ConcurrentMap<String, ConcurrentMap<String, String>> lowercasedLemmas = new ConcurrentHashMap<String, ConcurrentMap<String, String>>();
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  public LemmaCache(int maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  private ConcurrentMap<String, ConcurrentMap<String, String>> lemmas(boolean lowercase) {
+    return lowercase ? lowercasedLemmas : lemmas;
+  }
+
+  /** Returns the cached lemma of the word with this tag, or null if it is not cached. */
+  public String get(String word, String tag, boolean lowercase) {
+    ConcurrentMap<String, String> byWord = lemmas(lowercase).get(tag);
+    String lemma = (byWord == null) ? null : byWord.get(word);
+    if (lemma == null) {
+      misses.incrementAndGet();
+    } else {
+      hits.incrementAndGet();
+    }
+    return lemma;
+  }
+
+  /** Caches the lemma of the word with this tag, unless the cache is full. */
+  public void put(String word, String tag, boolean lowercase, String lemma) {
+    if (size.get() >= maxSize) {
+      return;
+    }
+    ConcurrentMap<String, ConcurrentMap<String, String>> byTag = lemmas(lowercase);
+    ConcurrentMap<String, String> byWord = byTag.get(tag);
+    if (byWord == null) {
+      byWord = new ConcurrentHashMap<String, String>();
+      ConcurrentMap<String, String> previous = byTag.putIfAbsent(tag, byWord);
+      if (previous != null) {
+        byWord = previous;
+      }
+    }
+    if (byWord.putIfAbsent(word, lemma) == null) {
+      size.incrementAndGet();
+    }
+  }
+
+  /** Number of cached lemmas */
+  public int size() {
+    return size.get();
+  }
+
+  public int maxSize() {
+    return maxSize;
+  }
+
+  public long hits() {
+    return hits.get();
+  }
+
+  public long misses() {
+    return misses.get();
+  }
+
+  /** Fraction of the lookups which found a lemma, or 0 if there have been none */
+  public double hitRate() {
+    long h = hits.get();
+    long total = h + misses.get();
+    return (total == 0) ? 0.0 : ((double) h) / total;
+  }
+
+  /** Removes all the cached lemmas and resets the counts */
+  public void clear() {
+    lemmas.clear();
+    lowercasedLemmas.clear();
+    size.set(0);
+    hits.set(0);
+    misses.set(0);
+  }
+
+  @Override
+  public String toString() {
+    return "LemmaCache[" + size() + '/' + maxSize + " lemmas, " + hits() + " hits, " + misses() + " misses]";
+  }
+
+}
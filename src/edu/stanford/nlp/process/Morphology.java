@@ -4,7 +4,6 @@ package edu.stanford.nlp.process;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
-import java.io.StringReader;
 import java.util.logging.Logger;
 
 import edu.stanford.nlp.io.IOUtils;
@@ -47,6 +46,10 @@ import java.util.function.Function;
  * The crucial lexer-accessing portion of all the static methods is synchronized
  * (otherwise, their use tended to be threading bugs waiting to happen).
  * If you want less synchronization, create your own Morphology objects.
+ * <p>
+ * Morphology objects made with a {@link LemmaCache} look lemmas up in
+ * the cache before running the lexer, and add the lemmas they compute to it.
+ * A cache can be shared by the Morphology objects of many threads.
  * <br>
  * @author Kristina Toutanova (kristina@cs.stanford.edu)
  * @author Christopher Manning
@@ -60,8 +63,21 @@ public class Morphology implements Function {
 
   private final Morpha lexer;
 
+  private final LemmaCache cache;
+
   public Morphology() {
+    this((LemmaCache) null);
+  }
+
+  /**
+   * Makes a Morphology which caches the lemmas it computes.
+   *
+   * @param cache The cache to use, which may be shared with other
+   *     Morphology objects (made with this constructor), or null for none
+   */
+  public Morphology(LemmaCache cache) {
     lexer = new Morpha(System.in);
+    this.cache = cache;
   }
 
   /**
@@ -71,12 +87,14 @@ public class Morphology implements Function {
    */
   public Morphology(Reader in) {
     lexer = new Morpha(in);
+    cache = null;
   }
 
 
   public Morphology(Reader in, int flags) {
     lexer = new Morpha(in);
     lexer.setOptions(flags);
+    cache = null;
   }
 
 
@@ -95,7 +113,7 @@ public class Morphology implements Function {
 
   public String stem(String word) {
     try {
-      lexer.yyreset(new StringReader(word));
+      lexer.yyreset(word, null);
       lexer.yybegin(Morpha.any);
       String wordRes = lexer.next();
       return wordRes;
@@ -107,11 +125,19 @@ public class Morphology implements Function {
 
 
   public String lemma(String word, String tag) {
-    return lemmatize(word, tag, lexer, lexer.option(1));
+    return lemma(word, tag, lexer.option(1));
   }
 
   public String lemma(String word, String tag, boolean lowercase) {
-    return lemmatize(word, tag, lexer, lowercase);
+    if (cache == null || word == null || tag == null) {
+      return lemmatize(word, tag, lexer, lowercase);
+    }
+    String lemma = cache.get(word, tag, lowercase);
+    if (lemma == null) {
+      lemma = lemmatize(word, tag, lexer, lowercase);
+      cache.put(word, tag, lowercase, lemma);
+    }
+    return lemma;
   }
 
 
@@ -128,7 +154,7 @@ public class Morphology implements Function {
    */
   public void stem(CoreLabel label,
                    Class<? extends CoreAnnotation<String>> ann) {
-    String lemma = lemmatize(label.word(), label.tag(), lexer, lexer.option(1));
+    String lemma = lemma(label.word(), label.tag());
     label.set(ann, lemma);
   }
 
@@ -143,23 +169,23 @@ public class Morphology implements Function {
     String quotedWord = word;
     if (wordHasForbiddenChar) {
       // choose something unlikely. Classical Vedic!
-      quotedWord = quotedWord.replaceAll("_", "\u1CF0");
-      quotedWord = quotedWord.replaceAll(" ", "\u1CF1");
-      quotedWord = quotedWord.replaceAll("\n", "\u1CF2");
+      quotedWord = quotedWord.replace('_', '\u1CF0');
+      quotedWord = quotedWord.replace(' ', '\u1CF1');
+      quotedWord = quotedWord.replace('\n', '\u1CF2');
     }
-    String wordtag = quotedWord + '_' + tag;
-    if (DEBUG) System.err.println("Trying to normalize |" + wordtag + "|");
+    if (DEBUG) System.err.println("Trying to normalize |" + quotedWord + '_' + tag + "|");
     try {
       lexer.setOption(1, lowercase);
-      lexer.yyreset(new StringReader(wordtag));
+      // the word and tag are copied straight into the lexer's buffer
+      lexer.yyreset(quotedWord, String.valueOf(tag));
       lexer.yybegin(Morpha.scan);
       String wordRes = lexer.next();
       lexer.next(); // go past tag
       if (wordHasForbiddenChar) {
         if (DEBUG) System.err.println("Restoring forbidden chars");
-        wordRes = wordRes.replaceAll("\u1CF0", "_");
-        wordRes = wordRes.replaceAll("\u1CF1", " ");
-        wordRes = wordRes.replaceAll("\u1CF2", "\n");
+        wordRes = wordRes.replace('\u1CF0', '_');
+        wordRes = wordRes.replace('\u1CF1', ' ');
+        wordRes = wordRes.replace('\u1CF2', '\n');
       }
       return wordRes;
     } catch (IOException e) {
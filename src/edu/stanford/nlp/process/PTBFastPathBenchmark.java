@@ -0,0 +1,127 @@
+package edu.stanford.nlp.process;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.Map;
+
+import edu.stanford.nlp.io.IOUtils;
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.util.Generics;
+import edu.stanford.nlp.util.StringUtils;
+
+/**
+ * Checks that the ASCII fast path of {@link PTBLexer} (the asciiFastPath
+ * option of {@link PTBTokenizer}) gives exactly the same tokens as the
+ * lexer's state machine alone, and times the two.
+ * <br>
+ * Each file is tokenized both ways, with the invertible option and then
+ * without it, and the word, original text, before and after text, and
+ * character offsets of every token are compared.  The first difference
+ * in each file is printed.  Then the tokenizer is timed on all the files
+ * with and without the fast path.
+ * <br>
+ * Usage: <code>java edu.stanford.nlp.process.PTBFastPathBenchmark [-options tokenizerOptions] [-encoding enc] [-iterations n] file ...</code>
+ */
+public class PTBFastPathBenchmark {
+
+  private PTBFastPathBenchmark() {} // static main method only
+
+  private static List<CoreLabel> tokenize(String text, String options, boolean fastPath) {
+    String allOptions = options + (options.isEmpty() ? "" : ",") + "asciiFastPath=" + fastPath;
+    return new PTBTokenizer<CoreLabel>(new StringReader(text), new CoreLabelTokenFactory(), allOptions).tokenize();
+  }
+
+  private static String describe(CoreLabel token) {
+    return '"' + token.word() + "\" original=\"" + token.get(CoreAnnotations.OriginalTextAnnotation.class) +
+        "\" [" + token.beginPosition() + ", " + token.endPosition() + ") before=\"" + token.before() +
+        "\" after=\"" + token.after() + '"';
+  }
+
+  /** Returns the number of the first token which differs, or -1 if the tokens are the same */
+  private static int firstDifference(List<CoreLabel> tokens, List<CoreLabel> fastTokens) {
+    int size = Math.min(tokens.size(), fastTokens.size());
+    for (int i = 0; i < size; i++) {
+      if ( ! describe(tokens.get(i)).equals(describe(fastTokens.get(i)))) {
+        return i;
+      }
+    }
+    return (tokens.size() == fastTokens.size()) ? -1 : size;
+  }
+
+  private static boolean compare(String filename, String text, String options) {
+    List<CoreLabel> tokens = tokenize(text, options, false);
+    List<CoreLabel> fastTokens = tokenize(text, options, true);
+    int difference = firstDifference(tokens, fastTokens);
+    if (difference < 0) {
+      return true;
+    }
+    System.out.println(filename + " (options \"" + options + "\"): token " + difference + " differs");
+    System.out.println("  scanner:   " + (difference < tokens.size() ? describe(tokens.get(difference)) : "none"));
+    System.out.println("  fast path: " + (difference < fastTokens.size() ? describe(fastTokens.get(difference)) : "none"));
+    return false;
+  }
+
+  public static void main(String[] args) throws IOException {
+    Map<String, Integer> flagMap = Generics.newHashMap();
+    flagMap.put("-options", 1);
+    flagMap.put("-encoding", 1);
+    flagMap.put("-iterations", 1);
+    Map<String, String[]> argsMap = StringUtils.argsToMap(args, flagMap);
+    String[] filenames = argsMap.get(null);
+    if (filenames == null || filenames.length == 0) {
+      System.err.println("Usage: java edu.stanford.nlp.process.PTBFastPathBenchmark [-options tokenizerOptions] [-encoding enc] [-iterations n] file ...");
+      System.exit(1);
+    }
+    String options = argsMap.containsKey("-options") ? argsMap.get("-options")[0] : "";
+    String encoding = argsMap.containsKey("-encoding") ? argsMap.get("-encoding")[0] : "utf-8";
+    int iterations = argsMap.containsKey("-iterations") ? Integer.parseInt(argsMap.get("-iterations")[0]) : 5;
+
+    List<String> texts = Generics.newArrayList();
+    long chars = 0;
+    for (String filename : filenames) {
+      String text = IOUtils.slurpFile(filename, encoding);
+      texts.add(text);
+      chars += text.length();
+    }
+
+    int differences = 0;
+    for (int i = 0; i < filenames.length; i++) {
+      String invertibleOptions = options + (options.isEmpty() ? "" : ",") + "invertible";
+      if ( ! compare(filenames[i], texts.get(i), invertibleOptions)) {
+        differences++;
+      }
+      if ( ! compare(filenames[i], texts.get(i), options)) {
+        differences++;
+      }
+    }
+    System.out.println("Compared " + filenames.length + " files (" + chars + " characters): " +
+        (differences == 0 ? "no differences" : differences + " differences"));
+
+    // warm up the JIT on both paths, then alternate between them so that
+    // both see the same state of the heap
+    for (String text : texts) {
+      tokenize(text, options, false);
+      tokenize(text, options, true);
+    }
+    long[] tokens = new long[2];
+    long[] nanos = new long[2];
+    for (int iter = 0; iter < iterations; iter++) {
+      for (int fastPath = 0; fastPath < 2; fastPath++) {
+        long start = System.nanoTime();
+        for (String text : texts) {
+          tokens[fastPath] += tokenize(text, options, fastPath == 1).size();
+        }
+        nanos[fastPath] += System.nanoTime() - start;
+      }
+    }
+    for (int fastPath = 0; fastPath < 2; fastPath++) {
+      double seconds = nanos[fastPath] / 1e9;
+      System.out.printf("%s: %d tokens in %.2f s, %.0f tokens/s, %.2f MB/s%n",
+          fastPath == 1 ? "Fast path" : "Scanner only", tokens[fastPath], seconds,
+          tokens[fastPath] / seconds, chars * iterations / seconds / 1e6);
+    }
+  }
+
+}
@@ -29,6 +29,7 @@ package edu.stanford.nlp.process;
 //    http://nlp.stanford.edu/software/
 
 
+import java.io.IOException;
 import java.io.Reader;
 import java.util.logging.Logger;
 import java.util.Map;
@@ -27264,6 +27265,8 @@ class PTBLexer {
         }
       } else if ("splitAssimilations".equals(key)) {
         splitAssimilations = val;
+      } else if ("asciiFastPath".equals(key)) {
+        asciiFastPath = val;
       } else if ("ptb3Ellipsis".equals(key)) {
         ptb3Ellipsis = val;
       } else if ("unicodeEllipsis".equals(key)) {
@@ -27338,6 +27341,7 @@ class PTBLexer {
   private boolean escapeForwardSlashAsterisk = false;
   private boolean strictTreebank3 = false;
   private boolean splitAssimilations = true;
+  private boolean asciiFastPath = true;
 
   /*
    * This has now been extended to cover the main Windows CP1252 characters,
@@ -27574,10 +27578,9 @@ class PTBLexer {
    */
   private Object getNext(String txt, String originalText) {
     if (invertible) {
-      String str = prevWordAfter.toString();
+      String str = whitespaceString(prevWordAfter);
       prevWordAfter.setLength(0);
-      CoreLabel word = (CoreLabel) tokenFactory.makeToken(txt, yychar, yylength());
-      word.set(CoreAnnotations.OriginalTextAnnotation.class, originalText);
+      CoreLabel word = ((CoreLabelTokenFactory) tokenFactory).makeToken(txt, originalText, yychar, yylength());
       word.set(CoreAnnotations.BeforeAnnotation.class, str);
       prevWord.set(CoreAnnotations.AfterAnnotation.class, str);
       prevWord = word;
@@ -27587,6 +27590,19 @@ class PTBLexer {
    }
   }
 
+  /** The text of sb, with one shared String for each of the usual spaces between tokens. */
+  private static String whitespaceString(StringBuilder sb) {
+    if (sb.length() == 0) {
+      return "";
+    } else if (sb.length() == 1 && sb.charAt(0) == ' ') {
+      return " ";
+    } else if (sb.length() == 1 && sb.charAt(0) == '\n') {
+      return "\n";
+    } else {
+      return sb.toString();
+    }
+  }
+
   private Object getNormalizedAmpNext() {
     final String txt = yytext();
     if (normalizeAmpersandEntity) {
@@ -27596,6 +27612,93 @@ class PTBLexer {
     }
   }
 
+  /**
+   * Returns the next token, or null at the end of the input.
+   * <br>
+   * Most of the input is plain ASCII words separated by spaces, and the
+   * scanner always makes such a word into a single token with no
+   * normalization (except by americanize).  So unless asciiFastPath is
+   * false, runs of spaces and words of ASCII letters and digits which
+   * begin with a letter and are followed by white space are handled here,
+   * with a simple loop over the buffer, and only the rest of the input
+   * (punctuation, quotes, numbers, URLs, non-ASCII, and words at the end
+   * of the buffer) goes through the state machine of {@link #scan}.
+   * The tokens and offsets are exactly the same either way.
+   *
+   * @return The next token
+   * @throws IOException If the Reader fails
+   */
+  public Object next() throws IOException {
+    if (asciiFastPath) {
+      final char[] buffer = zzBuffer;
+      final int endRead = zzEndRead;
+      int pos = zzMarkedPos;
+      while (pos < endRead) {
+        char ch = buffer[pos];
+        int end = pos + 1;
+        if (ch == ' ' || ch == '\t' || (ch == '\n' && ! tokenizeNLs)) {
+          while (end < endRead && ((ch = buffer[end]) == ' ' || ch == '\t' || (ch == '\n' && ! tokenizeNLs))) {
+            end++;
+          }
+          markFastMatch(pos, end);
+          if (invertible) {
+            prevWordAfter.append(buffer, pos, end - pos);
+          }
+          pos = end;
+        } else if (isAsciiLetter(ch) && ! americanize) {
+          while (end < endRead && (isAsciiLetter(ch = buffer[end]) || (ch >= '0' && ch <= '9'))) {
+            end++;
+          }
+          // a following space, rather than a punctuation mark, could not
+          // make it part of a longer token, such as a URL or abbreviation
+          if (end == endRead || ! ((ch = buffer[end]) == ' ' || ch == '\t' || ch == '\n' || ch == '\r') ||
+              (splitAssimilations && isAssimilation(buffer, pos, end))) {
+            break;
+          }
+          markFastMatch(pos, end);
+          return getNext();
+        } else {
+          break;
+        }
+      }
+    }
+    return scan();
+  }
+
+  /** Sets up the scanner state as if scan() had just matched the text from start to end in the buffer. */
+  private void markFastMatch(int start, int end) {
+    yychar += start - zzStartRead;
+    zzStartRead = start;
+    zzMarkedPos = end;
+    zzCurrentPos = end;
+  }
+
+  private static boolean isAsciiLetter(char ch) {
+    return (ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z');
+  }
+
+  private static final String[] ASSIMILATIONS = { "cannot", "gonna", "gotta", "lemme", "gimme", "wanna" };
+
+  /** Whether the ASCII letters from start to end are one of the words split by splitAssimilations, in any case. */
+  private static boolean isAssimilation(char[] buffer, int start, int end) {
+    int length = end - start;
+    if (length < 5 || length > 6) {
+      return false;
+    }
+    for (String assimilation : ASSIMILATIONS) {
+      if (assimilation.length() == length) {
+        int i = 0;
+        while (i < length && (buffer[start + i] | 0x20) == assimilation.charAt(i)) {
+          i++;
+        }
+        if (i == length) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
 
 
   /**
@@ -27830,7 +27933,7 @@ class PTBLexer {
    * @return      the next token
    * @exception   java.io.IOException  if any I/O-Error occurs
    */
-  public Object next() throws java.io.IOException {
+  public Object scan() throws java.io.IOException {
     int zzInput;
     int zzAction;
 
@@ -148,6 +148,12 @@ import edu.stanford.nlp.util.StringUtils;
  *      (Exception: for only "U.S." the treebank does have the two tokens
  *      "U.S." and "." like our default; strictTreebank3 now does that too.)
  *      The default is false.
+ * <li>asciiFastPath: Whether plain ASCII words followed by white space,
+ *      and runs of spaces, are tokenized by a simple loop in front of the
+ *      lexer's state machine.  This is much faster on ordinary English text,
+ *      and gives exactly the same tokens; it is only an option so that the
+ *      two can be compared (see {@link PTBFastPathBenchmark}).
+ *      The default is true.
  * </ol>
  * <p>
  * A single instance of a PTBTokenizer is not thread safe, as it uses
@@ -226,13 +226,107 @@ public class WordToSentenceProcessor<IN> implements ListProcessor<IN, List<IN>>
     }
 
     // Split tokens into sentences!!!
-    List<List<IN>> sentences = Generics.newArrayList();
+    Splitter splitter = new Splitter(isSentenceBoundary);
+    for (IN o: words) {
+      splitter.add(o);
+    }
+    splitter.finish();
+    return splitter.sentences;
+  }
+
+  /**
+   * Returns an Iterator over the sentences of the words, which are the same as
+   * those of {@link #process}, but which reads the words only as far as it needs
+   * to close the next sentence.  This lets a very long (or unbounded) stream of
+   * words, such as the tokens of a {@link PTBTokenizer} reading a large file, be
+   * split into sentences in bounded memory, and each sentence be processed as
+   * soon as it is closed.
+   * <br>
+   * A sentence is closed once the next sentence has begun, as a following
+   * sentenceBoundaryFollower (e.g., a close parenthesis) would still be added to it.
+   * If this splitter puts all the words in one sentence, or uses a multi-token
+   * sentence boundary pattern, all the words are read before the first sentence
+   * is returned.
+   *
+   * @param words The words, which are read lazily
+   * @return The sentences
+   */
+  public Iterator<List<IN>> sentenceIterator(final Iterator<? extends IN> words) {
+    if (isOneSentence || sentenceBoundaryMultiTokenPattern != null) {
+      List<IN> allWords = new ArrayList<IN>();
+      while (words.hasNext()) {
+        allWords.add(words.next());
+      }
+      return process(allWords).iterator();
+    }
+    final Splitter splitter = new Splitter(null);
+    return new Iterator<List<IN>>() {
+      // Index in splitter.sentences of the next sentence to return
+      private int next = 0;
+
+      private boolean hasClosedSentence() {
+        int numSentences = splitter.sentences.size();
+        if (next < numSentences - 1) {
+          return true;
+        }
+        // The last sentence can still grow until the next sentence begins
+        return next == numSentences - 1 &&
+            (splitter.finished || ! splitter.currentSentence.isEmpty() ||
+             splitter.sentences.get(next) != splitter.lastSentence);
+      }
+
+      @Override
+      public boolean hasNext() {
+        while ( ! hasClosedSentence()) {
+          if (splitter.finished) {
+            return false;
+          }
+          if (words.hasNext()) {
+            splitter.add(words.next());
+          } else {
+            splitter.finish();
+          }
+        }
+        return true;
+      }
+
+      @Override
+      public List<IN> next() {
+        if ( ! hasNext()) {
+          throw new NoSuchElementException();
+        }
+        List<IN> sentence = splitter.sentences.get(next++);
+        // don't hold on to the sentences already returned
+        if (next == splitter.sentences.size()) {
+          splitter.sentences.clear();
+          next = 0;
+        }
+        return sentence;
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+
+  /** The state of splitting a sequence of words into sentences, one word at a time */
+  private class Splitter {
+    private final IdentityHashMap<Object, Boolean> isSentenceBoundary;
+    final List<List<IN>> sentences = Generics.newArrayList();
     List<IN> currentSentence = new ArrayList<IN>();
     List<IN> lastSentence = null;
-    boolean insideRegion = false;
-    boolean inWaitForForcedEnd = false;
-    boolean lastTokenWasNewline = false;
-    for (IN o: words) {
+    private boolean insideRegion = false;
+    private boolean inWaitForForcedEnd = false;
+    private boolean lastTokenWasNewline = false;
+    boolean finished = false;
+
+    Splitter(IdentityHashMap<Object, Boolean> isSentenceBoundary) {
+      this.isSentenceBoundary = isSentenceBoundary;
+    }
+
+    void add(IN o) {
       String word = getString(o);
       boolean forcedEnd = isForcedEndToken(o);
 
@@ -272,7 +366,7 @@ public class WordToSentenceProcessor<IN> implements ListProcessor<IN, List<IN>>
           }
         }
         lastTokenWasNewline = false;
-        continue;
+        return;
       }
 
       if (lastSentence != null && currentSentence.isEmpty() && sentenceBoundaryFollowers.contains(word)) {
@@ -281,7 +375,7 @@ public class WordToSentenceProcessor<IN> implements ListProcessor<IN, List<IN>>
           System.err.println(discardToken? "discarded":"  added to last sentence");
         }
         lastTokenWasNewline = false;
-        continue;
+        return;
       }
 
       boolean newSent = false;
@@ -358,13 +452,14 @@ public class WordToSentenceProcessor<IN> implements ListProcessor<IN, List<IN>>
       }
     }
 
-    // add any words at the end, even if there isn't a sentence
-    // terminator at the end of file
-    if ( ! currentSentence.isEmpty()) {
-      sentences.add(currentSentence); // adds last sentence
+    void finish() {
+      // add any words at the end, even if there isn't a sentence
+      // terminator at the end of file
+      if ( ! currentSentence.isEmpty()) {
+        sentences.add(currentSentence); // adds last sentence
+      }
+      finished = true;
     }
-
-    return sentences;
   }
 
   public <L, F> Document<L, F, List<IN>> processDocument(Document<L, F, IN> in) {
@@ -71,15 +71,49 @@ public class SemanticGraph implements Serializable {
   private static final MapFactory<IndexedWord, List<SemanticGraphEdge>> innerMapFactory = MapFactory.hashMapFactory();
   private static final MapFactory<IndexedWord, IndexedWord> wordMapFactory = MapFactory.hashMapFactory();
 
+  /**
+   * If true, degree and adjacency queries are answered from a compact,
+   * array based snapshot of the edges (see {@link SemanticGraphAdjacency}),
+   * which is built on the first query and thrown away whenever the graph
+   * is modified.  This speeds up read-heavy work such as semgrex
+   * matching, at the cost of keeping the snapshot alongside the graph.
+   * Off by default; turn it on with
+   * -Dedu.stanford.nlp.semgraph.compactAdjacency=true
+   */
+  public static volatile boolean useCompactAdjacency = Boolean.getBoolean("edu.stanford.nlp.semgraph.compactAdjacency");
+
+  private transient SemanticGraphAdjacency adjacency;
+
+  /** The compact adjacency snapshot, or null if it is turned off */
+  private SemanticGraphAdjacency adjacency() {
+    if (!useCompactAdjacency) {
+      return null;
+    }
+    SemanticGraphAdjacency snapshot = adjacency;
+    if (snapshot == null) {
+      snapshot = new SemanticGraphAdjacency(graph);
+      adjacency = snapshot;
+    }
+    return snapshot;
+  }
+
   public int edgeCount() {
     return graph.getNumEdges();
   }
 
   public int outDegree(IndexedWord vertex) {
+    SemanticGraphAdjacency snapshot = adjacency();
+    if (snapshot != null) {
+      return snapshot.outDegree(vertex);
+    }
     return graph.getOutDegree(vertex);
   }
 
   public int inDegree(IndexedWord vertex) {
+    SemanticGraphAdjacency snapshot = adjacency();
+    if (snapshot != null) {
+      return snapshot.inDegree(vertex);
+    }
     return graph.getInDegree(vertex);
   }
 
@@ -100,6 +134,7 @@ public class SemanticGraph implements Serializable {
   }
 
   public void addVertex(IndexedWord vertex) {
+    adjacency = null;
     graph.addVertex(vertex);
   }
 
@@ -120,10 +155,12 @@ public class SemanticGraph implements Serializable {
   }
 
   public boolean removeEdge(SemanticGraphEdge e) {
+    adjacency = null;
     return graph.removeEdge(e.getSource(), e.getTarget(), e);
   }
 
   public boolean removeVertex(IndexedWord vertex) {
+    adjacency = null;
     return graph.removeVertex(vertex);
   }
 
@@ -157,23 +194,51 @@ public class SemanticGraph implements Serializable {
   }
 
   public Iterable<SemanticGraphEdge> edgeIterable() {
-    return graph.edgeIterable();
+    // the iterator over all edges supports remove(), which must also
+    // invalidate the adjacency snapshot
+    return () -> new Iterator<SemanticGraphEdge>() {
+      private final Iterator<SemanticGraphEdge> edges = graph.edgeIterator();
+
+      @Override
+      public boolean hasNext() {
+        return edges.hasNext();
+      }
+
+      @Override
+      public SemanticGraphEdge next() {
+        return edges.next();
+      }
+
+      @Override
+      public void remove() {
+        adjacency = null;
+        edges.remove();
+      }
+    };
   }
 
   public Iterator<SemanticGraphEdge> outgoingEdgeIterator(IndexedWord v) {
+    SemanticGraphAdjacency snapshot = adjacency();
+    if (snapshot != null) {
+      return snapshot.outgoingEdgeIterator(v);
+    }
     return graph.outgoingEdgeIterator(v);
   }
 
   public Iterable<SemanticGraphEdge> outgoingEdgeIterable(IndexedWord v) {
-    return graph.outgoingEdgeIterable(v);
+    return () -> outgoingEdgeIterator(v);
   }
 
   public Iterator<SemanticGraphEdge> incomingEdgeIterator(IndexedWord v) {
+    SemanticGraphAdjacency snapshot = adjacency();
+    if (snapshot != null) {
+      return snapshot.incomingEdgeIterator(v);
+    }
     return graph.incomingEdgeIterator(v);
   }
 
   public Iterable<SemanticGraphEdge> incomingEdgeIterable(IndexedWord v) {
-    return graph.incomingEdgeIterable(v);
+    return () -> incomingEdgeIterator(v);
   }
 
   public List<SemanticGraphEdge> outgoingEdgeList(IndexedWord v) {
@@ -467,6 +532,10 @@ public class SemanticGraph implements Serializable {
   }
 
   public boolean hasChildren(IndexedWord vertex) {
+    SemanticGraphAdjacency snapshot = adjacency();
+    if (snapshot != null) {
+      return snapshot.outDegree(vertex) > 0;
+    }
     return outgoingEdgeIterator(vertex).hasNext();
   }
 
@@ -1608,6 +1677,7 @@ public class SemanticGraph implements Serializable {
   
   public SemanticGraphEdge addEdge(IndexedWord s, IndexedWord d, GrammaticalRelation reln, double weight, boolean isExtra) {
     SemanticGraphEdge newEdge = new SemanticGraphEdge(s, d, reln, weight, isExtra);
+    adjacency = null;
     graph.add(s, d, newEdge);
     return newEdge;
   }
@@ -1938,6 +2008,7 @@ public class SemanticGraph implements Serializable {
    *
    */
   public void deleteDuplicateEdges() {
+    adjacency = null;
     graph.deleteDuplicateEdges();
   }
 
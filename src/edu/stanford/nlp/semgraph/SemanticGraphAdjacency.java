@@ -0,0 +1,177 @@
+package edu.stanford.nlp.semgraph;
+
+import java.io.IOException;
+import java.util.*;
+
+import edu.stanford.nlp.graph.DirectedMultiGraph;
+import edu.stanford.nlp.io.IOUtils;
+import edu.stanford.nlp.ling.IndexedWord;
+import edu.stanford.nlp.semgraph.semgrex.SemgrexMatcher;
+import edu.stanford.nlp.semgraph.semgrex.SemgrexPattern;
+import edu.stanford.nlp.trees.CoNLLUDocumentReader;
+import edu.stanford.nlp.util.Generics;
+import edu.stanford.nlp.util.StringUtils;
+import edu.stanford.nlp.util.Timing;
+
+/**
+ * A compact, read-only snapshot of the edges of a {@link SemanticGraph}.
+ * Each vertex is given an int id, and the outgoing and incoming edges of
+ * all vertices are laid out in two arrays, with the edges of vertex
+ * {@code i} at positions {@code start[i]} to {@code start[i+1]} (the
+ * compressed sparse row layout).  Answering a degree or adjacency query
+ * then costs one hash lookup instead of walking the nested maps of the
+ * {@link DirectedMultiGraph}, and iterating over the edges of a vertex
+ * allocates a single small iterator.
+ * <br>
+ * The edges are stored in the order the {@code DirectedMultiGraph}
+ * iterates over them, so anything iterating over the snapshot sees the
+ * same edges in the same order.  The edge objects themselves are
+ * shared with the graph, so changes to an edge's relation or weight are
+ * seen through the snapshot; adding or removing vertices and edges is
+ * not, which is why {@link SemanticGraph} throws the snapshot away
+ * whenever it is modified and builds a new one on the next query.
+ */
+class SemanticGraphAdjacency {
+
+  private final Map<IndexedWord, Integer> ids;
+
+  private final int[] outStart;
+  private final SemanticGraphEdge[] outEdges;
+
+  private final int[] inStart;
+  private final SemanticGraphEdge[] inEdges;
+
+  SemanticGraphAdjacency(DirectedMultiGraph<IndexedWord, SemanticGraphEdge> graph) {
+    Set<IndexedWord> vertices = graph.getAllVertices();
+    int numVertices = vertices.size();
+    ids = Generics.newHashMap(numVertices);
+    outStart = new int[numVertices + 1];
+    inStart = new int[numVertices + 1];
+    List<SemanticGraphEdge> outgoing = new ArrayList<>(graph.getNumEdges());
+    List<SemanticGraphEdge> incoming = new ArrayList<>(graph.getNumEdges());
+    int id = 0;
+    for (IndexedWord vertex : vertices) {
+      ids.put(vertex, id);
+      outStart[id] = outgoing.size();
+      for (SemanticGraphEdge edge : graph.outgoingEdgeIterable(vertex)) {
+        outgoing.add(edge);
+      }
+      inStart[id] = incoming.size();
+      for (SemanticGraphEdge edge : graph.incomingEdgeIterable(vertex)) {
+        incoming.add(edge);
+      }
+      ++id;
+    }
+    outStart[numVertices] = outgoing.size();
+    inStart[numVertices] = incoming.size();
+    outEdges = outgoing.toArray(new SemanticGraphEdge[outgoing.size()]);
+    inEdges = incoming.toArray(new SemanticGraphEdge[incoming.size()]);
+  }
+
+  /** The id of this vertex, or -1 if it is not in the graph */
+  int id(IndexedWord vertex) {
+    Integer id = ids.get(vertex);
+    return id == null ? -1 : id;
+  }
+
+  int outDegree(IndexedWord vertex) {
+    int id = id(vertex);
+    return id < 0 ? 0 : outStart[id + 1] - outStart[id];
+  }
+
+  int inDegree(IndexedWord vertex) {
+    int id = id(vertex);
+    return id < 0 ? 0 : inStart[id + 1] - inStart[id];
+  }
+
+  Iterator<SemanticGraphEdge> outgoingEdgeIterator(IndexedWord vertex) {
+    int id = id(vertex);
+    if (id < 0) {
+      return Collections.emptyIterator();
+    }
+    return new EdgeIterator(outEdges, outStart[id], outStart[id + 1]);
+  }
+
+  Iterator<SemanticGraphEdge> incomingEdgeIterator(IndexedWord vertex) {
+    int id = id(vertex);
+    if (id < 0) {
+      return Collections.emptyIterator();
+    }
+    return new EdgeIterator(inEdges, inStart[id], inStart[id + 1]);
+  }
+
+  private static class EdgeIterator implements Iterator<SemanticGraphEdge> {
+    private final SemanticGraphEdge[] edges;
+    private int position;
+    private final int end;
+
+    EdgeIterator(SemanticGraphEdge[] edges, int start, int end) {
+      this.edges = edges;
+      this.position = start;
+      this.end = end;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return position < end;
+    }
+
+    @Override
+    public SemanticGraphEdge next() {
+      if (position >= end) {
+        throw new NoSuchElementException("Graph edge iterator exhausted.");
+      }
+      return edges[position++];
+    }
+  }
+
+  /**
+   * Times semgrex patterns over the graphs of a CoNLL-U file, with and
+   * without the compact adjacency.
+   * <br>
+   * Usage: <code>java edu.stanford.nlp.semgraph.SemanticGraphAdjacency -conlluFile file [-iterations n] pattern ...</code>
+   */
+  public static void main(String[] args) throws IOException {
+    Map<String, Integer> flagMap = Generics.newHashMap();
+    flagMap.put("-conlluFile", 1);
+    flagMap.put("-iterations", 1);
+    Map<String, String[]> argsMap = StringUtils.argsToMap(args, flagMap);
+    String[] patternStrings = argsMap.get(null);
+    if ( ! argsMap.containsKey("-conlluFile") || patternStrings == null || patternStrings.length == 0) {
+      System.err.println("Usage: java edu.stanford.nlp.semgraph.SemanticGraphAdjacency -conlluFile file [-iterations n] pattern ...");
+      System.exit(1);
+    }
+    int iterations = argsMap.containsKey("-iterations") ? Integer.parseInt(argsMap.get("-iterations")[0]) : 5;
+
+    List<SemanticGraph> graphs = Generics.newArrayList();
+    Iterator<SemanticGraph> it = new CoNLLUDocumentReader().getIterator(IOUtils.readerFromString(argsMap.get("-conlluFile")[0]));
+    while (it.hasNext()) {
+      graphs.add(it.next());
+    }
+    List<SemgrexPattern> patterns = Generics.newArrayList();
+    for (String patternString : patternStrings) {
+      patterns.add(SemgrexPattern.compile(patternString));
+    }
+    System.err.println("Read " + graphs.size() + " graphs and " + patterns.size() + " patterns");
+
+    boolean previous = SemanticGraph.useCompactAdjacency;
+    for (boolean compact : new boolean[] { false, true }) {
+      SemanticGraph.useCompactAdjacency = compact;
+      Timing timing = new Timing();
+      long matches = 0;
+      for (int i = 0; i < iterations; ++i) {
+        for (SemanticGraph graph : graphs) {
+          for (SemgrexPattern pattern : patterns) {
+            SemgrexMatcher matcher = pattern.matcher(graph);
+            while (matcher.find()) {
+              ++matches;
+            }
+          }
+        }
+      }
+      timing.done((compact ? "Compact adjacency: " : "Map adjacency: ") + matches + " matches");
+    }
+    SemanticGraph.useCompactAdjacency = previous;
+  }
+
+}
@@ -58,6 +58,16 @@ public class CoordinationPattern extends SemgrexPattern {
     return children;
   }
 
+  @Override
+  void addRequiredTerms(List<Set<String>> requirements, NodePattern parent) {
+    if (isNegated() || isOptional() || !isConj) {
+      return;
+    }
+    for (SemgrexPattern child : children) {
+      child.addRequiredTerms(requirements, parent);
+    }
+  }
+
   @Override
   public String localString() {
     StringBuilder sb = new StringBuilder();
@@ -242,11 +242,13 @@ abstract class GraphRelation implements Serializable {
 		  
     @Override
     boolean satisfies(IndexedWord l1, IndexedWord l2, SemanticGraph sg) {
-      List<Pair<GrammaticalRelation, IndexedWord>> deps = sg.childPairs(l1);
-      for (Pair<GrammaticalRelation, IndexedWord> dep : deps) {
-        if (this.type.test(dep.first().toString()) &&
-            dep.second().equals(l2)) {
-          return true;  
+      if (!sg.containsVertex(l1)) {
+        throw new IllegalArgumentException();
+      }
+      for (SemanticGraphEdge edge : sg.outgoingEdgeIterable(l1)) {
+        if (edge.getTarget().equals(l2) &&
+            this.type.test(edge.getRelation().toString())) {
+          return true;
         }
       }
       return false;
@@ -296,10 +298,14 @@ abstract class GraphRelation implements Serializable {
     boolean satisfies(IndexedWord l1, IndexedWord l2, SemanticGraph sg) {
       if (l1.equals(IndexedWord.NO_WORD) || l2.equals(IndexedWord.NO_WORD) ) 
         return false;
-      List<Pair<GrammaticalRelation, IndexedWord>> govs = sg.parentPairs(l1);
-      for (Pair<GrammaticalRelation, IndexedWord> gov : govs) {
-        if (this.type.test(gov.first().toString()) &&
-            gov.second().equals(l2)) return true;  
+      if (!sg.containsVertex(l1)) {
+        throw new IllegalArgumentException();
+      }
+      for (SemanticGraphEdge edge : sg.incomingEdgeIterable(l1)) {
+        if (edge.getSource().equals(l2) &&
+            this.type.test(edge.getRelation().toString())) {
+          return true;
+        }
       }
       return false;
     }
@@ -307,13 +313,9 @@ abstract class GraphRelation implements Serializable {
     @Override
     Iterator<IndexedWord> searchNodeIterator(final IndexedWord node, final SemanticGraph sg) {
       return new SearchNodeIterator() {
-          int nextNum; // subtle bug warning here: if we use int nextNum=0;
-
-          // instead,
-
-          // we get the first daughter twice because the assignment occurs after
-          // advance() has already been
-          // called once by the constructor of SearchNodeIterator.
+          // walks the incoming edges directly rather than building the
+          // list of parent pairs again on every call to advance()
+          Iterator<SemanticGraphEdge> iterator;
 
           @Override
           public void advance() {
@@ -321,17 +323,22 @@ abstract class GraphRelation implements Serializable {
               next = null;
               return;
             }
-            List<Pair<GrammaticalRelation, IndexedWord>> govs = sg.parentPairs(node);
-            while (nextNum < govs.size() && !type.test(govs.get(nextNum).first().toString())) {
-              nextNum++;
+            if (iterator == null) {
+              if (!sg.containsVertex(node)) {
+                throw new IllegalArgumentException();
+              }
+              iterator = sg.incomingEdgeIterator(node);
             }
-            if (nextNum < govs.size()) {
-              next = govs.get(nextNum).second();
-              relation = govs.get(nextNum).first().toString();
-              nextNum++;
-            } else {
-              next = null;
+            while (iterator.hasNext()) {
+              SemanticGraphEdge edge = iterator.next();
+              relation = edge.getRelation().toString();
+              if (!type.test(relation)) {
+                continue;
+              }
+              this.next = edge.getSource();
+              return;
             }
+            this.next = null;
           }
         };
     }
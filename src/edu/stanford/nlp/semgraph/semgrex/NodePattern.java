@@ -5,6 +5,7 @@ import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -173,6 +174,69 @@ public class NodePattern extends SemgrexPattern {
     return !negDesc;
   }
 
+  /** Whether the node this matches must have the exact attribute values given */
+  private boolean hasExactAttributes() {
+    return !negDesc && !isRoot && !isEmpty && !isLink;
+  }
+
+  /** The terms for the exact word and tag of this node, which edges are indexed by */
+  private List<String> edgeNodeTerms() {
+    List<String> terms = new ArrayList<String>();
+    if (hasExactAttributes()) {
+      for (Map.Entry<String, Pair<Object, Object>> attr : attributes.entrySet()) {
+        Object value = attr.getValue().first;
+        if (value instanceof String) {
+          String term = SemanticGraphIndex.edgeNodeTerm(Env.lookupAnnotationKey(env, attr.getKey()), (String) value);
+          if (term != null) {
+            terms.add(term);
+          }
+        }
+      }
+    }
+    return terms;
+  }
+
+  @Override
+  void addRequiredTerms(List<Set<String>> requirements, NodePattern parent) {
+    if (isNegated() || isOptional()) {
+      return;
+    }
+    if (reln != null && (reln.symbol.equals(">") || reln.symbol.equals("<")) &&
+        reln.rawType != null && !reln.rawType.isEmpty() && !reln.rawType.matches("/.*/")) {
+      requirements.add(Collections.singleton(SemanticGraphIndex.relationTerm(reln.rawType)));
+      if (parent != null) {
+        // parent >rel this, or parent <rel this
+        boolean parentGoverns = reln.symbol.equals(">");
+        List<String> govTerms = parentGoverns ? parent.edgeNodeTerms() : edgeNodeTerms();
+        List<String> depTerms = parentGoverns ? edgeNodeTerms() : parent.edgeNodeTerms();
+        for (String gov : govTerms) {
+          requirements.add(Collections.singleton(SemanticGraphIndex.edgeTerm(gov, reln.rawType, null)));
+          for (String dep : depTerms) {
+            requirements.add(Collections.singleton(SemanticGraphIndex.edgeTerm(gov, reln.rawType, dep)));
+          }
+        }
+        for (String dep : depTerms) {
+          requirements.add(Collections.singleton(SemanticGraphIndex.edgeTerm(null, reln.rawType, dep)));
+        }
+      }
+    }
+    if (hasExactAttributes()) {
+      for (Map.Entry<String, Pair<Object, Object>> attr : attributes.entrySet()) {
+        Object value = attr.getValue().first;
+        if (!(value instanceof String)) {
+          continue;
+        }
+        String term = SemanticGraphIndex.attributeTerm(Env.lookupAnnotationKey(env, attr.getKey()), (String) value);
+        if (term != null) {
+          requirements.add(Collections.singleton(term));
+        }
+      }
+    }
+    if (child != null) {
+      child.addRequiredTerms(requirements, this);
+    }
+  }
+
   public void makeLink() {
     isLink = true;
   }
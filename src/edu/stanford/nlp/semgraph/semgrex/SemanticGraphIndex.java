@@ -0,0 +1,308 @@
+package edu.stanford.nlp.semgraph.semgrex;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.*;
+
+import edu.stanford.nlp.io.IOUtils;
+import edu.stanford.nlp.io.RuntimeIOException;
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.IndexedWord;
+import edu.stanford.nlp.semgraph.SemanticGraph;
+import edu.stanford.nlp.semgraph.SemanticGraphEdge;
+import edu.stanford.nlp.trees.CoNLLUDocumentReader;
+import edu.stanford.nlp.util.Generics;
+import edu.stanford.nlp.util.InvertedIndex;
+import edu.stanford.nlp.util.StringUtils;
+import edu.stanford.nlp.util.Timing;
+
+/**
+ * A persistent inverted index over the dependency graphs in a set of
+ * CoNLL-U files, used to skip graphs which cannot match a
+ * {@link SemgrexPattern} without running the matcher on them.
+ * <br>
+ * Each graph is indexed by the words, lemmas and tags of its nodes
+ * (lowercased, so that the index also serves case insensitive
+ * searches), by the names of its relations, and by its edges: the
+ * relation with the word or tag of the governor, of the dependent, or
+ * of both.  A pattern is turned into the exact attributes, relation
+ * names and edges it requires (for example,
+ * <code>{word:ate} &gt;dobj {tag:NN}</code> requires the word ate, the
+ * tag NN, a dobj relation, and a dobj edge from ate to an NN), and
+ * only the graphs containing all of them are matched.  Files containing no candidate
+ * graphs are not read at all.
+ * <br>
+ * As with {@link edu.stanford.nlp.trees.tregex.TreebankIndex}, a file
+ * which has had graphs appended to it since it was indexed can be
+ * updated by indexing only the new graphs.
+ * <br>
+ * Usage: <br>
+ * <code>java edu.stanford.nlp.semgraph.semgrex.SemanticGraphIndex -index idx.ser.gz [-add file-or-dir ...] [-pattern semgrex]</code>
+ */
+public class SemanticGraphIndex implements Serializable {
+
+  // 2: edges are indexed too, so indices made before cannot be used
+  private static final long serialVersionUID = 2L;
+
+  private final InvertedIndex index = new InvertedIndex();
+
+  /** Interface for receiving the candidate graphs of a search */
+  public interface CandidateVisitor {
+    /**
+     * @param source The file the graph was read from
+     * @param position The position of the graph in the file, starting from 0
+     * @param graph The graph
+     */
+    void visitCandidate(String source, int position, SemanticGraph graph);
+  }
+
+  /** The term used to index a relation */
+  static String relationTerm(String relation) {
+    return "r:" + relation;
+  }
+
+  /**
+   * The term used to index a node attribute, or null if graphs are
+   * not indexed by this attribute.
+   */
+  static String attributeTerm(Class<?> key, String value) {
+    if (value == null) {
+      return null;
+    }
+    // Locale.ROOT, so that an index used under another default locale gives the same terms
+    if (key == CoreAnnotations.TextAnnotation.class) {
+      return "w:" + value.toLowerCase(Locale.ROOT);
+    } else if (key == CoreAnnotations.LemmaAnnotation.class) {
+      return "l:" + value.toLowerCase(Locale.ROOT);
+    } else if (key == CoreAnnotations.PartOfSpeechAnnotation.class) {
+      return "t:" + value.toLowerCase(Locale.ROOT);
+    }
+    return null;
+  }
+
+  /**
+   * The term for a node attribute used in the terms of the edges of
+   * the node, or null if edges are not indexed by this attribute (only
+   * by the word and the tag).
+   */
+  static String edgeNodeTerm(Class<?> key, String value) {
+    if (key == CoreAnnotations.TextAnnotation.class || key == CoreAnnotations.PartOfSpeechAnnotation.class) {
+      return attributeTerm(key, value);
+    }
+    return null;
+  }
+
+  /**
+   * The term used to index an edge by the terms of its governor and
+   * dependent, either of which may be null for an edge indexed by one
+   * side only.
+   */
+  static String edgeTerm(String governor, String relation, String dependent) {
+    return "e:" + (governor == null ? "" : governor) + '|' + relation + '|' + (dependent == null ? "" : dependent);
+  }
+
+  /** The terms a graph is indexed under */
+  static Set<String> graphTerms(SemanticGraph graph) {
+    Set<String> terms = Generics.newHashSet();
+    for (IndexedWord word : graph.vertexSet()) {
+      addTerm(terms, attributeTerm(CoreAnnotations.TextAnnotation.class, word.word()));
+      addTerm(terms, attributeTerm(CoreAnnotations.LemmaAnnotation.class, word.lemma()));
+      addTerm(terms, attributeTerm(CoreAnnotations.PartOfSpeechAnnotation.class, word.tag()));
+    }
+    for (SemanticGraphEdge edge : graph.edgeIterable()) {
+      String relation = edge.getRelation().toString();
+      terms.add(relationTerm(relation));
+      List<String> govTerms = edgeNodeTerms(edge.getGovernor());
+      List<String> depTerms = edgeNodeTerms(edge.getDependent());
+      for (String gov : govTerms) {
+        terms.add(edgeTerm(gov, relation, null));
+        for (String dep : depTerms) {
+          terms.add(edgeTerm(gov, relation, dep));
+        }
+      }
+      for (String dep : depTerms) {
+        terms.add(edgeTerm(null, relation, dep));
+      }
+    }
+    return terms;
+  }
+
+  private static List<String> edgeNodeTerms(IndexedWord word) {
+    List<String> terms = new ArrayList<String>(2);
+    addTerm(terms, edgeNodeTerm(CoreAnnotations.TextAnnotation.class, word.word()));
+    addTerm(terms, edgeNodeTerm(CoreAnnotations.PartOfSpeechAnnotation.class, word.tag()));
+    return terms;
+  }
+
+  private static void addTerm(Collection<String> terms, String term) {
+    if (term != null) {
+      terms.add(term);
+    }
+  }
+
+  private static Iterator<SemanticGraph> readGraphs(String source) {
+    try {
+      return new CoNLLUDocumentReader().getIterator(IOUtils.readerFromString(source));
+    } catch (IOException e) {
+      throw new RuntimeIOException(e);
+    }
+  }
+
+  /**
+   * Indexes the graphs in this CoNLL-U file, or in the files under this
+   * directory.  Graphs which were already indexed are skipped.
+   *
+   * @return The number of graphs newly indexed
+   */
+  public int update(String path) {
+    int added = 0;
+    for (File file : listFiles(new File(path))) {
+      String source = file.getPath();
+      int known = index.sourceSize(source);
+      int position = 0;
+      for (Iterator<SemanticGraph> it = readGraphs(source); it.hasNext(); ) {
+        SemanticGraph graph = it.next();
+        if (position++ < known) {
+          continue;
+        }
+        index.addDocument(source, graphTerms(graph));
+        added++;
+      }
+    }
+    return added;
+  }
+
+  private static List<File> listFiles(File path) {
+    List<File> files = Generics.newArrayList();
+    if (path.isDirectory()) {
+      File[] children = path.listFiles();
+      if (children != null) {
+        Arrays.sort(children);
+        for (File child : children) {
+          files.addAll(listFiles(child));
+        }
+      }
+    } else {
+      files.add(path);
+    }
+    return files;
+  }
+
+  /** The sets of terms, one from each of which a graph must contain to match this pattern */
+  public static List<Set<String>> requiredTerms(SemgrexPattern pattern) {
+    List<Set<String>> requirements = Generics.newArrayList();
+    pattern.addRequiredTerms(requirements, null);
+    return requirements;
+  }
+
+  /** The ids of the graphs which could match this pattern */
+  public BitSet candidates(SemgrexPattern pattern) {
+    return index.candidates(requiredTerms(pattern));
+  }
+
+  public int numGraphs() {
+    return index.numDocuments();
+  }
+
+  /**
+   * Reads the graphs which could match this pattern and passes them to
+   * the visitor, in the order of the indexed files.
+   *
+   * @return The number of candidate graphs visited
+   */
+  public int visitCandidates(SemgrexPattern pattern, CandidateVisitor visitor) {
+    BitSet candidates = candidates(pattern);
+    int visited = 0;
+    for (String source : index.sources()) {
+      int size = index.sourceSize(source);
+      int first = index.documentId(source, 0);
+      int last = index.documentId(source, size - 1);
+      int next = candidates.nextSetBit(first);
+      if (next < 0 || next > last) {
+        continue;
+      }
+      int position = 0;
+      // graphs appended since the last update are not indexed
+      for (Iterator<SemanticGraph> it = readGraphs(source); it.hasNext() && position < size; position++) {
+        SemanticGraph graph = it.next();
+        if (candidates.get(index.documentId(source, position))) {
+          visitor.visitCandidate(source, position, graph);
+          visited++;
+        }
+      }
+    }
+    return visited;
+  }
+
+  /** Returns the graphs which match the pattern */
+  public List<SemanticGraph> matchingGraphs(SemgrexPattern pattern) {
+    List<SemanticGraph> matches = Generics.newArrayList();
+    visitCandidates(pattern, (source, position, graph) -> {
+      if (pattern.matcher(graph).find()) {
+        matches.add(graph);
+      }
+    });
+    return matches;
+  }
+
+  public void save(String filename) throws IOException {
+    IOUtils.writeObjectToFile(this, filename);
+  }
+
+  public static SemanticGraphIndex load(String filename) throws IOException, ClassNotFoundException {
+    return IOUtils.readObjectFromFile(filename);
+  }
+
+  @Override
+  public String toString() {
+    return "SemanticGraphIndex[" + index + "]";
+  }
+
+  public static void main(String[] args) throws IOException, ClassNotFoundException {
+    Map<String, Integer> flagMap = Generics.newHashMap();
+    flagMap.put("-index", 1);
+    flagMap.put("-pattern", 1);
+    flagMap.put("-add", 0);
+    Map<String, String[]> argsMap = StringUtils.argsToMap(args, flagMap);
+    if ( ! argsMap.containsKey("-index")) {
+      System.err.println("Usage: java edu.stanford.nlp.semgraph.semgrex.SemanticGraphIndex -index idx.ser.gz [-add file-or-dir ...] [-pattern semgrex]");
+      System.exit(1);
+    }
+    String indexFile = argsMap.get("-index")[0];
+
+    SemanticGraphIndex graphIndex;
+    if (new File(indexFile).exists()) {
+      graphIndex = load(indexFile);
+      System.err.println("Loaded " + graphIndex + " from " + indexFile);
+    } else {
+      graphIndex = new SemanticGraphIndex();
+    }
+
+    // the files to add are the non-flag arguments
+    String[] paths = argsMap.get(null);
+    if (argsMap.containsKey("-add") && paths != null && paths.length > 0) {
+      Timing timing = new Timing();
+      int added = 0;
+      for (String path : paths) {
+        added += graphIndex.update(path);
+      }
+      timing.done("Indexed " + added + " new graphs");
+      graphIndex.save(indexFile);
+      System.err.println("Saved " + graphIndex + " to " + indexFile);
+    }
+
+    if (argsMap.containsKey("-pattern")) {
+      SemgrexPattern pattern = SemgrexPattern.compile(argsMap.get("-pattern")[0]);
+      System.err.println("Required terms: " + requiredTerms(pattern));
+      Timing timing = new Timing();
+      List<SemanticGraph> matches = graphIndex.matchingGraphs(pattern);
+      for (SemanticGraph graph : matches) {
+        System.out.println(graph.toString(SemanticGraph.OutputFormat.LIST));
+      }
+      timing.done(matches.size() + " of " + graphIndex.numGraphs() + " graphs matched, " +
+                  graphIndex.candidates(pattern).cardinality() + " candidates");
+    }
+  }
+
+}
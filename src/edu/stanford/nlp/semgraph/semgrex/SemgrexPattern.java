@@ -202,6 +202,16 @@ public abstract class SemgrexPattern implements Serializable {
     return opt;
   }
 
+  /**
+   * Adds the sets of terms, one from each of which a graph must contain
+   * for this pattern to match it.  Used by {@link SemanticGraphIndex} to
+   * skip graphs; a pattern which cannot tell adds nothing.
+   *
+   * @param parent The node pattern which this pattern's relation is to, or null
+   */
+  void addRequiredTerms(List<Set<String>> requirements, NodePattern parent) {
+  }
+
   // matcher methods
   // ------------------------------------------------------------
 
@@ -63,6 +63,16 @@ import java.util.*;
  * </td>
  * </tr>
  * <tr>
+ * <td>useHogwildSGD</td>
+ * <td>boolean</td>
+ * <td>false</td>
+ * <td>Use asynchronous parallel SGD (Hogwild!): hogwildThreads threads make
+ * in place SGD updates to the same weights without locking, for SGDPasses
+ * passes. Set hogwildDeterministic to take the threads' updates in turn on
+ * one thread instead, for reproducible results. Implemented for
+ * CRFClassifier. NOTE: Remember to set useQN to false</td>
+ * </tr>
+ * <tr>
  * <td>tuneSampleSize</td>
  * <td>int</td>
  * <td>-1</td>
@@ -205,6 +215,8 @@ public class SeqClassifierFlags implements Serializable {
   public boolean useNB = false;
   public boolean useQN = true;
   public boolean useFloat = false;
+  // compute the CRFClassifier objective in float precision (whereas useFloat trains a CRFClassifierFloat)
+  public transient boolean useFloatObjective = false;
 
   public int QNsize = 25;
   public int QNsize2 = 25;
@@ -432,6 +444,8 @@ public class SeqClassifierFlags implements Serializable {
   public transient String loadAuxClassifier = null;
   public transient String serializeTo = null;
   public transient String serializeToText = null;
+  // if set, a serialized CRFClassifier keeps its feature index in this file, memory-mapped when it is loaded
+  public transient String mappedFeatureIndex = null;
   public transient int interimOutputFreq = 0;
   public transient String initialWeights = null;
   public transient List<String> gazettes = new ArrayList<String>();
@@ -967,6 +981,28 @@ public class SeqClassifierFlags implements Serializable {
   public int multiThreadPerceptron = 1;
   public boolean lazyUpdate = false;
   public int featureCountThresh = 0;
+  // number of threads extracting the features of the training documents; 0 or 1 means one thread
+  public transient int multiThreadFeatures = 0;
+  // file in which the indices and data arrays made from the training data are kept between runs
+  public transient String trainDataCacheFile = null;
+  public boolean useHogwildSGD = false;
+  // number of threads for useHogwildSGD; 0 means one per core
+  public transient int hogwildThreads = 0;
+  public transient boolean hogwildDeterministic = false;
+  // number of shards of the training data whose gradients are computed at the same time and summed
+  public transient int trainShards = 0;
+  // comma-separated host:port of processes run with shardWorkerPort, which hold the training data instead of this one
+  public transient String shardWorkers = null;
+  // port on which to serve the gradient of this process's training data to a CRFClassifier run with shardWorkers
+  public transient int shardWorkerPort = 0;
+  // address on which a shard worker listens; the loopback address if null
+  public transient String shardWorkerAddress = null;
+  // file holding the secret which a CRFClassifier run with shardWorkers and its workers must share
+  public transient String shardSecretFile = null;
+  // if positive, features are hashed into this many buckets, here and wherever the classifier is loaded (not transient, so that it is)
+  public int featureHashingBuckets = 0;
+  // with featureHashingBuckets, whether each hashed node feature has a sign, +1 or -1, as its value
+  public boolean signedFeatureHashing = true;
   public transient String serializeWeightsTo = null;
   public boolean geDebug = false;
   public boolean doFeatureDiscovery = false;
@@ -1542,6 +1578,8 @@ public class SeqClassifierFlags implements Serializable {
         serializeTo = val;
       } else if (key.equalsIgnoreCase("serializeToText")) {
         serializeToText = val;
+      } else if (key.equalsIgnoreCase("mappedFeatureIndex")) {
+        mappedFeatureIndex = val;
       } else if (key.equalsIgnoreCase("serializeDatasetsDir")) {
         serializeDatasetsDir = val;
       } else if (key.equalsIgnoreCase("loadDatasetsDir")) {
@@ -1607,6 +1645,8 @@ public class SeqClassifierFlags implements Serializable {
         l1reg = Double.parseDouble(val);
       } else if (key.equalsIgnoreCase("useFloat")) {
         useFloat = Boolean.parseBoolean(val);
+      } else if (key.equalsIgnoreCase("useFloatObjective")) {
+        useFloatObjective = Boolean.parseBoolean(val);
       } else if (key.equalsIgnoreCase("trainMap")) {
         System.err.println("trainMap and testMap are no longer valid options - please use map instead.");
         throw new RuntimeException();
@@ -2487,6 +2527,30 @@ public class SeqClassifierFlags implements Serializable {
         lazyUpdate = Boolean.parseBoolean(val);
       } else if (key.equalsIgnoreCase("featureCountThresh")){
         featureCountThresh = Integer.parseInt(val);
+      } else if (key.equalsIgnoreCase("multiThreadFeatures")){
+        multiThreadFeatures = Integer.parseInt(val);
+      } else if (key.equalsIgnoreCase("trainDataCacheFile")){
+        trainDataCacheFile = val;
+      } else if (key.equalsIgnoreCase("useHogwildSGD")){
+        useHogwildSGD = Boolean.parseBoolean(val);
+      } else if (key.equalsIgnoreCase("hogwildThreads")){
+        hogwildThreads = Integer.parseInt(val);
+      } else if (key.equalsIgnoreCase("hogwildDeterministic")){
+        hogwildDeterministic = Boolean.parseBoolean(val);
+      } else if (key.equalsIgnoreCase("trainShards")){
+        trainShards = Integer.parseInt(val);
+      } else if (key.equalsIgnoreCase("shardWorkers")){
+        shardWorkers = val;
+      } else if (key.equalsIgnoreCase("shardWorkerPort")){
+        shardWorkerPort = Integer.parseInt(val);
+      } else if (key.equalsIgnoreCase("shardWorkerAddress")){
+        shardWorkerAddress = val;
+      } else if (key.equalsIgnoreCase("shardSecretFile")){
+        shardSecretFile = val;
+      } else if (key.equalsIgnoreCase("featureHashingBuckets")){
+        featureHashingBuckets = Integer.parseInt(val);
+      } else if (key.equalsIgnoreCase("signedFeatureHashing")){
+        signedFeatureHashing = Boolean.parseBoolean(val);
       } else if (key.equalsIgnoreCase("serializeWeightsTo")) {
         serializeWeightsTo = val;
       } else if (key.equalsIgnoreCase("geDebug")){
@@ -0,0 +1,590 @@
+package edu.stanford.nlp.stats;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractCollection;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import edu.stanford.nlp.math.SloppyMath;
+import edu.stanford.nlp.util.logging.PrettyLogger;
+import edu.stanford.nlp.util.logging.Redwood.RedwoodChannels;
+
+/**
+ * The keys of a Counter kept in an open-addressing hash table: one array
+ * of keys, probed linearly, next to which subclasses keep an array of
+ * primitive counts, so that there is no entry or boxed count object per key
+ * as there is in a {@link ClassicCounter}.
+ * <br>
+ * A removed key leaves a marker in its slot until the table is next
+ * rebuilt, so that removing keys while iterating over them is safe.
+ * The keySet, values and entrySet are views of the table; entries are made
+ * as they are iterated over, so code which wants speed should use
+ * {@link #getCount(Object)} on the keys, or the methods of {@link Counters},
+ * which go through the arrays directly when both Counters are kept this way.
+ *
+ * @param <E> The type of the keys
+ */
+public abstract class AbstractOpenAddressCounter<E> extends AbstractCounter<E> implements Serializable, Iterable<E> {
+
+  private static final long serialVersionUID = 1L;
+
+  /** Stands for the null key, since a null slot is free. */
+  private static final Object NULL_KEY = new Object();
+  /** Marks the slot of a removed key, so that probes go on past it. */
+  private static final Object REMOVED = new Object();
+
+  private static final int DEFAULT_CAPACITY = 16;
+  private static final int SMALL_CAPACITY = 1024;
+
+  /** The keys, at their slots; null in free slots */
+  transient Object[] keys;
+  /** The number of keys */
+  private transient int size;
+  /** The number of slots which are not free (keys and removed markers) */
+  private transient int used;
+
+  private double defaultValue; // = 0.0;
+
+  protected AbstractOpenAddressCounter(int expectedSize) {
+    allocate(capacityFor(expectedSize));
+  }
+
+  /** Makes the array of counts, of the given length.  Its slots start at 0. */
+  protected abstract void allocateCounts(int capacity);
+
+  /**
+   * Starts moving the counts to a new array of the given length, which
+   * {@link #moveCount(int, int)} then fills in.
+   */
+  protected abstract void startMovingCounts(int capacity);
+
+  /** Moves the count at the given slot of the old array to the given slot of the new one. */
+  protected abstract void moveCount(int oldSlot, int newSlot);
+
+  /** Lets go of the old array of counts. */
+  protected abstract void finishMovingCounts();
+
+  /** The count at the given slot */
+  abstract double countAt(int slot);
+
+  /** Sets the count at the given slot (keeping the total up to date) */
+  abstract void setCountAt(int slot, double count);
+
+  /** Sets the count at the given slot to 0 (keeping the total up to date) */
+  abstract void clearCountAt(int slot);
+
+  /** Sets the total count to 0 (the counts themselves are cleared by {@link #clear()}) */
+  abstract void clearTotal();
+
+  private static int capacityFor(int expectedSize) {
+    int capacity = DEFAULT_CAPACITY;
+    // keep the table at most three quarters full
+    while (capacity * 3 / 4 <= expectedSize) {
+      capacity <<= 1;
+    }
+    return capacity;
+  }
+
+  private void allocate(int capacity) {
+    keys = new Object[capacity];
+    allocateCounts(capacity);
+    size = 0;
+    used = 0;
+  }
+
+  private static int hash(Object key) {
+    int h = key.hashCode() * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  private static Object mask(Object key) {
+    return key == null ? NULL_KEY : key;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <E> E unmask(Object key) {
+    return key == NULL_KEY ? null : (E) key;
+  }
+
+  /** True if the given slot holds a key */
+  static boolean isKey(Object slotContents) {
+    return slotContents != null && slotContents != REMOVED;
+  }
+
+  /** The slot of the given key, or -1 if it is not in the Counter. */
+  final int slotOf(Object key) {
+    Object k = mask(key);
+    Object[] keys = this.keys;
+    int m = keys.length - 1;
+    int i = hash(k) & m;
+    while (true) {
+      Object s = keys[i];
+      if (s == null) {
+        return -1;
+      }
+      if (s == k || (s != REMOVED && s.equals(k))) {
+        return i;
+      }
+      i = (i + 1) & m;
+    }
+  }
+
+  /** The slot of the given key, which is added with count 0 if it is not in the Counter. */
+  final int addSlot(E key) {
+    if (used >= keys.length * 3 / 4) {
+      // small tables, which are rebuilt most often for their size, grow
+      // fourfold; large ones double, to keep the memory down
+      rehash(capacityFor(keys.length < SMALL_CAPACITY ? 2 * size + 1 : size + 1));
+    }
+    Object k = mask(key);
+    Object[] keys = this.keys;
+    int m = keys.length - 1;
+    int i = hash(k) & m;
+    int firstRemoved = -1;
+    while (true) {
+      Object s = keys[i];
+      if (s == null) {
+        break;
+      }
+      if (s == REMOVED) {
+        if (firstRemoved < 0) {
+          firstRemoved = i;
+        }
+      } else if (s == k || s.equals(k)) {
+        return i;
+      }
+      i = (i + 1) & m;
+    }
+    if (firstRemoved >= 0) {
+      i = firstRemoved;
+    } else {
+      used++;
+    }
+    keys[i] = k;
+    size++;
+    return i;
+  }
+
+  /** Removes the key at the given slot. */
+  final void removeSlot(int slot) {
+    clearCountAt(slot);
+    int next = (slot + 1) & (keys.length - 1);
+    if (keys[next] == null) {
+      // no probe goes on past this slot, so it can be freed
+      keys[slot] = null;
+      used--;
+    } else {
+      keys[slot] = REMOVED;
+    }
+    size--;
+  }
+
+  private void rehash(int capacity) {
+    Object[] oldKeys = keys;
+    Object[] keys = new Object[capacity];
+    startMovingCounts(capacity);
+    int m = capacity - 1;
+    for (int j = 0; j < oldKeys.length; j++) {
+      Object k = oldKeys[j];
+      if (isKey(k)) {
+        int i = hash(k) & m;
+        while (keys[i] != null) {
+          i = (i + 1) & m;
+        }
+        keys[i] = k;
+        moveCount(j, i);
+      }
+    }
+    finishMovingCounts();
+    this.keys = keys;
+    used = size;
+  }
+
+  /**
+   * Makes room for the given number of keys, so that adding them does not
+   * rebuild the table again.
+   */
+  public void ensureCapacity(int expectedSize) {
+    int capacity = capacityFor(expectedSize);
+    if (capacity > keys.length) {
+      rehash(capacity);
+    }
+  }
+
+  /**
+   * Sum over the keys of this Counter of their counts times their counts in
+   * the other Counter.  Iterates over the slots of this Counter, so it
+   * should be the smaller one.
+   *
+   * @param checkFinite Whether to throw an exception on an infinite or NaN
+   *     count, as {@link Counters#dotProduct(Counter, Counter)} does
+   */
+  double dotProduct(AbstractOpenAddressCounter<?> other, boolean checkFinite) {
+    double dotProd = 0.0;
+    Object[] keys = this.keys;
+    for (int i = 0; i < keys.length; i++) {
+      Object k = keys[i];
+      if ( ! isKey(k)) {
+        continue;
+      }
+      double count1 = countAt(i);
+      if (checkFinite && (Double.isNaN(count1) || Double.isInfinite(count1))) {
+        throw new RuntimeException("Counters.dotProduct infinite or NaN value for key: " + unmask(k) + '\t' + count1);
+      }
+      if (count1 != 0.0) {
+        int slot = other.slotOf(unmask(k));
+        double count2 = slot >= 0 ? other.countAt(slot) : other.defaultReturnValue();
+        if (count2 != 0.0) {
+          if (checkFinite && (Double.isNaN(count2) || Double.isInfinite(count2))) {
+            throw new RuntimeException("Counters.dotProduct infinite or NaN value for key: " + unmask(k) + '\t' + count1 + '\t' + count2);
+          }
+          dotProd += count1 * count2;
+        }
+      }
+    }
+    return dotProd;
+  }
+
+  /**
+   * Adds scale times each count of this Counter to the target.
+   *
+   * @param skipZeros Whether to leave out keys whose count is 0, rather
+   *     than adding them to the target
+   */
+  void addTo(Counter<E> target, double scale, boolean skipZeros) {
+    if (target instanceof AbstractOpenAddressCounter) {
+      AbstractOpenAddressCounter<E> t = (AbstractOpenAddressCounter<E>) target;
+      t.ensureCapacity(t.size() + size);
+      Object[] keys = this.keys;
+      for (int i = 0; i < keys.length; i++) {
+        if (isKey(keys[i])) {
+          double count = countAt(i);
+          if (count != 0.0 || ! skipZeros) {
+            int slot = t.addSlot(AbstractOpenAddressCounter.<E>unmask(keys[i]));
+            t.setCountAt(slot, t.countAt(slot) + scale * count);
+          }
+        }
+      }
+    } else {
+      Object[] keys = this.keys;
+      for (int i = 0; i < keys.length; i++) {
+        if (isKey(keys[i])) {
+          double count = countAt(i);
+          if (count != 0.0 || ! skipZeros) {
+            target.incrementCount(AbstractOpenAddressCounter.<E>unmask(keys[i]), scale * count);
+          }
+        }
+      }
+    }
+  }
+
+  //
+  // Counter
+  //
+
+  public void setDefaultReturnValue(double rv) {
+    defaultValue = rv;
+  }
+
+  public double defaultReturnValue() {
+    return defaultValue;
+  }
+
+  public double getCount(Object key) {
+    int slot = slotOf(key);
+    return slot < 0 ? defaultValue : countAt(slot);
+  }
+
+  public void setCount(E key, double value) {
+    setCountAt(addSlot(key), value);
+  }
+
+  @Override
+  public double incrementCount(E key, double value) {
+    int slot = addSlot(key);
+    double count = countAt(slot) + value;
+    setCountAt(slot, count);
+    return countAt(slot);
+  }
+
+  /**
+   * {@inheritDoc}
+   * As in a {@link ClassicCounter}, a key which is not in the Counter
+   * gets the given amount as its count.
+   */
+  @Override
+  public double logIncrementCount(E key, double value) {
+    int slot = slotOf(key);
+    if (slot >= 0) {
+      value = SloppyMath.logAdd(value, countAt(slot));
+    }
+    setCount(key, value);
+    return getCount(key);
+  }
+
+  public double remove(E key) {
+    int slot = slotOf(key);
+    if (slot < 0) {
+      return defaultValue;
+    }
+    double count = countAt(slot);
+    removeSlot(slot);
+    return count;
+  }
+
+  public boolean containsKey(E key) {
+    return slotOf(key) >= 0;
+  }
+
+  public void clear() {
+    allocate(DEFAULT_CAPACITY);
+    clearTotal();
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /** Iterates over the slots holding keys. */
+  private abstract class SlotIterator<T> implements Iterator<T> {
+    private final Object[] table = keys;
+    private int next = -1;
+    private int last = -1;
+
+    SlotIterator() {
+      advance();
+    }
+
+    private void advance() {
+      do {
+        next++;
+      } while (next < table.length && ! isKey(table[next]));
+    }
+
+    public boolean hasNext() {
+      return next < table.length;
+    }
+
+    /** Moves to the next slot and returns it. */
+    int nextSlot() {
+      if (table != keys) {
+        throw new ConcurrentModificationException();
+      }
+      if (next >= table.length) {
+        throw new NoSuchElementException();
+      }
+      last = next;
+      advance();
+      return last;
+    }
+
+    public void remove() {
+      if (last < 0 || ! isKey(keys[last])) {
+        throw new IllegalStateException();
+      }
+      removeSlot(last);
+    }
+  }
+
+  public Set<E> keySet() {
+    return new AbstractSet<E>() {
+      @Override
+      public Iterator<E> iterator() {
+        return new SlotIterator<E>() {
+          public E next() {
+            return unmask(keys[nextSlot()]);
+          }
+        };
+      }
+
+      @Override
+      @SuppressWarnings("unchecked")
+      public boolean contains(Object key) {
+        return containsKey((E) key);
+      }
+
+      @Override
+      public boolean remove(Object key) {
+        int slot = slotOf(key);
+        if (slot < 0) {
+          return false;
+        }
+        removeSlot(slot);
+        return true;
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+
+      @Override
+      public void clear() {
+        AbstractOpenAddressCounter.this.clear();
+      }
+    };
+  }
+
+  public Collection<Double> values() {
+    return new AbstractCollection<Double>() {
+      @Override
+      public Iterator<Double> iterator() {
+        return new SlotIterator<Double>() {
+          public Double next() {
+            return countAt(nextSlot());
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+    };
+  }
+
+  public Set<Map.Entry<E, Double>> entrySet() {
+    return new AbstractSet<Map.Entry<E, Double>>() {
+      @Override
+      public Iterator<Map.Entry<E, Double>> iterator() {
+        return new SlotIterator<Map.Entry<E, Double>>() {
+          public Map.Entry<E, Double> next() {
+            final int slot = nextSlot();
+            final E key = unmask(keys[slot]);
+            return new Map.Entry<E, Double>() {
+              public E getKey() {
+                return key;
+              }
+
+              public Double getValue() {
+                return countAt(slot);
+              }
+
+              public Double setValue(Double value) {
+                double old = countAt(slot);
+                setCountAt(slot, value);
+                return old;
+              }
+
+              @Override
+              public boolean equals(Object o) {
+                if ( ! (o instanceof Map.Entry)) {
+                  return false;
+                }
+                Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+                return (key == null ? e.getKey() == null : key.equals(e.getKey())) && getValue().equals(e.getValue());
+              }
+
+              @Override
+              public int hashCode() {
+                return (key == null ? 0 : key.hashCode()) ^ getValue().hashCode();
+              }
+
+              @Override
+              public String toString() {
+                return key + "=" + getValue();
+              }
+            };
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+    };
+  }
+
+  public Iterator<E> iterator() {
+    return keySet().iterator();
+  }
+
+  //
+  // Object
+  //
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    } else if ( ! (o instanceof Counter)) {
+      return false;
+    }
+    return Counters.equals(this, (Counter<E>) o);
+  }
+
+  @Override
+  public int hashCode() {
+    int h = 0;
+    for (int i = 0; i < keys.length; i++) {
+      if (isKey(keys[i])) {
+        // the null key hashes to 0, as in ClassicCounter, not to the identity hash of NULL_KEY
+        h += (keys[i] == NULL_KEY ? 0 : keys[i].hashCode()) ^ Double.valueOf(countAt(i)).hashCode();
+      }
+    }
+    return h;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("{");
+    boolean first = true;
+    for (int i = 0; i < keys.length; i++) {
+      if (isKey(keys[i])) {
+        if ( ! first) {
+          sb.append(", ");
+        }
+        first = false;
+        sb.append(AbstractOpenAddressCounter.<E>unmask(keys[i])).append('=').append(countAt(i));
+      }
+    }
+    return sb.append('}').toString();
+  }
+
+  public void prettyLog(RedwoodChannels channels, String description) {
+    PrettyLogger.log(channels, description, Counters.asMap(this));
+  }
+
+  //
+  // Serialization: the keys and counts are written in pairs, without the
+  // free slots, and the table is rebuilt on reading them.
+  //
+
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    out.defaultWriteObject();
+    out.writeInt(size);
+    for (int i = 0; i < keys.length; i++) {
+      if (isKey(keys[i])) {
+        out.writeObject(unmask(keys[i]));
+        out.writeDouble(countAt(i));
+      }
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    int n = in.readInt();
+    allocate(capacityFor(n));
+    clearTotal();
+    for (int i = 0; i < n; i++) {
+      E key = (E) in.readObject();
+      setCount(key, in.readDouble());
+    }
+  }
+
+}
@@ -320,6 +320,10 @@ public class Counters {
    */
   // TODO: Rewrite to use arg.entrySet()
   public static <E> void addInPlace(Counter<E> target, Counter<E> arg, double scale) {
+    if (arg instanceof AbstractOpenAddressCounter) {
+      ((AbstractOpenAddressCounter<E>) arg).addTo(target, scale, false);
+      return;
+    }
     for (E key : arg.keySet()) {
       target.incrementCount(key, scale * arg.getCount(key));
     }
@@ -329,6 +333,10 @@ public class Counters {
    * Sets each value of target to be target[k]+arg[k] for all keys k in arg.
    */
   public static <E> void addInPlace(Counter<E> target, Counter<E> arg) {
+    if (arg instanceof AbstractOpenAddressCounter) {
+      ((AbstractOpenAddressCounter<E>) arg).addTo(target, 1.0, true);
+      return;
+    }
     for (Map.Entry<E, Double> entry : arg.entrySet()) {
       double count = entry.getValue();
       if (count != 0) {
@@ -1205,6 +1213,9 @@ public class Counters {
       c1 = c2;
       c2 = tmpCnt;
     }
+    if (c1 instanceof AbstractOpenAddressCounter && c2 instanceof AbstractOpenAddressCounter) {
+      return ((AbstractOpenAddressCounter<E>) c1).dotProduct((AbstractOpenAddressCounter<E>) c2, true);
+    }
     for (E key : c1.keySet()) {
       double count1 = c1.getCount(key);
       if (Double.isNaN(count1) || Double.isInfinite(count1)) {
@@ -1295,6 +1306,11 @@ public class Counters {
     double dotProd = 0.0;
     int size1 = c1.size();
     int size2 = c2.size();
+    if (c1 instanceof AbstractOpenAddressCounter && c2 instanceof AbstractOpenAddressCounter) {
+      AbstractOpenAddressCounter<E> o1 = (AbstractOpenAddressCounter<E>) c1;
+      AbstractOpenAddressCounter<E> o2 = (AbstractOpenAddressCounter<E>) c2;
+      return size1 < size2 ? o1.dotProduct(o2, false) : o2.dotProduct(o1, false);
+    }
     if (size1 < size2) {
       for (E key : c1.keySet()) {
         double count1 = c1.getCount(key);
@@ -0,0 +1,114 @@
+package edu.stanford.nlp.stats;
+
+import java.util.Map;
+
+import edu.stanford.nlp.util.Factory;
+
+/**
+ * A Counter of doubles, kept in open-addressing arrays: an array of keys
+ * and a parallel array of counts, with no per-key objects.  It uses much
+ * less memory than a {@link ClassicCounter} with many keys, and is faster
+ * to increment and to look up in.  {@link Counters#dotProduct(Counter, Counter)}
+ * and {@link Counters#addInPlace(Counter, Counter)} go through the arrays
+ * directly when given Counters of this kind.
+ * <br>
+ * Views returned by {@link #keySet()}, {@link #values()} and
+ * {@link #entrySet()} are backed by the Counter, but make an object for
+ * each key or entry they return.
+ *
+ * @param <E> The type of the keys
+ */
+public class OpenAddressCounter<E> extends AbstractOpenAddressCounter<E> {
+
+  private static final long serialVersionUID = 1L;
+
+  private transient double[] counts;
+  private transient double[] oldCounts; // while the table is rebuilt
+  private transient double totalCount;
+
+  public OpenAddressCounter() {
+    this(0);
+  }
+
+  /** Makes a Counter which can hold the given number of keys without growing. */
+  public OpenAddressCounter(int expectedSize) {
+    super(expectedSize);
+  }
+
+  /** Makes a Counter with the counts of the given Counter. */
+  public OpenAddressCounter(Counter<E> c) {
+    this(c.size());
+    for (Map.Entry<E, Double> entry : c.entrySet()) {
+      setCount(entry.getKey(), entry.getValue());
+    }
+    setDefaultReturnValue(c.defaultReturnValue());
+  }
+
+  @Override
+  protected void allocateCounts(int capacity) {
+    counts = new double[capacity];
+  }
+
+  @Override
+  protected void startMovingCounts(int capacity) {
+    oldCounts = counts;
+    counts = new double[capacity];
+  }
+
+  @Override
+  protected void moveCount(int oldSlot, int newSlot) {
+    counts[newSlot] = oldCounts[oldSlot];
+  }
+
+  @Override
+  protected void finishMovingCounts() {
+    oldCounts = null;
+  }
+
+  @Override
+  final double countAt(int slot) {
+    return counts[slot];
+  }
+
+  @Override
+  final void setCountAt(int slot, double count) {
+    totalCount += count - counts[slot];
+    counts[slot] = count;
+  }
+
+  @Override
+  final void clearCountAt(int slot) {
+    totalCount -= counts[slot];
+    counts[slot] = 0.0;
+  }
+
+  @Override
+  void clearTotal() {
+    totalCount = 0.0;
+  }
+
+  @Override
+  public double incrementCount(E key, double value) {
+    int slot = addSlot(key);
+    totalCount += value;
+    return counts[slot] += value;
+  }
+
+  public double totalCount() {
+    return totalCount;
+  }
+
+  public Factory<Counter<E>> getFactory() {
+    return new OpenAddressCounterFactory<E>();
+  }
+
+  private static class OpenAddressCounterFactory<E> implements Factory<Counter<E>> {
+
+    private static final long serialVersionUID = 1L;
+
+    public Counter<E> create() {
+      return new OpenAddressCounter<E>();
+    }
+  }
+
+}
@@ -0,0 +1,170 @@
+package edu.stanford.nlp.stats;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+import edu.stanford.nlp.util.Factory;
+import edu.stanford.nlp.util.PropertiesUtils;
+import edu.stanford.nlp.util.StringUtils;
+
+/**
+ * Compares the memory and speed of an {@link OpenAddressCounter} with a
+ * {@link ClassicCounter}, as used to hold sparse feature vectors.
+ * <br>
+ * Random vectors of String features are made of each kind of Counter.
+ * First the two kinds are checked to give the same counts, dot products and
+ * sums, then the heap taken by the vectors is measured, and then the time
+ * to build them (incrementCount), to look up every feature (getCount), to
+ * take the dot product of pairs of vectors, and to add them all up
+ * (Counters.addInPlace).
+ * <br>
+ * Usage: <code>java edu.stanford.nlp.stats.OpenAddressCounterBenchmark
+ * [-vectors 20000] [-featuresPerVector 100] [-features 1000000] [-iterations 3]</code>
+ */
+public class OpenAddressCounterBenchmark {
+
+  private OpenAddressCounterBenchmark() {} // static main method only
+
+  private static List<Counter<String>> makeVectors(Factory<Counter<String>> factory, String[][] features) {
+    List<Counter<String>> vectors = new ArrayList<Counter<String>>(features.length);
+    for (String[] vectorFeatures : features) {
+      Counter<String> vector = factory.create();
+      for (String feature : vectorFeatures) {
+        vector.incrementCount(feature);
+      }
+      vectors.add(vector);
+    }
+    return vectors;
+  }
+
+  private static long usedMemory() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  /** Runs each of the operations on the vectors, and returns the time each took, in seconds. */
+  private static double[] time(Factory<Counter<String>> factory, String[][] features) {
+    double[] seconds = new double[4];
+    long start = System.nanoTime();
+    List<Counter<String>> vectors = makeVectors(factory, features);
+    seconds[0] = (System.nanoTime() - start) / 1e9;
+
+    start = System.nanoTime();
+    double sum = 0.0;
+    for (int v = 0; v < features.length; v++) {
+      Counter<String> vector = vectors.get(v);
+      for (String feature : features[v]) {
+        sum += vector.getCount(feature);
+      }
+    }
+    seconds[1] = (System.nanoTime() - start) / 1e9;
+
+    start = System.nanoTime();
+    for (int v = 1; v < vectors.size(); v++) {
+      sum += Counters.dotProduct(vectors.get(v - 1), vectors.get(v));
+    }
+    seconds[2] = (System.nanoTime() - start) / 1e9;
+
+    start = System.nanoTime();
+    Counter<String> total = factory.create();
+    for (Counter<String> vector : vectors) {
+      Counters.addInPlace(total, vector);
+    }
+    seconds[3] = (System.nanoTime() - start) / 1e9;
+
+    if (sum + total.totalCount() == 42.0) {
+      System.err.println(); // so that the work cannot be optimized away
+    }
+    return seconds;
+  }
+
+  public static void main(String[] args) {
+    Properties props = StringUtils.argsToProperties(args);
+    int numVectors = PropertiesUtils.getInt(props, "vectors", 20000);
+    int featuresPerVector = PropertiesUtils.getInt(props, "featuresPerVector", 100);
+    int numFeatures = PropertiesUtils.getInt(props, "features", 1000000);
+    int iterations = PropertiesUtils.getInt(props, "iterations", 3);
+
+    Random random = new Random(1);
+    String[] featureNames = new String[numFeatures];
+    for (int f = 0; f < numFeatures; f++) {
+      featureNames[f] = "f" + f;
+    }
+    String[][] features = new String[numVectors][featuresPerVector];
+    for (String[] vectorFeatures : features) {
+      for (int j = 0; j < featuresPerVector; j++) {
+        // skewed, so that vectors share features and some repeat within a vector
+        vectorFeatures[j] = featureNames[(int) (numFeatures * Math.pow(random.nextDouble(), 3))];
+      }
+    }
+
+    Factory<Counter<String>> classicFactory = new ClassicCounter<String>().getFactory();
+    Factory<Counter<String>> openAddressFactory = new OpenAddressCounter<String>().getFactory();
+    String[] names = { "ClassicCounter    ", "OpenAddressCounter" };
+    List<Factory<Counter<String>>> factories = new ArrayList<Factory<Counter<String>>>();
+    factories.add(classicFactory);
+    factories.add(openAddressFactory);
+
+    List<Counter<String>> classic = makeVectors(classicFactory, features);
+    List<Counter<String>> openAddress = makeVectors(openAddressFactory, features);
+    int differences = 0;
+    Counter<String> classicTotal = new ClassicCounter<String>();
+    Counter<String> openAddressTotal = new OpenAddressCounter<String>();
+    for (int v = 0; v < numVectors; v++) {
+      if ( ! Counters.equals(classic.get(v), openAddress.get(v))) {
+        differences++;
+      }
+      if (v > 0 && Counters.dotProduct(classic.get(v - 1), classic.get(v)) !=
+          Counters.dotProduct(openAddress.get(v - 1), openAddress.get(v))) {
+        differences++;
+      }
+      Counters.addInPlace(classicTotal, classic.get(v));
+      Counters.addInPlace(openAddressTotal, openAddress.get(v));
+    }
+    if ( ! Counters.equals(classicTotal, openAddressTotal) || classicTotal.totalCount() != openAddressTotal.totalCount()) {
+      differences++;
+    }
+    System.out.println("Compared the counts of " + numVectors + " vectors: " +
+        (differences == 0 ? "no differences" : differences + " differences"));
+    classic = null;
+    openAddress = null;
+    classicTotal = null;
+    openAddressTotal = null;
+
+    for (int k = 0; k < 2; k++) {
+      long before = usedMemory();
+      List<Counter<String>> vectors = makeVectors(factories.get(k), features);
+      long bytes = usedMemory() - before;
+      System.out.printf("%s: %.1f MB for %d vectors (%.1f bytes per key)%n", names[k], bytes / 1e6,
+          vectors.size(), ((double) bytes) / numVectors / vectors.get(0).size());
+      vectors = null;
+    }
+
+    // warm up the JIT
+    time(classicFactory, features);
+    time(openAddressFactory, features);
+
+    String[] operations = { "incrementCount", "getCount", "dotProduct", "addInPlace" };
+    double[][] seconds = new double[2][operations.length];
+    for (int iter = 0; iter < iterations; iter++) {
+      for (int k = 0; k < 2; k++) {
+        double[] s = time(factories.get(k), features);
+        for (int op = 0; op < operations.length; op++) {
+          seconds[k][op] += s[op];
+        }
+      }
+    }
+    for (int op = 0; op < operations.length; op++) {
+      for (int k = 0; k < 2; k++) {
+        System.out.printf("%-14s %s: %.3f s (%.2fx ClassicCounter)%n", operations[op], names[k],
+            seconds[k][op] / iterations, seconds[0][op] / seconds[k][op]);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,141 @@
+package edu.stanford.nlp.stats;
+
+import edu.stanford.nlp.util.Factory;
+
+/**
+ * A Counter of ints, kept in open-addressing arrays: an array of keys and a
+ * parallel array of int counts, with no per-key objects.  It takes the place
+ * of an {@link IntCounter} where there are many keys: it needs a small
+ * fraction of the memory and no MutableInteger per key.
+ * <br>
+ * As in IntCounter, the methods of the {@link Counter} interface which take
+ * a double count round it toward 0; {@link #getIntCount(Object)},
+ * {@link #incrementCount(Object, int)} and {@link #setCount(Object, int)}
+ * work on the ints directly.
+ *
+ * @param <E> The type of the keys
+ */
+public class OpenAddressIntCounter<E> extends AbstractOpenAddressCounter<E> {
+
+  private static final long serialVersionUID = 1L;
+
+  private transient int[] counts;
+  private transient int[] oldCounts; // while the table is rebuilt
+  private transient int totalCount;
+
+  public OpenAddressIntCounter() {
+    this(0);
+  }
+
+  /** Makes a Counter which can hold the given number of keys without growing. */
+  public OpenAddressIntCounter(int expectedSize) {
+    super(expectedSize);
+  }
+
+  @Override
+  protected void allocateCounts(int capacity) {
+    counts = new int[capacity];
+  }
+
+  @Override
+  protected void startMovingCounts(int capacity) {
+    oldCounts = counts;
+    counts = new int[capacity];
+  }
+
+  @Override
+  protected void moveCount(int oldSlot, int newSlot) {
+    counts[newSlot] = oldCounts[oldSlot];
+  }
+
+  @Override
+  protected void finishMovingCounts() {
+    oldCounts = null;
+  }
+
+  @Override
+  final double countAt(int slot) {
+    return counts[slot];
+  }
+
+  @Override
+  final void setCountAt(int slot, double count) {
+    int c = (int) count;
+    totalCount += c - counts[slot];
+    counts[slot] = c;
+  }
+
+  @Override
+  final void clearCountAt(int slot) {
+    totalCount -= counts[slot];
+    counts[slot] = 0;
+  }
+
+  @Override
+  void clearTotal() {
+    totalCount = 0;
+  }
+
+  /**
+   * Returns the count for the given key, or the default return value
+   * (rounded toward 0) if the key is not in the Counter.
+   */
+  public int getIntCount(Object key) {
+    int slot = slotOf(key);
+    return slot < 0 ? (int) defaultReturnValue() : counts[slot];
+  }
+
+  public void setCount(E key, int count) {
+    int slot = addSlot(key);
+    totalCount += count - counts[slot];
+    counts[slot] = count;
+  }
+
+  /** Adds the given count to the count of the key, and returns the new count. */
+  public int incrementCount(E key, int count) {
+    int slot = addSlot(key);
+    totalCount += count;
+    return counts[slot] += count;
+  }
+
+  public int decrementCount(E key, int count) {
+    return incrementCount(key, -count);
+  }
+
+  @Override
+  public double incrementCount(E key, double value) {
+    return incrementCount(key, (int) value);
+  }
+
+  @Override
+  public double incrementCount(E key) {
+    return incrementCount(key, 1);
+  }
+
+  @Override
+  public double decrementCount(E key) {
+    return incrementCount(key, -1);
+  }
+
+  public int totalIntCount() {
+    return totalCount;
+  }
+
+  public double totalCount() {
+    return totalCount;
+  }
+
+  public Factory<Counter<E>> getFactory() {
+    return new OpenAddressIntCounterFactory<E>();
+  }
+
+  private static class OpenAddressIntCounterFactory<E> implements Factory<Counter<E>> {
+
+    private static final long serialVersionUID = 1L;
+
+    public Counter<E> create() {
+      return new OpenAddressIntCounter<E>();
+    }
+  }
+
+}
@@ -34,6 +34,17 @@ public class Options {
   // would want a per document default as well
   String grammarFilename = null;
   Env.Binder[] binders = null;
+  // Classes and properties of the binders created from properties
+  // (empty if there are none, or if the binders were set directly)
+  String bindersDescription = "";
+  // Whether to share the compiled rules with the other extractors which use
+  // the same rules, binders and markTimeRanges setting
+  boolean shareRules = true;
+  // Whether to skip rule evaluation on sentences with no token that could
+  // be part of a time expression (numbers, month and day names, time units, ...).
+  // The cues are those of the default English rules, so if not set,
+  // sentences are only skipped when the default rules are used
+  Boolean skipSentencesWithoutCues = null;
 
   static final String DEFAULT_GRAMMAR_FILES = "edu/stanford/nlp/models/sutime/defs.sutime.txt,edu/stanford/nlp/models/sutime/english.sutime.txt,edu/stanford/nlp/models/sutime/english.holidays.sutime.txt";
   static final String[] DEFAULT_BINDERS = { "edu.stanford.nlp.time.JollyDayHolidays" };
@@ -64,6 +75,12 @@ public class Options {
 
     searchForDocDate = PropertiesUtils.getBool(props, name + ".searchForDocDate", searchForDocDate);
 
+    shareRules = PropertiesUtils.getBool(props, name + ".shareRules", shareRules);
+    String skipProperty = props.getProperty(name + ".skipSentencesWithoutCues");
+    if (skipProperty != null) {
+      skipSentencesWithoutCues = Boolean.parseBoolean(skipProperty);
+    }
+
     String binderProperty = props.getProperty(name + ".binders");
     int nBinders;
     String[] binderClasses;
@@ -79,6 +96,7 @@ public class Options {
       }
     }
     if (nBinders > 0 && System.getProperty("STS") == null) {
+      StringBuilder description = new StringBuilder();
       binders = new Env.Binder[nBinders];
       for (int i = 0; i < nBinders; i++) {
         int bi = i+1;
@@ -88,10 +106,13 @@ public class Options {
           binderPrefix = binderPrefix + ".";
           binders[i] = (Env.Binder) binderClass.newInstance();
           binders[i].init(binderPrefix, props);
+          description.append(binderClasses[i]).append(
+              PropertiesUtils.getSortedEntries(PropertiesUtils.extractPrefixedProperties(props, binderPrefix))).append(';');
         } catch (Exception ex) {
           throw new RuntimeException("Error initializing binder " + bi, ex);
         }
       }
+      bindersDescription = description.toString();
     }
   }
 }
@@ -5,6 +5,8 @@ import edu.stanford.nlp.ling.CoreAnnotations;
 import edu.stanford.nlp.ling.tokensregex.*;
 import edu.stanford.nlp.pipeline.ChunkAnnotationUtils;
 import edu.stanford.nlp.util.CoreMap;
+import edu.stanford.nlp.util.Generics;
+import edu.stanford.nlp.util.Pair;
 
 import java.text.SimpleDateFormat;
 import java.util.*;
@@ -29,6 +31,49 @@ public class TimeExpressionExtractorImpl implements TimeExpressionExtractor {
   // Options
   Options options;
 
+  // Whether to skip sentences with no temporal cues (see hasTemporalCue)
+  boolean skipSentencesWithoutCues;
+
+  // Compiled rules shared by all extractors with the same grammar files, binders and markTimeRanges option.
+  // The rules are only read during extraction, so they can be used by several threads at once.
+  private static final Map<String, Pair<TimeExpressionPatterns, CoreMapExpressionExtractor>> sharedRules = Generics.newHashMap();
+
+  // Words which can make up a time expression on their own, or anchor one
+  // (in the default English rules), other than numbers
+  private static final Set<String> TEMPORAL_CUES = Generics.newHashSet(Arrays.asList(
+      // time units
+      "year", "yr", "month", "mo", "day", "hour", "hr", "minute", "min", "second", "sec",
+      "millisecond", "millisec", "week", "wk", "fortnight", "quarter", "decade",
+      "century", "centurys", "centuries", "millennium", "millenium", "millennia", "millenia",
+      // times of day
+      "morning", "afternoon", "evening", "night", "dusk", "twilight", "dawn", "daybreak",
+      "sunrise", "sunup", "sundown", "sunset", "midday", "noon", "midnight", "teatime",
+      "lunchtime", "dinnertime", "suppertime", "daylight", "daytime", "nighttime", "overnight",
+      // seasons
+      "summer", "winter", "fall", "autumn", "spring",
+      // days
+      "yesterday", "today", "tomorrow", "tonight", "tonite",
+      "monday", "tuesday", "wednesday", "thursday", "friday", "saturday", "sunday",
+      "mon", "tue", "tues", "wed", "weds", "thu", "thur", "thurs", "fri", "sat", "sun",
+      "weekend", "weekday",
+      // months
+      "january", "february", "march", "april", "may", "june", "july", "august",
+      "september", "october", "november", "december",
+      "jan", "feb", "mar", "apr", "jun", "jul", "aug", "sep", "sept", "oct", "nov", "dec",
+      // decades
+      "twenties", "thirties", "forties", "fifties", "sixties", "seventies", "eighties", "nineties",
+      // holidays
+      "halloween", "christmas", "xmas", "x-mas", "thanksgiving", "easter", "mayo", "valentine", "birthday",
+      // vague times
+      "past", "once", "medieval", "previously", "recently", "present", "current", "currently",
+      "now", "future", "time"
+  ));
+
+  // Periodic sets, also matched as the end of a word (e.g. semiannual, biweekly)
+  private static final String[] PERIODIC_CUES = {
+      "centennial", "yearly", "annually", "annual", "hourly", "nightly", "daily", "weekly", "monthly", "quarterly"
+  };
+
   public TimeExpressionExtractorImpl()
   {
     init(new Options());
@@ -60,9 +105,96 @@ public class TimeExpressionExtractorImpl implements TimeExpressionExtractor {
       options.grammarFilename = Options.DEFAULT_GRAMMAR_FILES;
       logger.warning("Time rules file is not specified: using default rules at " + options.grammarFilename);
     }
-    timexPatterns = new GenericTimeExpressionPatterns(options);
-    this.expressionExtractor = timexPatterns.createExtractor();
-    this.expressionExtractor.setLogger(logger);
+    Pair<TimeExpressionPatterns, CoreMapExpressionExtractor> compiled = getCompiledRules(options);
+    timexPatterns = compiled.first();
+    this.expressionExtractor = compiled.second();
+    skipSentencesWithoutCues = (options.skipSentencesWithoutCues != null)?
+        options.skipSentencesWithoutCues: Options.DEFAULT_GRAMMAR_FILES.equals(options.grammarFilename);
+  }
+
+  private static Pair<TimeExpressionPatterns, CoreMapExpressionExtractor> compileRules(Options options)
+  {
+    TimeExpressionPatterns patterns = new GenericTimeExpressionPatterns(options);
+    CoreMapExpressionExtractor extractor = patterns.createExtractor();
+    extractor.setLogger(logger);
+    return Pair.makePair(patterns, extractor);
+  }
+
+  /**
+   * Returns the patterns and extractor compiled from the rules of these options,
+   *   reusing those of an earlier extractor with the same rules if possible.
+   * Only the grammar files, binders and markTimeRanges option
+   *   (which switches rules on or off) affect the compiled rules;
+   *   the other options are only used by this class.
+   */
+  private static Pair<TimeExpressionPatterns, CoreMapExpressionExtractor> getCompiledRules(Options options)
+  {
+    if (!options.shareRules || (options.binders != null && options.bindersDescription.isEmpty())) {
+      // binders which were set directly cannot be compared
+      return compileRules(options);
+    }
+    String key = options.grammarFilename + '\t' + options.markTimeRanges + '\t' + options.bindersDescription;
+    synchronized (sharedRules) {
+      Pair<TimeExpressionPatterns, CoreMapExpressionExtractor> compiled = sharedRules.get(key);
+      if (compiled == null) {
+        compiled = compileRules(options);
+        sharedRules.put(key, compiled);
+      } else {
+        logger.fine("Reusing compiled time rules from " + options.grammarFilename);
+      }
+      return compiled;
+    }
+  }
+
+  /**
+   * Returns whether any of these tokens could be part of a time expression:
+   *   a number (including numbers in words, as marked by the NumberNormalizer),
+   *   a word with a digit, or a word naming a time unit, time of day, season,
+   *   day, month or holiday, or referring to the past, present or future.
+   * Every expression found by the default rules contains such a token,
+   *   so sentences without one need not be matched against the rules.
+   */
+  static boolean hasTemporalCue(List<? extends CoreMap> tokens)
+  {
+    for (CoreMap token:tokens) {
+      if (token.get(CoreAnnotations.NumericCompositeTypeAnnotation.class) != null) {
+        return true;
+      }
+      String word = token.get(CoreAnnotations.TextAnnotation.class);
+      if (word != null && isTemporalCue(word)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean isTemporalCue(String word)
+  {
+    for (int i = 0; i < word.length(); i++) {
+      if (Character.isDigit(word.charAt(i))) {
+        return true;
+      }
+    }
+    word = word.toLowerCase();
+    if (TEMPORAL_CUES.contains(word)) {
+      return true;
+    }
+    // Check each part of hyphenated words and merged number tokens (e.g. three-months)
+    for (String part:word.split("[-\\s]+")) {
+      if (part.endsWith(".")) {
+        part = part.substring(0, part.length() - 1);
+      }
+      if (TEMPORAL_CUES.contains(part) ||
+          (part.endsWith("s") && TEMPORAL_CUES.contains(part.substring(0, part.length() - 1)))) {
+        return true;
+      }
+      for (String periodic:PERIODIC_CUES) {
+        if (part.endsWith(periodic)) {
+          return true;
+        }
+      }
+    }
+    return false;
   }
 
   @Override
@@ -185,7 +317,12 @@ public class TimeExpressionExtractorImpl implements TimeExpressionExtractor {
       annotation.set(CoreAnnotations.NumerizedTokensAnnotation.class, mergedNumbers);
     }
 
-    List<? extends MatchedExpression> matchedExpressions = expressionExtractor.extractExpressions(annotation);
+    List<? extends MatchedExpression> matchedExpressions;
+    if (skipSentencesWithoutCues && !hasTemporalCue(annotation.get(CoreAnnotations.NumerizedTokensAnnotation.class))) {
+      matchedExpressions = Collections.emptyList();
+    } else {
+      matchedExpressions = expressionExtractor.extractExpressions(annotation);
+    }
     List<TimeExpression> timeExpressions = new ArrayList<TimeExpression>(matchedExpressions.size());
     for (MatchedExpression expr : matchedExpressions) {
       // Make sure we have the correct type (instead of just MatchedExpression)
@@ -362,6 +362,10 @@ public class GrammaticalRelation implements Comparable<GrammaticalRelation>, Ser
   public Collection<TreeGraphNode> getRelatedNodes(TreeGraphNode t, TreeGraphNode root, HeadFinder headFinder) {
     Set<TreeGraphNode> nodeList = new ArraySet<TreeGraphNode>();
     for (TregexPattern p : targetPatterns) {    // cdm: I deleted: && nodeList.isEmpty()
+      if (GrammaticalRelationIndex.enabled && ! p.couldMatchAt(t)) {
+        // cheap check of the root and required child labels; saves building a matcher
+        continue;
+      }
       // Initialize the TregexMatcher with the HeadFinder so that we
       // can use the same HeadFinder through the entire process of
       // building the dependencies
@@ -393,8 +397,13 @@ public class GrammaticalRelation implements Comparable<GrammaticalRelation>, Ser
    */
   public boolean isApplicable(Tree t) {
     // System.err.println("Testing whether " + sourcePattern + " matches " + ((TreeGraphNode) t).toOneLineString());
-    return (sourcePattern != null) && (t.value() != null) &&
-             sourcePattern.matcher(t.value()).matches();
+    return isApplicable(t.value());
+  }
+
+  /** As {@link #isApplicable(Tree)}, but given only the node value.  */
+  boolean isApplicable(String value) {
+    return (sourcePattern != null) && (value != null) &&
+             sourcePattern.matcher(value).matches();
   }
 
   /** Returns whether this is equal to or an ancestor of gr in the grammatical relations hierarchy. */
@@ -0,0 +1,146 @@
+package edu.stanford.nlp.trees;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import edu.stanford.nlp.util.Generics;
+import edu.stanford.nlp.util.PropertiesUtils;
+import edu.stanford.nlp.util.StringUtils;
+import edu.stanford.nlp.util.Timing;
+
+/**
+ * A dispatch index from node categories to the GrammaticalRelations
+ * whose source pattern accepts that category.  Converting a tree to
+ * dependencies otherwise tests the source regex of every relation at
+ * every phrasal node; with the index this is done once per distinct
+ * category, and each node is only handed the relations which can apply.
+ * Within a relation, {@link edu.stanford.nlp.trees.tregex.TregexPattern#couldMatchAt}
+ * further skips target patterns whose root or required child labels
+ * cannot match the node.
+ * <br>
+ * The relations are kept in their original order, so the dependencies
+ * produced are the same as when scanning the full list.
+ * Indices are shared between GrammaticalStructures built from the same
+ * relation collection (e.g. {@link EnglishGrammaticalRelations#values()}),
+ * and are rebuilt if relations are added to that collection.
+ */
+class GrammaticalRelationIndex {
+
+  /**
+   * Whether to use the index, and the tregex prefilter in
+   * GrammaticalRelation, at all.  Only meant to be turned off to
+   * compare against the unindexed behavior.
+   */
+  static volatile boolean enabled = true;
+
+  /** Relation collections seen so far.  Cleared if it ever gets large, since callers could pass in arbitrary collections. */
+  private static final Map<Collection<GrammaticalRelation>, GrammaticalRelationIndex> indices = Generics.newIdentityHashMap();
+
+  private static final int MAX_INDICES = 20;
+
+  private final Collection<GrammaticalRelation> relations;
+  private final int size;
+  private final Map<String, List<GrammaticalRelation>> categoryToRelations = Generics.newConcurrentHashMap();
+
+  private GrammaticalRelationIndex(Collection<GrammaticalRelation> relations) {
+    this.relations = relations;
+    this.size = relations.size();
+  }
+
+  /**
+   * Returns the index for this collection of relations, building it if
+   * needed.  The caller should hold the relations lock, if any, as the
+   * collection is copied lazily.
+   */
+  static GrammaticalRelationIndex forRelations(Collection<GrammaticalRelation> relations) {
+    synchronized (indices) {
+      GrammaticalRelationIndex index = indices.get(relations);
+      if (index == null || index.size != relations.size()) {
+        if (indices.size() >= MAX_INDICES) {
+          indices.clear();
+        }
+        index = new GrammaticalRelationIndex(relations);
+        indices.put(relations, index);
+      }
+      return index;
+    }
+  }
+
+  /**
+   * The relations which may hold with a node of this category as the
+   * governor, in the order they appear in the relation collection.
+   * The returned list is shared and must not be modified.
+   */
+  List<GrammaticalRelation> relationsFor(String category) {
+    if (category == null) {
+      return Collections.emptyList();
+    }
+    List<GrammaticalRelation> result = categoryToRelations.get(category);
+    if (result == null) {
+      result = Generics.newArrayList();
+      for (GrammaticalRelation relation : relations) {
+        if (relation.isApplicable(category)) {
+          result.add(relation);
+        }
+      }
+      categoryToRelations.put(category, result);
+    }
+    return result;
+  }
+
+  /**
+   * Converts the trees in a treebank file with and without the index,
+   * checks that the dependencies produced are identical, and reports
+   * the time taken each way.
+   * <br>
+   * Usage: <code>java edu.stanford.nlp.trees.GrammaticalRelationIndex treeFile [-originalDependencies] [-iterations n]</code>
+   */
+  public static void main(String[] args) {
+    Map<String, Integer> numArgs = Generics.newHashMap();
+    numArgs.put("iterations", 1);
+    Properties props = StringUtils.argsToProperties(args, numArgs);
+    String treeFile = props.getProperty("");
+    if (treeFile == null) {
+      System.err.println("Usage: java edu.stanford.nlp.trees.GrammaticalRelationIndex treeFile [-originalDependencies] [-iterations n]");
+      System.exit(1);
+    }
+    boolean original = PropertiesUtils.getBool(props, "originalDependencies", false);
+    int iterations = PropertiesUtils.getInt(props, "iterations", 3);
+
+    MemoryTreebank tb = new MemoryTreebank(new NPTmpRetainingTreeNormalizer(0, false, 1, false));
+    tb.loadPath(treeFile);
+    System.err.println("Loaded " + tb.size() + " trees from " + treeFile);
+
+    List<List<TypedDependency>> unindexed = null;
+    for (int iter = 0; iter < iterations; ++iter) {
+      for (boolean useIndex : new boolean[] { false, true }) {
+        enabled = useIndex;
+        List<List<TypedDependency>> results = Generics.newArrayList(tb.size());
+        Timing timing = new Timing();
+        for (Tree tree : tb) {
+          GrammaticalStructure gs = original ? new EnglishGrammaticalStructure(tree) : new UniversalEnglishGrammaticalStructure(tree);
+          results.add(gs.typedDependenciesCCprocessed(GrammaticalStructure.Extras.MAXIMAL));
+        }
+        long elapsed = timing.report();
+        System.err.printf("Iteration %d, %s: %d trees in %.2f sec%n", iter + 1,
+                          (useIndex ? "indexed" : "unindexed"), tb.size(), elapsed / 1000.0);
+        if ( ! useIndex) {
+          unindexed = results;
+        } else {
+          int differences = 0;
+          for (int i = 0; i < results.size(); ++i) {
+            if ( ! results.get(i).equals(unindexed.get(i))) {
+              ++differences;
+            }
+          }
+          System.err.println("Trees with different dependencies: " + differences);
+        }
+      }
+    }
+    enabled = true;
+  }
+
+}
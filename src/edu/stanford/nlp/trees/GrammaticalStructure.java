@@ -198,7 +198,8 @@ public abstract class GrammaticalStructure implements Serializable {
       relationsLock.lock();
     }
     try {
-      analyzeNode(root, root, relations, hf, puncFilter, tagFilter, basicGraph, completeGraph);
+      GrammaticalRelationIndex relationIndex = GrammaticalRelationIndex.enabled ? GrammaticalRelationIndex.forRelations(relations) : null;
+      analyzeNode(root, root, relations, relationIndex, hf, puncFilter, tagFilter, basicGraph, completeGraph);
     }
     finally {
       if (relationsLock != null) {
@@ -457,11 +458,13 @@ public abstract class GrammaticalStructure implements Serializable {
   }
 
   // cdm dec 2009: I changed this to automatically fail on preterminal nodes, since they shouldn't match for GR parent patterns.  Should speed it up.
-  private static void analyzeNode(TreeGraphNode t, TreeGraphNode root, Collection<GrammaticalRelation> relations, HeadFinder hf, Predicate<String> puncFilter, Predicate<String> tagFilter, DirectedMultiGraph<TreeGraphNode, GrammaticalRelation> basicGraph, DirectedMultiGraph<TreeGraphNode, GrammaticalRelation> completeGraph) {
+  // If relationIndex is non-null, only the relations it gives for the node's category are tried; it must have been built from relations.
+  private static void analyzeNode(TreeGraphNode t, TreeGraphNode root, Collection<GrammaticalRelation> relations, GrammaticalRelationIndex relationIndex, HeadFinder hf, Predicate<String> puncFilter, Predicate<String> tagFilter, DirectedMultiGraph<TreeGraphNode, GrammaticalRelation> basicGraph, DirectedMultiGraph<TreeGraphNode, GrammaticalRelation> completeGraph) {
     if (t.isPhrasal()) {    // don't do leaves or preterminals!
       TreeGraphNode tHigh = t.highestNodeWithSameHead();
-      for (GrammaticalRelation egr : relations) {
-        if (egr.isApplicable(t)) {
+      Collection<GrammaticalRelation> candidates = (relationIndex == null) ? relations : relationIndex.relationsFor(t.value());
+      for (GrammaticalRelation egr : candidates) {
+        if (relationIndex != null || egr.isApplicable(t)) {
           for (TreeGraphNode u : egr.getRelatedNodes(t, root, hf)) {
             TreeGraphNode uHigh = u.highestNodeWithSameHead();
             if (uHigh == tHigh) {
@@ -485,7 +488,7 @@ public abstract class GrammaticalStructure implements Serializable {
       }
       // now recurse into children
       for (TreeGraphNode kid : t.children()) {
-        analyzeNode(kid, root, relations, hf, puncFilter, tagFilter, basicGraph, completeGraph);
+        analyzeNode(kid, root, relations, relationIndex, hf, puncFilter, tagFilter, basicGraph, completeGraph);
       }
     }
   }
@@ -2,11 +2,13 @@ package edu.stanford.nlp.trees.tregex;
 
 import edu.stanford.nlp.trees.HeadFinder;
 import edu.stanford.nlp.trees.Tree;
+import edu.stanford.nlp.util.Generics;
 
 import java.util.Iterator;
 import java.util.List;
 import java.util.IdentityHashMap;
 import java.util.Map;
+import java.util.Set;
 
 class CoordinationPattern extends TregexPattern {
 
@@ -63,6 +65,61 @@ class CoordinationPattern extends TregexPattern {
     return sb.toString();
   }
 
+  @Override
+  public boolean couldMatchAt(Tree node) {
+    if (isNegated() || isConj) {
+      return true;
+    }
+    for (TregexPattern child : children) {
+      if (child.couldMatchAt(node)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  Set<String> rootLabels() {
+    if (isNegated() || isConj) {
+      return null;
+    }
+    Set<String> labels = Generics.newHashSet();
+    for (TregexPattern child : children) {
+      Set<String> childLabels = child.rootLabels();
+      if (childLabels == null) {
+        return null;
+      }
+      labels.addAll(childLabels);
+    }
+    return labels;
+  }
+
+  @Override
+  void addRequiredTerms(List<Set<String>> requirements, Set<String> parentLabels) {
+    if (isNegated() || isOptional() || !isConj) {
+      return;
+    }
+    for (TregexPattern child : children) {
+      child.addRequiredTerms(requirements, parentLabels);
+    }
+  }
+
+  @Override
+  boolean requiredChildrenCouldMatch(Tree node) {
+    if (isNegated() || isOptional()) {
+      return true;
+    }
+    for (TregexPattern child : children) {
+      boolean possible = child.requiredChildrenCouldMatch(node);
+      if (isConj && !possible) {
+        return false;
+      } else if (!isConj && possible) {
+        return true;
+      }
+    }
+    return isConj;
+  }
+
   @Override
   public TregexMatcher matcher(Tree root, Tree tree,
                                IdentityHashMap<Tree, Tree> nodesToParents,
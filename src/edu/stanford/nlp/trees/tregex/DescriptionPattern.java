@@ -4,6 +4,7 @@ import java.util.function.Function;
 import edu.stanford.nlp.trees.HeadFinder;
 import edu.stanford.nlp.trees.Tree;
 import edu.stanford.nlp.util.ArrayStringFilter;
+import edu.stanford.nlp.util.Generics;
 import edu.stanford.nlp.util.Pair;
 import java.util.function.Predicate;
 
@@ -278,6 +279,115 @@ class DescriptionPattern extends TregexPattern {
     }
   }
 
+  @Override
+  public boolean couldMatchAt(Tree node) {
+    if (rel != Relation.ROOT || isNegated() || isOptional()) {
+      return true;
+    }
+    return descriptionCouldMatch(node.value()) &&
+           (child == null || child.requiredChildrenCouldMatch(node));
+  }
+
+  @Override
+  boolean requiredChildrenCouldMatch(Tree node) {
+    if (rel != Relation.PARENT_OF || isNegated() || isOptional()) {
+      return true;
+    }
+    for (Tree kid : node.children()) {
+      if (descriptionCouldMatch(kid.value()) &&
+          (child == null || child.requiredChildrenCouldMatch(kid))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  Set<String> rootLabels() {
+    if (rel != Relation.ROOT || isNegated() || isOptional()) {
+      return null;
+    }
+    return exactLabels();
+  }
+
+  @Override
+  void addRequiredTerms(List<Set<String>> requirements, Set<String> parentLabels) {
+    if (isNegated() || isOptional()) {
+      return;
+    }
+    Set<String> labels = exactLabels();
+    if (labels != null) {
+      requirements.add(labels);
+      if (rel == Relation.PARENT_OF && parentLabels != null) {
+        Set<String> pairs = Generics.newHashSet();
+        for (String parent : parentLabels) {
+          for (String label : labels) {
+            pairs.add(TreebankIndex.parentChildTerm(parent, label));
+          }
+        }
+        requirements.add(pairs);
+      }
+    }
+    if (child != null) {
+      child.addRequiredTerms(requirements, labels);
+    }
+  }
+
+  /** The labels this description accepts, if it only accepts a fixed set of labels; null otherwise */
+  private Set<String> exactLabels() {
+    if (negDesc || basicCatFunction != null || descriptionMode == null) {
+      return null;
+    }
+    switch (descriptionMode) {
+    case EXACT:
+      return Collections.singleton(exactMatch);
+    case STRINGS:
+      if (stringFilter instanceof ArrayStringFilter &&
+          ((ArrayStringFilter) stringFilter).mode() == ArrayStringFilter.Mode.EXACT) {
+        return Generics.newHashSet(Arrays.asList(((ArrayStringFilter) stringFilter).words()));
+      }
+      return null;
+    default:
+      return null;
+    }
+  }
+
+  /**
+   * Tests the node description alone, ignoring variable groups, so
+   * this is true whenever the matcher could accept the value.
+   * Backreferences and links are always accepted.
+   */
+  private boolean descriptionCouldMatch(String value) {
+    if (descriptionMode == null) {
+      return true;
+    }
+    boolean found;
+    if (value == null) {
+      found = false;
+    } else {
+      if (basicCatFunction != null) {
+        value = basicCatFunction.apply(value);
+      }
+      switch (descriptionMode) {
+      case EXACT:
+        found = value.equals(exactMatch);
+        break;
+      case PATTERN:
+        found = descPattern.matcher(value).find();
+        break;
+      case ANYTHING:
+        found = true;
+        break;
+      case STRINGS:
+        found = stringFilter.test(value);
+        break;
+      default:
+        throw new IllegalArgumentException("Unexpected match mode");
+      }
+    }
+    return found != negDesc;
+  }
+
   @Override
   public TregexMatcher matcher(Tree root, Tree tree,
                                IdentityHashMap<Tree, Tree> nodesToParents,
@@ -383,7 +383,7 @@ abstract class Relation implements Serializable {
     }
   };
 
-  private static final Relation PARENT_OF = new Relation("<") {
+  static final Relation PARENT_OF = new Relation("<") {
 
     private static final long serialVersionUID = 9140193735607580808L;
 
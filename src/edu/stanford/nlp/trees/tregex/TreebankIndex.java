@@ -0,0 +1,273 @@
+package edu.stanford.nlp.trees.tregex;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.*;
+
+import edu.stanford.nlp.io.IOUtils;
+import edu.stanford.nlp.trees.DiskTreebank;
+import edu.stanford.nlp.trees.Tree;
+import edu.stanford.nlp.trees.TreeReaderFactory;
+import edu.stanford.nlp.util.Generics;
+import edu.stanford.nlp.util.InvertedIndex;
+import edu.stanford.nlp.util.ReflectionLoading;
+import edu.stanford.nlp.util.StringUtils;
+import edu.stanford.nlp.util.Timing;
+
+/**
+ * A persistent inverted index over the trees in a set of treebank
+ * files, used to skip trees which cannot match a {@link TregexPattern}
+ * without running the matcher on them.
+ * <br>
+ * Each tree is indexed by the labels of its nodes (including the
+ * words at the leaves) and by its parent-child label pairs, such as
+ * {@code NP<DT}.  A pattern is turned into a conjunction of the labels
+ * and pairs it requires (for example, {@code NP < (DT < the)} requires
+ * {@code NP}, {@code DT}, {@code the}, {@code NP<DT} and {@code DT<the}),
+ * and only the trees containing all of them are read into memory and
+ * matched.  Files containing no candidate trees are not read at all.
+ * <br>
+ * Files can be added to the index at any time, and a file which has
+ * had trees appended to it since it was indexed can be updated by
+ * indexing only the new trees.  The index does not detect files which
+ * were changed in any other way.
+ * <br>
+ * Usage: <br>
+ * <code>java edu.stanford.nlp.trees.tregex.TreebankIndex -index idx.ser.gz [-add file-or-dir ...] [-pattern tregex] [-encoding enc] [-trf class]</code>
+ * <br>
+ * The index can also be used by passing {@code -index} to {@link TregexPattern#main}.
+ */
+public class TreebankIndex implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private final InvertedIndex index = new InvertedIndex();
+
+  private final String treeReaderFactoryClass;
+  private final String encoding;
+
+  private transient TreeReaderFactory trf;
+
+  /** Interface for receiving the candidate trees of a search */
+  public interface CandidateVisitor {
+    /**
+     * @param source The file the tree was read from
+     * @param position The position of the tree in the file, starting from 0
+     * @param tree The tree
+     */
+    void visitCandidate(String source, int position, Tree tree);
+  }
+
+  /**
+   * Creates an empty index.  The TreeReaderFactory must have a no-argument
+   * constructor, as it is recreated by reflection when the index is loaded.
+   */
+  public TreebankIndex(TreeReaderFactory trf, String encoding) {
+    this.trf = trf;
+    this.treeReaderFactoryClass = trf.getClass().getName();
+    this.encoding = encoding;
+  }
+
+  public TreebankIndex() {
+    this(new TregexPattern.TRegexTreeReaderFactory(), "UTF-8");
+  }
+
+  private TreeReaderFactory treeReaderFactory() {
+    if (trf == null) {
+      trf = ReflectionLoading.loadByReflection(treeReaderFactoryClass);
+    }
+    return trf;
+  }
+
+  /** The term used to index a node labeled {@code parent} with a child labeled {@code child} */
+  static String parentChildTerm(String parent, String child) {
+    return parent + '<' + child;
+  }
+
+  /** The terms a tree is indexed under */
+  static Set<String> treeTerms(Tree tree) {
+    Set<String> terms = Generics.newHashSet();
+    for (Tree node : tree) {
+      String value = node.value();
+      if (value == null) {
+        continue;
+      }
+      terms.add(value);
+      for (Tree kid : node.children()) {
+        if (kid.value() != null) {
+          terms.add(parentChildTerm(value, kid.value()));
+        }
+      }
+    }
+    return terms;
+  }
+
+  /**
+   * Indexes the trees in this file, or in the files under this
+   * directory.  Trees which were already indexed, that is, the first n
+   * trees of a file of which n trees were indexed before, are skipped.
+   *
+   * @return The number of trees newly indexed
+   */
+  public int update(String path) {
+    int added = 0;
+    for (File file : listFiles(new File(path))) {
+      String source = file.getPath();
+      int known = index.sourceSize(source);
+      int position = 0;
+      DiskTreebank treebank = new DiskTreebank(treeReaderFactory(), encoding);
+      treebank.loadPath(file);
+      for (Tree tree : treebank) {
+        if (position++ < known) {
+          continue;
+        }
+        index.addDocument(source, treeTerms(tree));
+        added++;
+      }
+    }
+    return added;
+  }
+
+  private static List<File> listFiles(File path) {
+    List<File> files = Generics.newArrayList();
+    if (path.isDirectory()) {
+      File[] children = path.listFiles();
+      if (children != null) {
+        Arrays.sort(children);
+        for (File child : children) {
+          files.addAll(listFiles(child));
+        }
+      }
+    } else {
+      files.add(path);
+    }
+    return files;
+  }
+
+  /** The sets of terms, one from each of which a tree must contain to match this pattern */
+  public static List<Set<String>> requiredTerms(TregexPattern pattern) {
+    List<Set<String>> requirements = Generics.newArrayList();
+    pattern.addRequiredTerms(requirements, null);
+    return requirements;
+  }
+
+  /** The ids of the trees which could match this pattern */
+  public BitSet candidates(TregexPattern pattern) {
+    return index.candidates(requiredTerms(pattern));
+  }
+
+  public int numTrees() {
+    return index.numDocuments();
+  }
+
+  /**
+   * Reads the trees which could match this pattern and passes them to
+   * the visitor, in the order of the indexed files.
+   *
+   * @return The number of candidate trees visited
+   */
+  public int visitCandidates(TregexPattern pattern, CandidateVisitor visitor) {
+    BitSet candidates = candidates(pattern);
+    int visited = 0;
+    for (String source : index.sources()) {
+      int size = index.sourceSize(source);
+      int first = index.documentId(source, 0);
+      int last = index.documentId(source, size - 1);
+      int next = candidates.nextSetBit(first);
+      if (next < 0 || next > last) {
+        continue;
+      }
+      DiskTreebank treebank = new DiskTreebank(treeReaderFactory(), encoding);
+      treebank.loadPath(source);
+      int position = 0;
+      for (Tree tree : treebank) {
+        if (position >= size) {
+          // trees appended since the last update are not indexed
+          break;
+        }
+        if (candidates.get(index.documentId(source, position))) {
+          visitor.visitCandidate(source, position, tree);
+          visited++;
+        }
+        position++;
+      }
+    }
+    return visited;
+  }
+
+  /** Returns the trees which match the pattern */
+  public List<Tree> matchingTrees(TregexPattern pattern) {
+    List<Tree> matches = Generics.newArrayList();
+    visitCandidates(pattern, (source, position, tree) -> {
+      if (pattern.matcher(tree).find()) {
+        matches.add(tree);
+      }
+    });
+    return matches;
+  }
+
+  public void save(String filename) throws IOException {
+    IOUtils.writeObjectToFile(this, filename);
+  }
+
+  public static TreebankIndex load(String filename) throws IOException, ClassNotFoundException {
+    return IOUtils.readObjectFromFile(filename);
+  }
+
+  @Override
+  public String toString() {
+    return "TreebankIndex[" + index + "]";
+  }
+
+  public static void main(String[] args) throws IOException, ClassNotFoundException {
+    Map<String, Integer> flagMap = Generics.newHashMap();
+    flagMap.put("-index", 1);
+    flagMap.put("-pattern", 1);
+    flagMap.put("-encoding", 1);
+    flagMap.put("-trf", 1);
+    flagMap.put("-add", 0);
+    Map<String, String[]> argsMap = StringUtils.argsToMap(args, flagMap);
+    if ( ! argsMap.containsKey("-index")) {
+      System.err.println("Usage: java edu.stanford.nlp.trees.tregex.TreebankIndex -index idx.ser.gz [-add file-or-dir ...] [-pattern tregex] [-encoding enc] [-trf class]");
+      System.exit(1);
+    }
+    String indexFile = argsMap.get("-index")[0];
+
+    TreebankIndex treebankIndex;
+    if (new File(indexFile).exists()) {
+      treebankIndex = load(indexFile);
+      System.err.println("Loaded " + treebankIndex + " from " + indexFile);
+    } else {
+      String encoding = argsMap.containsKey("-encoding") ? argsMap.get("-encoding")[0] : "UTF-8";
+      TreeReaderFactory trf = argsMap.containsKey("-trf") ? ReflectionLoading.loadByReflection(argsMap.get("-trf")[0]) : new TregexPattern.TRegexTreeReaderFactory();
+      treebankIndex = new TreebankIndex(trf, encoding);
+    }
+
+    // the files to add are the non-flag arguments
+    String[] paths = argsMap.get(null);
+    if (argsMap.containsKey("-add") && paths != null && paths.length > 0) {
+      Timing timing = new Timing();
+      int added = 0;
+      for (String path : paths) {
+        added += treebankIndex.update(path);
+      }
+      timing.done("Indexed " + added + " new trees");
+      treebankIndex.save(indexFile);
+      System.err.println("Saved " + treebankIndex + " to " + indexFile);
+    }
+
+    if (argsMap.containsKey("-pattern")) {
+      TregexPattern pattern = TregexPattern.compile(argsMap.get("-pattern")[0]);
+      System.err.println("Required terms: " + requiredTerms(pattern));
+      Timing timing = new Timing();
+      List<Tree> matches = treebankIndex.matchingTrees(pattern);
+      for (Tree tree : matches) {
+        System.out.println(tree);
+      }
+      timing.done(matches.size() + " of " + treebankIndex.numTrees() + " trees matched, " +
+                  treebankIndex.candidates(pattern).cardinality() + " candidates");
+    }
+  }
+
+}
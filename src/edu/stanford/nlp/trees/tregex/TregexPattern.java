@@ -461,6 +461,53 @@ public abstract class TregexPattern implements Serializable {
     return result;
   }
 
+  /**
+   * A cheap, conservative test of whether this pattern could match
+   * with {@code node} as the node matched by the root of the pattern.
+   * Only the root description and the descriptions of required
+   * immediate children (the {@code <} relation) are checked, so a
+   * return value of true does not guarantee a match, but a return
+   * value of false guarantees that {@code matcher(t).findAt(node)}
+   * will fail.  This lets callers which try many patterns at the same
+   * node skip building matchers for patterns which cannot apply.
+   *
+   * @param node The node to test as the root of a match
+   * @return false if this pattern cannot possibly match at {@code node}
+   */
+  public boolean couldMatchAt(Tree node) {
+    return true;
+  }
+
+  /**
+   * Used by {@link #couldMatchAt}: checks that the relations this
+   * pattern places on {@code node} (its parent in the pattern) could
+   * be satisfied.  Must only return false when a match is impossible.
+   */
+  boolean requiredChildrenCouldMatch(Tree node) {
+    return true;
+  }
+
+  /**
+   * The node values which a node must have in order to match the root
+   * of this pattern, or null if that set of values is not known
+   * (regexes, negated or basic category descriptions, etc).
+   * Used to index patterns by their anchoring label.
+   */
+  Set<String> rootLabels() {
+    return null;
+  }
+
+  /**
+   * Adds to {@code requirements} sets of {@link TreebankIndex} terms,
+   * at least one of each of which must occur in any tree this pattern
+   * matches.  Only constraints which are certain are added.
+   *
+   * @param parentLabels The exact labels of the node this pattern is
+   *   related to, or null if unknown
+   */
+  void addRequiredTerms(List<Set<String>> requirements, Set<String> parentLabels) {
+  }
+
   public String pattern() {
     return patternString;
   }
@@ -568,6 +615,7 @@ public abstract class TregexPattern implements Serializable {
    * <li> <code>-filter</code> causes this to act as a filter, reading tree input from stdin
    * <li> <code>-T</code> causes all trees to be printed as processed (for debugging purposes).  Otherwise only matching nodes are printed.
    * <li> <code>-macros &lt;filename&gt;</code> filename with macro substitutions to use.  file with tab separated lines original-tab-replacement
+   * <li> <code>-index &lt;filename&gt;</code> search the trees in the files of a {@link TreebankIndex} built earlier, only reading and matching the trees which could match the pattern.  Tree numbers given by -n and -x are positions within each file.  Cannot be used with -v.
    *
    * </ul>
    */
@@ -603,6 +651,7 @@ public abstract class TregexPattern implements Serializable {
     String reportTreeNumbers = "-n";
     String rootLabelOnly = "-u";
     String oneLine = "-s";
+    String indexOption = "-index";
     Map<String,Integer> flagMap = Generics.newHashMap();
     flagMap.put(extractSubtreesOption,2);
     flagMap.put(extractSubtreesFileOption,2);
@@ -626,6 +675,7 @@ public abstract class TregexPattern implements Serializable {
     flagMap.put(reportTreeNumbers, 0);
     flagMap.put(rootLabelOnly, 0);
     flagMap.put(oneLine, 0);
+    flagMap.put(indexOption, 1);
     Map<String, String[]> argsMap = StringUtils.argsToMap(args, flagMap);
     args = argsMap.get(null);
 
@@ -733,6 +783,31 @@ public abstract class TregexPattern implements Serializable {
       p.prettyPrint(errPW);
 
       String[] handles = argsMap.get(printHandleOption);
+      if (argsMap.containsKey(indexOption)) {
+        if (TRegexTreeVisitor.printNonMatchingTrees) {
+          // the index only reads the candidate trees, so it cannot print the trees which do not match
+          errPW.println("The " + printNonMatchingTreesOption + " option cannot be used with " + indexOption);
+          return;
+        }
+        String indexFile = argsMap.get(indexOption)[0];
+        errPW.println("Reading trees from the files in index " + indexFile);
+        TreebankIndex index = TreebankIndex.load(indexFile);
+        TRegexTreeVisitor vis = new TRegexTreeVisitor(p, handles, encoding);
+        treebank = null;
+        int candidates = index.visitCandidates(p, (source, position, tree) -> {
+          vis.currentSource = source;
+          vis.treeNumber = position;
+          vis.visitTree(tree);
+        });
+        Timing.endTime();
+        if (TRegexTreeVisitor.printMatches) {
+          errPW.println("There were " + vis.numMatches() + " matches in total, in " + candidates + " candidate trees of " + index.numTrees() + ".");
+        }
+        if (TRegexTreeVisitor.printNumMatchesToStdOut) {
+          System.out.println(vis.numMatches());
+        }
+        return;
+      }
       if (argsMap.containsKey("-filter")) {
         TreeReaderFactory trf = getTreeReaderFactory(treeReaderFactoryClassName);
         treebank = new MemoryTreebank(trf, encoding);//has to be in memory since we're not storing it on disk
@@ -764,7 +839,7 @@ public abstract class TregexPattern implements Serializable {
       if (TRegexTreeVisitor.printNumMatchesToStdOut) {
         System.out.println(vis.numMatches());
       }
-    } catch (IOException e) {
+    } catch (IOException | ClassNotFoundException e) {
       e.printStackTrace();
     } catch (TregexParseException e) {
       errPW.println("Error parsing expression: " + args[0]);
@@ -803,6 +878,8 @@ public abstract class TregexPattern implements Serializable {
     private PrintWriter pw;
 
     int treeNumber = 0;
+    /** The file the current tree came from, when not reading from a DiskTreebank */
+    String currentSource;
 
     private final TregexPattern p;
     String[] handles;
@@ -849,6 +926,9 @@ public abstract class TregexPattern implements Serializable {
           DiskTreebank dtb = (DiskTreebank) treebank;
           pw.print("# ");
           pw.println(dtb.getCurrentFilename());
+        } else if (printFilename && currentSource != null) {
+          pw.print("# ");
+          pw.println(currentSource);
         }
         if(printSubtreeCode) {
           pw.print(treeNumber);
@@ -0,0 +1,126 @@
+package edu.stanford.nlp.trees.tregex;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import edu.stanford.nlp.trees.Tree;
+import edu.stanford.nlp.util.Generics;
+
+/**
+ * Indexes a list of {@link TregexPattern}s by the node labels which
+ * anchor the root of each pattern, so that a single traversal of a
+ * tree finds the (usually few) patterns which could match it.
+ * Running hundreds of patterns over a tree one at a time means
+ * hundreds of walks over the tree; with the index, the tree is walked
+ * once, each node is only tested against the patterns anchored on
+ * its label, and full matchers are only built for the survivors.
+ * <br>
+ * A pattern is anchored if its root description is an exact label or
+ * a disjunction of exact labels, such as {@code NP} or {@code NP|NX}.
+ * Other patterns (regexes, negated descriptions, {@code __}, etc) are
+ * always reported as possible matches.  Anchored patterns are also
+ * checked with {@link TregexPattern#couldMatchAt}, so a pattern such
+ * as {@code NP < PRP} is not a candidate for a tree whose NPs have no
+ * PRP children.
+ * <br>
+ * The index is immutable and can be shared between threads.
+ */
+public class TregexPatternIndex {
+
+  private final List<TregexPattern> patterns;
+  private final Map<String, int[]> labelToPatterns;
+  private final BitSet unanchored;
+
+  public TregexPatternIndex(List<TregexPattern> patterns) {
+    this.patterns = Collections.unmodifiableList(Generics.newArrayList(patterns));
+    this.unanchored = new BitSet(patterns.size());
+
+    Map<String, List<Integer>> labelLists = Generics.newHashMap();
+    for (int i = 0; i < this.patterns.size(); ++i) {
+      Set<String> labels = this.patterns.get(i).rootLabels();
+      if (labels == null) {
+        unanchored.set(i);
+        continue;
+      }
+      for (String label : labels) {
+        List<Integer> ids = labelLists.get(label);
+        if (ids == null) {
+          ids = Generics.newArrayList();
+          labelLists.put(label, ids);
+        }
+        ids.add(i);
+      }
+    }
+    labelToPatterns = Generics.newHashMap(labelLists.size());
+    for (Map.Entry<String, List<Integer>> entry : labelLists.entrySet()) {
+      List<Integer> ids = entry.getValue();
+      int[] array = new int[ids.size()];
+      for (int i = 0; i < array.length; ++i) {
+        array[i] = ids.get(i);
+      }
+      labelToPatterns.put(entry.getKey(), array);
+    }
+  }
+
+  /** The patterns, in the order they were given */
+  public List<TregexPattern> patterns() {
+    return patterns;
+  }
+
+  public int size() {
+    return patterns.size();
+  }
+
+  /** The number of patterns which are dispatched by label rather than tried on every tree */
+  public int numAnchored() {
+    return patterns.size() - unanchored.cardinality();
+  }
+
+  /**
+   * Returns the positions of the patterns which could match somewhere
+   * in {@code tree}.  A pattern whose bit is not set is guaranteed not
+   * to match; a pattern whose bit is set may or may not match.
+   */
+  public BitSet possibleMatches(Tree tree) {
+    BitSet result = (BitSet) unanchored.clone();
+    if (labelToPatterns.isEmpty()) {
+      return result;
+    }
+    for (Tree node : tree) {
+      String value = node.value();
+      if (value == null) {
+        continue;
+      }
+      int[] ids = labelToPatterns.get(value);
+      if (ids == null) {
+        continue;
+      }
+      for (int id : ids) {
+        if ( ! result.get(id) && patterns.get(id).couldMatchAt(node)) {
+          result.set(id);
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the patterns which match somewhere in {@code tree}, in the
+   * order they were given.
+   */
+  public List<TregexPattern> matchingPatterns(Tree tree) {
+    List<TregexPattern> result = Generics.newArrayList();
+    BitSet possible = possibleMatches(tree);
+    for (int i = possible.nextSetBit(0); i >= 0; i = possible.nextSetBit(i + 1)) {
+      TregexPattern pattern = patterns.get(i);
+      if (pattern.matcher(tree).find()) {
+        result.add(pattern);
+      }
+    }
+    return result;
+  }
+
+}
@@ -33,11 +33,16 @@ import edu.stanford.nlp.trees.*;
 import edu.stanford.nlp.trees.tregex.Macros;
 import edu.stanford.nlp.trees.tregex.TregexPattern;
 import edu.stanford.nlp.trees.tregex.TregexPatternCompiler;
+import edu.stanford.nlp.trees.tregex.TregexPatternIndex;
 import edu.stanford.nlp.trees.tregex.TregexMatcher;
 import edu.stanford.nlp.util.Generics;
 import edu.stanford.nlp.util.Pair;
 import edu.stanford.nlp.util.ReflectionLoading;
 import edu.stanford.nlp.util.StringUtils;
+import edu.stanford.nlp.util.Timing;
+import edu.stanford.nlp.util.Triple;
+import edu.stanford.nlp.util.concurrent.MulticoreWrapper;
+import edu.stanford.nlp.util.concurrent.ThreadsafeProcessor;
 
 import java.util.*;
 import java.util.regex.Pattern;
@@ -162,6 +167,8 @@ public class Tsurgeon {
    *   <li><code>-hf &lt;headfinder-class-name&gt;</code> use the specified {@link HeadFinder} class to determine headship relations.
    *   <li><code>-hfArg &lt;string&gt;</code> pass a string argument in to the {@link HeadFinder} class's constructor.  <code>-hfArg</code> can be used multiple times to pass in multiple arguments.
    *   <li> <code>-trf &lt;TreeReaderFactory-class-name&gt;</code> use the specified {@link TreeReaderFactory} class to read trees from files.
+   *   <li><code>-threads N</code> Process the trees on N threads.  Output trees are printed in the input order.
+   *   <li><code>-timing</code> Report the number of trees processed per second when done.
    * </ul>
    *
    * <h4>Legal operation syntax:</h4>
@@ -326,6 +333,9 @@ public class Tsurgeon {
     String trfOption = "-trf";
     String macroOption = "-macros";
     String macroFilename = "";
+    String threadsOption = "-threads";
+    String timingOption = "-timing";
+    int numThreads = 1;
     Map<String,Integer> flagMap = Generics.newHashMap();
     flagMap.put(patternOperationOption,2);
     flagMap.put(treeFileOption,1);
@@ -334,6 +344,8 @@ public class Tsurgeon {
     flagMap.put(encodingOption,1);
     flagMap.put(headFinderOption,1);
     flagMap.put(macroOption, 1);
+    flagMap.put(threadsOption, 1);
+    flagMap.put(timingOption, 0);
     Map<String,String[]> argsMap = StringUtils.argsToMap(args,flagMap);
     args = argsMap.get(null);
 
@@ -343,6 +355,7 @@ public class Tsurgeon {
     if(argsMap.containsKey(singleLineOption))   treePrintFormats = "oneline,";   else treePrintFormats = "penn,";
     if(argsMap.containsKey(encodingOption)) encoding = argsMap.get(encodingOption)[0];
     if(argsMap.containsKey(macroOption)) macroFilename = argsMap.get(macroOption)[0];
+    if(argsMap.containsKey(threadsOption)) numThreads = Integer.parseInt(argsMap.get(threadsOption)[0]);
 
     TreePrint tp = new TreePrint(treePrintFormats, new PennTreebankLanguagePack());
     PrintWriter pwOut = new PrintWriter(new OutputStreamWriter(System.out, encoding), true);
@@ -394,15 +407,78 @@ public class Tsurgeon {
       }
     }
 
-    for (Tree t : trees ) {
-      Tree original = t.deepCopy();
-      Tree result = processPatternsOnTree(ops, t);
-      if (argsMap.containsKey(matchedOption) && matchedOnTree) {
-        pwOut.println("Operated on: ");
-        displayTree(original,tp,pwOut);
-        pwOut.println("Result: ");
+    TregexPatternIndex index = indexOperations(ops);
+    boolean printMatched = argsMap.containsKey(matchedOption);
+    Timing timing = new Timing();
+    int numTrees = 0;
+    if (numThreads > 1) {
+      MulticoreWrapper<Tree, Triple<Tree, Tree, Boolean>> wrapper =
+        new MulticoreWrapper<>(numThreads, new OperationsProcessor(ops, index, printMatched));
+      for (Tree t : trees) {
+        wrapper.put(t);
+        while (wrapper.peek()) {
+          displayResult(wrapper.poll(), printMatched, tp, pwOut);
+          numTrees++;
+        }
+      }
+      wrapper.join();
+      while (wrapper.peek()) {
+        displayResult(wrapper.poll(), printMatched, tp, pwOut);
+        numTrees++;
       }
-      displayTree(result,tp,pwOut);
+    } else {
+      for (Tree t : trees ) {
+        Tree original = printMatched ? t.deepCopy() : null;
+        Tree result = processPatternsOnTree(ops, index, t);
+        displayResult(new Triple<>(original, result, matchedOnTree), printMatched, tp, pwOut);
+        numTrees++;
+      }
+    }
+    if (argsMap.containsKey(timingOption)) {
+      long elapsed = timing.report();
+      System.err.printf("Processed %d trees with %d patterns (%d indexed by label) in %.2f sec: %.1f trees/sec%n",
+                        numTrees, ops.size(), index.numAnchored(), elapsed / 1000.0,
+                        (elapsed == 0 ? 0.0 : numTrees * 1000.0 / elapsed));
+    }
+  }
+
+  /** Prints the result of an OperationsProcessor: the original tree, the result, and whether any pattern matched */
+  private static void displayResult(Triple<Tree, Tree, Boolean> result, boolean printMatched, TreePrint tp, PrintWriter pw) {
+    if (printMatched && result.third()) {
+      pw.println("Operated on: ");
+      displayTree(result.first(), tp, pw);
+      pw.println("Result: ");
+    }
+    displayTree(result.second(), tp, pw);
+  }
+
+  /**
+   * Applies a list of operations to trees in a {@link MulticoreWrapper}.
+   * The output is the original tree (if requested), the transformed tree,
+   * and whether any of the patterns matched.
+   */
+  private static class OperationsProcessor implements ThreadsafeProcessor<Tree, Triple<Tree, Tree, Boolean>> {
+    private final List<Pair<TregexPattern, TsurgeonPattern>> ops;
+    private final TregexPatternIndex index;
+    private final boolean keepOriginal;
+
+    OperationsProcessor(List<Pair<TregexPattern, TsurgeonPattern>> ops, TregexPatternIndex index, boolean keepOriginal) {
+      this.ops = ops;
+      this.index = index;
+      this.keepOriginal = keepOriginal;
+    }
+
+    @Override
+    public Triple<Tree, Tree, Boolean> process(Tree t) {
+      Tree original = keepOriginal ? t.deepCopy() : null;
+      boolean[] matched = new boolean[1];
+      Tree result = applyOperations(ops, index, t, matched);
+      return new Triple<>(original, result, matched[0]);
+    }
+
+    @Override
+    public ThreadsafeProcessor<Tree, Triple<Tree, Tree, Boolean>> newInstance() {
+      return this;
     }
   }
 
@@ -588,22 +664,93 @@ public class Tsurgeon {
   private static boolean matchedOnTree; // hack-in field for seeing whether there was a match.
 
   public static Tree processPatternsOnTree(List<Pair<TregexPattern, TsurgeonPattern>> ops, Tree t) {
-    matchedOnTree = false;
-    for (Pair<TregexPattern,TsurgeonPattern> op : ops) {
+    return processPatternsOnTree(ops, null, t);
+  }
+
+  /**
+   * Applies each of the operations in turn to the tree, as in
+   * {@link #processPatternsOnTree(List, Tree)}, but uses an index of
+   * the tregex patterns to skip the patterns which cannot match.  The
+   * tree is scanned once to find the candidate patterns, and again only
+   * after an operation has changed it.  The result is the same as
+   * without the index.
+   *
+   * @param ops The operations to apply, in order
+   * @param index An index built by {@link #indexOperations} from the same list of operations, or null
+   * @param t The tree to operate on
+   * @return The transformed tree, or null if the tree was deleted
+   */
+  public static Tree processPatternsOnTree(List<Pair<TregexPattern, TsurgeonPattern>> ops, TregexPatternIndex index, Tree t) {
+    boolean[] matched = new boolean[1];
+    Tree result = applyOperations(ops, index, t, matched);
+    matchedOnTree = matched[0];
+    return result;
+  }
+
+  /**
+   * Indexes the tregex patterns of a list of operations, in order, so
+   * the list can be run with {@link #processPatternsOnTree(List, TregexPatternIndex, Tree)}.
+   * The index is immutable and can be shared between threads.
+   */
+  public static TregexPatternIndex indexOperations(List<Pair<TregexPattern, TsurgeonPattern>> ops) {
+    List<TregexPattern> patterns = new ArrayList<>(ops.size());
+    for (Pair<TregexPattern, TsurgeonPattern> op : ops) {
+      patterns.add(op.first());
+    }
+    return new TregexPatternIndex(patterns);
+  }
+
+  /**
+   * Applies the operations to each of the trees using {@code numThreads}
+   * threads.  The results are in the same order as the input trees.  A
+   * tree deleted by the operations is represented by null.
+   */
+  public static List<Tree> processPatternsOnTrees(List<Pair<TregexPattern, TsurgeonPattern>> ops, Iterable<Tree> inputTrees, int numThreads) {
+    TregexPatternIndex index = indexOperations(ops);
+    List<Tree> result = new ArrayList<>();
+    MulticoreWrapper<Tree, Triple<Tree, Tree, Boolean>> wrapper =
+      new MulticoreWrapper<>(numThreads, new OperationsProcessor(ops, index, false));
+    for (Tree tree : inputTrees) {
+      wrapper.put(tree);
+      while (wrapper.peek()) {
+        result.add(wrapper.poll().second());
+      }
+    }
+    wrapper.join();
+    while (wrapper.peek()) {
+      result.add(wrapper.poll().second());
+    }
+    return result;
+  }
+
+  /** Does the work of processPatternsOnTree without touching the static matchedOnTree, so it can be used from many threads */
+  private static Tree applyOperations(List<Pair<TregexPattern, TsurgeonPattern>> ops, TregexPatternIndex index, Tree t, boolean[] matched) {
+    BitSet possible = (index == null) ? null : index.possibleMatches(t);
+    for (int i = 0; i < ops.size(); ++i) {
+      Pair<TregexPattern,TsurgeonPattern> op = ops.get(i);
+      if (possible != null && ! possible.get(i)) {
+        continue;
+      }
       try {
         if (DEBUG) {
           System.err.println("Running pattern " + op.first());
         }
         TregexMatcher m = op.first().matcher(t);
         TsurgeonMatcher tsm = op.second().matcher();
+        boolean changed = false;
         while (m.find()) {
-          matchedOnTree = true;
+          matched[0] = true;
+          changed = true;
           t = tsm.evaluate(t,m);
           if (t == null) {
             return null;
           }
           m = op.first().matcher(t);
         }
+        if (changed && index != null) {
+          // the surgery may have added or relabeled nodes
+          possible = index.possibleMatches(t);
+        }
       } catch (NullPointerException npe) {
         throw new RuntimeException("Tsurgeon.processPatternsOnTree failed to match label for pattern: " + op.first() + ", " + op.second(), npe);
       }
@@ -35,6 +35,15 @@ public class ArrayStringFilter implements Predicate<String>, Serializable {
     this.length = words.length;
   }
 
+  public Mode mode() {
+    return mode;
+  }
+
+  /** Returns a copy of the strings this filter accepts (or accepts as prefixes, etc, depending on the mode) */
+  public String[] words() {
+    return Arrays.copyOf(words, length);
+  }
+
   @Override
   public boolean test(String input) {
     switch (mode) {
@@ -0,0 +1,63 @@
+package edu.stanford.nlp.util;
+
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An interner which can be shared by any number of threads without locking,
+ * and which holds at most a fixed number of objects.
+ * <p>
+ * Unlike {@link Interner}, the objects are strongly held, so this is meant
+ * for a dictionary of frequent values, such as word forms, which live as long
+ * as the program.  Once the dictionary is full, new objects are returned
+ * as they are; since word frequencies are very skewed, the frequent ones
+ * have almost all been added by then.
+ */
+public class BoundedInterner<T> {
+
+  private final int maxSize;
+  private final AtomicInteger size = new AtomicInteger();
+  private final ConcurrentMap<T, T> map = Generics.newConcurrentHashMap();
+
+  public BoundedInterner(int maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Returns the canonical object equal to o, which is o itself if there was
+   * none and the dictionary is not yet full.
+   */
+  public T intern(T o) {
+    if (o == null) {
+      return null;
+    }
+    T canonical = map.get(o);
+    if (canonical != null) {
+      return canonical;
+    }
+    if (size.get() >= maxSize) {
+      return o;
+    }
+    canonical = map.putIfAbsent(o, o);
+    if (canonical != null) {
+      return canonical;
+    }
+    size.incrementAndGet();
+    return o;
+  }
+
+  /** Number of objects in the dictionary */
+  public int size() {
+    return size.get();
+  }
+
+  public int maxSize() {
+    return maxSize;
+  }
+
+  public void clear() {
+    map.clear();
+    size.set(0);
+  }
+
+}
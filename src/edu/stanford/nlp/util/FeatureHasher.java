@@ -0,0 +1,115 @@
+package edu.stanford.nlp.util;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import edu.stanford.nlp.stats.ClassicCounter;
+import edu.stanford.nlp.stats.Counter;
+
+/**
+ * Maps String features into a fixed number of buckets (the "hashing trick"),
+ * so that the number of features of a classifier is bounded whatever its
+ * training data, and it needs no dictionary of the features it saw to find
+ * them again: each feature is replaced by the name of its bucket, so the
+ * feature index holds at most numBuckets names for each kind of feature the
+ * classifier keeps apart (one kind for a ColumnDataClassifier; one for each
+ * clique, up to windowSize, for a CRFClassifier, whose bucket names end with
+ * the clique).
+ * <br>
+ * When hashing is signed, each feature also has a sign, +1 or -1, taken from
+ * another bit of its hash, and its value is multiplied by its sign.
+ * Features which fall into the same bucket then cancel out as often as they
+ * add up, rather than always adding up, so collisions bias the weights less.
+ * <br>
+ * Buckets and signs are made from {@link String#hashCode()}, which is the
+ * same on every JVM, so a classifier trained with hashing gets the same
+ * buckets for its features when it is loaded elsewhere, as long as it hashes
+ * them with a FeatureHasher with the same number of buckets and signedness.
+ */
+public class FeatureHasher implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private final int numBuckets;
+  private final boolean signed;
+
+  public FeatureHasher(int numBuckets, boolean signed) {
+    if (numBuckets <= 0) {
+      throw new IllegalArgumentException("The number of buckets must be positive: " + numBuckets);
+    }
+    this.numBuckets = numBuckets;
+    this.signed = signed;
+  }
+
+  public int numBuckets() {
+    return numBuckets;
+  }
+
+  public boolean isSigned() {
+    return signed;
+  }
+
+  /** Mixes the bits of a String's hash code, so that similar Strings fall into unrelated buckets. */
+  private static int mix(int h) {
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    h *= 0xc2b2ae35;
+    h ^= h >>> 16;
+    return h;
+  }
+
+  /** The bucket of the feature, in [0, numBuckets) */
+  public int bucket(String feature) {
+    return (mix(feature.hashCode()) & 0x7fffffff) % numBuckets;
+  }
+
+  /** The sign of the feature: -1 or +1 if hashing is signed, else always +1 */
+  public double sign(String feature) {
+    if ( ! signed) {
+      return 1.0;
+    }
+    // the top bit of the mixed hash, which the bucket does not depend on for numBuckets < 2^31
+    return mix(feature.hashCode() ^ 0x5bd1e995) < 0 ? -1.0 : 1.0;
+  }
+
+  /** The name of the bucket of the feature, which stands for it in a classifier */
+  public String bucketName(String feature) {
+    return "#" + bucket(feature);
+  }
+
+  /**
+   * The names of the buckets of the features, in the same order.  Features
+   * which fall into the same bucket give its name more than once, so that
+   * it counts once for each of them.  Signs are not applied: use
+   * {@link #hash(Counter)} for signed hashing.
+   */
+  public List<String> hash(Collection<String> features) {
+    List<String> hashed = new ArrayList<String>(features.size());
+    for (String feature : features) {
+      hashed.add(bucketName(feature));
+    }
+    return hashed;
+  }
+
+  /**
+   * A Counter of the names of the buckets of the features, whose counts are
+   * the sums of the values (times their signs, if hashing is signed) of the
+   * features which fall into each bucket.
+   */
+  public Counter<String> hash(Counter<String> features) {
+    Counter<String> hashed = new ClassicCounter<String>();
+    for (String feature : features.keySet()) {
+      hashed.incrementCount(bucketName(feature), sign(feature) * features.getCount(feature));
+    }
+    return hashed;
+  }
+
+  @Override
+  public String toString() {
+    return "FeatureHasher[" + numBuckets + " buckets" + (signed ? ", signed]" : "]");
+  }
+
+}
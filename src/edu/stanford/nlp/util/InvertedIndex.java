@@ -0,0 +1,158 @@
+package edu.stanford.nlp.util;
+
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * A simple in-memory inverted index from String terms to the documents
+ * containing them, meant to be serialized to disk and used to select
+ * candidate documents before running an expensive matcher over them
+ * (see {@link edu.stanford.nlp.trees.tregex.TreebankIndex} and
+ * {@link edu.stanford.nlp.semgraph.semgrex.SemanticGraphIndex}).
+ * <br>
+ * Documents are numbered in the order they are added.  Each document
+ * belongs to a named source, typically the file it was read from, and
+ * the index remembers how many documents of each source it has seen,
+ * so that a source which has been appended to can be indexed
+ * incrementally by skipping the documents already indexed.
+ * <br>
+ * Queries are in conjunctive normal form: a list of requirements, each
+ * of which is a set of alternative terms.  A document is a candidate
+ * if, for every requirement, it contains at least one of the terms.
+ * The requirements are applied from the most selective to the least,
+ * stopping as soon as no candidates remain.
+ */
+public class InvertedIndex implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private final Map<String, Postings> postings = Generics.newHashMap();
+
+  private final Map<String, Postings> sourceDocuments = Generics.newHashMap();
+  /** The sources in the order they were first seen */
+  private final List<String> sources = Generics.newArrayList();
+
+  private int numDocuments = 0;
+
+  /**
+   * Adds a document with the given terms.  Duplicate terms are ignored.
+   *
+   * @return The id of the new document
+   */
+  public int addDocument(String source, Collection<String> terms) {
+    int id = numDocuments++;
+    Postings docs = sourceDocuments.get(source);
+    if (docs == null) {
+      docs = new Postings();
+      sourceDocuments.put(source, docs);
+      sources.add(source);
+    }
+    docs.add(id);
+    for (String term : terms) {
+      Postings termDocs = postings.get(term);
+      if (termDocs == null) {
+        termDocs = new Postings();
+        postings.put(term, termDocs);
+      }
+      if (termDocs.size == 0 || termDocs.last() != id) {
+        termDocs.add(id);
+      }
+    }
+    return id;
+  }
+
+  public int numDocuments() {
+    return numDocuments;
+  }
+
+  public int numTerms() {
+    return postings.size();
+  }
+
+  /** The number of documents containing this term */
+  public int documentFrequency(String term) {
+    Postings termDocs = postings.get(term);
+    return termDocs == null ? 0 : termDocs.size;
+  }
+
+  /** The sources indexed so far, in the order they were first seen */
+  public List<String> sources() {
+    return Collections.unmodifiableList(sources);
+  }
+
+  /** The number of documents of this source which have been indexed */
+  public int sourceSize(String source) {
+    Postings docs = sourceDocuments.get(source);
+    return docs == null ? 0 : docs.size;
+  }
+
+  /** The id of the document at this position in this source */
+  public int documentId(String source, int position) {
+    Postings docs = sourceDocuments.get(source);
+    if (docs == null || position < 0 || position >= docs.size) {
+      throw new IndexOutOfBoundsException("No document " + position + " in " + source);
+    }
+    return docs.ids[position];
+  }
+
+  /**
+   * Returns the documents which satisfy all of the requirements, where
+   * a requirement is satisfied by containing any one of its terms.  An
+   * empty list of requirements selects every document.
+   */
+  public BitSet candidates(List<? extends Collection<String>> requirements) {
+    List<Pair<Integer, Collection<String>>> ordered = Generics.newArrayList();
+    for (Collection<String> requirement : requirements) {
+      int frequency = 0;
+      for (String term : requirement) {
+        frequency += documentFrequency(term);
+      }
+      ordered.add(Pair.makePair(frequency, requirement));
+    }
+    Collections.sort(ordered, (x, y) -> Integer.compare(x.first(), y.first()));
+
+    BitSet result = new BitSet(numDocuments);
+    result.set(0, numDocuments);
+    for (Pair<Integer, Collection<String>> requirement : ordered) {
+      BitSet matching = new BitSet(numDocuments);
+      for (String term : requirement.second()) {
+        Postings termDocs = postings.get(term);
+        if (termDocs != null) {
+          for (int i = 0; i < termDocs.size; ++i) {
+            matching.set(termDocs.ids[i]);
+          }
+        }
+      }
+      result.and(matching);
+      if (result.isEmpty()) {
+        break;
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    return "InvertedIndex[" + numDocuments + " documents, " + postings.size() + " terms, " + sources.size() + " sources]";
+  }
+
+  /** A growable, sorted list of document ids */
+  private static class Postings implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    int[] ids = new int[4];
+    int size = 0;
+
+    void add(int id) {
+      if (size == ids.length) {
+        ids = Arrays.copyOf(ids, size * 2);
+      }
+      ids[size++] = id;
+    }
+
+    int last() {
+      return ids[size - 1];
+    }
+  }
+
+}
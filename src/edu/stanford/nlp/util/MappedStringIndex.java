@@ -0,0 +1,373 @@
+package edu.stanford.nlp.util;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+import edu.stanford.nlp.io.IOUtils;
+import edu.stanford.nlp.io.RuntimeIOException;
+
+/**
+ * A read-only Index of Strings kept in a memory-mapped file rather than on
+ * the heap, for models with very many features.  Opening one reads only
+ * a header, so a model whose feature index is kept this way loads at once,
+ * and the heap it takes does not grow with the number of features: the
+ * operating system pages in the parts of the file which are used.
+ * <br>
+ * The file holds the strings' bytes one after another, the offset of each
+ * string, and an open-addressing hash table from the strings' hash codes to
+ * their indices, which {@link #indexOf(String)} probes, comparing the bytes
+ * in place without making a String.  Each char is written as 1 to 3 bytes
+ * (as in UTF-8, except that each half of a surrogate pair is written on its
+ * own), so that any String comes back as it was.
+ * <br>
+ * The index is made from another Index with {@link #write(Index, String)}.
+ * When serialized, only the path of its file is written, so a serialized
+ * model which holds one stays small; the file has to be at the same path
+ * when the model is loaded.
+ */
+public class MappedStringIndex extends AbstractCollection<String> implements Index<String>, RandomAccess {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final int MAGIC = 0x4d534958;
+  private static final int HEADER_BYTES = 3 * 4 + 8;
+
+  private final String path;
+  private transient int size;
+  private transient IntBuffer offsets;
+  private transient IntBuffer table;
+  private transient ByteBuffer bytes;
+
+  /** Opens the index in the given file, as made by {@link #write(Index, String)}. */
+  public MappedStringIndex(String path) {
+    this.path = path;
+    open();
+  }
+
+  private void open() {
+    RandomAccessFile file = null;
+    try {
+      file = new RandomAccessFile(path, "r");
+      if (file.readInt() != MAGIC) {
+        throw new RuntimeIOException(path + " is not a MappedStringIndex file");
+      }
+      size = file.readInt();
+      int tableSize = file.readInt();
+      long numBytes = file.readLong();
+      FileChannel channel = file.getChannel();
+      long position = HEADER_BYTES;
+      offsets = channel.map(FileChannel.MapMode.READ_ONLY, position, 4L * (size + 1)).asIntBuffer();
+      position += 4L * (size + 1);
+      table = channel.map(FileChannel.MapMode.READ_ONLY, position, 4L * tableSize).asIntBuffer();
+      position += 4L * tableSize;
+      bytes = channel.map(FileChannel.MapMode.READ_ONLY, position, numBytes);
+    } catch (IOException e) {
+      throw new RuntimeIOException("Could not open the index in " + path, e);
+    } finally {
+      // the mappings stay valid after the file is closed
+      IOUtils.closeIgnoringExceptions(file);
+    }
+  }
+
+  /** The path of the file which holds this index */
+  public String path() {
+    return path;
+  }
+
+  private static int hash(String s) {
+    int h = s.hashCode() * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  /** The number of bytes which char c is written as */
+  private static int encodedLength(char c) {
+    if (c < 0x80) {
+      return 1;
+    } else if (c < 0x800) {
+      return 2;
+    } else {
+      return 3;
+    }
+  }
+
+  /**
+   * Writes the items of the given index, in order, to the given file, and
+   * returns a MappedStringIndex of it.
+   */
+  public static MappedStringIndex write(Index<String> index, String path) {
+    int size = index.size();
+    int tableSize = 2;
+    while (tableSize < 2L * size) {
+      tableSize <<= 1;
+    }
+    int[] offsets = new int[size + 1];
+    int[] table = new int[tableSize];
+    long numBytes = 0;
+    for (int i = 0; i < size; i++) {
+      String s = index.get(i);
+      for (int k = 0, len = s.length(); k < len; k++) {
+        numBytes += encodedLength(s.charAt(k));
+      }
+      if (numBytes > Integer.MAX_VALUE) {
+        throw new IllegalArgumentException("The items of the index take more than 2GB");
+      }
+      offsets[i + 1] = (int) numBytes;
+      int slot = hash(s) & (tableSize - 1);
+      while (table[slot] != 0) {
+        slot = (slot + 1) & (tableSize - 1);
+      }
+      table[slot] = i + 1;
+    }
+
+    DataOutputStream out = null;
+    try {
+      out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path), 1 << 16));
+      out.writeInt(MAGIC);
+      out.writeInt(size);
+      out.writeInt(tableSize);
+      out.writeLong(numBytes);
+      for (int offset : offsets) {
+        out.writeInt(offset);
+      }
+      for (int entry : table) {
+        out.writeInt(entry);
+      }
+      for (int i = 0; i < size; i++) {
+        String s = index.get(i);
+        for (int k = 0, len = s.length(); k < len; k++) {
+          char c = s.charAt(k);
+          if (c < 0x80) {
+            out.write(c);
+          } else if (c < 0x800) {
+            out.write(0xC0 | (c >> 6));
+            out.write(0x80 | (c & 0x3F));
+          } else {
+            out.write(0xE0 | (c >> 12));
+            out.write(0x80 | ((c >> 6) & 0x3F));
+            out.write(0x80 | (c & 0x3F));
+          }
+        }
+      }
+      out.close();
+    } catch (IOException e) {
+      throw new RuntimeIOException("Could not write the index to " + path, e);
+    } finally {
+      IOUtils.closeIgnoringExceptions(out);
+    }
+    return new MappedStringIndex(path);
+  }
+
+  /** True if the item at index i is the given String */
+  private boolean itemEquals(int i, String s) {
+    int pos = offsets.get(i);
+    int end = offsets.get(i + 1);
+    int len = s.length();
+    int k = 0;
+    while (pos < end) {
+      if (k == len) {
+        return false;
+      }
+      int b = bytes.get(pos) & 0xFF;
+      char c;
+      if (b < 0x80) {
+        c = (char) b;
+        pos += 1;
+      } else if (b < 0xE0) {
+        c = (char) (((b & 0x1F) << 6) | (bytes.get(pos + 1) & 0x3F));
+        pos += 2;
+      } else {
+        c = (char) (((b & 0x0F) << 12) | ((bytes.get(pos + 1) & 0x3F) << 6) | (bytes.get(pos + 2) & 0x3F));
+        pos += 3;
+      }
+      if (c != s.charAt(k)) {
+        return false;
+      }
+      k++;
+    }
+    return k == len;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public String get(int i) {
+    if (i < 0 || i >= size) {
+      throw new ArrayIndexOutOfBoundsException("Index " + i + " outside the bounds [0," + size + ")");
+    }
+    int pos = offsets.get(i);
+    int end = offsets.get(i + 1);
+    char[] chars = new char[end - pos];
+    int k = 0;
+    while (pos < end) {
+      int b = bytes.get(pos) & 0xFF;
+      if (b < 0x80) {
+        chars[k] = (char) b;
+        pos += 1;
+      } else if (b < 0xE0) {
+        chars[k] = (char) (((b & 0x1F) << 6) | (bytes.get(pos + 1) & 0x3F));
+        pos += 2;
+      } else {
+        chars[k] = (char) (((b & 0x0F) << 12) | ((bytes.get(pos + 1) & 0x3F) << 6) | (bytes.get(pos + 2) & 0x3F));
+        pos += 3;
+      }
+      k++;
+    }
+    return new String(chars, 0, k);
+  }
+
+  @Override
+  public int indexOf(String o) {
+    if (o == null) {
+      return -1;
+    }
+    int mask = table.capacity() - 1;
+    int slot = hash(o) & mask;
+    while (true) {
+      int entry = table.get(slot);
+      if (entry == 0) {
+        return -1;
+      }
+      if (itemEquals(entry - 1, o)) {
+        return entry - 1;
+      }
+      slot = (slot + 1) & mask;
+    }
+  }
+
+  /** As for a locked index: returns the index of the item, or -1 if it is not in the index. */
+  @Override
+  public int addToIndex(String o) {
+    return indexOf(o);
+  }
+
+  @Override
+  @Deprecated
+  public int indexOf(String o, boolean add) {
+    return indexOf(o);
+  }
+
+  @Override
+  public List<String> objectsList() {
+    List<String> objects = new ArrayList<String>(size);
+    for (int i = 0; i < size; i++) {
+      objects.add(get(i));
+    }
+    return objects;
+  }
+
+  @Override
+  public Collection<String> objects(final int[] indices) {
+    return new AbstractList<String>() {
+      @Override
+      public String get(int index) {
+        return MappedStringIndex.this.get(indices[index]);
+      }
+
+      @Override
+      public int size() {
+        return indices.length;
+      }
+    };
+  }
+
+  /** Always true: nothing can be added to this index. */
+  @Override
+  public boolean isLocked() {
+    return true;
+  }
+
+  @Override
+  public void lock() {
+    // it is always locked
+  }
+
+  @Override
+  public void unlock() {
+    throw new UnsupportedOperationException("A MappedStringIndex is read-only");
+  }
+
+  @Override
+  public void saveToWriter(Writer out) throws IOException {
+    for (int i = 0; i < size; i++) {
+      out.write(i + "=" + get(i) + '\n');
+    }
+  }
+
+  @Override
+  public void saveToFilename(String s) {
+    Writer out = null;
+    try {
+      out = new BufferedWriter(new FileWriter(s));
+      saveToWriter(out);
+      out.close();
+    } catch (IOException e) {
+      throw new RuntimeIOException(e);
+    } finally {
+      IOUtils.closeIgnoringExceptions(out);
+    }
+  }
+
+  @Override
+  public boolean contains(Object o) {
+    return o instanceof String && indexOf((String) o) >= 0;
+  }
+
+  /** Returns false, as a locked index does: nothing can be added. */
+  @Override
+  public boolean add(String o) {
+    return false;
+  }
+
+  /** Returns false, as a locked index does: nothing can be added. */
+  @Override
+  public boolean addAll(Collection<? extends String> c) {
+    return false;
+  }
+
+  @Override
+  public void clear() {
+    throw new UnsupportedOperationException("A MappedStringIndex is read-only");
+  }
+
+  @Override
+  public Iterator<String> iterator() {
+    return new Iterator<String>() {
+      private int index = 0;
+
+      @Override
+      public boolean hasNext() {
+        return index < size;
+      }
+
+      @Override
+      public String next() {
+        if (index >= size) {
+          throw new NoSuchElementException();
+        }
+        return get(index++);
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+
+  @Override
+  public String toString() {
+    return "MappedStringIndex[" + path + ", " + size + " items]";
+  }
+
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    open();
+  }
+
+}
@@ -1033,7 +1033,6 @@ public class XMLUtils {
               if (end < 0) {
                 end = tag.length();
               }
-              System.out.println(begin + " " + end);
               value = tag.substring(begin, end);
             }
           }
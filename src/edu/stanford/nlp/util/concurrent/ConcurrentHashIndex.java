@@ -1,6 +1,9 @@
 package edu.stanford.nlp.util.concurrent;
 
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.PrintWriter;
 import java.io.Writer;
 import java.util.AbstractCollection;
@@ -10,7 +13,9 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.RandomAccess;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.concurrent.locks.ReentrantLock;
 
 import edu.stanford.nlp.io.IOUtils;
@@ -20,6 +25,18 @@ import edu.stanford.nlp.util.Index;
 /**
  * A fast threadsafe index that supports constant-time lookup in both directions. This
  * index is tuned for circumstances in which readers significantly outnumber writers.
+ * <br>
+ * Lookups take no locks.  Adding a new item locks only one of several stripes,
+ * chosen by the item's hash code, so threads adding different new items (as
+ * when collecting features on several threads) rarely wait for each other.
+ * The items are kept by index in fixed-size chunks, so the index never has to
+ * be copied as it grows.  Items added at the same time by different threads
+ * get their indices in whichever order the threads get to them.
+ * <br>
+ * The serialized form is that of the earlier, array-backed version of this
+ * class (the items in index order, and their map to indices), so that it
+ * does not depend on the chunks, and indices serialized by either version
+ * can be read by the other.
  *
  * @author Spence Green
  *
@@ -29,13 +46,39 @@ public class ConcurrentHashIndex<E> extends AbstractCollection<E> implements Ind
 
   private static final long serialVersionUID = 6465313844985269109L;
 
+  /** The fields of the earlier version, which are written and read by writeObject and readObject */
+  private static final ObjectStreamField[] serialPersistentFields = {
+    new ObjectStreamField("item2Index", ConcurrentHashMap.class),
+    new ObjectStreamField("indexSize", Integer.TYPE),
+    new ObjectStreamField("lock", ReentrantLock.class),
+    new ObjectStreamField("index2Item", AtomicReference.class),
+  };
+
   public static final int UNKNOWN_ID = -1;
   private static final int DEFAULT_INITIAL_CAPACITY = 100;
 
+  private static final int CHUNK_BITS = 10;
+  private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+  private static final int NUM_STRIPES = 64;
+
   private final ConcurrentHashMap<E,Integer> item2Index;
-  private int indexSize;
+  /** The number of indices handed out */
+  private final AtomicInteger indexSize;
+  /** Guards the adding of new items whose hash codes fall in each stripe */
+  private final ReentrantLock[] stripes;
+  /** Guards the growing of the list of chunks, and clear() */
   private final ReentrantLock lock;
-  private final AtomicReference<Object[]> index2Item;
+  /** The items, by index, in chunks of CHUNK_SIZE */
+  private volatile Chunk[] index2Item;
+  /** The items read by readObject, in index order, which readResolve adds to a new index */
+  private transient Object[] serializedItems;
+
+  private static class Chunk extends AtomicReferenceArray<Object> {
+    private static final long serialVersionUID = 1L;
+    Chunk() {
+      super(CHUNK_SIZE);
+    }
+  }
 
   /**
    * Constructor.
@@ -51,22 +94,38 @@ public class ConcurrentHashIndex<E> extends AbstractCollection<E> implements Ind
    */
   public ConcurrentHashIndex(int initialCapacity) {
     item2Index = new ConcurrentHashMap<E,Integer>(initialCapacity);
-    indexSize = 0;
+    indexSize = new AtomicInteger();
+    stripes = new ReentrantLock[NUM_STRIPES];
+    for (int i = 0; i < NUM_STRIPES; i++) {
+      stripes[i] = new ReentrantLock();
+    }
     lock = new ReentrantLock();
-    Object[] arr = new Object[initialCapacity];
-    index2Item = new AtomicReference<Object[]>(arr);
+    index2Item = new Chunk[] { new Chunk() };
   }
 
   @SuppressWarnings("unchecked")
   @Override
   public E get(int i) {
-    Object[] arr = index2Item.get();
-    if (i < indexSize) {
-      // arr.length guaranteed to be == to size() given the
-      // implementation of indexOf below.
-      return (E) arr[i];
+    while (true) {
+      int size = indexSize.get();
+      if (i < 0 || i >= size) {
+        throw new ArrayIndexOutOfBoundsException(String.format("Out of bounds: %d >= %d", i, size));
+      }
+      Chunk[] chunks = index2Item;
+      if ((i >>> CHUNK_BITS) < chunks.length) {
+        Object o = chunks[i >>> CHUNK_BITS].get(i & (CHUNK_SIZE - 1));
+        if (o != null) {
+          return (E) o;
+        }
+      }
+      // Index i has been handed out, but the thread adding item i has not
+      // made its chunk or stored it yet.  That thread holds its stripe lock
+      // until it has, and neither step waits for anything which this thread
+      // holds, so the item shows up after a few yields.  (clear() takes every
+      // stripe lock, so it cannot drop an item being added; if it empties the
+      // index meanwhile, the bounds check above ends the loop.)
+      Thread.yield();
     }
-    throw new ArrayIndexOutOfBoundsException(String.format("Out of bounds: %d >= %d", i, indexSize));
   }
 
   @Override
@@ -82,27 +141,44 @@ public class ConcurrentHashIndex<E> extends AbstractCollection<E> implements Ind
       return index;
     }
 
-    lock.lock();
+    int h = o.hashCode();
+    ReentrantLock stripe = stripes[(h ^ (h >>> 16)) & (NUM_STRIPES - 1)];
+    stripe.lock();
     try {
       // Recheck state
-      if (item2Index.containsKey(o)) {
-        return item2Index.get(o);
-
-      } else {
-        final int newIndex = indexSize++;
-        Object[] arr = index2Item.get();
-        assert newIndex <= arr.length;
-        if (newIndex == arr.length) {
-          // Increase size of array if necessary
-          Object[] newArr = new Object[2*newIndex];
-          System.arraycopy(arr, 0, newArr, 0, arr.length);
-          arr = newArr;
+      index = item2Index.get(o);
+      if (index != null) {
+        return index;
+      }
+      final int newIndex = indexSize.getAndIncrement();
+      Chunk[] chunks = index2Item;
+      if ((newIndex >>> CHUNK_BITS) >= chunks.length) {
+        chunks = addChunks(newIndex >>> CHUNK_BITS);
+      }
+      // store the item before publishing its index
+      chunks[newIndex >>> CHUNK_BITS].set(newIndex & (CHUNK_SIZE - 1), o);
+      item2Index.put(o, newIndex);
+      return newIndex;
+    } finally {
+      stripe.unlock();
+    }
+  }
+
+  /** Makes sure that there are chunks up to the given one, and returns them. */
+  private Chunk[] addChunks(int lastChunk) {
+    lock.lock();
+    try {
+      Chunk[] chunks = index2Item;
+      if (lastChunk >= chunks.length) {
+        Chunk[] newChunks = new Chunk[Math.max(lastChunk + 1, 2 * chunks.length)];
+        System.arraycopy(chunks, 0, newChunks, 0, chunks.length);
+        for (int c = chunks.length; c < newChunks.length; c++) {
+          newChunks[c] = new Chunk();
         }
-        arr[newIndex] = o;
-        index2Item.set(arr);
-        item2Index.put(o, newIndex);
-        return newIndex;
+        index2Item = newChunks;
+        chunks = newChunks;
       }
+      return chunks;
     } finally {
       lock.unlock();
     }
@@ -134,7 +210,12 @@ public class ConcurrentHashIndex<E> extends AbstractCollection<E> implements Ind
 
   @Override
   public List<E> objectsList() {
-    return Generics.newArrayList(item2Index.keySet());
+    final int size = size();
+    List<E> objects = Generics.newArrayList(size);
+    for (int i = 0; i < size; i++) {
+      objects.add(get(i));
+    }
+    return objects;
   }
 
   @Override
@@ -169,7 +250,7 @@ public class ConcurrentHashIndex<E> extends AbstractCollection<E> implements Ind
   @Override
   public void saveToWriter(Writer out) throws IOException {
     final String nl = System.getProperty("line.separator");
-    for (int i = 0, sz = indexSize; i < sz; i++) {
+    for (int i = 0, sz = size(); i < sz; i++) {
       E o = get(i);
       if (o != null) {
         out.write(i + "=" + get(i) + nl);
@@ -182,7 +263,7 @@ public class ConcurrentHashIndex<E> extends AbstractCollection<E> implements Ind
     PrintWriter bw = null;
     try {
       bw = IOUtils.getPrintWriter(s);
-      for (int i = 0, size = indexSize; i < size; i++) {
+      for (int i = 0, size = size(); i < size; i++) {
         E o = get(i);
         if (o != null) {
           bw.printf("%d=%s%n", i, o.toString());
@@ -220,7 +301,7 @@ public class ConcurrentHashIndex<E> extends AbstractCollection<E> implements Ind
 
   @Override
   public int size() {
-    return indexSize;
+    return indexSize.get();
   }
 
   @Override
@@ -246,16 +327,62 @@ public class ConcurrentHashIndex<E> extends AbstractCollection<E> implements Ind
     return indexOf((E) o) != UNKNOWN_ID;
   }
 
+  /** Writes the items in index order, in the serialized form of the earlier version of this class. */
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    int size = size();
+    Object[] items = new Object[size];
+    ConcurrentHashMap<E,Integer> map = new ConcurrentHashMap<E,Integer>(Math.max(size, DEFAULT_INITIAL_CAPACITY));
+    for (int i = 0; i < size; i++) {
+      E item = get(i);
+      items[i] = item;
+      map.put(item, i);
+    }
+    ObjectOutputStream.PutField fields = out.putFields();
+    fields.put("item2Index", map);
+    fields.put("indexSize", size);
+    fields.put("lock", new ReentrantLock());
+    fields.put("index2Item", new AtomicReference<Object[]>(items));
+    out.writeFields();
+  }
+
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    ObjectInputStream.GetField fields = in.readFields();
+    int size = fields.get("indexSize", 0);
+    @SuppressWarnings("unchecked")
+    AtomicReference<Object[]> items = (AtomicReference<Object[]>) fields.get("index2Item", null);
+    if (items == null || items.get().length < size) {
+      throw new IOException("ConcurrentHashIndex: the serialized items do not match its size " + size);
+    }
+    // the earlier version's array may be longer than its size
+    serializedItems = new Object[size];
+    System.arraycopy(items.get(), 0, serializedItems, 0, size);
+  }
+
+  /** Makes the index of the items read by readObject, with its locks and chunks. */
+  @SuppressWarnings("unchecked")
+  private Object readResolve() {
+    ConcurrentHashIndex<E> index = new ConcurrentHashIndex<E>(Math.max(serializedItems.length, DEFAULT_INITIAL_CAPACITY));
+    for (Object item : serializedItems) {
+      index.addToIndex((E) item);
+    }
+    return index;
+  }
+
   @Override
   public void clear() {
+    for (ReentrantLock stripe : stripes) {
+      stripe.lock();
+    }
     lock.lock();
     try {
       item2Index.clear();
-      indexSize = 0;
-      Object[] arr = new Object[DEFAULT_INITIAL_CAPACITY];
-      index2Item.set(arr);
+      indexSize.set(0);
+      index2Item = new Chunk[] { new Chunk() };
     } finally {
       lock.unlock();
+      for (ReentrantLock stripe : stripes) {
+        stripe.unlock();
+      }
     }
   }
 }
@@ -0,0 +1,165 @@
+package edu.stanford.nlp.util.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import edu.stanford.nlp.stats.ClassicCounter;
+import edu.stanford.nlp.stats.Counter;
+import edu.stanford.nlp.stats.OpenAddressCounter;
+
+/**
+ * A counter which many threads can add to at once, for collecting
+ * statistics (such as feature or pattern counts) on several threads.
+ * <br>
+ * Each thread adds its counts to a buffer of its own, without any locking,
+ * and the buffer is flushed into the shared counts when it holds
+ * batchSize keys, or when the thread calls {@link #flush()}.  The shared
+ * counts are kept in stripes, each an {@link OpenAddressCounter} of the keys
+ * whose hash codes fall in it, with a lock of its own, so that a flush
+ * locks each stripe once and threads flushing at the same time rarely wait.
+ * <br>
+ * {@link #getCount(Object)}, {@link #toCounter()} and the other methods
+ * which read the counts see only the flushed counts: every thread which
+ * adds counts should call {@link #flush()} when it is done, before they
+ * are read.
+ *
+ * @param <E> The type of the keys
+ */
+public class StripedCounter<E> {
+
+  private static final int DEFAULT_BATCH_SIZE = 1000;
+
+  private final OpenAddressCounter<E>[] stripes;
+  private final int batchSize;
+  private final ThreadLocal<OpenAddressCounter<E>> buffers = new ThreadLocal<OpenAddressCounter<E>>() {
+    @Override
+    protected OpenAddressCounter<E> initialValue() {
+      return new OpenAddressCounter<E>(batchSize);
+    }
+  };
+
+  /** Makes a counter with enough stripes for the processors of this machine. */
+  public StripedCounter() {
+    this(4 * Runtime.getRuntime().availableProcessors(), DEFAULT_BATCH_SIZE);
+  }
+
+  /**
+   * @param numStripes The number of stripes (rounded up to a power of 2)
+   * @param batchSize The number of keys a thread's buffer holds before it
+   *     is flushed into the stripes
+   */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  public StripedCounter(int numStripes, int batchSize) {
+    int n = 1;
+    while (n < numStripes) {
+      n <<= 1;
+    }
+    stripes = new OpenAddressCounter[n];
+    for (int i = 0; i < n; i++) {
+      stripes[i] = new OpenAddressCounter<E>();
+    }
+    this.batchSize = batchSize;
+  }
+
+  private int stripeOf(Object key) {
+    int h = key == null ? 0 : key.hashCode();
+    h ^= (h >>> 16);
+    return h & (stripes.length - 1);
+  }
+
+  /** Adds the given count to the key, in this thread's buffer. */
+  public void incrementCount(E key, double count) {
+    OpenAddressCounter<E> buffer = buffers.get();
+    buffer.incrementCount(key, count);
+    if (buffer.size() >= batchSize) {
+      flush(buffer);
+    }
+  }
+
+  /** Adds 1 to the count of the key, in this thread's buffer. */
+  public void incrementCount(E key) {
+    incrementCount(key, 1.0);
+  }
+
+  /** Adds the counts in this thread's buffer to the shared counts. */
+  public void flush() {
+    flush(buffers.get());
+  }
+
+  private void flush(OpenAddressCounter<E> buffer) {
+    if (buffer.isEmpty()) {
+      return;
+    }
+    // sort the keys by stripe, so that each stripe is locked once
+    List<List<Map.Entry<E, Double>>> byStripe = new ArrayList<List<Map.Entry<E, Double>>>(stripes.length);
+    for (int s = 0; s < stripes.length; s++) {
+      byStripe.add(null);
+    }
+    for (Map.Entry<E, Double> entry : buffer.entrySet()) {
+      int s = stripeOf(entry.getKey());
+      List<Map.Entry<E, Double>> entries = byStripe.get(s);
+      if (entries == null) {
+        entries = new ArrayList<Map.Entry<E, Double>>();
+        byStripe.set(s, entries);
+      }
+      entries.add(entry);
+    }
+    for (int s = 0; s < stripes.length; s++) {
+      List<Map.Entry<E, Double>> entries = byStripe.get(s);
+      if (entries != null) {
+        OpenAddressCounter<E> stripe = stripes[s];
+        synchronized (stripe) {
+          for (Map.Entry<E, Double> entry : entries) {
+            stripe.incrementCount(entry.getKey(), entry.getValue());
+          }
+        }
+      }
+    }
+    buffer.clear();
+  }
+
+  /** The flushed count of the key */
+  public double getCount(Object key) {
+    OpenAddressCounter<E> stripe = stripes[stripeOf(key)];
+    synchronized (stripe) {
+      return stripe.getCount(key);
+    }
+  }
+
+  /** The number of keys with flushed counts */
+  public int size() {
+    int size = 0;
+    for (OpenAddressCounter<E> stripe : stripes) {
+      synchronized (stripe) {
+        size += stripe.size();
+      }
+    }
+    return size;
+  }
+
+  /** The sum of the flushed counts */
+  public double totalCount() {
+    double total = 0.0;
+    for (OpenAddressCounter<E> stripe : stripes) {
+      synchronized (stripe) {
+        total += stripe.totalCount();
+      }
+    }
+    return total;
+  }
+
+  /** Returns a new Counter of the flushed counts. */
+  public Counter<E> toCounter() {
+    Counter<E> counter = new ClassicCounter<E>();
+    for (OpenAddressCounter<E> stripe : stripes) {
+      synchronized (stripe) {
+        for (Map.Entry<E, Double> entry : stripe.entrySet()) {
+          counter.setCount(entry.getKey(), entry.getValue());
+        }
+      }
+    }
+    return counter;
+  }
+
+}